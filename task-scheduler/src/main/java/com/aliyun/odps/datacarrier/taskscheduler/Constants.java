@@ -38,6 +38,8 @@ public class Constants {
   public static final int MAX_PARTITION_GROUP_SIZE = 200;
   public static final int DEFAULT_PARTITION_GROUP_SPLIT_SIZE_IN_GB = 10;
   public static final int DEFAULT_MAPREDUCE_SPLIT_SIZE_IN_BYTE = 512000000;
+  public static final int DEFAULT_SMALL_TABLE_BATCH_SIZE = 50;
+  public static final int DEFAULT_TASK_WINDOW_SIZE = 50;
 
   public static final String MMA_TEMPORARY_TABLE_PREFIX = "_temporary_table_generated_by_mma_";
 
@@ -45,20 +47,26 @@ public class Constants {
     Constants of MmaMetaManagerDbImpl
    */
   public static final String DB_FILE_NAME = ".MmaMeta";
+  public static final String STATUS_JOURNAL_FILE_NAME = ".MmaStatusJournal";
+  // Metadata cached within this period, e.g. when the job is planned, is reused by a new job
+  public static final long NEW_JOB_METADATA_MAX_AGE_SECONDS = 60;
 
   // Types
   public static final String VARCHAR_255 = "VARCHAR(255)";
-  public static final String VARCHAR_768 = "VARCHAR(768)";
+  public static final String VARCHAR_766 = "VARCHAR(766)";
   public static final String VARCHAR_65535 = "VARCHAR(65535)";
   public static final String TEXT = "TEXT";
   public static final String INT = "INT";
   public static final String BIGINT = "BIGINT";
   public static final String BOOLEAN = "BOOLEAN";
+  public static final String MEDIUMBLOB = "MEDIUMBLOB";
 
   /**
-   * Schema: default, table: MMA_TBL_META
+   * Schema: default, table: MMA_TBL_META. Column 'migration_config' references a job config in
+   * MMA_JOB_CONFIG, or is the job config in JSON for rows written by older versions
    */
   public static final String MMA_TBL_META_TBL_NAME = "MMA_TBL_META";
+  public static final String MMA_TBL_META_IDX_STATUS = "MMA_TBL_META_IDX_STATUS";
   public static final String MMA_TBL_META_COL_DB_NAME = "db_name";
   public static final String MMA_TBL_META_COL_TBL_NAME = "table_name";
   public static final String MMA_TBL_META_COL_IS_PARTITIONED = "is_partitioned";
@@ -89,6 +97,44 @@ public class Constants {
    */
   public static final long MMA_TBL_META_NA_VALUE_LAST_MODIFIED_TIME = -1L;
 
+  /**
+   * Schema: default, table: MMA_PENDING_QUEUE. Jobs in PENDING status, waiting to be claimed by
+   * the task provider
+   */
+  public static final String MMA_PENDING_QUEUE_TBL_NAME = "MMA_PENDING_QUEUE";
+  public static final String MMA_PENDING_QUEUE_COL_DB_NAME = "db_name";
+  public static final String MMA_PENDING_QUEUE_COL_TBL_NAME = "table_name";
+  public static final String MMA_PENDING_QUEUE_COL_ENQUEUE_TIME = "enqueue_time";
+  public static final String MMA_PENDING_QUEUE_COL_CLAIM_TIME = "claim_time";
+  public static final Map<String, String> MMA_PENDING_QUEUE_COL_TO_TYPE;
+  static {
+    Map<String, String> temp = new LinkedHashMap<>();
+    temp.put(MMA_PENDING_QUEUE_COL_DB_NAME, VARCHAR_255);
+    temp.put(MMA_PENDING_QUEUE_COL_TBL_NAME, VARCHAR_255);
+    temp.put(MMA_PENDING_QUEUE_COL_ENQUEUE_TIME, BIGINT);
+    temp.put(MMA_PENDING_QUEUE_COL_CLAIM_TIME, BIGINT);
+    MMA_PENDING_QUEUE_COL_TO_TYPE = Collections.unmodifiableMap(temp);
+  }
+  /**
+   * N/A value for column 'claim_time', means the job is not claimed
+   */
+  public static final long MMA_PENDING_QUEUE_NA_VALUE_CLAIM_TIME = -1L;
+
+  /**
+   * Schema: default, table: MMA_JOB_CONFIG. Encoded job configs, see JobConfigCodec. Rows are
+   * immutable and addressed by the hash of their content
+   */
+  public static final String MMA_JOB_CONFIG_TBL_NAME = "MMA_JOB_CONFIG";
+  public static final String MMA_JOB_CONFIG_COL_CONFIG_ID = "config_id";
+  public static final String MMA_JOB_CONFIG_COL_CONFIG = "config";
+  public static final Map<String, String> MMA_JOB_CONFIG_COL_TO_TYPE;
+  static {
+    Map<String, String> temp = new LinkedHashMap<>();
+    temp.put(MMA_JOB_CONFIG_COL_CONFIG_ID, VARCHAR_255);
+    temp.put(MMA_JOB_CONFIG_COL_CONFIG, MEDIUMBLOB);
+    MMA_JOB_CONFIG_COL_TO_TYPE = Collections.unmodifiableMap(temp);
+  }
+
   public static final String MMA_OBJ_RESTORE_TBL_NAME = "MMA_DATABASE_RESTORE";
   public static final String MMA_OBJ_RESTORE_COL_UNIQUE_ID = "unique_id";
   public static final String MMA_OBJ_RESTORE_COL_TYPE = "type";
@@ -106,7 +152,7 @@ public class Constants {
     temp.put(MMA_OBJ_RESTORE_COL_TYPE, VARCHAR_255);            // type
     temp.put(MMA_OBJ_RESTORE_COL_DB_NAME, VARCHAR_255);         // db_name
     temp.put(MMA_OBJ_RESTORE_COL_OBJECT_NAME, VARCHAR_255);     // object_name
-    temp.put(MMA_OBJ_RESTORE_COL_JOB_CONFIG, TEXT);    // job_config
+    temp.put(MMA_OBJ_RESTORE_COL_JOB_CONFIG, TEXT);    // job_config, same as MMA_TBL_META
     temp.put(MMA_OBJ_RESTORE_COL_STATUS, VARCHAR_255);          // status
     temp.put(MMA_OBJ_RESTORE_COL_ATTEMPT_TIMES, INT);           // attempt_times
     temp.put(MMA_OBJ_RESTORE_COL_LAST_MODIFIED_TIME, BIGINT);   // last_modified_time
@@ -116,11 +162,63 @@ public class Constants {
   public static final long MMA_OBJ_RESTORE_INIT_LAST_MODIFIED_TIMESTAMP = -1;
 
   /**
-   * Schema: MMA_PT_META_DB_[db], table: MMA_PT_META_TBL_[tbl]
+   * Schema: default, table: MMA_COUNTER. Number of partitions of a table in MMA_PT_META in each
+   * status, updated in the same transaction as the partitions.
+   */
+  public static final String MMA_COUNTER_TBL_NAME = "MMA_COUNTER";
+  public static final String MMA_COUNTER_COL_TABLE_ID = "table_id";
+  public static final String MMA_COUNTER_COL_STATUS = "status";
+  public static final String MMA_COUNTER_COL_COUNT = "cnt";
+  public static final Map<String, String> MMA_COUNTER_COL_TO_TYPE;
+  static {
+    Map<String, String> temp = new LinkedHashMap<>();
+    temp.put(MMA_COUNTER_COL_TABLE_ID, BIGINT);
+    temp.put(MMA_COUNTER_COL_STATUS, VARCHAR_255);
+    temp.put(MMA_COUNTER_COL_COUNT, BIGINT);
+    MMA_COUNTER_COL_TO_TYPE = Collections.unmodifiableMap(temp);
+  }
+
+  /**
+   * Schema: default, table: MMA_CURSOR. Positions of MMA in external logs, e.g. the notification
+   * log of the Hive metastore
+   */
+  public static final String MMA_CURSOR_TBL_NAME = "MMA_CURSOR";
+  public static final String MMA_CURSOR_COL_NAME = "cursor_name";
+  public static final String MMA_CURSOR_COL_POSITION = "cursor_position";
+  public static final Map<String, String> MMA_CURSOR_COL_TO_TYPE;
+  static {
+    Map<String, String> temp = new LinkedHashMap<>();
+    temp.put(MMA_CURSOR_COL_NAME, VARCHAR_255);
+    temp.put(MMA_CURSOR_COL_POSITION, BIGINT);
+    MMA_CURSOR_COL_TO_TYPE = Collections.unmodifiableMap(temp);
+  }
+  /**
+   * Id of the last consumed event in the Hive metastore notification log
+   */
+  public static final String MMA_CURSOR_HMS_NOTIFICATION = "hms_notification";
+
+  /**
+   * Schema: default, table: MMA_TBL_ID
+   */
+  public static final String MMA_TBL_ID_TBL_NAME = "MMA_TBL_ID";
+  public static final String MMA_TBL_ID_COL_TABLE_ID = "table_id";
+  public static final String MMA_TBL_ID_COL_DB_NAME = "db_name";
+  public static final String MMA_TBL_ID_COL_TBL_NAME = "table_name";
+
+  /**
+   * Legacy layout of partition meta, schema: MMA_PT_META_DB_[db], table: MMA_PT_META_TBL_[tbl].
+   * Only used to migrate existing meta DBs to MMA_PT_META.
    */
   public static final String MMA_PT_META_SCHEMA_NAME_FMT = "MMA_PT_META_DB_%s";
   public static final String MMA_PT_META_SCHEMA_NAME_PREFIX = "MMA_PT_META_DB_";
   public static final String MMA_PT_META_TBL_NAME_FMT = "MMA_PT_META_TBL_%s";
+
+  /**
+   * Schema: default, table: MMA_PT_META
+   */
+  public static final String MMA_PT_META_TBL_NAME = "MMA_PT_META";
+  public static final String MMA_PT_META_IDX_TABLE_ID_STATUS = "MMA_PT_META_IDX_TABLE_ID_STATUS";
+  public static final String MMA_PT_META_COL_TABLE_ID = "table_id";
   public static final String MMA_PT_META_COL_PT_VALS = "pt_vals";
   public static final String MMA_PT_META_COL_STATUS = "status";
   public static final String MMA_PT_META_COL_ATTEMPT_TIMES = "attempt_times";
@@ -128,9 +226,10 @@ public class Constants {
   public static final Map<String, String> MMA_PT_META_COL_TO_TYPE;
   static {
     Map<String, String> temp = new LinkedHashMap<>();
-    // Since single partition column value is less than 128 bytes and the number of partition
-    // columns cannot exceeds 6, VARCHAR_768 is enough for column MMA_PT_META_COL_PT_VALS
-    temp.put(MMA_PT_META_COL_PT_VALS, VARCHAR_768);
+    temp.put(MMA_PT_META_COL_TABLE_ID, BIGINT);
+    // The primary key (table_id, pt_vals) must fit in the 3072 bytes key limit of InnoDB, which
+    // is 8 + 766 * 4 bytes in utf8mb4
+    temp.put(MMA_PT_META_COL_PT_VALS, VARCHAR_766);
     temp.put(MMA_PT_META_COL_STATUS, VARCHAR_255);
     temp.put(MMA_PT_META_COL_ATTEMPT_TIMES, INT);
     temp.put(MMA_PT_META_COL_LAST_MODIFIED_TIME, BIGINT);
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
+
+/**
+ * Generates order-independent, per-partition fingerprints of table content, which are used to
+ * verify data beyond record count. The aggregations only use functions supported by both Hive
+ * and MaxCompute, and depend only on the source column types, so both sides produce comparable
+ * fingerprints.
+ */
+public class FingerprintUtils {
+
+  /**
+   * Relative tolerance when comparing sums of floating point columns, since the order of
+   * summation is different on each side.
+   */
+  private static final double FLOATING_POINT_RELATIVE_TOLERANCE = 1e-9;
+
+  public static class Fingerprint {
+    private List<String> aggregations = new ArrayList<>();
+    private List<Boolean> approximate = new ArrayList<>();
+
+    private void add(String aggregation, boolean isApproximate) {
+      aggregations.add(aggregation);
+      approximate.add(isApproximate);
+    }
+
+    public List<String> getAggregations() {
+      return aggregations;
+    }
+
+    /**
+     * Compare fingerprint values from source and destination.
+     *
+     * @param source values of aggregations, in the same order as {@link #getAggregations()}
+     * @param dest values of aggregations, in the same order as {@link #getAggregations()}
+     * @return true if all values match
+     */
+    public boolean matches(List<String> source, List<String> dest) {
+      if (source == null || dest == null
+          || source.size() != aggregations.size() || dest.size() != aggregations.size()) {
+        return false;
+      }
+
+      for (int i = 0; i < aggregations.size(); i++) {
+        if (!valueMatches(source.get(i), dest.get(i), approximate.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Get the fingerprint of a table.
+   *
+   * @param tableMetaModel {@link MetaSource.TableMetaModel}
+   * @param maxColumns max number of columns included in the fingerprint, columns are sampled
+   *                   evenly when the table has more columns. Non-positive value means all
+   *                   columns.
+   * @param useOdpsColumnName whether to reference columns by their MaxCompute names
+   * @return Fingerprint of the table
+   */
+  public static Fingerprint getFingerprint(
+      MetaSource.TableMetaModel tableMetaModel,
+      int maxColumns,
+      boolean useOdpsColumnName) {
+    Fingerprint fingerprint = new Fingerprint();
+
+    for (MetaSource.ColumnMetaModel c : sampleColumns(tableMetaModel.columns, maxColumns)) {
+      String column = "`" + (useOdpsColumnName ? c.odpsColumnName : c.columnName) + "`";
+      String type = getBaseType(c.type);
+
+      // Non-null count, which also catches values that became null during conversion
+      fingerprint.add("COUNT(" + column + ")", false);
+      switch (type) {
+        case "tinyint":
+        case "smallint":
+        case "int":
+        case "bigint":
+        case "decimal":
+          fingerprint.add("SUM(" + column + ")", false);
+          fingerprint.add("MIN(" + column + ")", false);
+          fingerprint.add("MAX(" + column + ")", false);
+          break;
+        case "float":
+        case "double":
+          fingerprint.add("SUM(" + column + ")", true);
+          break;
+        case "string":
+        case "varchar":
+          fingerprint.add("SUM(LENGTH(" + column + "))", false);
+          break;
+        default:
+          // Other types are not formatted in the same way by Hive and MaxCompute
+          break;
+      }
+    }
+
+    return fingerprint;
+  }
+
+  static List<MetaSource.ColumnMetaModel> sampleColumns(
+      List<MetaSource.ColumnMetaModel> columns,
+      int maxColumns) {
+    if (maxColumns <= 0 || columns.size() <= maxColumns) {
+      return columns;
+    }
+
+    List<MetaSource.ColumnMetaModel> ret = new ArrayList<>(maxColumns);
+    for (int i = 0; i < maxColumns; i++) {
+      ret.add(columns.get((int) ((long) i * columns.size() / maxColumns)));
+    }
+    return ret;
+  }
+
+  private static String getBaseType(String type) {
+    String lowerCase = type.trim().toLowerCase();
+    int end = lowerCase.length();
+    for (int i = 0; i < lowerCase.length(); i++) {
+      char ch = lowerCase.charAt(i);
+      if (ch == '(' || ch == '<') {
+        end = i;
+        break;
+      }
+    }
+    return lowerCase.substring(0, end).trim();
+  }
+
+  /**
+   * Values are compared numerically, since Hive and MaxCompute format numbers differently, e.g.
+   * 1.0E10 and 10000000000, or 1.50 and 1.5
+   */
+  private static boolean valueMatches(String source, String dest, boolean approximate) {
+    if (Objects.equals(source, dest)) {
+      return true;
+    }
+    if (source == null || dest == null) {
+      return false;
+    }
+
+    try {
+      if (approximate) {
+        double s = parseDouble(source);
+        double d = parseDouble(dest);
+        if (Double.isNaN(s) || Double.isNaN(d)) {
+          return Double.isNaN(s) && Double.isNaN(d);
+        }
+        if (Double.isInfinite(s) || Double.isInfinite(d)) {
+          return s == d;
+        }
+        return Math.abs(s - d)
+            <= FLOATING_POINT_RELATIVE_TOLERANCE * Math.max(Math.abs(s), Math.abs(d));
+      }
+      return new BigDecimal(source.trim()).compareTo(new BigDecimal(dest.trim())) == 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Parse a floating point value, including special values in the formats of Hive (NaN,
+   * Infinity) and MaxCompute (nan, inf)
+   */
+  private static double parseDouble(String value) {
+    String trimmed = value.trim();
+    switch (trimmed.toLowerCase()) {
+      case "nan":
+        return Double.NaN;
+      case "inf":
+      case "+inf":
+      case "infinity":
+      case "+infinity":
+        return Double.POSITIVE_INFINITY;
+      case "-inf":
+      case "-infinity":
+        return Double.NEGATIVE_INFINITY;
+      default:
+        return Double.parseDouble(trimmed);
+    }
+  }
+}
@@ -20,13 +20,32 @@
 package com.aliyun.odps.datacarrier.taskscheduler;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
 
 public class HiveSqlUtils {
 
   public static String getUdtfSql(MetaSource.TableMetaModel tableMetaModel) {
+    return getUdtfSql(tableMetaModel, null, null);
+  }
+
+  /**
+   * Get udtf sql that only migrates records in files whose names are in the range
+   * [fileNameLowerBound, fileNameUpperBound), the bounds are compared with INPUT__FILE__NAME.
+   *
+   * @param tableMetaModel     Table to migrate
+   * @param fileNameLowerBound Inclusive lower bound of file names, or null if unbounded
+   * @param fileNameUpperBound Exclusive upper bound of file names, or null if unbounded
+   * @return Udtf sql
+   */
+  public static String getUdtfSql(MetaSource.TableMetaModel tableMetaModel,
+                                  String fileNameLowerBound,
+                                  String fileNameUpperBound) {
     StringBuilder sb = new StringBuilder();
 
     List<String> hiveColumnNames = new ArrayList<>();
@@ -60,12 +79,91 @@ public class HiveSqlUtils {
     String tableName = tableMetaModel.tableName;
     sb.append("FROM ")
         .append(databaseName).append(".`").append(tableName).append("`").append("\n");
-    String whereCondition = getWhereCondition(tableMetaModel);
+    String whereCondition =
+        getWhereCondition(tableMetaModel, fileNameLowerBound, fileNameUpperBound);
     sb.append(whereCondition);
     return sb.toString();
   }
 
+  /**
+   * Get udtf sql that migrates given non-partitioned tables by one Hive job. Each table is fed to
+   * its own udtf in a branch of UNION ALL.
+   *
+   * @param tableMetaModels Tables to migrate
+   * @return Udtf sql, which returns the number of records transferred by each udtf
+   */
+  public static String getBatchUdtfSql(Collection<MetaSource.TableMetaModel> tableMetaModels) {
+    StringBuilder sb = new StringBuilder("SELECT * FROM (\n");
+    Iterator<MetaSource.TableMetaModel> iterator = tableMetaModels.iterator();
+    while (iterator.hasNext()) {
+      sb.append(getUdtfSql(iterator.next()));
+      if (iterator.hasNext()) {
+        sb.append("UNION ALL\n");
+      }
+    }
+    sb.append(") t\n");
+    return sb.toString();
+  }
+
   public static String getVerifySql(MetaSource.TableMetaModel tableMetaModel) {
+    return getVerifySql(tableMetaModel, null);
+  }
+
+  /**
+   * Get verify sql of given non-partitioned tables. Each row of the result is the label of a
+   * table, followed by its record count, followed by the aggregations of its fingerprint as
+   * strings. Rows are padded with nulls, since branches of UNION ALL must have the same columns.
+   * Each side formats numbers in its own way, so the strings are compared numerically, see
+   * {@link FingerprintUtils.Fingerprint#matches(List, List)}.
+   *
+   * @param tableMetaModels Tables to verify, keyed by their labels
+   * @param fingerprints    Fingerprints of the tables keyed by their labels, or null if
+   *                        fingerprint verification is disabled
+   * @return Verify sql
+   */
+  public static String getBatchVerifySql(
+      Map<String, MetaSource.TableMetaModel> tableMetaModels,
+      Map<String, FingerprintUtils.Fingerprint> fingerprints) {
+    int numAggregations = 0;
+    if (fingerprints != null) {
+      for (FingerprintUtils.Fingerprint fingerprint : fingerprints.values()) {
+        numAggregations = Math.max(numAggregations, fingerprint.getAggregations().size());
+      }
+    }
+
+    StringBuilder sb = new StringBuilder("SELECT * FROM (\n");
+    Iterator<Map.Entry<String, MetaSource.TableMetaModel>> iterator =
+        tableMetaModels.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, MetaSource.TableMetaModel> entry = iterator.next();
+      List<String> aggregations = fingerprints == null
+          ? Collections.emptyList() : fingerprints.get(entry.getKey()).getAggregations();
+
+      sb.append("SELECT '").append(entry.getKey()).append("' AS mma_label, ");
+      sb.append("COUNT(1) AS mma_record_count");
+      for (int i = 0; i < numAggregations; i++) {
+        String aggregation = i < aggregations.size() ? aggregations.get(i) : "NULL";
+        sb.append(", CAST(").append(aggregation).append(" AS STRING) AS mma_fingerprint_")
+            .append(i);
+      }
+      sb.append(" FROM ")
+          .append(entry.getValue().databaseName)
+          .append(".`").append(entry.getValue().tableName).append("`\n");
+      if (iterator.hasNext()) {
+        sb.append("UNION ALL\n");
+      }
+    }
+    sb.append(") t\n");
+    return sb.toString();
+  }
+
+  /**
+   * Get verify sql, which returns the record count of each partition, followed by the
+   * aggregations of given fingerprint if it is not null.
+   */
+  public static String getVerifySql(
+      MetaSource.TableMetaModel tableMetaModel,
+      FingerprintUtils.Fingerprint fingerprint) {
     StringBuilder sb = new StringBuilder();
     sb.append("SELECT ");
 
@@ -77,7 +175,13 @@ public class HiveSqlUtils {
       }
     }
 
-    sb.append("COUNT(1) FROM\n");
+    sb.append("COUNT(1)");
+    if (fingerprint != null) {
+      for (String aggregation : fingerprint.getAggregations()) {
+        sb.append(", ").append(aggregation);
+      }
+    }
+    sb.append(" FROM\n");
     sb.append(tableMetaModel.databaseName)
         .append(".`").append(tableMetaModel.tableName).append("`\n");
 
@@ -110,30 +214,49 @@ public class HiveSqlUtils {
   }
 
   private static String getWhereCondition(MetaSource.TableMetaModel tableMetaModel) {
+    return getWhereCondition(tableMetaModel, null, null);
+  }
+
+  private static String getWhereCondition(MetaSource.TableMetaModel tableMetaModel,
+                                          String fileNameLowerBound,
+                                          String fileNameUpperBound) {
     if (tableMetaModel == null) {
       throw new IllegalArgumentException("'tableMetaModel' cannot be null");
     }
 
-    StringBuilder sb = new StringBuilder();
+    boolean hasFileNameCondition = fileNameLowerBound != null || fileNameUpperBound != null;
+    List<String> conditions = new ArrayList<>();
+
+    // Add partition conditions if this is a partitioned table
+    if (tableMetaModel.partitionColumns.size() != 0 && !tableMetaModel.partitions.isEmpty()) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < tableMetaModel.partitions.size(); i++) {
+        String entry = getWhereConditionEntry(tableMetaModel.partitionColumns,
+                                              tableMetaModel.partitions.get(i));
+        sb.append(entry);
 
-    // Return if this is not a partitioned table
-    if (tableMetaModel.partitionColumns.size() == 0 || tableMetaModel.partitions.isEmpty()) {
-      return sb.toString();
+        if (i != tableMetaModel.partitions.size() - 1) {
+          sb.append(" OR\n");
+        }
+      }
+      conditions.add(hasFileNameCondition ? "(" + sb.toString() + ")" : sb.toString());
     }
 
-    sb.append("WHERE\n");
-    for (int i = 0; i < tableMetaModel.partitions.size(); i++) {
-      String entry = getWhereConditionEntry(tableMetaModel.partitionColumns,
-                                            tableMetaModel.partitions.get(i));
-      sb.append(entry);
+    if (fileNameLowerBound != null) {
+      conditions.add("INPUT__FILE__NAME >= '" + escapeStringLiteral(fileNameLowerBound) + "'");
+    }
+    if (fileNameUpperBound != null) {
+      conditions.add("INPUT__FILE__NAME < '" + escapeStringLiteral(fileNameUpperBound) + "'");
+    }
 
-      if (i != tableMetaModel.partitions.size() - 1) {
-        sb.append(" OR\n");
-      }
+    if (conditions.isEmpty()) {
+      return "";
     }
+    return "WHERE\n" + String.join(" AND\n", conditions) + "\n";
+  }
 
-    sb.append("\n");
-    return sb.toString();
+  private static String escapeStringLiteral(String str) {
+    return str.replace("\\", "\\\\").replace("'", "\\'");
   }
 
   private static String getWhereConditionEntry(List<MetaSource.ColumnMetaModel> partitionColumns,
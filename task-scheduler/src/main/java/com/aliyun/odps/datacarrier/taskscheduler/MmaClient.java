@@ -20,6 +20,7 @@
 package com.aliyun.odps.datacarrier.taskscheduler;
 
 import java.util.List;
+import java.util.Map;
 
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
 
@@ -43,4 +44,6 @@ public interface MmaClient {
       String db,
       String tbl)
       throws MmaException;
+
+  Map<MmaMetaManager.MigrationStatus, Integer> getMigrationJobCounts() throws MmaException;
 }
@@ -19,8 +19,10 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler;
 
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -28,11 +30,13 @@ import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.DatabaseExportConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.DatabaseMigrationConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.ObjectExportConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.ServiceMigrationConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.CachingMetaSource;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSourceFactory;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
-import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImpl;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerFactory;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.OdpsMetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.task.MigrationPlanner;
 import com.aliyun.odps.utils.StringUtils;
 import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.logging.log4j.LogManager;
@@ -51,9 +55,15 @@ public class MmaClientDbImpl implements MmaClient {
   private MmaMetaManager mmaMetaManager;
 
   public MmaClientDbImpl() throws MetaException, MmaException {
+    // The kv store is opened exclusively by the server, and updates of the server are not
+    // visible to another process until committed
+    String dbType = MmaServerConfig.getInstance().getMetaDBConfig().getDbType();
+    if (MmaConfig.MetaDBConfig.DB_TYPE_KV.equals(dbType)) {
+      throw MmaExceptionFactory.getMetaDbTypeNotSupportedByClientException(dbType);
+    }
     metaSource = MetaSourceFactory.getMetaSource();
     dataSource = MmaServerConfig.getInstance().getDataSource();
-    mmaMetaManager = new MmaMetaManagerDbImpl(metaSource, false);
+    mmaMetaManager = MmaMetaManagerFactory.getMmaMetaManager(metaSource, false);
   }
 
   @Override
@@ -78,13 +88,17 @@ public class MmaClientDbImpl implements MmaClient {
         return;
       }
 
+      List<MmaConfig.TableMigrationConfig> tableMigrationConfigs = new LinkedList<>();
       for (String database : databases) {
-        createDatabaseMigrationJob(database,
-                                   serviceMigrationConfig.getDestProjectName(),
-                                   null,
-                                   globalAdditionalTableConfig);
+        tableMigrationConfigs.addAll(
+            getDatabaseMigrationJobs(database,
+                                     serviceMigrationConfig.getDestProjectName(),
+                                     null,
+                                     globalAdditionalTableConfig));
       }
+      submitMigrationJobs(tableMigrationConfigs);
     } else if (mmaMigrationConfig.getDatabaseMigrationConfigs() != null) {
+      List<MmaConfig.TableMigrationConfig> tableMigrationConfigs = new LinkedList<>();
       for (DatabaseMigrationConfig databaseMigrationConfig :
           mmaMigrationConfig.getDatabaseMigrationConfigs()) {
         String database = databaseMigrationConfig.getSourceDatabaseName();
@@ -101,11 +115,13 @@ public class MmaClientDbImpl implements MmaClient {
           databaseAdditionalTableConfig = globalAdditionalTableConfig;
         }
 
-        createDatabaseMigrationJob(database,
-                                   databaseMigrationConfig.getDestProjectName(),
-                                   databaseMigrationConfig.getDestProjectStorage(),
-                                   databaseAdditionalTableConfig);
+        tableMigrationConfigs.addAll(
+            getDatabaseMigrationJobs(database,
+                                     databaseMigrationConfig.getDestProjectName(),
+                                     databaseMigrationConfig.getDestProjectStorage(),
+                                     databaseAdditionalTableConfig));
       }
+      submitMigrationJobs(tableMigrationConfigs);
     } else if (mmaMigrationConfig.getObjectExportConfigs() != null) {
       for(ObjectExportConfig objectExportConfig : mmaMigrationConfig.getObjectExportConfigs()) {
         if (objectExportConfig.getAdditionalTableConfig() == null) {
@@ -200,11 +216,12 @@ public class MmaClientDbImpl implements MmaClient {
     return true;
   }
 
-  private void createDatabaseMigrationJob(
+  private List<MmaConfig.TableMigrationConfig> getDatabaseMigrationJobs(
       String database,
       String project,
       String storage,
-      MmaConfig.AdditionalTableConfig databaseAdditionalTableConfig) throws MmaException {
+      MmaConfig.AdditionalTableConfig databaseAdditionalTableConfig) {
+    List<MmaConfig.TableMigrationConfig> ret = new LinkedList<>();
     List<String> tables;
     try {
       if (storage != null) {
@@ -214,18 +231,22 @@ public class MmaClientDbImpl implements MmaClient {
               + " to " + storage + ", which is managed by " + dataSource;
           System.err.println(ERROR_INDICATOR + msg);
           LOG.error(msg);
-          return;
+          return ret;
         }
-        OdpsMetaSource odpsMetaSource = (OdpsMetaSource)metaSource;
+        OdpsMetaSource odpsMetaSource = getOdpsMetaSource();
         tables = odpsMetaSource.listManagedTables(database);
+        odpsMetaSource.prefetchTables(database, tables);
       } else {
         tables = metaSource.listTables(database);
+        if (DataSource.ODPS.equals(dataSource)) {
+          getOdpsMetaSource().prefetchTables(database, tables);
+        }
       }
     } catch (Exception e) {
       String msg = "Failed to create migration jobs for database:" + database;
       System.err.println(ERROR_INDICATOR + msg);
       LOG.error(msg, e);
-      return;
+      return ret;
     }
 
     for (String table : tables) {
@@ -242,10 +263,36 @@ public class MmaClientDbImpl implements MmaClient {
               storage,
               null,
               databaseAdditionalTableConfig);
+      ret.add(tableMigrationConfig);
+    }
+    return ret;
+  }
 
-      mmaMetaManager.addMigrationJob(tableMigrationConfig);
-      LOG.info("Job submitted, migrate {}.{} to {}.{}", database, table, project, destTableName);
+  /**
+   * Submit jobs in the planned order, so that the most expensive tables are started first. The
+   * cost of every table is estimated before any job is submitted, since the order is global.
+   * Jobs are then submitted one by one, reusing the metadata fetched by the planner.
+   */
+  private void submitMigrationJobs(List<MmaConfig.TableMigrationConfig> tableMigrationConfigs)
+      throws MmaException {
+    MigrationPlanner.Plan plan = new MigrationPlanner(metaSource).plan(tableMigrationConfigs);
+    for (MigrationPlanner.PlannedJob job : plan.getJobs()) {
+      MmaConfig.TableMigrationConfig config = job.getConfig();
+      mmaMetaManager.addMigrationJob(config);
+      LOG.info("Job submitted, migrate {}.{} to {}.{}, estimated cost: {}s",
+               config.getSourceDataBaseName(),
+               config.getSourceTableName(),
+               config.getDestProjectName(),
+               config.getDestTableName(),
+               job.getCostSeconds());
     }
+
+    long makespanSeconds = plan.getMakespanSeconds();
+    String msg = String.format(
+        "Submitted %d jobs, estimated time to finish: %dh %dm",
+        plan.getJobs().size(), makespanSeconds / 3600, makespanSeconds % 3600 / 60);
+    System.err.println(msg);
+    LOG.info(msg);
   }
 
   private void createDatabaseExportJob(DatabaseExportConfig databaseExportConfig) throws MmaException {
@@ -256,51 +303,37 @@ public class MmaClientDbImpl implements MmaClient {
       LOG.error(msg);
       return;
     }
-    OdpsMetaSource odpsMetaSource = (OdpsMetaSource)metaSource;
     String taskName = databaseExportConfig.getTaskName();
     MmaConfig.AdditionalTableConfig additionalTableConfig = databaseExportConfig.getAdditionalTableConfig();
-    for(MmaConfig.ObjectType type : databaseExportConfig.getExportTypes()) {
-      switch (type) {
-        case TABLE: {
-          List<String> tables = odpsMetaSource.listTables(database);
-          Set<String> views = new HashSet<>(odpsMetaSource.listViews(database));
-          for (String tableName : tables) {
-            if (views.contains(tableName) || tableName.startsWith(Constants.MMA_TEMPORARY_TABLE_PREFIX)) {
-              continue;
-            }
-            mmaMetaManager.addBackupJob(
-                new ObjectExportConfig(database, tableName, type, taskName, additionalTableConfig));
-          }
-          break;
-        }
-        case VIEW: {
-          List<String> views = odpsMetaSource.listViews(database);
-          for (String viewName : views) {
-            mmaMetaManager.addBackupJob(
-                new ObjectExportConfig(database, viewName, type, taskName, additionalTableConfig));
-          }
-          break;
-        }
-        case RESOURCE: {
-          List<String> resources = odpsMetaSource.listResources(database);
-          for (String resourceName : resources) {
-            mmaMetaManager.addBackupJob(
-                new ObjectExportConfig(database, resourceName, type, taskName, additionalTableConfig));
-          }
-          break;
-        }
-        case FUNCTION: {
-          List<String> functions = odpsMetaSource.listFunctions(database);
-          for (String functionName : functions) {
-            mmaMetaManager.addBackupJob(
-                new ObjectExportConfig(database, functionName, type, taskName, additionalTableConfig));
-          }
-          break;
-        }
-        default:
-          LOG.error("Unsupported type {} when export database {}", type, database);
+
+    // Enumerate all requested types in one pass
+    List<OdpsMetaSource.ObjectDescriptor> objects;
+    try {
+      Set<MmaConfig.ObjectType> types = EnumSet.noneOf(MmaConfig.ObjectType.class);
+      types.addAll(databaseExportConfig.getExportTypes());
+      objects = getOdpsMetaSource().scanProject(database, types);
+    } catch (Exception e) {
+      String msg = "Failed to create backup jobs for database:" + database;
+      System.err.println(ERROR_INDICATOR + msg);
+      LOG.error(msg, e);
+      return;
+    }
+
+    for (OdpsMetaSource.ObjectDescriptor object : objects) {
+      if (MmaConfig.ObjectType.TABLE.equals(object.type)
+          && object.name.startsWith(Constants.MMA_TEMPORARY_TABLE_PREFIX)) {
+        continue;
       }
+      mmaMetaManager.addBackupJob(
+          new ObjectExportConfig(database, object.name, object.type, taskName, additionalTableConfig));
+    }
+  }
+
+  private OdpsMetaSource getOdpsMetaSource() {
+    if (metaSource instanceof CachingMetaSource) {
+      return (OdpsMetaSource) ((CachingMetaSource) metaSource).getMetaSource();
     }
+    return (OdpsMetaSource) metaSource;
   }
 
   @Override
@@ -346,4 +379,13 @@ public class MmaClientDbImpl implements MmaClient {
 
     return progress;
   }
+
+  @Override
+  public Map<MmaMetaManager.MigrationStatus, Integer> getMigrationJobCounts()
+      throws MmaException {
+    Map<MmaMetaManager.MigrationStatus, Integer> counts = mmaMetaManager.getCounts();
+    LOG.info("Get migration job counts: {}", counts);
+
+    return counts;
+  }
 }
@@ -159,14 +159,18 @@ public class MmaClientMain {
     while (true) {
       List<MmaConfig.JobConfig> runningJobs;
       try {
-        runningJobs = client.listJobs(MmaMetaManager.MigrationStatus.RUNNING);
-        runningJobs.addAll(client.listJobs(MmaMetaManager.MigrationStatus.PENDING));
-
-        if (runningJobs.isEmpty()) {
+        // Jobs are listed only when there are active ones
+        Map<MmaMetaManager.MigrationStatus, Integer> counts = client.getMigrationJobCounts();
+        int numActiveJobs = counts.getOrDefault(MmaMetaManager.MigrationStatus.RUNNING, 0)
+                            + counts.getOrDefault(MmaMetaManager.MigrationStatus.PENDING, 0);
+        if (numActiveJobs == 0) {
           System.err.println("\nAll migration jobs terminated");
           return 0;
         }
 
+        runningJobs = client.listJobs(MmaMetaManager.MigrationStatus.RUNNING);
+        runningJobs.addAll(client.listJobs(MmaMetaManager.MigrationStatus.PENDING));
+
         Map<String, MmaMetaManager.MigrationProgress> tableToProgress = new HashMap<>();
         for (MmaConfig.JobConfig config : runningJobs) {
           if (MmaConfig.JobType.MIGRATION.equals(config.getJobType())) {
@@ -179,6 +179,26 @@ public class MmaConfig {
     private List<String> krbSystemProperties;
     private Map<String, String> globalSettings;
     private SQLSettingConfig sourceTableSettings;
+    /**
+     * Re-migrate modified tables and partitions automatically, by consuming the notification
+     * log of the HMS
+     */
+    private Boolean incrementalSyncEnabled;
+    /**
+     * Non-partitioned tables no larger than this are migrated in batches, each batch by one Hive
+     * job. Batching is disabled if not set.
+     */
+    private Long smallTableSizeInMb;
+    /**
+     * Max number of tables in a batch
+     */
+    private Integer smallTableBatchSize;
+    /**
+     * Max number of Hive jobs that migrate one non-partitioned table or partition concurrently,
+     * each of them reads a range of its files. Only tables and partitions larger than the
+     * partition group split size are split. Splitting is disabled if not set.
+     */
+    private Integer maxFileRangeSplits;
 
     public HiveConfig(String jdbcConnectionUrl,
                       String user,
@@ -236,6 +256,33 @@ public class MmaConfig {
       return krbSystemProperties;
     }
 
+    public boolean isIncrementalSyncEnabled() {
+      return Boolean.TRUE.equals(incrementalSyncEnabled);
+    }
+
+    public boolean isSmallTableBatchingEnabled() {
+      return smallTableSizeInMb != null && smallTableSizeInMb > 0;
+    }
+
+    public long getSmallTableSizeInBytes() {
+      return smallTableSizeInMb == null ? 0L : smallTableSizeInMb * 1024 * 1024;
+    }
+
+    public int getSmallTableBatchSize() {
+      if (smallTableBatchSize == null || smallTableBatchSize <= 0) {
+        return Constants.DEFAULT_SMALL_TABLE_BATCH_SIZE;
+      }
+      return smallTableBatchSize;
+    }
+
+    public boolean isFileRangeSplittingEnabled() {
+      return maxFileRangeSplits != null && maxFileRangeSplits > 1;
+    }
+
+    public int getMaxFileRangeSplits() {
+      return isFileRangeSplittingEnabled() ? maxFileRangeSplits : 1;
+    }
+
     public SQLSettingConfig getSourceTableSettings() {
       if (sourceTableSettings == null) {
         sourceTableSettings = new SQLSettingConfig();
@@ -259,6 +306,10 @@ public class MmaConfig {
           + ", krbSystemProperties="
           + Objects.toString(krbSystemProperties, "null")
           + ", sourceTableSettings=" + Objects.toString(sourceTableSettings, "null")
+          + ", incrementalSyncEnabled=" + isIncrementalSyncEnabled()
+          + ", smallTableSizeInMb=" + Objects.toString(smallTableSizeInMb, "null")
+          + ", smallTableBatchSize=" + getSmallTableBatchSize()
+          + ", maxFileRangeSplits=" + Objects.toString(maxFileRangeSplits, "null")
           + '}';
     }
   }
@@ -357,11 +408,19 @@ public class MmaConfig {
   }
 
   public static class MetaDBConfig implements Config {
+    /**
+     * Meta DB type of the embedded key-value store. Unlike H2 and MySQL, it is not accessed
+     * through JDBC, and only 'storePath' is required. The store is opened exclusively by MMA
+     * server, so MMA client refuses to work with it
+     */
+    public static final String DB_TYPE_KV = "kv";
+
     private String dbType;
     private String jdbcUrl;
     private String user;
     private String password;
     private int maxPoolSize;
+    private String storePath;
 
     public MetaDBConfig(String dbType,
                         String jdbcUrl,
@@ -375,6 +434,11 @@ public class MmaConfig {
       this.maxPoolSize = maxPoolSize;
     }
 
+    public MetaDBConfig(String dbType, String storePath) {
+      this.dbType = dbType.toLowerCase();
+      this.storePath = storePath;
+    }
+
     public String getDbType() {
       return dbType;
     }
@@ -404,8 +468,15 @@ public class MmaConfig {
       return maxPoolSize;
     }
 
+    public String getStorePath() {
+      return storePath;
+    }
+
     @Override
     public boolean validate() {
+      if (DB_TYPE_KV.equals(dbType)) {
+        return !StringUtils.isNullOrEmpty(storePath);
+      }
       if (StringUtils.isNullOrEmpty(user)) {
         user = System.getenv("META_DB_USER");
       }
@@ -890,6 +961,13 @@ public class MmaConfig {
       this.retryTimesLimit = retryTimesLimit;
     }
 
+    public AdditionalTableConfig(int partitionGroupSize,
+                                 int retryTimesLimit,
+                                 int partitionGroupSplitSizeInGb) {
+      this(partitionGroupSize, retryTimesLimit);
+      this.partitionGroupSplitSizeInGb = partitionGroupSplitSizeInGb;
+    }
+
     public int getPartitionGroupSize() {
       return partitionGroupSize;
     }
@@ -179,6 +179,15 @@ public class MmaConfigUtils {
 
     Properties properties = new Properties();
     properties.load(new FileReader(metaDbConfigPath.toFile()));
+    String dbType = properties.getProperty("db_type", "");
+    if (MetaDBConfig.DB_TYPE_KV.equalsIgnoreCase(dbType)) {
+      String storePath = properties.getProperty("store_path", "");
+      if (StringUtils.isNullOrEmpty(storePath)) {
+        throw new IllegalArgumentException("Invalid meta db store path");
+      }
+      return new MetaDBConfig(dbType, storePath);
+    }
+
     String userPropertyValue = properties.getProperty("user", "");
     if (StringUtils.isNullOrEmpty(userPropertyValue)) {
       userPropertyValue = System.getenv("META_DB_USER");
@@ -190,7 +199,7 @@ public class MmaConfigUtils {
     if (StringUtils.isNullOrEmpty(userPropertyValue) || StringUtils.isNullOrEmpty(passwordPropertyValue)) {
       throw new IllegalArgumentException("Invalid meta db user and password");
     }
-    return new MetaDBConfig(properties.getProperty("db_type"),
+    return new MetaDBConfig(dbType,
                             properties.getProperty("jdbc_connection_url"),
                             userPropertyValue,
                             passwordPropertyValue,
@@ -104,5 +104,14 @@ public class MmaExceptionFactory {
                       db, tbl, partitionValues);
     return new MmaException(errorMsg);
   }
+
+  public static MmaException getMetaDbTypeNotSupportedByClientException(String dbType) {
+    String errorMsg = String.format(
+        "Meta DB type '%s' is not supported by MMA client, since the store is opened "
+            + "exclusively by MMA server. Use 'h2' or 'mysql' to submit and manage jobs with "
+            + "MMA client",
+        dbType);
+    return new MmaException(errorMsg);
+  }
   //TODO: partition not found exception
 }
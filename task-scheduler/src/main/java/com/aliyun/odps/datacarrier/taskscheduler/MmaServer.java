@@ -19,6 +19,7 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler;
 
+import java.nio.file.Paths;
 import java.util.Map;
 
 import org.apache.hadoop.hive.metastore.api.MetaException;
@@ -27,10 +28,12 @@ import org.apache.logging.log4j.Logger;
 
 import com.aliyun.odps.datacarrier.taskscheduler.event.MmaEventManager;
 import com.aliyun.odps.datacarrier.taskscheduler.event.MmaSummaryEvent;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.HmsNotificationConsumer;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.JournaledMmaMetaManager;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSourceFactory;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
-import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImpl;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerFactory;
 import com.aliyun.odps.datacarrier.taskscheduler.task.TaskProgress;
 import com.aliyun.odps.datacarrier.taskscheduler.task.TaskProvider;
 import com.aliyun.odps.datacarrier.taskscheduler.ui.MmaUI;
@@ -48,9 +51,13 @@ public class MmaServer {
   private MmaUI ui;
 
   private SummaryReportingThread summaryReportingThread;
+  private HmsNotificationConsumer hmsNotificationConsumer;
 
   public MmaServer() throws MetaException, MmaException {
-    mmaMetaManager = new MmaMetaManagerDbImpl(MetaSourceFactory.getMetaSource(), true);
+    // Status updates of tasks are applied in the background, see JournaledMmaMetaManager
+    mmaMetaManager = new JournaledMmaMetaManager(
+        MmaMetaManagerFactory.getMmaMetaManager(MetaSourceFactory.getMetaSource(), true),
+        Paths.get(System.getenv("MMA_HOME"), Constants.STATUS_JOURNAL_FILE_NAME));
 
     TaskProvider taskProvider = new TaskProvider(mmaMetaManager);
     taskScheduler = new TaskScheduler(taskProvider);
@@ -58,6 +65,14 @@ public class MmaServer {
     summaryReportingThread = new SummaryReportingThread();
     summaryReportingThread.start();
 
+    MmaServerConfig mmaServerConfig = MmaServerConfig.getInstance();
+    if (DataSource.Hive.equals(mmaServerConfig.getDataSource())
+        && mmaServerConfig.getHiveConfig().isIncrementalSyncEnabled()) {
+      hmsNotificationConsumer = new HmsNotificationConsumer(
+          MetaSourceFactory.getHiveMetaSource(), mmaMetaManager);
+      hmsNotificationConsumer.start();
+    }
+
     boolean uiEnabled = Boolean.parseBoolean(MmaServerConfig.getInstance().getUIConfig().get(MmaServerConfig.MMA_UI_ENABLED));
     if (uiEnabled) {
       // Start Mma UI
@@ -69,7 +84,7 @@ public class MmaServer {
           MmaServerConfig.getInstance().getUIConfig().get(MmaServerConfig.MMA_UI_MAX_THREADS));
       int minThreads = Integer.valueOf(
           MmaServerConfig.getInstance().getUIConfig().get(MmaServerConfig.MMA_UI_MIN_THREADS));
-      ui = new MmaUI("", taskScheduler);
+      ui = new MmaUI("", taskScheduler, mmaMetaManager);
       ui.bind(host, port, maxThreads, minThreads);
     } else {
       LOG.info("MMA UI disabled");
@@ -87,6 +102,14 @@ public class MmaServer {
     } catch (InterruptedException ignore) {
     }
 
+    if (hmsNotificationConsumer != null) {
+      hmsNotificationConsumer.shutdown();
+      try {
+        hmsNotificationConsumer.join();
+      } catch (InterruptedException ignore) {
+      }
+    }
+
     taskScheduler.shutdown();
 
     try {
@@ -112,18 +135,11 @@ public class MmaServer {
       LOG.info("SummaryReportingThread starts");
       while (keepRunning) {
         try {
-          int numPendingJobs = mmaMetaManager
-              .listMigrationJobs(MigrationStatus.PENDING, -1)
-              .size();
-          int numRunningJobs = mmaMetaManager
-              .listMigrationJobs(MigrationStatus.RUNNING, -1)
-              .size();
-          int numFailedJobs = mmaMetaManager
-              .listMigrationJobs(MigrationStatus.FAILED, -1)
-              .size();
-          int numSucceededJobs = mmaMetaManager
-              .listMigrationJobs(MigrationStatus.SUCCEEDED, -1)
-              .size();
+          Map<MigrationStatus, Integer> counts = mmaMetaManager.getCounts();
+          int numPendingJobs = counts.getOrDefault(MigrationStatus.PENDING, 0);
+          int numRunningJobs = counts.getOrDefault(MigrationStatus.RUNNING, 0);
+          int numFailedJobs = counts.getOrDefault(MigrationStatus.FAILED, 0);
+          int numSucceededJobs = counts.getOrDefault(MigrationStatus.SUCCEEDED, 0);
 
           Map<String, TaskProgress> taskToProgress = taskScheduler.summary();
           MmaSummaryEvent e = new MmaSummaryEvent(
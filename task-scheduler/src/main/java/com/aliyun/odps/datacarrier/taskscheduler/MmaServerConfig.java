@@ -45,6 +45,28 @@ public class MmaServerConfig {
   public static final String MMA_UI_MIN_THREADS = "MMA_UI_MIN_THREADS";
   private static final String DEFAULT_MMA_UI_MIN_THREADS = "10";
 
+  private static final Map<String, String> DEFAULT_VERIFICATION_CONFIG;
+  /**
+   * COUNT compares record count of each partition, FINGERPRINT compares content fingerprints
+   * in addition, see {@link FingerprintUtils}
+   */
+  public static final String MMA_VERIFICATION_MODE = "MMA_VERIFICATION_MODE";
+  public static final String MMA_VERIFICATION_MODE_COUNT = "COUNT";
+  public static final String MMA_VERIFICATION_MODE_FINGERPRINT = "FINGERPRINT";
+  /**
+   * Max number of columns included in the fingerprint, 0 means all columns
+   */
+  public static final String MMA_VERIFICATION_FINGERPRINT_MAX_COLUMNS =
+      "MMA_VERIFICATION_FINGERPRINT_MAX_COLUMNS";
+  private static final String DEFAULT_MMA_VERIFICATION_FINGERPRINT_MAX_COLUMNS = "0";
+
+  private static final Map<String, String> DEFAULT_SCHEDULER_CONFIG;
+  /**
+   * Max number of tasks of claimed tables materialized at the same time, which also bounds the
+   * number of tables claimed at once
+   */
+  public static final String MMA_TASK_WINDOW_SIZE = "MMA_TASK_WINDOW_SIZE";
+
   static {
     DEFAULT_UI_CONFIG = new HashMap<>();
     DEFAULT_UI_CONFIG.put(MMA_UI_ENABLED, "true");
@@ -52,6 +74,15 @@ public class MmaServerConfig {
     DEFAULT_UI_CONFIG.put(MMA_UI_PORT, DEFAULT_MMA_UI_PORT_VALUE);
     DEFAULT_UI_CONFIG.put(MMA_UI_MAX_THREADS, DEFAULT_MMA_UI_MAX_THREADS);
     DEFAULT_UI_CONFIG.put(MMA_UI_MIN_THREADS, DEFAULT_MMA_UI_MIN_THREADS);
+
+    DEFAULT_VERIFICATION_CONFIG = new HashMap<>();
+    DEFAULT_VERIFICATION_CONFIG.put(MMA_VERIFICATION_MODE, MMA_VERIFICATION_MODE_COUNT);
+    DEFAULT_VERIFICATION_CONFIG.put(MMA_VERIFICATION_FINGERPRINT_MAX_COLUMNS,
+                                    DEFAULT_MMA_VERIFICATION_FINGERPRINT_MAX_COLUMNS);
+
+    DEFAULT_SCHEDULER_CONFIG = new HashMap<>();
+    DEFAULT_SCHEDULER_CONFIG.put(
+        MMA_TASK_WINDOW_SIZE, String.valueOf(Constants.DEFAULT_TASK_WINDOW_SIZE));
   }
 
   private static MmaServerConfig instance;
@@ -65,6 +96,8 @@ public class MmaServerConfig {
   private Map<String, String> resourceConfig;
   private Map<String, String> uiConfig;
   private Map<String, String> hdfsConfig;
+  private Map<String, String> verificationConfig;
+  private Map<String, String> schedulerConfig;
 
   MmaServerConfig(DataSource dataSource,
                   MmaConfig.OssConfig ossConfig,
@@ -132,6 +165,30 @@ public class MmaServerConfig {
     return temp;
   }
 
+  public Map<String, String> getVerificationConfig() {
+    if (verificationConfig == null) {
+      return DEFAULT_VERIFICATION_CONFIG;
+    }
+
+    // Merge with default verification config, make sure necessary configurations exist
+    Map<String, String> temp = new HashMap<>(DEFAULT_VERIFICATION_CONFIG);
+    temp.putAll(verificationConfig);
+
+    return temp;
+  }
+
+  public Map<String, String> getSchedulerConfig() {
+    if (schedulerConfig == null) {
+      return DEFAULT_SCHEDULER_CONFIG;
+    }
+
+    // Merge with default scheduler config, make sure necessary configurations exist
+    Map<String, String> temp = new HashMap<>(DEFAULT_SCHEDULER_CONFIG);
+    temp.putAll(schedulerConfig);
+
+    return temp;
+  }
+
   public String toJson() {
     return GsonUtils.getFullConfigGson().toJson(this);
   }
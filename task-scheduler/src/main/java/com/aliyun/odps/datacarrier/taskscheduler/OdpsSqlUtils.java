@@ -26,6 +26,8 @@ import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -257,6 +259,16 @@ public class OdpsSqlUtils {
   }
 
   public static String getVerifySql(MetaSource.TableMetaModel tableMetaModel, boolean verifyDestinationTable) {
+    return getVerifySql(tableMetaModel, verifyDestinationTable, null);
+  }
+
+  /**
+   * Get verify sql, which returns the record count of each partition, followed by the
+   * aggregations of given fingerprint if it is not null.
+   */
+  public static String getVerifySql(MetaSource.TableMetaModel tableMetaModel,
+                                    boolean verifyDestinationTable,
+                                    FingerprintUtils.Fingerprint fingerprint) {
     StringBuilder sb = new StringBuilder();
     sb.append("SELECT ");
 
@@ -268,7 +280,13 @@ public class OdpsSqlUtils {
       }
     }
 
-    sb.append("COUNT(1) FROM\n");
+    sb.append("COUNT(1)");
+    if (fingerprint != null) {
+      for (String aggregation : fingerprint.getAggregations()) {
+        sb.append(", ").append(aggregation);
+      }
+    }
+    sb.append(" FROM\n");
     String database;
     String table;
     if (verifyDestinationTable) {
@@ -312,6 +330,46 @@ public class OdpsSqlUtils {
     return sb.toString();
   }
 
+  /**
+   * Get verify sql of given non-partitioned destination tables, see
+   * {@link HiveSqlUtils#getBatchVerifySql(Map, Map)}.
+   */
+  public static String getBatchVerifySql(
+      Map<String, MetaSource.TableMetaModel> tableMetaModels,
+      Map<String, FingerprintUtils.Fingerprint> fingerprints) {
+    int numAggregations = 0;
+    if (fingerprints != null) {
+      for (FingerprintUtils.Fingerprint fingerprint : fingerprints.values()) {
+        numAggregations = Math.max(numAggregations, fingerprint.getAggregations().size());
+      }
+    }
+
+    StringBuilder sb = new StringBuilder("SELECT * FROM (\n");
+    Iterator<Map.Entry<String, MetaSource.TableMetaModel>> iterator =
+        tableMetaModels.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, MetaSource.TableMetaModel> entry = iterator.next();
+      List<String> aggregations = fingerprints == null
+          ? Collections.emptyList() : fingerprints.get(entry.getKey()).getAggregations();
+
+      sb.append("SELECT '").append(entry.getKey()).append("' AS mma_label, ");
+      sb.append("COUNT(1) AS mma_record_count");
+      for (int i = 0; i < numAggregations; i++) {
+        String aggregation = i < aggregations.size() ? aggregations.get(i) : "NULL";
+        sb.append(", CAST(").append(aggregation).append(" AS STRING) AS mma_fingerprint_")
+            .append(i);
+      }
+      sb.append(" FROM ")
+          .append(entry.getValue().odpsProjectName)
+          .append(".`").append(entry.getValue().odpsTableName).append("`\n");
+      if (iterator.hasNext()) {
+        sb.append("UNION ALL\n");
+      }
+    }
+    sb.append(") t;\n");
+    return sb.toString();
+  }
+
   public static String getDDLSql(MetaSource.TableMetaModel tableMetaModel) {
     return "SHOW CREATE TABLE " + tableMetaModel.databaseName
            + ".`" + tableMetaModel.tableName + "`;\n";
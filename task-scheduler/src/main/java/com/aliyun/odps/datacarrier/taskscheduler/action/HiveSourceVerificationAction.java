@@ -19,6 +19,7 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler.action;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,18 +31,31 @@ import org.apache.logging.log4j.Logger;
 import com.aliyun.odps.datacarrier.taskscheduler.HiveSqlUtils;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ResultConsumer;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
 
 public class HiveSourceVerificationAction extends HiveSqlAction {
 
   private static final Logger LOG = LogManager.getLogger(HiveSourceVerificationAction.class);
 
+  private final Map<List<String>, Long> result = new HashMap<>();
+  private final Map<List<String>, List<String>> fingerprints = new HashMap<>();
+
   public HiveSourceVerificationAction(String id) {
     super(id);
   }
 
   @Override
   String getSql() {
-    return HiveSqlUtils.getVerifySql(actionExecutionContext.getTableMetaModel());
+    if (actionExecutionContext.isBatch()) {
+      Map<String, TableMetaModel> tableMetaModels =
+          actionExecutionContext.getBatchTableMetaModels();
+      return HiveSqlUtils.getBatchVerifySql(
+          tableMetaModels, VerificationAction.getBatchFingerprints(tableMetaModels, false));
+    }
+    TableMetaModel tableMetaModel = actionExecutionContext.getTableMetaModel();
+    return HiveSqlUtils.getVerifySql(
+        tableMetaModel, VerificationAction.getFingerprint(tableMetaModel, false));
   }
 
   @Override
@@ -53,18 +67,25 @@ public class HiveSourceVerificationAction extends HiveSqlAction {
         .getVerifySettings();
   }
 
+  @Override
+  ResultConsumer getResultConsumer() {
+    return VerificationAction.getVerificationResultConsumer(
+        VerificationAction.getKeyColumnCount(actionExecutionContext), result, fingerprints);
+  }
+
   @Override
   public void afterExecution() throws MmaException {
     try {
-      List<List<String>> rows = future.get();
+      future.get();
 
       if (Level.DEBUG.equals(LOG.getLevel())) {
-        for (List<String> row : rows) {
-          LOG.debug("Source verification result: {}", row);
+        for (Map.Entry<List<String>, Long> entry : result.entrySet()) {
+          LOG.debug("Source verification result: {}, {}", entry.getKey(), entry.getValue());
         }
       }
 
-      actionExecutionContext.setSourceVerificationResult(rows);
+      actionExecutionContext.setSourceVerificationResult(result);
+      actionExecutionContext.setSourceFingerprints(fingerprints);
       setProgress(ActionProgress.SUCCEEDED);
     } catch (Exception e) {
       LOG.error("Action failed, actionId: {}, stack trace: {}",
@@ -29,6 +29,7 @@ import org.apache.logging.log4j.Logger;
 
 import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
 import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ActionExecutorFactory;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ResultConsumer;
 import com.aliyun.odps.datacarrier.taskscheduler.action.info.HiveSqlActionInfo;
 
 abstract class HiveSqlAction extends AbstractAction {
@@ -48,7 +49,7 @@ abstract class HiveSqlAction extends AbstractAction {
 
     this.future = ActionExecutorFactory
         .getHiveSqlExecutor()
-        .execute(getSql(), getSettings(), id, (HiveSqlActionInfo) actionInfo);
+        .execute(getSql(), getSettings(), id, (HiveSqlActionInfo) actionInfo, getResultConsumer());
   }
 
   @Override
@@ -87,4 +88,12 @@ abstract class HiveSqlAction extends AbstractAction {
   abstract String getSql();
 
   abstract Map<String, String> getSettings();
+
+  /**
+   * Returns a consumer that handles the result row by row, or null if the result should be
+   * returned as a whole by the future.
+   */
+  ResultConsumer getResultConsumer() {
+    return null;
+  }
 }
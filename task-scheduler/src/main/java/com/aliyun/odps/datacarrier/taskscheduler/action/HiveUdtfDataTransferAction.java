@@ -19,6 +19,7 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler.action;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -37,6 +38,47 @@ public class HiveUdtfDataTransferAction extends HiveSqlAction {
 
   private static final Logger LOG = LogManager.getLogger(HiveUdtfDataTransferAction.class);
 
+  /**
+   * A range of files of a non-partitioned table or a partition, in the order of their names. The
+   * bounds are compared with INPUT__FILE__NAME, so Hive still reads the other files but drops
+   * their records, while the upload to MaxCompute, which usually dominates, is split.
+   */
+  public static class FileRange {
+    private final String lowerBound;
+    private final String upperBound;
+    private final Long size;
+
+    /**
+     * @param lowerBound Inclusive lower bound of file names, or null if unbounded
+     * @param upperBound Exclusive upper bound of file names, or null if unbounded
+     * @param size       Total size of files in the range, or null if not available
+     */
+    public FileRange(String lowerBound, String upperBound, Long size) {
+      this.lowerBound = lowerBound;
+      this.upperBound = upperBound;
+      this.size = size;
+    }
+
+    public String getLowerBound() {
+      return lowerBound;
+    }
+
+    public String getUpperBound() {
+      return upperBound;
+    }
+
+    public Long getSize() {
+      return size;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + lowerBound + ", " + upperBound + ")";
+    }
+  }
+
+  private FileRange fileRange;
+
   public HiveUdtfDataTransferAction(String id) {
     super(id);
     // Init default resourceMap
@@ -44,19 +86,43 @@ public class HiveUdtfDataTransferAction extends HiveSqlAction {
     resourceMap.put(Resource.HIVE_DATA_TRANSFER_WORKER_RESOURCE, 5L);
   }
 
+  /**
+   * Transfer records in given range of files only, other actions of the same task transfer the
+   * rest of the files to the same destination.
+   */
+  public HiveUdtfDataTransferAction(String id, FileRange fileRange) {
+    this(id);
+    this.fileRange = fileRange;
+  }
+
   @Override
   String getSql() {
+    if (actionExecutionContext.isBatch()) {
+      return HiveSqlUtils.getBatchUdtfSql(
+          actionExecutionContext.getBatchTableMetaModels().values());
+    }
+    if (fileRange != null) {
+      return HiveSqlUtils.getUdtfSql(actionExecutionContext.getTableMetaModel(),
+                                     fileRange.getLowerBound(),
+                                     fileRange.getUpperBound());
+    }
     return HiveSqlUtils.getUdtfSql(actionExecutionContext.getTableMetaModel());
   }
 
   @Override
   public boolean tryAllocateResource() {
-    TableMetaModel tableMetaModel = actionExecutionContext.getTableMetaModel();
-    boolean isPartitioned = !tableMetaModel.partitionColumns.isEmpty();
-
     // Get total data size
     Long totalDataSize = null;
-    if (isPartitioned) {
+    if (fileRange != null && fileRange.getSize() != null) {
+      totalDataSize = fileRange.getSize();
+    } else if (actionExecutionContext.isBatch()) {
+      Collection<TableMetaModel> tableMetaModels =
+          actionExecutionContext.getBatchTableMetaModels().values();
+      if (tableMetaModels.stream().allMatch(t -> t.size != null)) {
+        totalDataSize = tableMetaModels.stream().mapToLong(t -> t.size).sum();
+      }
+    } else if (!actionExecutionContext.getTableMetaModel().partitionColumns.isEmpty()) {
+      TableMetaModel tableMetaModel = actionExecutionContext.getTableMetaModel();
       if (tableMetaModel.partitions.stream().allMatch(p -> p.size != null)) {
         Optional<Long> optionalTotalDataSize = tableMetaModel.partitions
             .stream()
@@ -72,7 +138,7 @@ public class HiveUdtfDataTransferAction extends HiveSqlAction {
         }
       }
     } else {
-      totalDataSize = tableMetaModel.size;
+      totalDataSize = actionExecutionContext.getTableMetaModel().size;
     }
 
     // Update resource map based on total data size
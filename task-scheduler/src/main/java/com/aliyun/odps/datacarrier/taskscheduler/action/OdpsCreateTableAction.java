@@ -23,16 +23,30 @@ import java.util.Map;
 
 import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.OdpsSqlUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
 
 public class OdpsCreateTableAction extends OdpsSqlAction {
 
+  private TableMetaModel tableMetaModel;
+
   public OdpsCreateTableAction(String id) {
     super(id);
   }
 
+  /**
+   * Create given table instead of the table of the task, used by batch tasks
+   */
+  public OdpsCreateTableAction(String id, TableMetaModel tableMetaModel) {
+    this(id);
+    this.tableMetaModel = tableMetaModel;
+  }
+
   @Override
   String getSql() {
-    return OdpsSqlUtils.getCreateTableStatement(actionExecutionContext.getTableMetaModel());
+    if (tableMetaModel == null) {
+      tableMetaModel = actionExecutionContext.getTableMetaModel();
+    }
+    return OdpsSqlUtils.getCreateTableStatement(tableMetaModel);
   }
 
   @Override
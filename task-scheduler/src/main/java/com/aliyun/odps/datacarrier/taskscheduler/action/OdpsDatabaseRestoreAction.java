@@ -24,6 +24,7 @@ import com.aliyun.odps.datacarrier.taskscheduler.GsonUtils;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
 import com.aliyun.odps.datacarrier.taskscheduler.OssUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaCondition;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.RestoreTaskInfo;
@@ -31,6 +32,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -88,7 +90,7 @@ public class OdpsDatabaseRestoreAction extends OdpsNoSqlAction {
         restoreConfig.getOriginDatabaseName(), type, GsonUtils.toJson(allOssObjects));
 
     List<RestoreTaskInfo> recoveredObjects = mmaMetaManager.listRestoreJobs(
-        getWhereConditionStatement(ALL_STATUS), -1);
+        getWhereCondition(ALL_STATUS), -1);
 
     // include SUCCEEDED and FAILED
     Set<String> finishedObjects = new HashSet<>();
@@ -129,9 +131,7 @@ public class OdpsDatabaseRestoreAction extends OdpsNoSqlAction {
           attemptTimes,
           System.currentTimeMillis()));
     }
-    for (RestoreTaskInfo taskInfo : allTasks) {
-      mmaMetaManager.mergeJobInfoIntoRestoreDB(taskInfo);
-    }
+    mmaMetaManager.mergeJobInfosIntoRestoreDB(allTasks);
   }
 
   private void waitForTasksFinish() throws MmaException {
@@ -141,11 +141,11 @@ public class OdpsDatabaseRestoreAction extends OdpsNoSqlAction {
     try {
       while (true) {
         List<RestoreTaskInfo> activeTasks = mmaMetaManager.listRestoreJobs(
-            getWhereConditionStatement(ACTIVE_STATUS),
+            getWhereCondition(ACTIVE_STATUS),
             limit);
 
         List<RestoreTaskInfo> failedTasks = mmaMetaManager.listRestoreJobs(
-            getWhereConditionStatement(MigrationStatus.FAILED),
+            getWhereCondition(MigrationStatus.FAILED),
             limit);
 
         if (activeTasks.isEmpty()) {
@@ -188,29 +188,17 @@ public class OdpsDatabaseRestoreAction extends OdpsNoSqlAction {
     return GsonUtils.toJson(objectRestoreConfig);
   }
 
-  private String getWhereConditionStatement(MigrationStatus status) {
-    StringBuilder builder = new StringBuilder("WHERE ");
-    builder.append(String.format("%s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, restoreConfig.getTaskName()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_DB_NAME, restoreConfig.getOriginDatabaseName()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_TYPE, type.toString()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_STATUS, status));
-    return builder.toString();
+  private MetaCondition getWhereCondition(MigrationStatus status) {
+    return getWhereCondition(Collections.singletonList(status));
   }
 
-  private String getWhereConditionStatement(List<MigrationStatus> status) {
-    if (status.size() == 1) {
-      return getWhereConditionStatement(status.get(0));
-    }
-    StringBuilder builder = new StringBuilder("WHERE ");
-    builder.append(String.format("%s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, restoreConfig.getTaskName()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_DB_NAME, restoreConfig.getOriginDatabaseName()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_TYPE, type.toString()));
-    builder.append(String.format("AND %s in (", Constants.MMA_OBJ_RESTORE_COL_STATUS));
-    for (int index = 0; index < status.size(); index++) {
-      builder.append(String.format("%s'%s'", index == 0 ? "" : ",", status.get(index)));
-    }
-    builder.append(")\n");
-    return builder.toString();
+  private MetaCondition getWhereCondition(List<MigrationStatus> status) {
+    return new MetaCondition()
+        .eq(Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, restoreConfig.getTaskName())
+        .eq(Constants.MMA_OBJ_RESTORE_COL_DB_NAME, restoreConfig.getOriginDatabaseName())
+        .eq(Constants.MMA_OBJ_RESTORE_COL_TYPE, type.toString())
+        .in(Constants.MMA_OBJ_RESTORE_COL_STATUS,
+            status.stream().map(MigrationStatus::name).collect(Collectors.toList()));
   }
 
   private List<String> getOssObjectList() throws MmaException {
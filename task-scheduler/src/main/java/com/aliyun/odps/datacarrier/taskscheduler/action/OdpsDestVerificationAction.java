@@ -19,6 +19,7 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler.action;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,18 +31,31 @@ import org.apache.logging.log4j.Logger;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.OdpsSqlUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ResultConsumer;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
 
 public class OdpsDestVerificationAction extends OdpsSqlAction {
 
   private static final Logger LOG = LogManager.getLogger(OdpsDestVerificationAction.class);
 
+  private final Map<List<String>, Long> result = new HashMap<>();
+  private final Map<List<String>, List<String>> fingerprints = new HashMap<>();
+
   public OdpsDestVerificationAction(String id) {
     super(id);
   }
 
   @Override
   String getSql() {
-    return OdpsSqlUtils.getVerifySql(actionExecutionContext.getTableMetaModel());
+    if (actionExecutionContext.isBatch()) {
+      Map<String, TableMetaModel> tableMetaModels =
+          actionExecutionContext.getBatchTableMetaModels();
+      return OdpsSqlUtils.getBatchVerifySql(
+          tableMetaModels, VerificationAction.getBatchFingerprints(tableMetaModels, true));
+    }
+    TableMetaModel tableMetaModel = actionExecutionContext.getTableMetaModel();
+    return OdpsSqlUtils.getVerifySql(
+        tableMetaModel, true, VerificationAction.getFingerprint(tableMetaModel, true));
   }
 
   @Override
@@ -54,18 +68,25 @@ public class OdpsDestVerificationAction extends OdpsSqlAction {
         .getVerifySettings();
   }
 
+  @Override
+  ResultConsumer getResultConsumer() {
+    return VerificationAction.getVerificationResultConsumer(
+        VerificationAction.getKeyColumnCount(actionExecutionContext), result, fingerprints);
+  }
+
   @Override
   public void afterExecution() throws MmaException {
     try {
-      List<List<String>> rows = (List<List<String>>) future.get();
+      future.get();
 
       if (Level.DEBUG.equals(LOG.getLevel())) {
-        for (List<String> row : rows) {
-          LOG.debug("Dest verification result: {}", row);
+        for (Map.Entry<List<String>, Long> entry : result.entrySet()) {
+          LOG.debug("Dest verification result: {}, {}", entry.getKey(), entry.getValue());
         }
       }
 
-      actionExecutionContext.setDestVerificationResult(rows);
+      actionExecutionContext.setDestVerificationResult(result);
+      actionExecutionContext.setDestFingerprints(fingerprints);
       setProgress(ActionProgress.SUCCEEDED);
     } catch (Exception e) {
       LOG.error("Action failed, actionId: {}, stack trace: {}",
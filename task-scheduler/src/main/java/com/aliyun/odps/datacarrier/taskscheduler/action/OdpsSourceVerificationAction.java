@@ -19,6 +19,7 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler.action;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,18 +30,25 @@ import org.apache.logging.log4j.Logger;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.OdpsSqlUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ResultConsumer;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
 
 public class OdpsSourceVerificationAction extends OdpsSqlAction {
 
   private static final Logger LOG = LogManager.getLogger(HiveSourceVerificationAction.class);
 
+  private final Map<List<String>, Long> result = new HashMap<>();
+  private final Map<List<String>, List<String>> fingerprints = new HashMap<>();
+
   public OdpsSourceVerificationAction(String id) {
     super(id);
   }
 
   @Override
   String getSql() {
-    return OdpsSqlUtils.getVerifySql(actionExecutionContext.getTableMetaModel(), false);
+    TableMetaModel tableMetaModel = actionExecutionContext.getTableMetaModel();
+    return OdpsSqlUtils.getVerifySql(
+        tableMetaModel, false, VerificationAction.getFingerprint(tableMetaModel, false));
   }
 
   @Override
@@ -52,11 +60,18 @@ public class OdpsSourceVerificationAction extends OdpsSqlAction {
         .getVerifySettings();
   }
 
+  @Override
+  ResultConsumer getResultConsumer() {
+    return VerificationAction.getVerificationResultConsumer(
+        actionExecutionContext.getTableMetaModel().partitionColumns.size(), result, fingerprints);
+  }
+
   @Override
   public void afterExecution() throws MmaException {
     try {
-      List<List<String>> rows = (List<List<String>>) future.get();
-      actionExecutionContext.setSourceVerificationResult(rows);
+      future.get();
+      actionExecutionContext.setSourceVerificationResult(result);
+      actionExecutionContext.setSourceFingerprints(fingerprints);
       setProgress(ActionProgress.SUCCEEDED);
     } catch (Exception e) {
       LOG.error("Action failed, actionId: {}, stack trace: {}",
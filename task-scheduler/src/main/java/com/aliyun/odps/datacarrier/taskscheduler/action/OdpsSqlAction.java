@@ -23,6 +23,7 @@ import java.util.Map;
 
 import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
 import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ActionExecutorFactory;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ResultConsumer;
 import com.aliyun.odps.datacarrier.taskscheduler.action.info.OdpsSqlActionInfo;
 
 abstract class OdpsSqlAction extends AbstractAction {
@@ -38,7 +39,7 @@ abstract class OdpsSqlAction extends AbstractAction {
 
     this.future = ActionExecutorFactory
         .getOdpsExecutor()
-        .execute(getSql(), getSettings(), id, (OdpsSqlActionInfo) actionInfo);
+        .execute(getSql(), getSettings(), id, (OdpsSqlActionInfo) actionInfo, getResultConsumer());
   }
 
   @Override
@@ -48,4 +49,12 @@ abstract class OdpsSqlAction extends AbstractAction {
   abstract String getSql();
 
   abstract Map<String, String> getSettings();
+
+  /**
+   * Returns a consumer that handles the result row by row, or null if the result should be
+   * returned as a whole by the future.
+   */
+  ResultConsumer getResultConsumer() {
+    return null;
+  }
 }
@@ -19,16 +19,27 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler.action;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.aliyun.odps.datacarrier.taskscheduler.FingerprintUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ActionExecutorFactory;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.ResultConsumer;
 import com.aliyun.odps.datacarrier.taskscheduler.action.info.VerificationActionInfo;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
-import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.task.ActionExecutionContext;
 
 public class VerificationAction extends AbstractAction {
 
@@ -39,13 +50,96 @@ public class VerificationAction extends AbstractAction {
     actionInfo = new VerificationActionInfo();
   }
 
+  /**
+   * Returns a consumer that indexes the rows of a verification result by partition values. Each
+   * row is expected to be partition values, followed by a record count, followed by fingerprint
+   * values if fingerprint verification is enabled.
+   */
+  static ResultConsumer getVerificationResultConsumer(
+      int partitionColumnCount,
+      Map<List<String>, Long> result,
+      Map<List<String>, List<String>> fingerprints) {
+    return row -> {
+      List<String> partitionValues = partitionColumnCount == 0
+          ? Collections.emptyList()
+          : new ArrayList<>(row.subList(0, partitionColumnCount));
+      result.put(partitionValues, Long.valueOf(row.get(partitionColumnCount)));
+      if (row.size() > partitionColumnCount + 1) {
+        fingerprints.put(
+            partitionValues, new ArrayList<>(row.subList(partitionColumnCount + 1, row.size())));
+      }
+    };
+  }
+
+  /**
+   * Returns the fingerprint to verify, or null if fingerprint verification is disabled.
+   */
+  static FingerprintUtils.Fingerprint getFingerprint(
+      TableMetaModel tableMetaModel,
+      boolean useOdpsColumnName) {
+    Map<String, String> verificationConfig =
+        MmaServerConfig.getInstance().getVerificationConfig();
+    if (!MmaServerConfig.MMA_VERIFICATION_MODE_FINGERPRINT.equalsIgnoreCase(
+        verificationConfig.get(MmaServerConfig.MMA_VERIFICATION_MODE))) {
+      return null;
+    }
+
+    int maxColumns = Integer.parseInt(
+        verificationConfig.get(MmaServerConfig.MMA_VERIFICATION_FINGERPRINT_MAX_COLUMNS));
+    return FingerprintUtils.getFingerprint(tableMetaModel, maxColumns, useOdpsColumnName);
+  }
+
+  /**
+   * Returns fingerprints of tables in a batch keyed by their labels, or null if fingerprint
+   * verification is disabled.
+   */
+  static Map<String, FingerprintUtils.Fingerprint> getBatchFingerprints(
+      Map<String, TableMetaModel> tableMetaModels,
+      boolean useOdpsColumnName) {
+    Map<String, FingerprintUtils.Fingerprint> ret = new LinkedHashMap<>();
+    for (Map.Entry<String, TableMetaModel> entry : tableMetaModels.entrySet()) {
+      FingerprintUtils.Fingerprint fingerprint =
+          getFingerprint(entry.getValue(), useOdpsColumnName);
+      if (fingerprint == null) {
+        return null;
+      }
+      ret.put(entry.getKey(), fingerprint);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the number of leading columns in a verification result row that make up its key,
+   * which are the partition columns, or the label of the table for batch tasks.
+   */
+  static int getKeyColumnCount(ActionExecutionContext actionExecutionContext) {
+    if (actionExecutionContext.isBatch()) {
+      return 1;
+    }
+    return actionExecutionContext.getTableMetaModel().partitionColumns.size();
+  }
+
   @Override
   public void execute() throws MmaException {
     setProgress(ActionProgress.RUNNING);
 
-    List<List<String>> sourceVerificationResult =
+    // Comparing results of tables with lots of partitions could take a while, so the comparison
+    // is done in the verification executor instead of the scheduling thread
+    this.future = ActionExecutorFactory.getVerificationExecutor().execute(() -> {
+      verify();
+      return null;
+    });
+  }
+
+  private void verify() {
+    if (actionExecutionContext.isBatch()) {
+      verifyBatch();
+      return;
+    }
+
+    Map<List<String>, Long> sourceVerificationResult =
         actionExecutionContext.getSourceVerificationResult();
-    List<List<String>> destVerificationResult =
+    Map<List<String>, Long> destVerificationResult =
         actionExecutionContext.getDestVerificationResult();
     VerificationActionInfo actionInfo = (VerificationActionInfo) getActionInfo();
 
@@ -53,7 +147,12 @@ public class VerificationAction extends AbstractAction {
     int partitionColumnCount = actionExecutionContext.getTableMetaModel().partitionColumns.size();
     boolean isPartitioned = partitionColumnCount != 0;
     actionInfo.setIsPartitioned(isPartitioned);
-
+    FingerprintUtils.Fingerprint fingerprint =
+        getFingerprint(actionExecutionContext.getTableMetaModel(), false);
+    Map<List<String>, List<String>> sourceFingerprints =
+        actionExecutionContext.getSourceFingerprints();
+    Map<List<String>, List<String>> destFingerprints =
+        actionExecutionContext.getDestFingerprints();
 
     if (sourceVerificationResult == null || destVerificationResult == null) {
       LOG.error("ActionId: {}, source/dest verification results not found", id);
@@ -61,16 +160,20 @@ public class VerificationAction extends AbstractAction {
     } else {
       if (!isPartitioned) {
         assert sourceVerificationResult.size() == 1;
-        assert sourceVerificationResult.get(0).size() == 1;
         assert destVerificationResult.size() == 1;
-        assert sourceVerificationResult.get(0).size() == 1;
 
-        Long source = Long.valueOf(sourceVerificationResult.get(0).get(0));
-        Long dest = Long.valueOf(destVerificationResult.get(0).get(0));
-        passed = source.equals(dest);
+        List<String> key = Collections.emptyList();
+        Long source = sourceVerificationResult.get(key);
+        Long dest = destVerificationResult.get(key);
+        passed = source != null && source.equals(dest);
         if (!passed) {
           LOG.error("ActionId: {}, verification failed, source: {}, dest: {}",
                     id, source, dest);
+        } else if (fingerprint != null
+            && !fingerprint.matches(sourceFingerprints.get(key), destFingerprints.get(key))) {
+          passed = false;
+          LOG.error("ActionId: {}, fingerprint verification failed, source: {}, dest: {}",
+                    id, sourceFingerprints.get(key), destFingerprints.get(key));
         } else {
           LOG.info("ActionId: {}, verification succeeded, source: {}, dest: {}",
                    id, source, dest);
@@ -83,57 +186,129 @@ public class VerificationAction extends AbstractAction {
             actionExecutionContext.getTableMetaModel().partitions) {
 
           List<String> partitionValues = partitionMetaModel.partitionValues;
-          List<String> sourceRecordCount = sourceVerificationResult
-              .stream()
-              .filter(r -> partitionValues.equals(r.subList(0, partitionColumnCount)))
-              .map(r -> r.get(partitionColumnCount))
-              .collect(Collectors.toList());
-          List<String> destRecordCount = destVerificationResult
-              .stream()
-              .filter(r -> partitionValues.equals(r.subList(0, partitionColumnCount)))
-              .map(r -> r.get(partitionColumnCount))
-              .collect(Collectors.toList());
-
-          // When partition is empty, foundInSource and foundInDest are both false.
-          if (sourceRecordCount.isEmpty() && destRecordCount.isEmpty()) {
+          Long source = sourceVerificationResult.get(partitionValues);
+          Long dest = destVerificationResult.get(partitionValues);
+
+          // When partition is empty, source and dest are both null.
+          if (source == null && dest == null) {
             LOG.warn("ActionId: {}, ignored Empty partition: {}, ", id, partitionValues);
             succeededPartitions.add(partitionValues);
-          } else if (sourceRecordCount.isEmpty()) {
+          } else if (source == null) {
             LOG.warn("ActionId: {}, ignored unexpected partition: {}", id, partitionValues);
             succeededPartitions.add(partitionValues);
-          } else if (destRecordCount.isEmpty()) {
+          } else if (dest == null) {
             LOG.error("ActionId: {}, dest partition not found, partition: {}",
                       id, partitionValues);
             failedPartitions.add(partitionValues);
             passed = false;
+          } else if (!dest.equals(source)) {
+            LOG.error("ActionId: {}, verification failed, source: {}, dest: {}",
+                      id, source, dest);
+            passed = false;
+            failedPartitions.add(partitionValues);
+          } else if (fingerprint != null
+              && !fingerprint.matches(sourceFingerprints.get(partitionValues),
+                                      destFingerprints.get(partitionValues))) {
+            LOG.error("ActionId: {}, fingerprint verification failed, partition: {}, "
+                          + "source: {}, dest: {}",
+                      id,
+                      partitionValues,
+                      sourceFingerprints.get(partitionValues),
+                      destFingerprints.get(partitionValues));
+            passed = false;
+            failedPartitions.add(partitionValues);
           } else {
-            Long source = Long.valueOf(sourceRecordCount.get(0));
-            Long dest = Long.valueOf(destRecordCount.get(0));
-            if (!dest.equals(source)) {
-              LOG.error("ActionId: {}, verification failed, source: {}, dest: {}",
-                        id, source, dest);
-              passed = false;
-              failedPartitions.add(partitionValues);
-            } else {
-              LOG.info("ActionId: {}, verification succeeded, source: {}, dest: {}",
-                        id, source, dest);
-              succeededPartitions.add(partitionValues);
-            }
+            LOG.debug("ActionId: {}, verification succeeded, source: {}, dest: {}",
+                      id, source, dest);
+            succeededPartitions.add(partitionValues);
           }
         }
 
+        LOG.info("ActionId: {}, verification finished, succeeded: {}, failed: {}",
+                 id, succeededPartitions.size(), failedPartitions.size());
         actionInfo.setSucceededPartitions(succeededPartitions);
         actionInfo.setFailedPartitions(failedPartitions);
       }
     }
 
-    if (passed) {
-      actionInfo.setPassed(true);
-      setProgress(ActionProgress.SUCCEEDED);
-    } else {
+    actionInfo.setPassed(passed);
+  }
+
+  /**
+   * Verify each table of a batch. Tables are reported as succeeded or failed partitions, whose
+   * values are the labels of the tables.
+   */
+  private void verifyBatch() {
+    Map<List<String>, Long> sourceVerificationResult =
+        actionExecutionContext.getSourceVerificationResult();
+    Map<List<String>, Long> destVerificationResult =
+        actionExecutionContext.getDestVerificationResult();
+    Map<List<String>, List<String>> sourceFingerprints =
+        actionExecutionContext.getSourceFingerprints();
+    Map<List<String>, List<String>> destFingerprints =
+        actionExecutionContext.getDestFingerprints();
+    VerificationActionInfo actionInfo = (VerificationActionInfo) getActionInfo();
+    actionInfo.setIsPartitioned(true);
+
+    if (sourceVerificationResult == null || destVerificationResult == null) {
+      LOG.error("ActionId: {}, source/dest verification results not found", id);
       actionInfo.setPassed(false);
-      setProgress(ActionProgress.FAILED);
+      actionInfo.setSucceededPartitions(new LinkedList<>());
+      actionInfo.setFailedPartitions(getBatchKeys());
+      return;
     }
+
+    List<List<String>> succeededTables = new LinkedList<>();
+    List<List<String>> failedTables = new LinkedList<>();
+    for (Map.Entry<String, TableMetaModel> entry :
+        actionExecutionContext.getBatchTableMetaModels().entrySet()) {
+      List<String> key = Collections.singletonList(entry.getKey());
+      Long source = sourceVerificationResult.get(key);
+      Long dest = destVerificationResult.get(key);
+      FingerprintUtils.Fingerprint fingerprint = getFingerprint(entry.getValue(), false);
+
+      if (source == null || !source.equals(dest)) {
+        LOG.error("ActionId: {}, verification failed, table: {}, source: {}, dest: {}",
+                  id, entry.getKey(), source, dest);
+        failedTables.add(key);
+      } else if (fingerprint != null
+          && !fingerprint.matches(
+              truncate(sourceFingerprints.get(key), fingerprint.getAggregations().size()),
+              truncate(destFingerprints.get(key), fingerprint.getAggregations().size()))) {
+        LOG.error("ActionId: {}, fingerprint verification failed, table: {}, "
+                      + "source: {}, dest: {}",
+                  id, entry.getKey(), sourceFingerprints.get(key), destFingerprints.get(key));
+        failedTables.add(key);
+      } else {
+        LOG.debug("ActionId: {}, verification succeeded, table: {}, source: {}, dest: {}",
+                  id, entry.getKey(), source, dest);
+        succeededTables.add(key);
+      }
+    }
+
+    LOG.info("ActionId: {}, verification finished, succeeded: {}, failed: {}",
+             id, succeededTables.size(), failedTables.size());
+    actionInfo.setSucceededPartitions(succeededTables);
+    actionInfo.setFailedPartitions(failedTables);
+    actionInfo.setPassed(failedTables.isEmpty());
+  }
+
+  /**
+   * Remove the padding of fingerprint values of a batch
+   */
+  private static List<String> truncate(List<String> values, int size) {
+    if (values == null || values.size() < size) {
+      return values;
+    }
+    return values.subList(0, size);
+  }
+
+  private List<List<String>> getBatchKeys() {
+    return actionExecutionContext.getBatchTableMetaModels()
+        .keySet()
+        .stream()
+        .map(Collections::singletonList)
+        .collect(Collectors.toList());
   }
 
   @Override
@@ -142,12 +317,32 @@ public class VerificationAction extends AbstractAction {
   }
 
   @Override
-  public void afterExecution() {
-  }
+  public void afterExecution() throws MmaException {
+    try {
+      future.get();
+    } catch (Exception e) {
+      LOG.error("Action failed, actionId: {}, stack trace: {}",
+                id,
+                ExceptionUtils.getFullStackTrace(e));
+      VerificationActionInfo actionInfo = (VerificationActionInfo) getActionInfo();
+      actionInfo.setPassed(false);
+      actionInfo.setSucceededPartitions(new LinkedList<>());
+      if (actionExecutionContext.isBatch()) {
+        actionInfo.setFailedPartitions(getBatchKeys());
+      } else {
+        actionInfo.setFailedPartitions(
+            actionExecutionContext.getTableMetaModel().partitions
+                .stream()
+                .map(p -> p.partitionValues)
+                .collect(Collectors.toList()));
+      }
+    }
 
-  @Override
-  public boolean executionFinished() {
-    return true;
+    if (Boolean.TRUE.equals(((VerificationActionInfo) getActionInfo()).passed())) {
+      setProgress(ActionProgress.SUCCEEDED);
+    } else {
+      setProgress(ActionProgress.FAILED);
+    }
   }
 
   @Override
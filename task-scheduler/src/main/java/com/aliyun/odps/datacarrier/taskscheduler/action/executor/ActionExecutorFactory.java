@@ -26,6 +26,8 @@ public class ActionExecutorFactory {
   // execute both OdpsSqlAction and OdpsNoSqlAction
   private static OdpsExecutor odpsExecutor = null;
 
+  private static VerificationExecutor verificationExecutor = null;
+
   public static HiveSqlExecutor getHiveSqlExecutor() {
     if (hiveSqlExecutor == null) {
       hiveSqlExecutor = new HiveSqlExecutor();
@@ -42,6 +44,14 @@ public class ActionExecutorFactory {
     return odpsExecutor;
   }
 
+  public static VerificationExecutor getVerificationExecutor() {
+    if (verificationExecutor == null) {
+      verificationExecutor = new VerificationExecutor();
+    }
+
+    return verificationExecutor;
+  }
+
   public static void shutdown() {
     if (hiveSqlExecutor != null) {
       hiveSqlExecutor.shutdown();
@@ -50,5 +60,9 @@ public class ActionExecutorFactory {
     if (odpsExecutor != null) {
       odpsExecutor.shutdown();
     }
+
+    if (verificationExecutor != null) {
+      verificationExecutor.shutdown();
+    }
   }
 }
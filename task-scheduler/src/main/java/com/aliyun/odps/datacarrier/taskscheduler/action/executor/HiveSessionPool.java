@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.action.executor;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A pool of HiveServer2 sessions. Sessions are keyed by their settings profile, so that settings
+ * are only applied once, when the session is created.
+ */
+class HiveSessionPool {
+
+  private static final Logger LOG = LogManager.getLogger("ExecutorLogger");
+
+  private static final int DEFAULT_MAX_IDLE_SESSIONS_PER_PROFILE = 20;
+  private static final long DEFAULT_MAX_IDLE_TIME_MS = 10 * 60 * 1000;
+
+  static class HiveSession implements AutoCloseable {
+    private final String profile;
+    private final Connection connection;
+    private long lastReturnedTime;
+
+    private HiveSession(String profile, Connection connection) {
+      this.profile = profile;
+      this.connection = connection;
+    }
+
+    Connection getConnection() {
+      return connection;
+    }
+
+    @Override
+    public void close() {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        LOG.warn("Failed to close hive session", e);
+      }
+    }
+  }
+
+  private final String hiveJdbcUrl;
+  private final String user;
+  private final String password;
+  private final int maxIdleSessionsPerProfile;
+  private final long maxIdleTimeMs;
+
+  private final Map<String, Deque<HiveSession>> profileToIdleSessions = new HashMap<>();
+  private boolean closed = false;
+
+  HiveSessionPool(String hiveJdbcUrl, String user, String password) {
+    this(hiveJdbcUrl,
+         user,
+         password,
+         DEFAULT_MAX_IDLE_SESSIONS_PER_PROFILE,
+         DEFAULT_MAX_IDLE_TIME_MS);
+  }
+
+  HiveSessionPool(
+      String hiveJdbcUrl,
+      String user,
+      String password,
+      int maxIdleSessionsPerProfile,
+      long maxIdleTimeMs) {
+    this.hiveJdbcUrl = hiveJdbcUrl;
+    this.user = user;
+    this.password = password;
+    this.maxIdleSessionsPerProfile = maxIdleSessionsPerProfile;
+    this.maxIdleTimeMs = maxIdleTimeMs;
+  }
+
+  /**
+   * Borrow a session with given settings applied. Reuses an idle session with the same settings
+   * if there is one, else creates a new session.
+   */
+  HiveSession borrow(Map<String, String> settings) throws SQLException {
+    String profile = getProfile(settings);
+
+    synchronized (this) {
+      Deque<HiveSession> idleSessions = profileToIdleSessions.get(profile);
+      while (idleSessions != null && !idleSessions.isEmpty()) {
+        HiveSession session = idleSessions.pollLast();
+        if (!session.connection.isClosed()) {
+          return session;
+        }
+      }
+    }
+
+    Connection conn = DriverManager.getConnection(hiveJdbcUrl, user, password);
+    try (Statement stmt = conn.createStatement()) {
+      for (Entry<String, String> entry : settings.entrySet()) {
+        stmt.execute("SET " + entry.getKey() + "=" + entry.getValue());
+      }
+    } catch (SQLException e) {
+      conn.close();
+      throw e;
+    }
+    LOG.info("New hive session created, profile: {}", profile);
+
+    return new HiveSession(profile, conn);
+  }
+
+  /**
+   * Return a session that is still usable to the pool.
+   */
+  void giveBack(HiveSession session) {
+    synchronized (this) {
+      if (!closed) {
+        Deque<HiveSession> idleSessions =
+            profileToIdleSessions.computeIfAbsent(session.profile, k -> new ArrayDeque<>());
+        if (idleSessions.size() < maxIdleSessionsPerProfile) {
+          session.lastReturnedTime = System.currentTimeMillis();
+          idleSessions.addLast(session);
+          return;
+        }
+      }
+    }
+    session.close();
+  }
+
+  /**
+   * Close sessions that have been idle for too long.
+   */
+  void evictIdleSessions() {
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      for (Deque<HiveSession> idleSessions : profileToIdleSessions.values()) {
+        Iterator<HiveSession> iter = idleSessions.iterator();
+        while (iter.hasNext()) {
+          HiveSession session = iter.next();
+          if (now - session.lastReturnedTime > maxIdleTimeMs) {
+            iter.remove();
+            session.close();
+          }
+        }
+      }
+      profileToIdleSessions.values().removeIf(Deque::isEmpty);
+    }
+  }
+
+  synchronized int getNumIdleSessions() {
+    return profileToIdleSessions.values().stream().mapToInt(Deque::size).sum();
+  }
+
+  synchronized void close() {
+    closed = true;
+    for (Deque<HiveSession> idleSessions : profileToIdleSessions.values()) {
+      idleSessions.forEach(HiveSession::close);
+    }
+    profileToIdleSessions.clear();
+  }
+
+  private static String getProfile(Map<String, String> settings) {
+    // Sorted, so that the profile doesn't depend on the iteration order of given settings
+    return new TreeMap<>(settings).toString();
+  }
+}
@@ -19,115 +19,151 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler.action.executor;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hive.jdbc.HiveStatement;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.HiveSessionPool.HiveSession;
 import com.aliyun.odps.datacarrier.taskscheduler.action.info.HiveSqlActionInfo;
 import com.aliyun.odps.utils.StringUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class HiveSqlExecutor extends AbstractActionExecutor {
 
   private static final Logger LOG = LogManager.getLogger("ExecutorLogger");
 
+  private static final long LOG_FETCHING_INTERVAL_MS = 1000;
+  private static final long IDLE_SESSION_EVICTION_INTERVAL_MS = 60 * 1000;
+
+  private HiveSessionPool sessionPool = null;
+
+  // Shared by all running statements for fetching query logs and evicting idle sessions
+  private final ScheduledExecutorService scheduledExecutor;
+
   public HiveSqlExecutor() {
     try {
       Class.forName("org.apache.hive.jdbc.HiveDriver");
     } catch (ClassNotFoundException e) {
       throw new RuntimeException("Create HiveRunner failed", e);
     }
+
+    ThreadFactory factory = new ThreadFactoryBuilder()
+        .setNameFormat("HiveSqlExecutorScheduler-" + " #%d")
+        .setDaemon(true)
+        .build();
+    this.scheduledExecutor = Executors.newScheduledThreadPool(2, factory);
   }
 
   private static class HiveSqlCallable implements Callable<List<List<String>>> {
 
-    private String hiveJdbcUrl;
-    private String user;
-    private String password;
+    private HiveSessionPool sessionPool;
+    private ScheduledExecutorService scheduledExecutor;
     private String sql;
     // TODO: Map<String, String> could be better
     private Map<String, String> settings;
     private String actionId;
     private HiveSqlActionInfo hiveSqlActionInfo;
+    private ResultConsumer resultConsumer;
 
     HiveSqlCallable(
-        String hiveJdbcUrl,
-        String user,
-        String password,
+        HiveSessionPool sessionPool,
+        ScheduledExecutorService scheduledExecutor,
         String sql,
         Map<String, String> settings,
         String actionId,
-        HiveSqlActionInfo hiveSqlActionInfo) {
-      this.hiveJdbcUrl = Objects.requireNonNull(hiveJdbcUrl);
-      this.user = Objects.requireNonNull(user);
-      this.password = Objects.requireNonNull(password);
+        HiveSqlActionInfo hiveSqlActionInfo,
+        ResultConsumer resultConsumer) {
+      this.sessionPool = Objects.requireNonNull(sessionPool);
+      this.scheduledExecutor = Objects.requireNonNull(scheduledExecutor);
       this.sql = Objects.requireNonNull(sql);
       this.settings = Objects.requireNonNull(settings);
       this.actionId = Objects.requireNonNull(actionId);
       this.hiveSqlActionInfo = Objects.requireNonNull(hiveSqlActionInfo);
+      this.resultConsumer = resultConsumer;
     }
 
     @Override
     public List<List<String>> call() throws SQLException {
       LOG.info("ActionId: {}, executing sql: {}", actionId, sql);
 
-      try (Connection conn = DriverManager.getConnection(hiveJdbcUrl, user, password)) {
-        try (HiveStatement stmt = (HiveStatement) conn.createStatement()) {
-          settings.put("mapreduce.job.name", actionId);
-          for (Entry<String, String> entry : settings.entrySet()) {
-            stmt.execute("SET " + entry.getKey() + "=" + entry.getValue());
-          }
-
-          Runnable logging = () -> {
-            while (stmt.hasMoreLogs()) {
-              try {
-                for (String line : stmt.getQueryLog()) {
-                  parseLogAndSetExecutionInfo(line, actionId, hiveSqlActionInfo);
-                }
-              } catch (SQLException e) {
-                LOG.warn("ActionId: {}, fetching hive query log failed", actionId);
-                break;
-              }
+      // Settings are applied when the session is created, only the job name is set per action
+      HiveSession session = sessionPool.borrow(settings);
+      boolean reusable = false;
+      try (HiveStatement stmt = (HiveStatement) session.getConnection().createStatement()) {
+        stmt.execute("SET mapreduce.job.name=" + actionId);
+
+        ScheduledFuture<?> logging = scheduledExecutor.scheduleWithFixedDelay(
+            () -> fetchLogs(stmt),
+            LOG_FETCHING_INTERVAL_MS,
+            LOG_FETCHING_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
+
+        List<List<String>> ret = new LinkedList<>();
+        long resultSetSize = 0;
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+          ResultSetMetaData resultSetMetaData = rs.getMetaData();
+          int columnCount = resultSetMetaData.getColumnCount();
+          while (rs.next()) {
+            List<String> record = new ArrayList<>(columnCount);
+            for (int i = 1; i <= columnCount; i++) {
+              record.add(rs.getString(i));
             }
-            LOG.info("ActionId: {}, no more logs", actionId);
-          };
-          Thread loggingThread = new Thread(logging);
-          loggingThread.start();
-
-          List<List<String>> ret = new LinkedList<>();
-          try (ResultSet rs = stmt.executeQuery(sql)) {
-            ResultSetMetaData resultSetMetaData = rs.getMetaData();
-            while (rs.next()) {
-              List<String> record = new LinkedList<>();
-              for (int i = 1; i <= resultSetMetaData.getColumnCount(); i++) {
-                record.add(rs.getString(i));
-              }
-
-              LOG.debug("ActionId: {}, result: {}", actionId, record);
+
+            LOG.debug("ActionId: {}, result: {}", actionId, record);
+            if (resultConsumer != null) {
+              resultConsumer.consume(record);
+            } else {
               ret.add(record);
             }
+            resultSetSize += 1;
           }
-          LOG.info("ActionId: {}, result set size: {}", actionId, ret.size());
+        } finally {
+          logging.cancel(false);
+        }
+        LOG.info("ActionId: {}, result set size: {}", actionId, resultSetSize);
+
+        // Fetch the remaining logs
+        fetchLogs(stmt);
+        LOG.info("ActionId: {}, no more logs", actionId);
+
+        reusable = true;
+        return ret;
+      } finally {
+        if (reusable) {
+          sessionPool.giveBack(session);
+        } else {
+          session.close();
+        }
+      }
+    }
 
-          try {
-            loggingThread.join();
-          } catch (InterruptedException ignore) {
+    private void fetchLogs(HiveStatement stmt) {
+      synchronized (stmt) {
+        try {
+          if (stmt.hasMoreLogs()) {
+            for (String line : stmt.getQueryLog()) {
+              parseLogAndSetExecutionInfo(line, actionId, hiveSqlActionInfo);
+            }
           }
-
-          return ret;
+        } catch (SQLException e) {
+          LOG.warn("ActionId: {}, fetching hive query log failed", actionId);
         }
       }
     }
@@ -138,19 +174,56 @@ public class HiveSqlExecutor extends AbstractActionExecutor {
       Map<String, String> settings,
       String actionId,
       HiveSqlActionInfo hiveSqlActionInfo) {
-    // TODO: jdbc address, user, password should come with tableMigrationConfig
+    return execute(sql, settings, actionId, hiveSqlActionInfo, null);
+  }
+
+  /**
+   * Execute a hive sql. If a result consumer is given, the result is passed to the consumer row
+   * by row, and the returned future is completed with an empty list.
+   */
+  public Future<List<List<String>>> execute(
+      String sql,
+      Map<String, String> settings,
+      String actionId,
+      HiveSqlActionInfo hiveSqlActionInfo,
+      ResultConsumer resultConsumer) {
     HiveSqlCallable callable = new HiveSqlCallable(
-        MmaServerConfig.getInstance().getHiveConfig().getJdbcConnectionUrl(),
-        MmaServerConfig.getInstance().getHiveConfig().getUser(),
-        MmaServerConfig.getInstance().getHiveConfig().getPassword(),
+        getSessionPool(),
+        scheduledExecutor,
         sql,
         settings,
         actionId,
-        hiveSqlActionInfo);
+        hiveSqlActionInfo,
+        resultConsumer);
 
     return executor.submit(callable);
   }
 
+  private synchronized HiveSessionPool getSessionPool() {
+    if (sessionPool == null) {
+      // TODO: jdbc address, user, password should come with tableMigrationConfig
+      sessionPool = new HiveSessionPool(
+          MmaServerConfig.getInstance().getHiveConfig().getJdbcConnectionUrl(),
+          MmaServerConfig.getInstance().getHiveConfig().getUser(),
+          MmaServerConfig.getInstance().getHiveConfig().getPassword());
+      scheduledExecutor.scheduleWithFixedDelay(
+          sessionPool::evictIdleSessions,
+          IDLE_SESSION_EVICTION_INTERVAL_MS,
+          IDLE_SESSION_EVICTION_INTERVAL_MS,
+          TimeUnit.MILLISECONDS);
+    }
+    return sessionPool;
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    super.shutdown();
+    scheduledExecutor.shutdown();
+    if (sessionPool != null) {
+      sessionPool.close();
+    }
+  }
+
   private static void parseLogAndSetExecutionInfo(
       String log,
       String actionId,
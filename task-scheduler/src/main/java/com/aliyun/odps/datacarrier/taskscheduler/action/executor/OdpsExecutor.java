@@ -19,13 +19,19 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler.action.executor;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.aliyun.odps.datacarrier.taskscheduler.OdpsUtils;
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsNoSqlAction;
@@ -38,33 +44,41 @@ import com.aliyun.odps.OdpsException;
 import com.aliyun.odps.data.Record;
 import com.aliyun.odps.datacarrier.taskscheduler.action.info.OdpsSqlActionInfo;
 import com.aliyun.odps.task.SQLTask;
+import com.aliyun.odps.tunnel.InstanceTunnel;
+import com.aliyun.odps.tunnel.io.TunnelRecordReader;
 
 public class OdpsExecutor extends AbstractActionExecutor {
 
   private static final Logger LOG = LogManager.getLogger("ExecutorLogger");
 
-  private static class OdpsSqlCallable implements Callable<Object> {
+  private static class OdpsSqlCallable implements Callable<Instance> {
     private Odps odps;
     private String sql;
     private Map<String, String> settings;
     private String actionId;
     private OdpsSqlActionInfo odpsSqlActionInfo;
+    private ResultConsumer resultConsumer;
 
     OdpsSqlCallable(
         Odps odps,
         String sql,
         Map<String, String> settings,
         String actionId,
-        OdpsSqlActionInfo odpsSqlActionInfo) {
+        OdpsSqlActionInfo odpsSqlActionInfo,
+        ResultConsumer resultConsumer) {
       this.odps = odps;
       this.sql = Objects.requireNonNull(sql);
       this.settings = Objects.requireNonNull(settings);
       this.actionId = Objects.requireNonNull(actionId);
       this.odpsSqlActionInfo = Objects.requireNonNull(odpsSqlActionInfo);
+      this.resultConsumer = resultConsumer;
     }
 
+    /**
+     * Submit the sql. Returns the submitted instance, or null if there is nothing to submit.
+     */
     @Override
-    public Object call() throws Exception {
+    public Instance call() throws Exception {
       LOG.info("ActionId: {}, Executing sql: {}, settings {}", actionId, sql, settings);
 
       if (sql.isEmpty()) {
@@ -82,9 +96,18 @@ public class OdpsExecutor extends AbstractActionExecutor {
       } catch (OdpsException ignore) {
       }
 
-      i.waitForSuccess();
+      return i;
+    }
 
+    /**
+     * Get the result of a succeeded instance.
+     */
+    private Object getResult(Instance i) throws OdpsException, IOException {
       if (OdpsSqlActionInfo.ResultType.COLUMNS.equals(odpsSqlActionInfo.getResultType())) {
+        if (resultConsumer != null) {
+          downloadResult(i);
+          return new LinkedList<>();
+        }
         return parseResult(i);
       }
       List<Object> ret = new LinkedList<>();
@@ -94,6 +117,29 @@ public class OdpsExecutor extends AbstractActionExecutor {
       return ret;
     }
 
+    /**
+     * Read the result through instance tunnel, which is not limited in size like
+     * {@link SQLTask#getResult(Instance)}, and pass it to the result consumer row by row.
+     */
+    private void downloadResult(Instance instance) throws OdpsException, IOException {
+      InstanceTunnel tunnel = new InstanceTunnel(odps);
+      InstanceTunnel.DownloadSession session =
+          tunnel.createDownloadSession(instance.getProject(), instance.getId());
+      long recordCount = session.getRecordCount();
+      int columnCount = session.getSchema().getColumns().size();
+
+      try (TunnelRecordReader reader = session.openRecordReader(0, recordCount)) {
+        Record r;
+        while ((r = reader.read()) != null) {
+          List<String> row = getRow(r, columnCount);
+          LOG.debug("ActionId: {}, result: {}", actionId, row);
+          resultConsumer.consume(row);
+        }
+      }
+
+      LOG.info("ActionId: {}, result set size: {}", actionId, recordCount);
+    }
+
     private List<Object> parseResult(Instance instance) throws OdpsException {
       List<Record> records = SQLTask.getResult(instance);
       List<Object> ret = new LinkedList<>();
@@ -120,6 +166,25 @@ public class OdpsExecutor extends AbstractActionExecutor {
     }
   }
 
+  /**
+   * Get values of a record as strings. Records read through tunnel return STRING columns as
+   * byte arrays, which are decoded as UTF-8.
+   */
+  public static List<String> getRow(Record record, int columnCount) {
+    List<String> row = new ArrayList<>(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      Object value = record.get(i);
+      if (value == null) {
+        row.add(null);
+      } else if (value instanceof byte[]) {
+        row.add(new String((byte[]) value, StandardCharsets.UTF_8));
+      } else {
+        row.add(value.toString());
+      }
+    }
+    return row;
+  }
+
   private static class OdpsNoSqlRunnable implements Callable {
     OdpsNoSqlAction action;
 
@@ -134,11 +199,27 @@ public class OdpsExecutor extends AbstractActionExecutor {
     }
   }
 
+  private final OdpsInstanceTracker instanceTracker = new OdpsInstanceTracker();
+
   public Future<Object> execute(
       String sql,
       Map<String, String> settings,
       String actionId,
       OdpsSqlActionInfo odpsSqlActionInfo) {
+    return execute(sql, settings, actionId, odpsSqlActionInfo, null);
+  }
+
+  /**
+   * Execute an odps sql. If a result consumer is given and the result type is
+   * {@link OdpsSqlActionInfo.ResultType#COLUMNS}, the result is read through instance tunnel and
+   * passed to the consumer row by row, and the returned future is completed with an empty list.
+   */
+  public Future<Object> execute(
+      String sql,
+      Map<String, String> settings,
+      String actionId,
+      OdpsSqlActionInfo odpsSqlActionInfo,
+      ResultConsumer resultConsumer) {
     // TODO: endpoint, ak, project name should come with tableMigrationConfig
 
     OdpsSqlCallable callable = new OdpsSqlCallable(
@@ -146,12 +227,65 @@ public class OdpsExecutor extends AbstractActionExecutor {
         sql,
         settings,
         actionId,
-        odpsSqlActionInfo);
+        odpsSqlActionInfo,
+        resultConsumer);
+
+    // Executor threads are only used to submit the instance and fetch its result. While the
+    // instance is running, it is tracked by the instance tracker.
+    AtomicBoolean canceled = new AtomicBoolean(false);
+    AtomicReference<CompletableFuture<Instance>> trackedInstance = new AtomicReference<>();
+    CompletableFuture<Object> future = CompletableFuture
+        .supplyAsync(() -> call(callable), executor)
+        .thenCompose(i -> {
+          if (i == null) {
+            return CompletableFuture.completedFuture(null);
+          }
+          CompletableFuture<Instance> tracked = instanceTracker.track(actionId, i);
+          trackedInstance.set(tracked);
+          if (canceled.get()) {
+            tracked.cancel(false);
+          }
+          return tracked;
+        })
+        .thenApplyAsync(i -> i == null ? null : getResult(callable, i), executor);
+
+    // Cancellation does not propagate to the upstream stages, cancel the tracked instance
+    // explicitly so that it is stopped
+    future.whenComplete((r, e) -> {
+      if (future.isCancelled()) {
+        canceled.set(true);
+        CompletableFuture<Instance> tracked = trackedInstance.get();
+        if (tracked != null) {
+          tracked.cancel(false);
+        }
+      }
+    });
+    return future;
+  }
+
+  private static Instance call(OdpsSqlCallable callable) {
+    try {
+      return callable.call();
+    } catch (Exception e) {
+      throw new CompletionException(e);
+    }
+  }
 
-    return executor.submit(callable);
+  private static Object getResult(OdpsSqlCallable callable, Instance i) {
+    try {
+      return callable.getResult(i);
+    } catch (OdpsException | IOException e) {
+      throw new CompletionException(e);
+    }
   }
 
   public Future<Object> execute(OdpsNoSqlAction action) {
     return executor.submit(new OdpsNoSqlRunnable(action));
   }
+
+  @Override
+  public void shutdown() {
+    instanceTracker.shutdown();
+    super.shutdown();
+  }
 }
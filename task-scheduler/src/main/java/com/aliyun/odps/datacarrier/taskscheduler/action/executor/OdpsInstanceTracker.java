@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.action.executor;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.OdpsException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Tracks submitted MaxCompute instances from a single polling thread, so that executor threads
+ * are only occupied while submitting an instance and parsing its result, not while it runs.
+ */
+public class OdpsInstanceTracker {
+
+  private static final Logger LOG = LogManager.getLogger("ExecutorLogger");
+
+  private static final long DEFAULT_POLLING_INTERVAL_MS = 5000;
+  private static final int DEFAULT_MAX_POLLED_INSTANCES_PER_ROUND = 200;
+
+  private static class TrackedInstance {
+    private final String actionId;
+    private final Instance instance;
+    private final CompletableFuture<Instance> future = new CompletableFuture<>();
+
+    TrackedInstance(String actionId, Instance instance) {
+      this.actionId = actionId;
+      this.instance = instance;
+    }
+  }
+
+  private final ConcurrentLinkedQueue<TrackedInstance> trackedInstances =
+      new ConcurrentLinkedQueue<>();
+  private final ScheduledExecutorService poller;
+  private final int maxPolledInstancesPerRound;
+
+  public OdpsInstanceTracker() {
+    this(DEFAULT_POLLING_INTERVAL_MS, DEFAULT_MAX_POLLED_INSTANCES_PER_ROUND);
+  }
+
+  public OdpsInstanceTracker(long pollingIntervalMs, int maxPolledInstancesPerRound) {
+    this.maxPolledInstancesPerRound = maxPolledInstancesPerRound;
+
+    ThreadFactory factory = new ThreadFactoryBuilder()
+        .setNameFormat("OdpsInstanceTracker-" + " #%d")
+        .setDaemon(true)
+        .build();
+    this.poller = Executors.newSingleThreadScheduledExecutor(factory);
+    this.poller.scheduleWithFixedDelay(
+        this::poll, pollingIntervalMs, pollingIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Start tracking an instance.
+   *
+   * @param actionId id of the action that submitted the instance, used for logging
+   * @param instance submitted instance
+   * @return a future completed with the instance once it succeeds, or completed exceptionally
+   * once it fails. Cancelling the future stops the instance.
+   */
+  public CompletableFuture<Instance> track(String actionId, Instance instance) {
+    TrackedInstance trackedInstance = new TrackedInstance(actionId, instance);
+    trackedInstance.future.whenComplete((i, e) -> {
+      if (trackedInstance.future.isCancelled()) {
+        cancel(trackedInstance);
+      }
+    });
+    trackedInstances.add(trackedInstance);
+    return trackedInstance.future;
+  }
+
+  public int getNumTrackedInstances() {
+    return trackedInstances.size();
+  }
+
+  private void poll() {
+    // Every instance costs one status request, so only poll a bounded number of instances per
+    // round. Polled instances are moved to the tail, so that all instances are polled in turn.
+    int numInstancesToPoll = Math.min(maxPolledInstancesPerRound, trackedInstances.size());
+    for (int i = 0; i < numInstancesToPoll; i++) {
+      TrackedInstance trackedInstance = trackedInstances.poll();
+      if (trackedInstance == null) {
+        return;
+      }
+
+      if (trackedInstance.future.isDone()) {
+        // Canceled by the caller, already stopped and removed
+        continue;
+      }
+
+      try {
+        if (trackedInstance.instance.isTerminated()) {
+          complete(trackedInstance);
+        } else {
+          trackedInstances.add(trackedInstance);
+        }
+      } catch (Throwable e) {
+        // Network errors are expected to be transient, keep polling
+        LOG.warn("ActionId: {}, failed to get status of instance {}",
+                 trackedInstance.actionId, trackedInstance.instance.getId(), e);
+        trackedInstances.add(trackedInstance);
+      }
+    }
+  }
+
+  private void cancel(TrackedInstance trackedInstance) {
+    trackedInstances.remove(trackedInstance);
+    try {
+      trackedInstance.instance.stop();
+      LOG.info("ActionId: {}, instance {} stopped",
+               trackedInstance.actionId, trackedInstance.instance.getId());
+    } catch (OdpsException e) {
+      LOG.warn("ActionId: {}, failed to stop instance {}",
+               trackedInstance.actionId, trackedInstance.instance.getId(), e);
+    }
+  }
+
+  private void complete(TrackedInstance trackedInstance) throws OdpsException {
+    Instance instance = trackedInstance.instance;
+    Map<String, Instance.TaskStatus> taskStatuses = instance.getTaskStatus();
+    for (Map.Entry<String, Instance.TaskStatus> entry : taskStatuses.entrySet()) {
+      if (!Instance.TaskStatus.Status.SUCCESS.equals(entry.getValue().getStatus())) {
+        // Same error message as Instance#waitForSuccess
+        String taskResult = instance.getTaskResults().get(entry.getKey());
+        LOG.info("ActionId: {}, instance {} failed", trackedInstance.actionId, instance.getId());
+        trackedInstance.future.completeExceptionally(new OdpsException(taskResult));
+        return;
+      }
+    }
+
+    LOG.info("ActionId: {}, instance {} succeeded", trackedInstance.actionId, instance.getId());
+    trackedInstance.future.complete(instance);
+  }
+
+  public void shutdown() {
+    poller.shutdown();
+    for (TrackedInstance trackedInstance : trackedInstances) {
+      trackedInstance.future.completeExceptionally(
+          new IllegalStateException("Instance tracker has been shut down"));
+    }
+    trackedInstances.clear();
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.action.executor;
+
+import java.util.List;
+
+/**
+ * Consumes the result of a query row by row, so that large results don't have to be
+ * materialized by the executors.
+ */
+@FunctionalInterface
+public interface ResultConsumer {
+
+  /**
+   * Consume one row of the result. Called from the executor thread, in result order.
+   *
+   * @param row column values of the row, in string format
+   */
+  void consume(List<String> row);
+}
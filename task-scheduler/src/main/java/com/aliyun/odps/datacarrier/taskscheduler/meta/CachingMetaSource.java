@@ -0,0 +1,461 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * A {@link MetaSource} that caches metadata fetched from another {@link MetaSource}, so that the
+ * same table or partition isn't requested from the HMS or ODPS again and again.
+ *
+ * Existence, table metadata (columns included) and partition metadata (sizes included) are cached.
+ * Only existing objects are cached, so that an object is visible once it is created.
+ * Each cache is bounded, and an entry expires after a while since it is loaded. Listings, like
+ * {@link #listTables(String)}, are never cached, since new objects must be visible immediately.
+ *
+ * Keys of cached tables and partitions are indexed by table, so that invalidating a table doesn't
+ * scan the caches.
+ *
+ * Cached models are copied before they are returned, since callers modify them, see
+ * {@link com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.TableMigrationConfig#apply}.
+ */
+public class CachingMetaSource implements MetaSource {
+
+  private static final Logger LOG = LogManager.getLogger(CachingMetaSource.class);
+
+  private static final long DEFAULT_TTL_SECONDS = 300;
+  private static final long DEFAULT_MAX_NUM_TABLES = 10000;
+  private static final long DEFAULT_MAX_NUM_PARTITIONS = 100000;
+
+  private MetaSource metaSource;
+
+  // Existence of databases, tables and partitions
+  private Cache<ObjectKey, Boolean> existenceCache;
+  private Cache<ObjectKey, TableMetaModel> tableMetaCache;
+  // Time when table metadata is loaded, in milliseconds
+  private Cache<ObjectKey, Long> tableLoadTimeCache;
+  private Cache<ObjectKey, PartitionMetaModel> partitionMetaCache;
+  // Table to keys of the table and its partitions, in the existence cache and partition cache
+  private Map<ObjectKey, Set<ObjectKey>> existenceKeysByTable = new ConcurrentHashMap<>();
+  private Map<ObjectKey, Set<ObjectKey>> partitionKeysByTable = new ConcurrentHashMap<>();
+
+  public CachingMetaSource(MetaSource metaSource) {
+    this(metaSource, DEFAULT_TTL_SECONDS, DEFAULT_MAX_NUM_TABLES, DEFAULT_MAX_NUM_PARTITIONS);
+  }
+
+  public CachingMetaSource(MetaSource metaSource,
+                           long ttlSeconds,
+                           long maxNumTables,
+                           long maxNumPartitions) {
+    this.metaSource = Objects.requireNonNull(metaSource);
+    this.existenceCache = CacheBuilder.newBuilder()
+        .maximumSize(maxNumTables)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .removalListener(
+            (RemovalListener<ObjectKey, Boolean>) n ->
+                onEvicted(n, existenceCache, existenceKeysByTable))
+        .recordStats()
+        .build();
+    this.tableMetaCache = CacheBuilder.newBuilder()
+        .maximumSize(maxNumTables)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+    this.tableLoadTimeCache = CacheBuilder.newBuilder()
+        .maximumSize(maxNumTables)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .build();
+    this.partitionMetaCache = CacheBuilder.newBuilder()
+        .maximumSize(maxNumPartitions)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .removalListener(
+            (RemovalListener<ObjectKey, PartitionMetaModel>) n ->
+                onEvicted(n, partitionMetaCache, partitionKeysByTable))
+        .recordStats()
+        .build();
+  }
+
+  @Override
+  public boolean hasDatabase(String databaseName) throws Exception {
+    ObjectKey key = new ObjectKey(databaseName, null, null);
+    Boolean exists = existenceCache.getIfPresent(key);
+    if (exists == null) {
+      exists = metaSource.hasDatabase(databaseName);
+      if (exists) {
+        putExistence(key);
+      }
+    }
+    return exists;
+  }
+
+  @Override
+  public boolean hasTable(String databaseName, String tableName) throws Exception {
+    ObjectKey key = new ObjectKey(databaseName, tableName, null);
+    if (tableMetaCache.getIfPresent(key) != null) {
+      return true;
+    }
+
+    Boolean exists = existenceCache.getIfPresent(key);
+    if (exists == null) {
+      exists = metaSource.hasTable(databaseName, tableName);
+      if (exists) {
+        putExistence(key);
+      }
+    }
+    return exists;
+  }
+
+  @Override
+  public boolean hasPartition(String databaseName,
+                              String tableName,
+                              List<String> partitionValues) throws Exception {
+    ObjectKey key = new ObjectKey(databaseName, tableName, partitionValues);
+    if (partitionMetaCache.getIfPresent(key) != null) {
+      return true;
+    }
+
+    Boolean exists = existenceCache.getIfPresent(key);
+    if (exists == null) {
+      exists = metaSource.hasPartition(databaseName, tableName, partitionValues);
+      if (exists) {
+        putExistence(key);
+      }
+    }
+    return exists;
+  }
+
+  @Override
+  public List<String> listDatabases() throws Exception {
+    return metaSource.listDatabases();
+  }
+
+  @Override
+  public List<String> listTables(String databaseName) throws Exception {
+    return metaSource.listTables(databaseName);
+  }
+
+  @Override
+  public List<List<String>> listPartitions(String databaseName,
+                                           String tableName) throws Exception {
+    return metaSource.listPartitions(databaseName, tableName);
+  }
+
+  @Override
+  public TableMetaModel getTableMeta(String databaseName, String tableName) throws Exception {
+    // Always loaded, since the partition list could change at any time. But the result is used to
+    // fill the caches
+    TableMetaModel tableMetaModel = metaSource.getTableMeta(databaseName, tableName);
+
+    TableMetaModel withoutPartitions = copy(tableMetaModel);
+    withoutPartitions.partitions = new ArrayList<>();
+    putTableMeta(new ObjectKey(databaseName, tableName, null), withoutPartitions);
+    for (PartitionMetaModel partitionMetaModel : tableMetaModel.partitions) {
+      putPartitionMeta(
+          new ObjectKey(databaseName, tableName, partitionMetaModel.partitionValues),
+          copy(partitionMetaModel));
+    }
+
+    return tableMetaModel;
+  }
+
+  @Override
+  public TableMetaModel getTableMetaWithoutPartitionMeta(String databaseName,
+                                                         String tableName) throws Exception {
+    ObjectKey key = new ObjectKey(databaseName, tableName, null);
+    TableMetaModel tableMetaModel = tableMetaCache.getIfPresent(key);
+    if (tableMetaModel == null) {
+      tableMetaModel = metaSource.getTableMetaWithoutPartitionMeta(databaseName, tableName);
+      putTableMeta(key, copy(tableMetaModel));
+      return tableMetaModel;
+    }
+
+    return copy(tableMetaModel);
+  }
+
+  @Override
+  public PartitionMetaModel getPartitionMeta(String databaseName,
+                                             String tableName,
+                                             List<String> partitionValues) throws Exception {
+    ObjectKey key = new ObjectKey(databaseName, tableName, partitionValues);
+    PartitionMetaModel partitionMetaModel = partitionMetaCache.getIfPresent(key);
+    if (partitionMetaModel == null) {
+      partitionMetaModel = metaSource.getPartitionMeta(databaseName, tableName, partitionValues);
+      if (partitionMetaModel != null) {
+        putPartitionMeta(key, copy(partitionMetaModel));
+      }
+      return partitionMetaModel;
+    }
+
+    return copy(partitionMetaModel);
+  }
+
+  @Override
+  public List<PartitionMetaModel> getPartitionMetas(String databaseName,
+                                                    String tableName,
+                                                    List<List<String>> partitionValuesList)
+      throws Exception {
+    Map<List<String>, PartitionMetaModel> partitionValuesToMeta = new LinkedHashMap<>();
+    List<List<String>> missed = new LinkedList<>();
+    for (List<String> partitionValues : partitionValuesList) {
+      PartitionMetaModel partitionMetaModel =
+          partitionMetaCache.getIfPresent(new ObjectKey(databaseName, tableName, partitionValues));
+      if (partitionMetaModel != null) {
+        partitionValuesToMeta.put(partitionValues, copy(partitionMetaModel));
+      } else {
+        missed.add(partitionValues);
+      }
+    }
+
+    // Missed partitions are requested in a single call
+    if (!missed.isEmpty()) {
+      for (PartitionMetaModel partitionMetaModel :
+          metaSource.getPartitionMetas(databaseName, tableName, missed)) {
+        putPartitionMeta(
+            new ObjectKey(databaseName, tableName, partitionMetaModel.partitionValues),
+            copy(partitionMetaModel));
+        partitionValuesToMeta.put(partitionMetaModel.partitionValues, partitionMetaModel);
+      }
+    }
+
+    // Keep the order of the input, partitions that don't exist are skipped
+    List<PartitionMetaModel> partitionMetaModels = new ArrayList<>(partitionValuesList.size());
+    for (List<String> partitionValues : partitionValuesList) {
+      PartitionMetaModel partitionMetaModel = partitionValuesToMeta.get(partitionValues);
+      if (partitionMetaModel != null) {
+        partitionMetaModels.add(partitionMetaModel);
+      }
+    }
+    return partitionMetaModels;
+  }
+
+  @Override
+  public List<PartitionMetaModel> listPartitionMetasWithoutSize(String databaseName,
+                                                                String tableName)
+      throws Exception {
+    return metaSource.listPartitionMetasWithoutSize(databaseName, tableName);
+  }
+
+  @Override
+  public void invalidate(String databaseName, String tableName) {
+    ObjectKey tableKey = new ObjectKey(databaseName, tableName, null);
+    LOG.debug("Invalidate cached metadata, db: {}, tbl: {}", databaseName, tableName);
+    tableMetaCache.invalidate(tableKey);
+    tableLoadTimeCache.invalidate(tableKey);
+    Set<ObjectKey> existenceKeys = existenceKeysByTable.remove(tableKey);
+    if (existenceKeys != null) {
+      existenceCache.invalidateAll(existenceKeys);
+    }
+    Set<ObjectKey> partitionKeys = partitionKeysByTable.remove(tableKey);
+    if (partitionKeys != null) {
+      partitionMetaCache.invalidateAll(partitionKeys);
+    }
+  }
+
+  @Override
+  public void invalidate(String databaseName, String tableName, long maxAgeSeconds) {
+    Long loadTime = tableLoadTimeCache.getIfPresent(new ObjectKey(databaseName, tableName, null));
+    if (loadTime != null && System.currentTimeMillis() - loadTime <= maxAgeSeconds * 1000) {
+      LOG.debug("Keep cached metadata, db: {}, tbl: {}", databaseName, tableName);
+      return;
+    }
+    invalidate(databaseName, tableName);
+  }
+
+  private void putTableMeta(ObjectKey key, TableMetaModel tableMetaModel) {
+    tableMetaCache.put(key, tableMetaModel);
+    tableLoadTimeCache.put(key, System.currentTimeMillis());
+  }
+
+  private void putExistence(ObjectKey key) {
+    existenceCache.put(key, true);
+    index(key, existenceKeysByTable);
+  }
+
+  private void putPartitionMeta(ObjectKey key, PartitionMetaModel partitionMetaModel) {
+    partitionMetaCache.put(key, partitionMetaModel);
+    index(key, partitionKeysByTable);
+  }
+
+  private static void index(ObjectKey key, Map<ObjectKey, Set<ObjectKey>> keysByTable) {
+    // Databases are never invalidated by table
+    if (key.tableName == null) {
+      return;
+    }
+    keysByTable.compute(key.getTableKey(), (tableKey, keys) -> {
+      if (keys == null) {
+        keys = new HashSet<>();
+      }
+      keys.add(key);
+      return keys;
+    });
+  }
+
+  /**
+   * Remove evicted keys from the index. Explicitly removed keys are removed from the index by
+   * {@link #invalidate(String, String)} and {@link #invalidateAll()}. A key loaded again since it
+   * is evicted stays in the index.
+   */
+  private static void onEvicted(RemovalNotification<ObjectKey, ?> notification,
+                                Cache<ObjectKey, ?> cache,
+                                Map<ObjectKey, Set<ObjectKey>> keysByTable) {
+    ObjectKey key = notification.getKey();
+    if (!notification.wasEvicted() || key == null || key.tableName == null) {
+      return;
+    }
+    keysByTable.computeIfPresent(key.getTableKey(), (tableKey, keys) -> {
+      if (!cache.asMap().containsKey(key)) {
+        keys.remove(key);
+      }
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  /**
+   * Get the underlying meta source, for callers that need source specific APIs.
+   */
+  public MetaSource getMetaSource() {
+    return metaSource;
+  }
+
+  /**
+   * Drop all cached metadata
+   */
+  public void invalidateAll() {
+    existenceCache.invalidateAll();
+    tableMetaCache.invalidateAll();
+    tableLoadTimeCache.invalidateAll();
+    partitionMetaCache.invalidateAll();
+    existenceKeysByTable.clear();
+    partitionKeysByTable.clear();
+  }
+
+  /**
+   * Get hit/miss statistics of each cache
+   *
+   * @return Cache name to statistics
+   */
+  public Map<String, CacheStats> getCacheStats() {
+    Map<String, CacheStats> cacheStats = new LinkedHashMap<>();
+    cacheStats.put("existence", existenceCache.stats());
+    cacheStats.put("table", tableMetaCache.stats());
+    cacheStats.put("partition", partitionMetaCache.stats());
+    return cacheStats;
+  }
+
+  @Override
+  public void shutdown() {
+    LOG.info("Meta source cache stats: {}", getCacheStats());
+    invalidateAll();
+    metaSource.shutdown();
+  }
+
+  private static TableMetaModel copy(TableMetaModel tableMetaModel) {
+    TableMetaModel copy = tableMetaModel.clone();
+    copy.serDeProperties = new LinkedHashMap<>(tableMetaModel.serDeProperties);
+    copy.columns = copy(tableMetaModel.columns);
+    copy.partitionColumns = copy(tableMetaModel.partitionColumns);
+    copy.partitions = new ArrayList<>(tableMetaModel.partitions.size());
+    for (PartitionMetaModel partitionMetaModel : tableMetaModel.partitions) {
+      copy.partitions.add(copy(partitionMetaModel));
+    }
+    return copy;
+  }
+
+  private static List<ColumnMetaModel> copy(List<ColumnMetaModel> columnMetaModels) {
+    List<ColumnMetaModel> copy = new ArrayList<>(columnMetaModels.size());
+    for (ColumnMetaModel columnMetaModel : columnMetaModels) {
+      ColumnMetaModel c = new ColumnMetaModel();
+      c.columnName = columnMetaModel.columnName;
+      c.odpsColumnName = columnMetaModel.odpsColumnName;
+      c.type = columnMetaModel.type;
+      c.odpsType = columnMetaModel.odpsType;
+      c.comment = columnMetaModel.comment;
+      copy.add(c);
+    }
+    return copy;
+  }
+
+  private static PartitionMetaModel copy(PartitionMetaModel partitionMetaModel) {
+    PartitionMetaModel copy = new PartitionMetaModel();
+    copy.partitionValues = new ArrayList<>(partitionMetaModel.partitionValues);
+    copy.location = partitionMetaModel.location;
+    copy.createTime = partitionMetaModel.createTime;
+    copy.lastModifiedTime = partitionMetaModel.lastModifiedTime;
+    copy.size = partitionMetaModel.size;
+    copy.numFiles = partitionMetaModel.numFiles;
+    return copy;
+  }
+
+  /**
+   * Key of a database, table or partition. Names are case-insensitive
+   */
+  private static class ObjectKey {
+    private final String databaseName;
+    private final String tableName;
+    private final List<String> partitionValues;
+
+    ObjectKey(String databaseName, String tableName, List<String> partitionValues) {
+      this.databaseName = databaseName.toLowerCase();
+      this.tableName = tableName == null ? null : tableName.toLowerCase();
+      this.partitionValues = partitionValues == null ? null : new ArrayList<>(partitionValues);
+    }
+
+    ObjectKey getTableKey() {
+      return partitionValues == null ? this : new ObjectKey(databaseName, tableName, null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ObjectKey)) {
+        return false;
+      }
+      ObjectKey that = (ObjectKey) o;
+      return databaseName.equals(that.databaseName)
+             && Objects.equals(tableName, that.tableName)
+             && Objects.equals(partitionValues, that.partitionValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(databaseName, tableName, partitionValues);
+    }
+  }
+}
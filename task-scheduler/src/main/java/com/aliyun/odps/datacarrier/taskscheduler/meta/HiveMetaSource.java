@@ -20,35 +20,59 @@
 package com.aliyun.odps.datacarrier.taskscheduler.meta;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hive.common.StatsSetupConst;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
 import org.apache.hadoop.hive.metastore.IMetaStoreClient;
 import org.apache.hadoop.hive.metastore.RetryingMetaStoreClient;
+import org.apache.hadoop.hive.metastore.Warehouse;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.hadoop.hive.metastore.api.NotificationEventResponse;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.hive.metastore.api.Table;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.thrift.TException;
 
 import com.aliyun.odps.utils.StringUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class HiveMetaSource implements MetaSource {
 
   private static final Logger LOG = LogManager.getLogger(HiveMetaSource.class);
 
+  private static final int MAX_PARTITIONS_PER_REQUEST = 1000;
+  /**
+   * Max number of concurrent requests to the NameNode for sizes of partitions
+   */
+  private static final int NUM_SIZE_LOADING_THREADS = 16;
+
   private IMetaStoreClient hmsClient;
   private FileSystem fs;
+  private ThreadPoolExecutor sizeLoadingPool;
 
   public HiveMetaSource(String hmsAddr,
                         Map<String, String> hdfsConfigs,
@@ -57,6 +81,28 @@ public class HiveMetaSource implements MetaSource {
                         List<String> systemProperties) throws MetaException {
     initHmsClient(hmsAddr, principal, keyTab, systemProperties);
     initFileSystem(hdfsConfigs, principal, keyTab);
+    initSizeLoadingPool();
+  }
+
+  /**
+   * Create a meta source with given clients, used by tests
+   */
+  HiveMetaSource(IMetaStoreClient hmsClient, FileSystem fs) {
+    this.hmsClient = hmsClient;
+    this.fs = fs;
+    initSizeLoadingPool();
+  }
+
+  private void initSizeLoadingPool() {
+    sizeLoadingPool = new ThreadPoolExecutor(
+        NUM_SIZE_LOADING_THREADS,
+        NUM_SIZE_LOADING_THREADS,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("PartitionSizeLoader-%d").setDaemon(true).build());
+    // Idle threads exit, since not every meta source is shutdown explicitly
+    sizeLoadingPool.allowCoreThreadTimeOut(true);
   }
 
   private void initHmsClient(String hmsAddr,
@@ -184,14 +230,15 @@ public class HiveMetaSource implements MetaSource {
       }
     }
 
-    if (fs != null) {
+    tableMetaModel.size = getSizeFromStatistics(table.getParameters());
+    if (tableMetaModel.size == null && fs != null) {
       Path path = new Path(tableMetaModel.location);
       tableMetaModel.size = fs.getContentSummary(path).getLength();
-      LOG.debug("Database: {}, Table: {}, size: {}",
-                databaseName,
-                tableName,
-                tableMetaModel.size);
     }
+    LOG.debug("Database: {}, Table: {}, size: {}",
+              databaseName,
+              tableName,
+              tableMetaModel.size);
 
     List<FieldSchema> columns = hmsClient.getFields(databaseName, tableName);
     for (FieldSchema column : columns) {
@@ -223,22 +270,8 @@ public class HiveMetaSource implements MetaSource {
 
     // Get partition meta for partitioned tables
     if (!withoutPartitionMeta && partitionColumns.size() > 0) {
-      List<Partition> partitions = hmsClient.listPartitions(databaseName, tableName, (short) -1);
-      LOG.info("Database: {}, Table: {}, number of partitions: {}",
-                databaseName, tableName, partitions.size());
-      for (Partition partition : partitions) {
-        PartitionMetaModel partitionMetaModel = new PartitionMetaModel();
-        partitionMetaModel.createTime = (long) partition.getCreateTime();
-        partitionMetaModel.location = partition.getSd().getLocation();
-        partitionMetaModel.partitionValues = partition.getValues();
-        setPartitionSize(partitionMetaModel);
-
-        tableMetaModel.partitions.add(partitionMetaModel);
-        LOG.debug("Database: {}, Table: {}, partition: {} ",
-                  databaseName,
-                  tableName,
-                  partition.getValues());
-      }
+      tableMetaModel.partitions.addAll(listPartitionMetasWithoutSize(databaseName, tableName));
+      setPartitionSizes(tableMetaModel.partitions);
     }
 
     return tableMetaModel;
@@ -247,8 +280,79 @@ public class HiveMetaSource implements MetaSource {
   @Override
   public PartitionMetaModel getPartitionMeta(String databaseName, String tableName,
                                              List<String> partitionValues) throws Exception {
-    PartitionMetaModel partitionMetaModel = new PartitionMetaModel();
     Partition partition = hmsClient.getPartition(databaseName, tableName, partitionValues);
+    PartitionMetaModel partitionMetaModel =
+        getPartitionMetaModel(databaseName, tableName, partition);
+    if (partitionMetaModel.size == null) {
+      setPartitionSize(partitionMetaModel);
+    }
+
+    return partitionMetaModel;
+  }
+
+  @Override
+  public List<PartitionMetaModel> getPartitionMetas(String databaseName,
+                                                    String tableName,
+                                                    List<List<String>> partitionValuesList)
+      throws Exception {
+    List<FieldSchema> partitionColumns =
+        hmsClient.getTable(databaseName, tableName).getPartitionKeys();
+    List<String> partitionNames = new ArrayList<>(partitionValuesList.size());
+    for (List<String> partitionValues : partitionValuesList) {
+      if (partitionValues.size() != partitionColumns.size()) {
+        // Not a valid partition
+        continue;
+      }
+      partitionNames.add(Warehouse.makePartName(partitionColumns, partitionValues));
+    }
+
+    List<PartitionMetaModel> partitionMetaModels =
+        getPartitionMetaModelsByNames(databaseName, tableName, partitionNames);
+    setPartitionSizes(partitionMetaModels);
+
+    return partitionMetaModels;
+  }
+
+  @Override
+  public List<PartitionMetaModel> listPartitionMetasWithoutSize(String databaseName,
+                                                                String tableName)
+      throws Exception {
+    // Names are cheap, partitions are then fetched in batches
+    List<String> partitionNames =
+        hmsClient.listPartitionNames(databaseName, tableName, (short) -1);
+    LOG.info("Database: {}, Table: {}, number of partitions: {}",
+             databaseName, tableName, partitionNames.size());
+
+    return getPartitionMetaModelsByNames(databaseName, tableName, partitionNames);
+  }
+
+  /**
+   * Get partitions by names, at most MAX_PARTITIONS_PER_REQUEST partitions per HMS request.
+   * Partitions are converted batch by batch, so the Thrift objects of a huge table are never held
+   * at once.
+   */
+  private List<PartitionMetaModel> getPartitionMetaModelsByNames(String databaseName,
+                                                                 String tableName,
+                                                                 List<String> partitionNames)
+      throws TException {
+    List<PartitionMetaModel> partitionMetaModels = new ArrayList<>(partitionNames.size());
+    for (int i = 0; i < partitionNames.size(); i += MAX_PARTITIONS_PER_REQUEST) {
+      List<String> batch = partitionNames.subList(
+          i, Math.min(i + MAX_PARTITIONS_PER_REQUEST, partitionNames.size()));
+      for (Partition partition :
+          hmsClient.getPartitionsByNames(databaseName, tableName, batch)) {
+        partitionMetaModels.add(getPartitionMetaModel(databaseName, tableName, partition));
+      }
+    }
+
+    return partitionMetaModels;
+  }
+
+  private PartitionMetaModel getPartitionMetaModel(String databaseName,
+                                                   String tableName,
+                                                   Partition partition) {
+    List<String> partitionValues = partition.getValues();
+    PartitionMetaModel partitionMetaModel = new PartitionMetaModel();
     partitionMetaModel.createTime = (long) partition.getCreateTime();
     if (partition.isSetParameters()) {
       Map<String, String> parameters = partition.getParameters();
@@ -271,22 +375,147 @@ public class HiveMetaSource implements MetaSource {
               tableName,
               partitionValues,
               partition.getSd().getLocation());
-    partitionMetaModel.partitionValues = partition.getValues();
-    setPartitionSize(partitionMetaModel);
+    partitionMetaModel.partitionValues = partitionValues;
+    // Sizes not available in statistics are set by setPartitionSizes later
+    partitionMetaModel.size = getSizeFromStatistics(partition.getParameters());
+    if (partitionMetaModel.size != null) {
+      partitionMetaModel.numFiles = getNumFilesFromStatistics(partition.getParameters());
+    }
 
     return partitionMetaModel;
   }
 
+  /**
+   * Get size from basic statistics in parameters of a table or partition, which costs nothing
+   * compared to a content summary from the NameNode. Zero is only trusted when the statistics are
+   * marked accurate, since tables written by other engines usually have zero sizes.
+   *
+   * @return Size in bytes, or null if not available
+   */
+  static Long getSizeFromStatistics(Map<String, String> parameters) {
+    if (parameters == null || !parameters.containsKey(StatsSetupConst.TOTAL_SIZE)) {
+      return null;
+    }
 
+    long totalSize;
+    try {
+      totalSize = Long.parseLong(parameters.get(StatsSetupConst.TOTAL_SIZE));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+
+    if (totalSize > 0) {
+      return totalSize;
+    }
+    String accurate = parameters.get(StatsSetupConst.COLUMN_STATS_ACCURATE);
+    if (totalSize == 0 && accurate != null && accurate.toLowerCase().contains("true")) {
+      return totalSize;
+    }
+    return null;
+  }
+
+  /**
+   * Get number of files from basic statistics in parameters of a table or partition. Only
+   * meaningful when the size in the same statistics is available.
+   *
+   * @return Number of files, or null if not available
+   */
+  static Long getNumFilesFromStatistics(Map<String, String> parameters) {
+    if (parameters == null || !parameters.containsKey(StatsSetupConst.NUM_FILES)) {
+      return null;
+    }
+
+    try {
+      return Long.parseLong(parameters.get(StatsSetupConst.NUM_FILES));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
 
   public void setPartitionSize(PartitionMetaModel partitionMetaModel) throws IOException {
     if (fs != null) {
       Path location = new Path(partitionMetaModel.location);
-      partitionMetaModel.size = fs.getContentSummary(location).getLength();
+      ContentSummary contentSummary = fs.getContentSummary(location);
+      partitionMetaModel.size = contentSummary.getLength();
+      partitionMetaModel.numFiles = contentSummary.getFileCount();
       LOG.debug("Location: {}, size: {}", location, partitionMetaModel.size);
     }
   }
 
+  /**
+   * List data files under given location recursively. Hidden files, whose names or names of
+   * directories between them and the location start with '_' or '.', like staging directories of
+   * running queries, are skipped like Hive does.
+   *
+   * @param location Location of a table or partition
+   * @return Sizes of files, sorted by their fully qualified paths
+   */
+  public SortedMap<String, Long> listFiles(String location) throws IOException {
+    if (fs == null) {
+      throw new IOException("HDFS client not initialized");
+    }
+
+    SortedMap<String, Long> fileSizes = new TreeMap<>();
+    Path root = new Path(location);
+    RemoteIterator<LocatedFileStatus> iterator = fs.listFiles(root, true);
+    while (iterator.hasNext()) {
+      LocatedFileStatus fileStatus = iterator.next();
+      if (isHidden(fileStatus.getPath(), root.depth())) {
+        continue;
+      }
+      fileSizes.put(fileStatus.getPath().toString(), fileStatus.getLen());
+    }
+    LOG.debug("Location: {}, num files: {}", location, fileSizes.size());
+
+    return fileSizes;
+  }
+
+  /**
+   * Returns true if the name of the path, or of any of its ancestors deeper than the given depth,
+   * starts with '_' or '.'
+   */
+  private static boolean isHidden(Path path, int rootDepth) {
+    for (Path p = path; p != null && p.depth() > rootDepth; p = p.getParent()) {
+      if (p.getName().startsWith("_") || p.getName().startsWith(".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Set sizes of partitions that are not available in statistics concurrently, each of them is a
+   * request to the NameNode
+   */
+  private void setPartitionSizes(List<PartitionMetaModel> partitionMetaModels) throws Exception {
+    if (fs == null) {
+      return;
+    }
+
+    List<Future<Void>> futures = new ArrayList<>(partitionMetaModels.size());
+    for (PartitionMetaModel partitionMetaModel : partitionMetaModels) {
+      if (partitionMetaModel.size != null) {
+        continue;
+      }
+      futures.add(sizeLoadingPool.submit(() -> {
+        setPartitionSize(partitionMetaModel);
+        return null;
+      }));
+    }
+
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(false));
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
   @Override
   public boolean hasDatabase(String databaseName) throws Exception {
     try {
@@ -318,6 +547,31 @@ public class HiveMetaSource implements MetaSource {
     return true;
   }
 
+  /**
+   * Get id of the latest event in the notification log. Requires DbNotificationListener to be
+   * configured as a listener of the HMS
+   */
+  public long getCurrentNotificationEventId() throws TException {
+    return hmsClient.getCurrentNotificationEventId().getEventId();
+  }
+
+  /**
+   * Get events after given event id from the notification log
+   *
+   * @param lastEventId Id of the last consumed event
+   * @param maxEvents   Max number of events to return
+   * @return Events in ascending order of their ids
+   */
+  public List<NotificationEvent> getNextNotifications(long lastEventId, int maxEvents)
+      throws TException {
+    NotificationEventResponse response =
+        hmsClient.getNextNotification(lastEventId, maxEvents, null);
+    if (response == null || response.getEvents() == null) {
+      return new LinkedList<>();
+    }
+    return response.getEvents();
+  }
+
   @Override
   public List<String> listDatabases() throws Exception {
     List<String> databases = hmsClient.getAllDatabases();
@@ -335,21 +589,26 @@ public class HiveMetaSource implements MetaSource {
   @Override
   public List<List<String>> listPartitions(String databaseName, String tableName) throws Exception {
     List<List<String>> partitionValuesList = new LinkedList<>();
-    List<Partition> partitions = hmsClient.listPartitions(databaseName, tableName, (short) -1);
+    // Partition values are parsed from names, partitions themselves are not fetched
+    List<String> partitionNames =
+        hmsClient.listPartitionNames(databaseName, tableName, (short) -1);
     LOG.info("Database: {}, Table: {}, number of partitions: {}",
-              databaseName, tableName, partitions.size());
-    for (Partition partition : partitions) {
-      partitionValuesList.add(partition.getValues());
+              databaseName, tableName, partitionNames.size());
+    for (String partitionName : partitionNames) {
+      ArrayList<String> partitionValues = new ArrayList<>();
+      Warehouse.makeValsFromName(partitionName, partitionValues);
+      partitionValuesList.add(partitionValues);
       LOG.debug("Database: {}, Table: {}, partition: {} ",
                 databaseName,
                 tableName,
-                partition.getValues());
+                partitionValues);
     }
     return partitionValuesList;
   }
 
   @Override
   public void shutdown() {
+    sizeLoadingPool.shutdownNow();
     hmsClient.close();
   }
 }
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.aliyun.odps.datacarrier.taskscheduler.Constants;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.TableMigrationConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Consumes the notification log of the HMS, and resets migration jobs of modified tables and
+ * partitions to PENDING, so that they are migrated again. Changes are detected without listing
+ * partitions of every table. The position in the log is kept in the meta DB, see
+ * {@link Constants#MMA_CURSOR_HMS_NOTIFICATION}.
+ *
+ * Only tables that already have a migration job are affected. Changes of a running job are
+ * applied after the job stops. Drops are ignored, since MMA never drops migrated data.
+ *
+ * The persisted cursor never passes the oldest event whose changes are not applied yet, so that
+ * deferred or failed changes are read again after restarting. Applying changes again only resets
+ * jobs again, which is harmless.
+ */
+public class HmsNotificationConsumer extends Thread {
+
+  private static final Logger LOG = LogManager.getLogger(HmsNotificationConsumer.class);
+
+  private static final int MAX_EVENTS_PER_POLL = 1000;
+  private static final int DEFAULT_POLL_INTERVAL_MS = 60 * 1000;
+  static final int MAX_APPLY_ATTEMPTS = 10;
+
+  static final String EVENT_TYPE_CREATE_TABLE = "CREATE_TABLE";
+  static final String EVENT_TYPE_ALTER_TABLE = "ALTER_TABLE";
+  static final String EVENT_TYPE_ADD_PARTITION = "ADD_PARTITION";
+  static final String EVENT_TYPE_ALTER_PARTITION = "ALTER_PARTITION";
+  static final String EVENT_TYPE_INSERT = "INSERT";
+
+  /**
+   * Changes of a table. Empty partitions with tableChanged false means nothing changed
+   */
+  static class TableChange {
+    private boolean tableChanged = false;
+    private Set<List<String>> partitions = new LinkedHashSet<>();
+    /**
+     * Id of the oldest event of the changes
+     */
+    private long firstEventId = Long.MAX_VALUE;
+    private int failedAttempts = 0;
+
+    boolean isTableChanged() {
+      return tableChanged;
+    }
+
+    Set<List<String>> getPartitions() {
+      return partitions;
+    }
+
+    void merge(TableChange other) {
+      tableChanged |= other.tableChanged;
+      partitions.addAll(other.partitions);
+      firstEventId = Math.min(firstEventId, other.firstEventId);
+    }
+  }
+
+  private HiveMetaSource hiveMetaSource;
+  private MmaMetaManager mmaMetaManager;
+  private int pollInterval = DEFAULT_POLL_INTERVAL_MS;
+  private volatile boolean keepRunning = true;
+
+  /**
+   * Changes of running jobs, applied once the jobs stop, and changes failed to be applied, which
+   * are retried. Key is [db, tbl]
+   */
+  private Map<List<String>, TableChange> deferredChanges = new LinkedHashMap<>();
+
+  /**
+   * Id of the last event read, could be ahead of the persisted cursor
+   */
+  private Long readCursor = null;
+
+  public HmsNotificationConsumer(HiveMetaSource hiveMetaSource, MmaMetaManager mmaMetaManager) {
+    super("HmsNotificationConsumer");
+    this.hiveMetaSource = hiveMetaSource;
+    this.mmaMetaManager = mmaMetaManager;
+    setDaemon(true);
+  }
+
+  @Override
+  public void run() {
+    LOG.info("HmsNotificationConsumer starts");
+    while (keepRunning) {
+      try {
+        if (!poll()) {
+          Thread.sleep(pollInterval);
+        }
+      } catch (InterruptedException e) {
+        break;
+      } catch (Throwable e) {
+        LOG.warn("Consuming HMS notifications failed", e);
+        try {
+          Thread.sleep(pollInterval);
+        } catch (InterruptedException e2) {
+          break;
+        }
+      }
+    }
+    hiveMetaSource.shutdown();
+    LOG.info("HmsNotificationConsumer stops");
+  }
+
+  /**
+   * Consume a batch of events
+   *
+   * @return True if there could be more events to consume
+   */
+  boolean poll() throws Exception {
+    if (readCursor == null) {
+      readCursor = mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION);
+      if (readCursor == null) {
+        // Changes before the first run are covered by adding the jobs
+        readCursor = hiveMetaSource.getCurrentNotificationEventId();
+        mmaMetaManager.setCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION, readCursor);
+        LOG.info("Initialized HMS notification cursor: {}", readCursor);
+      }
+    }
+
+    List<NotificationEvent> events =
+        hiveMetaSource.getNextNotifications(readCursor, MAX_EVENTS_PER_POLL);
+    Map<List<String>, TableChange> changes = new LinkedHashMap<>(deferredChanges);
+    deferredChanges.clear();
+    for (NotificationEvent event : events) {
+      readCursor = Math.max(readCursor, event.getEventId());
+      if (event.getDbName() == null || event.getTableName() == null) {
+        continue;
+      }
+
+      TableChange change = parseEvent(event.getEventType(), event.getMessage());
+      if (change != null) {
+        change.firstEventId = event.getEventId();
+        List<String> key = new ArrayList<>(2);
+        key.add(event.getDbName().toLowerCase());
+        key.add(event.getTableName().toLowerCase());
+        changes.computeIfAbsent(key, k -> new TableChange()).merge(change);
+      }
+    }
+
+    if (!changes.isEmpty()) {
+      LOG.info("Applying HMS notifications, events: {}, tables: {}",
+               events.size(), changes.size());
+    }
+    Iterator<Map.Entry<List<String>, TableChange>> iter = changes.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<List<String>, TableChange> entry = iter.next();
+      String db = entry.getKey().get(0);
+      String tbl = entry.getKey().get(1);
+      TableChange change = entry.getValue();
+      try {
+        if (!apply(db, tbl, change)) {
+          deferredChanges.put(entry.getKey(), change);
+        }
+      } catch (Exception e) {
+        change.failedAttempts += 1;
+        if (change.failedAttempts < MAX_APPLY_ATTEMPTS) {
+          LOG.warn("Failed to apply changes, retry later, db: {}, tbl: {}", db, tbl, e);
+          deferredChanges.put(entry.getKey(), change);
+        } else {
+          // The table or partitions could be dropped after the event, nothing to migrate then
+          LOG.error("Failed to apply changes, give up, db: {}, tbl: {}", db, tbl, e);
+        }
+      }
+    }
+
+    mmaMetaManager.setCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION, getCommittedCursor());
+    return events.size() == MAX_EVENTS_PER_POLL;
+  }
+
+  /**
+   * Return the position before the oldest event whose changes are not applied yet
+   */
+  private long getCommittedCursor() {
+    long cursor = readCursor;
+    for (TableChange change : deferredChanges.values()) {
+      cursor = Math.min(cursor, change.firstEventId - 1);
+    }
+    return cursor;
+  }
+
+  /**
+   * Reset the migration job of a table according to its changes
+   *
+   * @return False if the job is running, and the changes should be applied later
+   */
+  private boolean apply(String db, String tbl, TableChange change) throws Exception {
+    if (!mmaMetaManager.hasMigrationJob(db, tbl)) {
+      return true;
+    }
+    MmaConfig.JobConfig jobConfig = mmaMetaManager.getConfig(db, tbl);
+    if (!MmaConfig.JobType.MIGRATION.equals(jobConfig.getJobType())) {
+      return true;
+    }
+    if (MigrationStatus.RUNNING.equals(mmaMetaManager.getStatus(db, tbl))) {
+      return false;
+    }
+
+    TableMigrationConfig config = TableMigrationConfig.fromJson(jobConfig.getDescription());
+    if (change.isTableChanged()
+        || config.getBeginPartition() != null
+        || config.getEndPartition() != null) {
+      // Adding the job again resets it, and resets partitions in the range that are new or
+      // modified
+      LOG.info("Reset migration job, db: {}, tbl: {}", db, tbl);
+      mmaMetaManager.invalidateTableMeta(db, tbl);
+      mmaMetaManager.addMigrationJob(config);
+      return true;
+    }
+
+    List<List<String>> partitionValuesList = new ArrayList<>(change.getPartitions());
+    if (config.getPartitionValuesList() != null) {
+      partitionValuesList.retainAll(config.getPartitionValuesList());
+    }
+    if (!partitionValuesList.isEmpty()) {
+      mmaMetaManager.invalidateTableMeta(db, tbl);
+      mmaMetaManager.resetMigrationJobPartitions(db, tbl, partitionValuesList);
+    }
+    return true;
+  }
+
+  /**
+   * Parse an event into changes of a table. Partition specs are read from messages written by
+   * JSON message factories of the HMS. If they are missing, the whole table is treated as
+   * changed.
+   *
+   * @return Changes of the table, or null if the event doesn't change any data
+   */
+  static TableChange parseEvent(String eventType, String message) {
+    TableChange change = new TableChange();
+    switch (eventType) {
+      case EVENT_TYPE_CREATE_TABLE:
+      case EVENT_TYPE_ALTER_TABLE:
+        change.tableChanged = true;
+        return change;
+      case EVENT_TYPE_ADD_PARTITION:
+      case EVENT_TYPE_ALTER_PARTITION:
+      case EVENT_TYPE_INSERT:
+        break;
+      default:
+        return null;
+    }
+
+    try {
+      JsonObject json = new JsonParser().parse(message).getAsJsonObject();
+      if (json.has("partitions") && json.get("partitions").isJsonArray()) {
+        JsonArray partitionSpecs = json.getAsJsonArray("partitions");
+        for (JsonElement partitionSpec : partitionSpecs) {
+          change.partitions.add(getPartitionValues(partitionSpec.getAsJsonObject()));
+        }
+      } else if (json.has("keyValues") && json.get("keyValues").isJsonObject()) {
+        change.partitions.add(getPartitionValues(json.getAsJsonObject("keyValues")));
+      } else if (json.has("partKeyVals") && json.get("partKeyVals").isJsonObject()
+                 && json.getAsJsonObject("partKeyVals").entrySet().size() > 0) {
+        change.partitions.add(getPartitionValues(json.getAsJsonObject("partKeyVals")));
+      }
+    } catch (Exception e) {
+      LOG.warn("Unrecognized message of {} event: {}", eventType, message);
+      change.partitions.clear();
+    }
+
+    if (change.partitions.isEmpty()) {
+      change.tableChanged = true;
+    }
+    return change;
+  }
+
+  /**
+   * Partition specs are written in the order of partition columns
+   */
+  private static List<String> getPartitionValues(JsonObject partitionSpec) {
+    List<String> partitionValues = new ArrayList<>(partitionSpec.entrySet().size());
+    for (Map.Entry<String, JsonElement> entry : partitionSpec.entrySet()) {
+      partitionValues.add(entry.getValue().getAsString());
+    }
+    return partitionValues;
+  }
+
+  public void shutdown() {
+    keepRunning = false;
+    interrupt();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.AdditionalTableConfig;
+import com.google.common.hash.Hashing;
+
+/**
+ * Binary encoding of {@link MmaConfig.JobConfig}. Encoded configs are immutable and addressed by
+ * the hash of their content, see {@link #getId(byte[])}.
+ *
+ * Format of version 1:
+ *   version (byte), job type (string), database name (string), name (string),
+ *   description (string), has additional table config (boolean),
+ *   [partition group size (int), retry times limit (int), split size in GB (int)]
+ * where a string is its length in bytes (int, -1 for null) followed by its UTF-8 bytes.
+ */
+public class JobConfigCodec {
+
+  private static final byte VERSION_1 = 1;
+
+  public static byte[] encode(MmaConfig.JobConfig jobConfig) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(VERSION_1);
+      writeString(out, jobConfig.getJobType() == null ? null : jobConfig.getJobType().name());
+      writeString(out, jobConfig.getDatabaseName());
+      writeString(out, jobConfig.getName());
+      writeString(out, jobConfig.getDescription());
+      AdditionalTableConfig additionalTableConfig = jobConfig.getAdditionalTableConfig();
+      out.writeBoolean(additionalTableConfig != null);
+      if (additionalTableConfig != null) {
+        out.writeInt(additionalTableConfig.getPartitionGroupSize());
+        out.writeInt(additionalTableConfig.getRetryTimesLimit());
+        out.writeInt(additionalTableConfig.getPartitionGroupSplitSizeInGb());
+      }
+    } catch (IOException e) {
+      // Not possible for an in-memory stream
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static MmaConfig.JobConfig decode(byte[] bytes) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      byte version = in.readByte();
+      if (version != VERSION_1) {
+        throw new IllegalArgumentException("Unsupported job config version: " + version);
+      }
+      String jobType = readString(in);
+      String databaseName = readString(in);
+      String name = readString(in);
+      String description = readString(in);
+      AdditionalTableConfig additionalTableConfig = null;
+      if (in.readBoolean()) {
+        additionalTableConfig = new AdditionalTableConfig(in.readInt(), in.readInt(), in.readInt());
+      }
+      return new MmaConfig.JobConfig(
+          databaseName,
+          name,
+          jobType == null ? null : MmaConfig.JobType.valueOf(jobType),
+          description,
+          additionalTableConfig);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid job config", e);
+    }
+  }
+
+  /**
+   * Return the id of an encoded job config, which is the SHA-256 of its content in hex
+   */
+  public static String getId(byte[] bytes) {
+    return Hashing.sha256().hashBytes(bytes).toString();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,795 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.aliyun.odps.datacarrier.taskscheduler.GsonUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.DatabaseRestoreConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.ObjectExportConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.ObjectRestoreConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.TableMigrationConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.JobInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.RestoreTaskInfo;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * A MmaMetaManager that applies status updates in the background. {@link #updateStatus} appends
+ * the transition to a local journal, fsyncs it and returns. A writer thread applies journaled
+ * transitions to the underlying MmaMetaManager in batches, retrying until they are applied, and
+ * appends a checkpoint after each batch. The journal is truncated once every transition in it is
+ * applied, and compacted when too many applied transitions pile up. Transitions after the last
+ * checkpoint are replayed by {@link #recover()} on startup.
+ *
+ * Reads never wait for the writer. Statuses, progress and counts are read from the underlying
+ * MmaMetaManager and overlaid with journaled transitions that are not applied yet. Statuses the
+ * underlying MmaMetaManager derives when applying a transition, like the status of a partitioned
+ * table once all its partitions succeed, are only visible after it is applied. Operations that
+ * modify jobs wait until journaled transitions are applied, so that stale transitions are never
+ * applied to a new job.
+ */
+public class JournaledMmaMetaManager implements MmaMetaManager {
+
+  private static final Logger LOG = LogManager.getLogger(JournaledMmaMetaManager.class);
+
+  private static final int MAX_BATCH_SIZE = 1000;
+  private static final long INIT_RETRY_INTERVAL_MS = 1000;
+  private static final long MAX_RETRY_INTERVAL_MS = 60 * 1000;
+
+  /**
+   * The journal is compacted once it holds more applied transitions than this
+   */
+  private static final int MAX_NUM_APPLIED_ENTRIES = 100000;
+
+  /**
+   * A status transition, which is a line of the journal in json
+   */
+  static class JournalEntry {
+    private String db;
+    private String tbl;
+    /**
+     * Null for non-partitioned tables
+     */
+    private List<List<String>> partitionValuesList;
+    private MigrationStatus status;
+
+    JournalEntry(
+        String db,
+        String tbl,
+        List<List<String>> partitionValuesList,
+        MigrationStatus status) {
+      this.db = Objects.requireNonNull(db);
+      this.tbl = Objects.requireNonNull(tbl);
+      this.partitionValuesList = partitionValuesList;
+      this.status = Objects.requireNonNull(status);
+    }
+
+    JournalEntry copy() {
+      return new JournalEntry(
+          db,
+          tbl,
+          partitionValuesList == null ? null : new ArrayList<>(partitionValuesList),
+          status);
+    }
+
+    /**
+     * Merge entry into this one if they can be applied as one update, else return false. Entries
+     * sharing a partition are never merged, since each of them could increase attempt times.
+     */
+    boolean merge(JournalEntry entry) {
+      if (partitionValuesList == null
+          || entry.partitionValuesList == null
+          || !db.equals(entry.db)
+          || !tbl.equals(entry.tbl)
+          || !status.equals(entry.status)) {
+        return false;
+      }
+      Set<List<String>> partitionValuesSet = new HashSet<>(partitionValuesList);
+      for (List<String> partitionValues : entry.partitionValuesList) {
+        if (partitionValuesSet.contains(partitionValues)) {
+          return false;
+        }
+      }
+      List<List<String>> merged = new ArrayList<>(partitionValuesList);
+      merged.addAll(entry.partitionValuesList);
+      partitionValuesList = merged;
+      return true;
+    }
+  }
+
+  /**
+   * A line of the journal, the first numApplied transitions in the journal are applied
+   */
+  static class Checkpoint {
+    private long numApplied;
+
+    Checkpoint(long numApplied) {
+      this.numApplied = numApplied;
+    }
+  }
+
+  /**
+   * Latest statuses of tables and partitions in journaled transitions that are not applied yet
+   */
+  private static class Overlay {
+    private final Map<String, MigrationStatus> tableStatuses = new HashMap<>();
+    private final Map<String, Map<List<String>, MigrationStatus>> partitionStatuses =
+        new HashMap<>();
+
+    private static String getKey(String db, String tbl) {
+      return db.toLowerCase() + "." + tbl.toLowerCase();
+    }
+
+    private void add(JournalEntry entry) {
+      String key = getKey(entry.db, entry.tbl);
+      if (entry.partitionValuesList == null) {
+        tableStatuses.put(key, entry.status);
+      } else {
+        Map<List<String>, MigrationStatus> statuses =
+            partitionStatuses.computeIfAbsent(key, k -> new HashMap<>());
+        for (List<String> partitionValues : entry.partitionValuesList) {
+          statuses.put(partitionValues, entry.status);
+        }
+      }
+    }
+
+    private MigrationStatus getStatus(String db, String tbl) {
+      return tableStatuses.get(getKey(db, tbl));
+    }
+
+    private MigrationStatus getStatus(String db, String tbl, List<String> partitionValues) {
+      Map<List<String>, MigrationStatus> statuses = partitionStatuses.get(getKey(db, tbl));
+      return statuses == null ? null : statuses.get(partitionValues);
+    }
+
+    private Map<List<String>, MigrationStatus> getPartitionStatuses(String db, String tbl) {
+      Map<List<String>, MigrationStatus> statuses = partitionStatuses.get(getKey(db, tbl));
+      return statuses == null ? new HashMap<>() : statuses;
+    }
+  }
+
+  private final MmaMetaManager mmaMetaManager;
+  private final Path journalPath;
+  private final FileChannel journal;
+  private final Writer writer;
+
+  /**
+   * Journaled transitions that are not applied yet in the order they are appended, guarded by
+   * this. They are the last transitions in the journal.
+   */
+  private final LinkedList<JournalEntry> unapplied = new LinkedList<>();
+
+  /**
+   * Number of transitions in the journal, and the number of them applied, guarded by this
+   */
+  private long numJournaled = 0;
+  private long numJournaledApplied = 0;
+
+  private volatile boolean keepRunning = true;
+
+  public JournaledMmaMetaManager(MmaMetaManager mmaMetaManager, Path journalPath)
+      throws MmaException {
+    this.mmaMetaManager = Objects.requireNonNull(mmaMetaManager);
+    this.journalPath = Objects.requireNonNull(journalPath);
+
+    try {
+      unapplied.addAll(recover());
+      journal = FileChannel.open(
+          journalPath,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      // Transitions that failed to be replayed are kept, and applied by the writer
+      rewriteJournal();
+    } catch (IOException e) {
+      throw new MmaException("Opening status journal failed: " + journalPath, e);
+    }
+
+    writer = new Writer();
+    writer.start();
+  }
+
+  /**
+   * Apply transitions left in the journal. RUNNING transitions are skipped, since running tasks
+   * are gone after restarting.
+   *
+   * @return Transitions that failed to be applied and should be retried
+   */
+  private List<JournalEntry> recover() throws IOException {
+    List<JournalEntry> failed = new LinkedList<>();
+    if (!Files.exists(journalPath)) {
+      return failed;
+    }
+
+    LOG.info("Enter recover, journal: {}", journalPath);
+    List<JournalEntry> entries = new ArrayList<>();
+    long numApplied = 0;
+    try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          JsonObject jsonObject = new JsonParser().parse(line).getAsJsonObject();
+          if (jsonObject.has("numApplied")) {
+            numApplied = GsonUtils.getFullConfigGson()
+                                  .fromJson(jsonObject, Checkpoint.class).numApplied;
+          } else {
+            entries.add(GsonUtils.getFullConfigGson().fromJson(jsonObject, JournalEntry.class));
+          }
+        } catch (JsonParseException | IllegalStateException e) {
+          // The last line could be partially written by a crash
+          LOG.warn("Skip invalid journal entry: {}", line);
+        }
+      }
+    }
+    // Transitions before the last checkpoint are applied
+    entries = entries.subList((int) Math.min(numApplied, entries.size()), entries.size());
+
+    for (JournalEntry entry : entries) {
+      if (entry == null || MigrationStatus.RUNNING.equals(entry.status)) {
+        continue;
+      }
+      // Once a transition fails, the following ones are retried after it to keep the order
+      if (!failed.isEmpty()) {
+        failed.add(entry);
+        continue;
+      }
+      try {
+        apply(entry);
+      } catch (Throwable e) {
+        if (jobExists(entry)) {
+          LOG.warn("Replaying journal entry failed, retry later, db: {}, tbl: {}",
+                   entry.db, entry.tbl, e);
+          failed.add(entry);
+        } else {
+          LOG.warn("Job removed, skip journal entry, db: {}, tbl: {}", entry.db, entry.tbl);
+        }
+      }
+    }
+    LOG.info("Leave recover, number of entries: {}, failed: {}", entries.size(), failed.size());
+    return failed;
+  }
+
+  private void append(JournalEntry entry) throws MmaException {
+    byte[] bytes = toBytes(entry);
+    synchronized (this) {
+      if (!keepRunning) {
+        throw new IllegalStateException("Status journal is closed");
+      }
+      try {
+        write(bytes);
+        journal.force(false);
+      } catch (IOException e) {
+        throw new MmaException("Appending to status journal failed", e);
+      }
+      numJournaled++;
+      unapplied.add(entry);
+      notifyAll();
+    }
+  }
+
+  private static byte[] toBytes(Object entry) {
+    return (GsonUtils.getFullConfigGson().toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void write(byte[] bytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      journal.write(buffer);
+    }
+  }
+
+  /**
+   * Replace the content of the journal with transitions that are not applied yet. Must be called
+   * with the lock held.
+   */
+  private void rewriteJournal() throws IOException {
+    journal.truncate(0);
+    journal.position(0);
+    for (JournalEntry entry : unapplied) {
+      write(toBytes(entry));
+    }
+    journal.force(false);
+    numJournaled = unapplied.size();
+    numJournaledApplied = 0;
+  }
+
+  /**
+   * Record that given number of transitions are applied. Takes constant time unless the journal
+   * is compacted, which happens once in MAX_NUM_APPLIED_ENTRIES transitions. Must be called with
+   * the lock held.
+   */
+  private void checkpoint(int numApplied) throws IOException {
+    numJournaledApplied += numApplied;
+    if (unapplied.isEmpty()) {
+      journal.truncate(0);
+      journal.position(0);
+      numJournaled = 0;
+      numJournaledApplied = 0;
+    } else if (numJournaledApplied > MAX_NUM_APPLIED_ENTRIES) {
+      rewriteJournal();
+    } else {
+      // Not forced, a checkpoint lost by a crash only makes applied transitions replayed
+      write(toBytes(new Checkpoint(numJournaledApplied)));
+    }
+  }
+
+  private void apply(JournalEntry entry) throws MmaException {
+    if (entry.partitionValuesList == null) {
+      mmaMetaManager.updateStatus(entry.db, entry.tbl, entry.status);
+    } else {
+      mmaMetaManager.updateStatus(entry.db, entry.tbl, entry.partitionValuesList, entry.status);
+    }
+  }
+
+  /**
+   * Transitions of removed jobs can never be applied. If the meta DB is not available, the job
+   * is assumed to exist.
+   */
+  private boolean jobExists(JournalEntry entry) {
+    try {
+      return mmaMetaManager.hasMigrationJob(entry.db, entry.tbl);
+    } catch (Throwable e) {
+      return true;
+    }
+  }
+
+  /**
+   * Wait until all appended transitions are applied
+   */
+  private synchronized void awaitApplied() throws MmaException {
+    while (!unapplied.isEmpty()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MmaException("Interrupted while waiting for status journal", e);
+      }
+    }
+  }
+
+  private synchronized Overlay getOverlay() {
+    Overlay overlay = new Overlay();
+    unapplied.forEach(overlay::add);
+    return overlay;
+  }
+
+  private class Writer extends Thread {
+
+    Writer() {
+      super("StatusJournalWriter");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      LOG.info("StatusJournalWriter starts");
+      while (true) {
+        List<JournalEntry> batch;
+        synchronized (JournaledMmaMetaManager.this) {
+          while (keepRunning && unapplied.isEmpty()) {
+            try {
+              JournaledMmaMetaManager.this.wait();
+            } catch (InterruptedException ignore) {
+            }
+          }
+          if (unapplied.isEmpty()) {
+            break;
+          }
+          batch = new ArrayList<>(
+              unapplied.subList(0, Math.min(MAX_BATCH_SIZE, unapplied.size())));
+        }
+
+        int numApplied = applyBatch(batch);
+
+        synchronized (JournaledMmaMetaManager.this) {
+          for (int i = 0; i < numApplied; i++) {
+            unapplied.removeFirst();
+          }
+          if (numApplied > 0) {
+            try {
+              checkpoint(numApplied);
+            } catch (IOException e) {
+              // Applied transitions left in the journal are applied again after restarting
+              LOG.warn("Checkpointing status journal failed", e);
+            }
+          }
+          JournaledMmaMetaManager.this.notifyAll();
+        }
+
+        if (numApplied < batch.size()) {
+          // Shutting down while the meta DB is not available, the rest are left in the journal
+          LOG.warn("Stop applying journal entries, number of entries left: {}",
+                   batch.size() - numApplied);
+          break;
+        }
+      }
+      LOG.info("StatusJournalWriter stops");
+    }
+
+    /**
+     * Apply transitions in order, adjacent transitions are merged.
+     *
+     * @return Number of transitions applied, which is less than the size of the batch only if
+     * shutting down
+     */
+    private int applyBatch(List<JournalEntry> batch) {
+      List<JournalEntry> merged = new ArrayList<>(batch.size());
+      List<Integer> mergedCounts = new ArrayList<>(batch.size());
+      for (JournalEntry entry : batch) {
+        if (merged.isEmpty() || !merged.get(merged.size() - 1).merge(entry)) {
+          merged.add(entry.copy());
+          mergedCounts.add(1);
+        } else {
+          mergedCounts.set(mergedCounts.size() - 1, mergedCounts.get(mergedCounts.size() - 1) + 1);
+        }
+      }
+      LOG.debug("Apply journal entries, number: {}, merged: {}", batch.size(), merged.size());
+
+      int numApplied = 0;
+      for (int i = 0; i < merged.size(); i++) {
+        if (!applyWithRetry(merged.get(i))) {
+          break;
+        }
+        numApplied += mergedCounts.get(i);
+      }
+      return numApplied;
+    }
+
+    /**
+     * Retry with backoff until the transition is applied or the job is removed. Gives up only if
+     * shutting down.
+     */
+    private boolean applyWithRetry(JournalEntry entry) {
+      long retryIntervalMs = INIT_RETRY_INTERVAL_MS;
+      for (int attempt = 1; ; attempt++) {
+        try {
+          apply(entry);
+          return true;
+        } catch (Throwable e) {
+          LOG.error("Applying journal entry failed, db: {}, tbl: {}, status: {}, attempt: {}",
+                    entry.db, entry.tbl, entry.status, attempt, e);
+        }
+        if (!jobExists(entry)) {
+          LOG.warn("Job removed, skip journal entry, db: {}, tbl: {}", entry.db, entry.tbl);
+          return true;
+        }
+
+        synchronized (JournaledMmaMetaManager.this) {
+          if (!keepRunning) {
+            return false;
+          }
+          try {
+            JournaledMmaMetaManager.this.wait(retryIntervalMs);
+          } catch (InterruptedException ignore) {
+          }
+        }
+        retryIntervalMs = Math.min(retryIntervalMs * 2, MAX_RETRY_INTERVAL_MS);
+      }
+    }
+  }
+
+  @Override
+  public void updateStatus(String db, String tbl, MigrationStatus status) throws MmaException {
+    if (db == null || tbl == null || status == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' or 'status' cannot be null");
+    }
+    append(new JournalEntry(db.toLowerCase(), tbl.toLowerCase(), null, status));
+  }
+
+  @Override
+  public void updateStatus(
+      String db,
+      String tbl,
+      List<List<String>> partitionValuesList,
+      MigrationStatus status) throws MmaException {
+    if (db == null || tbl == null || partitionValuesList == null || status == null) {
+      throw new IllegalArgumentException(
+          "'db' or 'tbl' or 'partitionValuesList' or 'status' cannot be null");
+    }
+    append(new JournalEntry(
+        db.toLowerCase(), tbl.toLowerCase(), new ArrayList<>(partitionValuesList), status));
+  }
+
+  @Override
+  public void addMigrationJob(TableMigrationConfig config) throws MmaException {
+    awaitApplied();
+    mmaMetaManager.addMigrationJob(config);
+  }
+
+  @Override
+  public void resetMigrationJobPartitions(String db,
+                                          String tbl,
+                                          List<List<String>> partitionValuesList)
+      throws MmaException {
+    awaitApplied();
+    mmaMetaManager.resetMigrationJobPartitions(db, tbl, partitionValuesList);
+  }
+
+  @Override
+  public void invalidateTableMeta(String db, String tbl) {
+    mmaMetaManager.invalidateTableMeta(db, tbl);
+  }
+
+  @Override
+  public void addBackupJob(ObjectExportConfig config) throws MmaException {
+    awaitApplied();
+    mmaMetaManager.addBackupJob(config);
+  }
+
+  @Override
+  public void addObjectRestoreJob(ObjectRestoreConfig config) throws MmaException {
+    awaitApplied();
+    mmaMetaManager.addObjectRestoreJob(config);
+  }
+
+  @Override
+  public void addDatabaseRestoreJob(DatabaseRestoreConfig config) throws MmaException {
+    awaitApplied();
+    mmaMetaManager.addDatabaseRestoreJob(config);
+  }
+
+  @Override
+  public void mergeJobInfoIntoRestoreDB(RestoreTaskInfo taskInfo) throws MmaException {
+    mmaMetaManager.mergeJobInfoIntoRestoreDB(taskInfo);
+  }
+
+  @Override
+  public void mergeJobInfosIntoRestoreDB(List<RestoreTaskInfo> taskInfos) throws MmaException {
+    mmaMetaManager.mergeJobInfosIntoRestoreDB(taskInfos);
+  }
+
+  @Override
+  public void updateStatusInRestoreDB(RestoreTaskInfo taskInfo, MigrationStatus newStatus)
+      throws MmaException {
+    mmaMetaManager.updateStatusInRestoreDB(taskInfo, newStatus);
+  }
+
+  @Override
+  public void removeMigrationJob(String db, String tbl) throws MmaException {
+    awaitApplied();
+    mmaMetaManager.removeMigrationJob(db, tbl);
+  }
+
+  @Override
+  public boolean hasMigrationJob(String db, String tbl) throws MmaException {
+    return mmaMetaManager.hasMigrationJob(db, tbl);
+  }
+
+  @Override
+  public JobInfo getMigrationJob(String db, String tbl) throws MmaException {
+    return mmaMetaManager.getMigrationJob(db, tbl);
+  }
+
+  @Override
+  public List<MmaConfig.JobConfig> listMigrationJobs(int limit) throws MmaException {
+    return mmaMetaManager.listMigrationJobs(limit);
+  }
+
+  @Override
+  public List<MmaConfig.JobConfig> listMigrationJobs(MigrationStatus status, int limit)
+      throws MmaException {
+    return mmaMetaManager.listMigrationJobs(status, limit);
+  }
+
+  @Override
+  public List<RestoreTaskInfo> listRestoreJobs(MetaCondition condition, int limit)
+      throws MmaException {
+    return mmaMetaManager.listRestoreJobs(condition, limit);
+  }
+
+  @Override
+  public void removeRestoreJob(String uniqueId) throws MmaException {
+    mmaMetaManager.removeRestoreJob(uniqueId);
+  }
+
+  @Override
+  public Map<String, List<String>> listTemporaryTables(MetaCondition condition, int limit)
+      throws MmaException {
+    return mmaMetaManager.listTemporaryTables(condition, limit);
+  }
+
+  @Override
+  public void mergeTableInfoIntoTemporaryTableDB(String uniqueId, String db, String tbl) {
+    mmaMetaManager.mergeTableInfoIntoTemporaryTableDB(uniqueId, db, tbl);
+  }
+
+  @Override
+  public void removeTemporaryTableMeta(String uniqueId, String db, String tbl)
+      throws MmaException {
+    mmaMetaManager.removeTemporaryTableMeta(uniqueId, db, tbl);
+  }
+
+  @Override
+  public MigrationStatus getStatus(String db, String tbl) throws MmaException {
+    MigrationStatus status = getOverlay().getStatus(db, tbl);
+    return status != null ? status : mmaMetaManager.getStatus(db, tbl);
+  }
+
+  @Override
+  public MigrationStatus getStatus(String db, String tbl, List<String> partitionValues)
+      throws MmaException {
+    MigrationStatus status = getOverlay().getStatus(db, tbl, partitionValues);
+    return status != null ? status : mmaMetaManager.getStatus(db, tbl, partitionValues);
+  }
+
+  @Override
+  public MigrationProgress getProgress(String db, String tbl) throws MmaException {
+    MigrationProgress progress = mmaMetaManager.getProgress(db, tbl);
+    Map<List<String>, MigrationStatus> partitionStatuses =
+        getOverlay().getPartitionStatuses(db, tbl);
+    if (progress == null || partitionStatuses.isEmpty()) {
+      return progress;
+    }
+
+    Map<MigrationStatus, Integer> counts = new HashMap<>();
+    counts.put(MigrationStatus.PENDING, progress.getNumPendingPartitions());
+    counts.put(MigrationStatus.RUNNING, progress.getNumRunningPartitions());
+    counts.put(MigrationStatus.SUCCEEDED, progress.getNumSucceededPartitions());
+    counts.put(MigrationStatus.FAILED, progress.getNumFailedPartitions());
+    for (Map.Entry<List<String>, MigrationStatus> entry : partitionStatuses.entrySet()) {
+      move(counts, mmaMetaManager.getStatus(db, tbl, entry.getKey()), entry.getValue());
+    }
+    return new MigrationProgress(
+        counts.get(MigrationStatus.PENDING),
+        counts.get(MigrationStatus.RUNNING),
+        counts.get(MigrationStatus.SUCCEEDED),
+        counts.get(MigrationStatus.FAILED));
+  }
+
+  @Override
+  public Map<MigrationStatus, Integer> getCounts() throws MmaException {
+    Overlay overlay = getOverlay();
+    Map<MigrationStatus, Integer> counts = new HashMap<>(mmaMetaManager.getCounts());
+    for (Map.Entry<String, MigrationStatus> entry : overlay.tableStatuses.entrySet()) {
+      String[] dbAndTbl = entry.getKey().split("\\.", 2);
+      move(counts, mmaMetaManager.getStatus(dbAndTbl[0], dbAndTbl[1]), entry.getValue());
+    }
+    return counts;
+  }
+
+  /**
+   * Move one from the count of a status to the count of another
+   */
+  private static void move(
+      Map<MigrationStatus, Integer> counts,
+      MigrationStatus from,
+      MigrationStatus to) {
+    if (from == null || from.equals(to)) {
+      return;
+    }
+    counts.merge(from, -1, Integer::sum);
+    counts.merge(to, 1, Integer::sum);
+  }
+
+  @Override
+  public Long getCursor(String name) throws MmaException {
+    return mmaMetaManager.getCursor(name);
+  }
+
+  @Override
+  public void setCursor(String name, long position) throws MmaException {
+    mmaMetaManager.setCursor(name, position);
+  }
+
+  @Override
+  public MmaConfig.JobConfig getConfig(String db, String tbl) throws MmaException {
+    return mmaMetaManager.getConfig(db, tbl);
+  }
+
+  @Override
+  public List<MetaSource.TableMetaModel> getPendingTables(int maxNumTables)
+      throws MmaException {
+    Overlay overlay = getOverlay();
+    List<MetaSource.TableMetaModel> ret = new LinkedList<>();
+    for (MetaSource.TableMetaModel tableMetaModel :
+        mmaMetaManager.getPendingTables(maxNumTables)) {
+      if (removeNotPending(overlay, tableMetaModel)) {
+        ret.add(tableMetaModel);
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public MetaSource.TableMetaModel getNextPendingTable() throws MmaException {
+    MetaSource.TableMetaModel tableMetaModel = mmaMetaManager.getNextPendingTable();
+    if (tableMetaModel != null && removeNotPending(getOverlay(), tableMetaModel)) {
+      return tableMetaModel;
+    }
+    return null;
+  }
+
+  /**
+   * Remove partitions that are no longer pending according to transitions not applied yet, e.g.
+   * running ones whose claims timed out while the transitions are waiting to be applied.
+   *
+   * @return False if the whole table is no longer pending
+   */
+  private static boolean removeNotPending(
+      Overlay overlay,
+      MetaSource.TableMetaModel tableMetaModel) {
+    String db = tableMetaModel.databaseName;
+    String tbl = tableMetaModel.tableName;
+    MigrationStatus tableStatus = overlay.getStatus(db, tbl);
+    if (tableStatus != null && !MigrationStatus.PENDING.equals(tableStatus)) {
+      LOG.info("Skip table, db: {}, tbl: {}, status: {}", db, tbl, tableStatus);
+      return false;
+    }
+    if (tableMetaModel.partitions.isEmpty()) {
+      return true;
+    }
+    List<MetaSource.PartitionMetaModel> partitions = tableMetaModel.partitions
+        .stream()
+        .filter(p -> {
+          MigrationStatus status = overlay.getStatus(db, tbl, p.partitionValues);
+          return status == null || MigrationStatus.PENDING.equals(status);
+        })
+        .collect(Collectors.toList());
+    if (partitions.size() < tableMetaModel.partitions.size()) {
+      LOG.info("Skip partitions not pending, db: {}, tbl: {}, number: {}",
+               db, tbl, tableMetaModel.partitions.size() - partitions.size());
+      tableMetaModel.partitions = partitions;
+    }
+    return !partitions.isEmpty();
+  }
+
+  @Override
+  public void shutdown() throws MmaException {
+    LOG.info("Enter shutdown");
+    synchronized (this) {
+      keepRunning = false;
+      notifyAll();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException ignore) {
+    }
+    try {
+      journal.close();
+    } catch (IOException e) {
+      LOG.warn("Closing status journal failed", e);
+    }
+    mmaMetaManager.shutdown();
+    LOG.info("Leave shutdown");
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Condition on rows of a meta table, a conjunction of "column IN (values)". Values are always
+ * bound as parameters of a PreparedStatement, so they never need to be quoted or escaped.
+ */
+public class MetaCondition {
+
+  private final Map<String, List<String>> columnToValues = new LinkedHashMap<>();
+
+  /**
+   * Require column to be the given value
+   */
+  public MetaCondition eq(String column, String value) {
+    return in(column, Collections.singletonList(value));
+  }
+
+  /**
+   * Require column to be one of the given values
+   */
+  public MetaCondition in(String column, Collection<String> values) {
+    if (column == null || values == null || values.isEmpty()) {
+      throw new IllegalArgumentException("'column' or 'values' cannot be null or empty");
+    }
+    columnToValues.put(column.toLowerCase(), new ArrayList<>(values));
+    return this;
+  }
+
+  /**
+   * Return the WHERE clause with placeholders, or an empty string if there is no predicate
+   */
+  public String toSql() {
+    if (columnToValues.isEmpty()) {
+      return "";
+    }
+    return columnToValues
+        .entrySet()
+        .stream()
+        .map(e -> e.getValue().size() == 1
+            ? e.getKey() + "=?"
+            : e.getKey() + " IN (" + String.join(", ", Collections.nCopies(e.getValue().size(), "?")) + ")")
+        .collect(Collectors.joining(" AND ", " WHERE ", ""));
+  }
+
+  /**
+   * Bind values to the placeholders returned by {@link #toSql()}
+   *
+   * @param startIndex index of the first placeholder
+   * @return index of the next placeholder
+   */
+  public int setParameters(PreparedStatement preparedStatement, int startIndex)
+      throws SQLException {
+    int index = startIndex;
+    for (List<String> values : columnToValues.values()) {
+      for (String value : values) {
+        preparedStatement.setString(index++, value);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Return true if a row satisfies this condition
+   *
+   * @param row column name in lower case to value
+   */
+  public boolean matches(Map<String, String> row) {
+    for (Map.Entry<String, List<String>> entry : columnToValues.entrySet()) {
+      if (!entry.getValue().contains(row.get(entry.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return columnToValues.toString();
+  }
+}
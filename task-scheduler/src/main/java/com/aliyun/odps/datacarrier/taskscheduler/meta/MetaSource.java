@@ -93,6 +93,7 @@ public interface MetaSource {
     public Long createTime;
     public Long lastModifiedTime;
     public Long size;
+    public Long numFiles;
   }
 
   /**
@@ -187,6 +188,52 @@ public interface MetaSource {
                                       String tableName,
                                       List<String> partitionValues) throws Exception;
 
+  /**
+   * Get metadata of specified partitions. Partitions that don't exist are skipped
+   *
+   * @param databaseName        Database name
+   * @param tableName           Table name
+   * @param partitionValuesList List of partition values
+   * @return Metadata of existing partitions
+   * @throws Exception
+   */
+  List<PartitionMetaModel> getPartitionMetas(String databaseName,
+                                             String tableName,
+                                             List<List<String>> partitionValuesList)
+      throws Exception;
+
+  /**
+   * Get metadata of all partitions of specified table, without sizes, which are expensive to get
+   *
+   * @param databaseName Database name
+   * @param tableName    Table name
+   * @return Metadata of all partitions, size not included
+   * @throws Exception
+   */
+  List<PartitionMetaModel> listPartitionMetasWithoutSize(String databaseName,
+                                                         String tableName) throws Exception;
+
+  /**
+   * Drop cached metadata of specified table and its partitions, if any
+   *
+   * @param databaseName Database name
+   * @param tableName    Table name
+   */
+  default void invalidate(String databaseName, String tableName) {
+  }
+
+  /**
+   * Drop cached metadata of specified table and its partitions, unless the table is loaded
+   * within given seconds
+   *
+   * @param databaseName  Database name
+   * @param tableName     Table name
+   * @param maxAgeSeconds Max age of cached metadata to keep
+   */
+  default void invalidate(String databaseName, String tableName, long maxAgeSeconds) {
+    invalidate(databaseName, tableName);
+  }
+
   /**
    * Shutdown
    */
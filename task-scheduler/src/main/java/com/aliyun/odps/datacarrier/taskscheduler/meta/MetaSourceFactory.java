@@ -31,15 +31,13 @@ import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
 public class MetaSourceFactory {
 
   public static MetaSource getMetaSource() throws MetaException {
+    return new CachingMetaSource(getUncachedMetaSource());
+  }
+
+  private static MetaSource getUncachedMetaSource() throws MetaException {
     DataSource dataSource = MmaServerConfig.getInstance().getDataSource();
     if (DataSource.Hive.equals(dataSource)) {
-      HiveConfig hiveConfig = MmaServerConfig.getInstance().getHiveConfig();
-      Map<String, String> hdfsConfig = MmaServerConfig.getInstance().getHdfsConfig();
-      return new HiveMetaSource(hiveConfig.getHmsThriftAddr(),
-                                hdfsConfig,
-                                hiveConfig.getKrbPrincipal(),
-                                hiveConfig.getKeyTab(),
-                                hiveConfig.getKrbSystemProperties());
+      return getHiveMetaSource();
     } else if (DataSource.ODPS.equals(dataSource)) {
       OdpsConfig odpsConfig = MmaServerConfig.getInstance().getOdpsConfig();
       return new OdpsMetaSource(odpsConfig.getAccessId(),
@@ -50,4 +48,17 @@ public class MetaSourceFactory {
       throw new IllegalArgumentException("Unsupported datasource: " + dataSource);
     }
   }
+
+  /**
+   * Get a Hive meta source, for HMS features beyond {@link MetaSource}, like the notification log
+   */
+  public static HiveMetaSource getHiveMetaSource() throws MetaException {
+    HiveConfig hiveConfig = MmaServerConfig.getInstance().getHiveConfig();
+    Map<String, String> hdfsConfig = MmaServerConfig.getInstance().getHdfsConfig();
+    return new HiveMetaSource(hiveConfig.getHmsThriftAddr(),
+                              hdfsConfig,
+                              hiveConfig.getKrbPrincipal(),
+                              hiveConfig.getKeyTab(),
+                              hiveConfig.getKrbSystemProperties());
+  }
 }
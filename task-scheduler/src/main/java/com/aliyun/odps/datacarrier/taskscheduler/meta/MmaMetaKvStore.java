@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import com.aliyun.odps.datacarrier.taskscheduler.Constants;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.JobInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.MigrationJobPtInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.RestoreTaskInfo;
+
+/**
+ * MMA metadata in an embedded key-value store, backed by H2's MVStore.
+ *
+ * MVStore is log structured. Every commit appends a chunk of changed pages to the end of the
+ * file, so a commit costs one sequential write, and the file is always recoverable to the last
+ * commit. Space of obsolete chunks is reclaimed by {@link #compact()}.
+ *
+ * Modifications must go through {@link #update(Update)}, which applies them atomically: they
+ * are committed together, or rolled back together on failure. Reads can be issued any time.
+ *
+ * Keys are strings joined by {@link #SEP}. Values are arrays of primitives, which are
+ * serialized by MVStore in a compact binary form. Job configs are kept apart from job statuses,
+ * so that status transitions don't rewrite configs.
+ */
+public class MmaMetaKvStore implements AutoCloseable {
+
+  private static final Logger LOG = LogManager.getLogger(MmaMetaKvStore.class);
+
+  private static final String SEP = "\u0000";
+
+  private static final String JOB_STATUS_MAP_NAME = "job_status";
+  private static final String JOB_CONFIG_MAP_NAME = "job_config";
+  private static final String PT_STATUS_MAP_NAME = "pt_status";
+  private static final String PENDING_QUEUE_MAP_NAME = "pending_queue";
+  private static final String RESTORE_TASK_MAP_NAME = "restore_task";
+  private static final String TEMPORARY_TABLE_MAP_NAME = "temporary_table";
+  private static final String CURSOR_MAP_NAME = "cursor";
+
+  /**
+   * Chunks whose fill rate is lower than this are rewritten during compaction
+   */
+  private static final int TARGET_FILL_RATE = 50;
+  /**
+   * Max number of bytes rewritten in one compaction
+   */
+  private static final int MAX_COMPACTION_WRITE_BYTES = 16 * 1024 * 1024;
+
+  /**
+   * Modifications applied by {@link #update(Update)}
+   */
+  public interface Update<T> {
+    T apply() throws Exception;
+  }
+
+  private final MVStore store;
+
+  /**
+   * db + SEP + tbl => [isPartitioned, status, attemptTimes, lastModifiedTime]
+   */
+  private final MVMap<String, Object[]> jobStatusMap;
+  /**
+   * db + SEP + tbl => job config encoded by JobConfigCodec
+   */
+  private final MVMap<String, byte[]> jobConfigMap;
+  /**
+   * db + SEP + tbl + SEP + partition values joined by SEP => [status, attemptTimes,
+   * lastModifiedTime]
+   */
+  private final MVMap<String, Object[]> ptStatusMap;
+  /**
+   * db + SEP + tbl => [enqueueTime, claimTime]
+   */
+  private final MVMap<String, Object[]> pendingQueueMap;
+  /**
+   * uniqueId + SEP + type + SEP + db + SEP + object => [encoded job config, status,
+   * attemptTimes, lastModifiedTime]
+   */
+  private final MVMap<String, Object[]> restoreTaskMap;
+  /**
+   * uniqueId + SEP + db + SEP + tbl => empty string
+   */
+  private final MVMap<String, String> temporaryTableMap;
+  /**
+   * cursor name => position
+   */
+  private final MVMap<String, Long> cursorMap;
+
+  /**
+   * Decoded job configs, which are immutable until the job is added again
+   */
+  private final Map<String, MmaConfig.JobConfig> jobConfigCache = new ConcurrentHashMap<>();
+
+  public MmaMetaKvStore(String path) {
+    LOG.info("Open MMA meta store, path: {}", path);
+    // Commits are issued by update(), so that a half applied update is never persisted
+    store = new MVStore.Builder()
+        .fileName(path)
+        .autoCommitDisabled()
+        .open();
+    jobStatusMap = store.openMap(JOB_STATUS_MAP_NAME);
+    jobConfigMap = store.openMap(JOB_CONFIG_MAP_NAME);
+    ptStatusMap = store.openMap(PT_STATUS_MAP_NAME);
+    pendingQueueMap = store.openMap(PENDING_QUEUE_MAP_NAME);
+    restoreTaskMap = store.openMap(RESTORE_TASK_MAP_NAME);
+    temporaryTableMap = store.openMap(TEMPORARY_TABLE_MAP_NAME);
+    cursorMap = store.openMap(CURSOR_MAP_NAME);
+    store.commit();
+  }
+
+  /**
+   * Apply modifications atomically. Updates are serialized, so an update can read the
+   * records it is going to modify without being interfered.
+   */
+  public synchronized <T> T update(Update<T> update) throws Exception {
+    try {
+      T ret = update.apply();
+      store.commit();
+      return ret;
+    } catch (Throwable e) {
+      store.rollback();
+      // Parsed configs of rolled back jobs could be stale
+      jobConfigCache.clear();
+      throw e;
+    }
+  }
+
+  /**
+   * Rewrite sparse chunks, so that the space of obsolete records can be reused.
+   */
+  public synchronized void compact() {
+    int fillRate = store.getChunksFillRate();
+    if (fillRate < TARGET_FILL_RATE) {
+      LOG.info("Compact MMA meta store, chunks fill rate: {}", fillRate);
+      store.compact(TARGET_FILL_RATE, MAX_COMPACTION_WRITE_BYTES);
+      store.commit();
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    store.close();
+  }
+
+  private static String getKey(String... parts) {
+    return String.join(SEP, parts);
+  }
+
+  private static String getKey(String db, String tbl, List<String> partitionValues) {
+    List<String> parts = new ArrayList<>(partitionValues.size() + 2);
+    parts.add(db);
+    parts.add(tbl);
+    parts.addAll(partitionValues);
+    return String.join(SEP, parts);
+  }
+
+  private static String[] splitKey(String key) {
+    return key.split(SEP, -1);
+  }
+
+  /**
+   * Iterate over entries whose keys start with given prefix.
+   */
+  private static <V> List<Map.Entry<String, V>> scan(MVMap<String, V> map, String prefix) {
+    List<Map.Entry<String, V>> ret = new LinkedList<>();
+    Cursor<String, V> cursor = map.cursor(prefix);
+    while (cursor.hasNext()) {
+      String key = cursor.next();
+      if (!key.startsWith(prefix)) {
+        break;
+      }
+      ret.add(new AbstractMap.SimpleImmutableEntry<>(key, cursor.getValue()));
+    }
+    return ret;
+  }
+
+  // Jobs
+
+  public JobInfo getJob(String db, String tbl) {
+    String key = getKey(db, tbl);
+    Object[] value = jobStatusMap.get(key);
+    if (value == null) {
+      return null;
+    }
+    return toJobInfo(db, tbl, value, getJobConfig(key));
+  }
+
+  /**
+   * Return jobs ordered by db and tbl
+   */
+  public List<JobInfo> listJobs(MigrationStatus status) {
+    List<JobInfo> ret = new LinkedList<>();
+    for (Map.Entry<String, Object[]> entry : jobStatusMap.entrySet()) {
+      Object[] value = entry.getValue();
+      if (status != null && !status.toString().equals(value[1])) {
+        continue;
+      }
+      String[] parts = splitKey(entry.getKey());
+      ret.add(toJobInfo(parts[0], parts[1], value, getJobConfig(entry.getKey())));
+    }
+    return ret;
+  }
+
+  /**
+   * Return the number of jobs in each status, job configs are not decoded
+   */
+  public Map<MigrationStatus, Integer> getJobStatusDistribution() {
+    Map<MigrationStatus, Integer> ret = new HashMap<>();
+    for (Object[] value : jobStatusMap.values()) {
+      ret.merge(MigrationStatus.valueOf((String) value[1]), 1, Integer::sum);
+    }
+    return ret;
+  }
+
+  public void putJob(JobInfo jobInfo) {
+    String key = getKey(jobInfo.getDb(), jobInfo.getTbl());
+    jobConfigMap.put(key, JobConfigCodec.encode(jobInfo.getJobConfig()));
+    jobConfigCache.put(key, jobInfo.getJobConfig());
+    putJobStatus(jobInfo);
+  }
+
+  /**
+   * Update a job without rewriting its config
+   */
+  public void putJobStatus(JobInfo jobInfo) {
+    jobStatusMap.put(
+        getKey(jobInfo.getDb(), jobInfo.getTbl()),
+        new Object[] {
+            jobInfo.isPartitioned(),
+            jobInfo.getStatus().toString(),
+            jobInfo.getAttemptTimes(),
+            jobInfo.getLastModifiedTime()});
+  }
+
+  public void removeJob(String db, String tbl) {
+    String key = getKey(db, tbl);
+    jobStatusMap.remove(key);
+    jobConfigMap.remove(key);
+    jobConfigCache.remove(key);
+  }
+
+  private MmaConfig.JobConfig getJobConfig(String key) {
+    return jobConfigCache.computeIfAbsent(key, k -> JobConfigCodec.decode(jobConfigMap.get(k)));
+  }
+
+  private static JobInfo toJobInfo(
+      String db,
+      String tbl,
+      Object[] value,
+      MmaConfig.JobConfig jobConfig) {
+    return new JobInfo(db,
+                       tbl,
+                       (Boolean) value[0],
+                       jobConfig,
+                       MigrationStatus.valueOf((String) value[1]),
+                       (Integer) value[2],
+                       (Long) value[3]);
+  }
+
+  // Partitions
+
+  public MigrationJobPtInfo getPartition(String db, String tbl, List<String> partitionValues) {
+    Object[] value = ptStatusMap.get(getKey(db, tbl, partitionValues));
+    if (value == null) {
+      return null;
+    }
+    return toJobPtInfo(partitionValues, value);
+  }
+
+  /**
+   * Return partitions of a table, status could be null, which means any status
+   */
+  public List<MigrationJobPtInfo> listPartitions(String db, String tbl, MigrationStatus status) {
+    String prefix = getKey(db, tbl) + SEP;
+    List<MigrationJobPtInfo> ret = new LinkedList<>();
+    for (Map.Entry<String, Object[]> entry : scan(ptStatusMap, prefix)) {
+      Object[] value = entry.getValue();
+      if (status != null && !status.toString().equals(value[0])) {
+        continue;
+      }
+      List<String> partitionValues =
+          Arrays.asList(splitKey(entry.getKey().substring(prefix.length())));
+      ret.add(toJobPtInfo(partitionValues, value));
+    }
+    return ret;
+  }
+
+  public void putPartitions(String db, String tbl, List<MigrationJobPtInfo> jobPtInfos) {
+    for (MigrationJobPtInfo jobPtInfo : jobPtInfos) {
+      ptStatusMap.put(
+          getKey(db, tbl, jobPtInfo.getPartitionValues()),
+          new Object[] {
+              jobPtInfo.getStatus().toString(),
+              jobPtInfo.getAttemptTimes(),
+              jobPtInfo.getLastModifiedTime()});
+    }
+  }
+
+  public void removePartitions(String db, String tbl) {
+    for (Map.Entry<String, Object[]> entry : scan(ptStatusMap, getKey(db, tbl) + SEP)) {
+      ptStatusMap.remove(entry.getKey());
+    }
+  }
+
+  public Map<MigrationStatus, Integer> getPartitionStatusDistribution(String db, String tbl) {
+    Map<MigrationStatus, Integer> ret = new HashMap<>();
+    for (Map.Entry<String, Object[]> entry : scan(ptStatusMap, getKey(db, tbl) + SEP)) {
+      ret.merge(MigrationStatus.valueOf((String) entry.getValue()[0]), 1, Integer::sum);
+    }
+    return ret;
+  }
+
+  private static MigrationJobPtInfo toJobPtInfo(List<String> partitionValues, Object[] value) {
+    return new MigrationJobPtInfo(partitionValues,
+                                  MigrationStatus.valueOf((String) value[0]),
+                                  (Integer) value[1],
+                                  (Long) value[2]);
+  }
+
+  // Pending queue, see MMA_PENDING_QUEUE
+
+  /**
+   * Add a job to the pending queue. If the job is already in the queue, it is moved to the tail
+   * and its claim is released.
+   */
+  public void enqueue(String db, String tbl) {
+    pendingQueueMap.put(
+        getKey(db, tbl),
+        new Object[] {
+            MmaMetaManagerDbImplUtils.getEnqueueTime(),
+            Constants.MMA_PENDING_QUEUE_NA_VALUE_CLAIM_TIME});
+  }
+
+  public void dequeue(String db, String tbl) {
+    pendingQueueMap.remove(getKey(db, tbl));
+  }
+
+  /**
+   * Enqueue all the jobs in PENDING status, none of them is claimed.
+   */
+  public void rebuildPendingQueue() {
+    pendingQueueMap.clear();
+    for (JobInfo jobInfo : listJobs(MigrationStatus.PENDING)) {
+      enqueue(jobInfo.getDb(), jobInfo.getTbl());
+    }
+  }
+
+  /**
+   * Claim jobs in the order they are enqueued, see
+   * {@link MmaMetaManagerDbImplUtils#claimFromMmaPendingQueue}. Must be called in an update.
+   */
+  public List<JobInfo> claim(int limit, long claimTimeoutMs) {
+    long now = System.currentTimeMillis();
+    List<Map.Entry<String, Object[]>> claimable = new ArrayList<>();
+    for (Map.Entry<String, Object[]> entry : pendingQueueMap.entrySet()) {
+      if ((Long) entry.getValue()[1] < now - claimTimeoutMs) {
+        claimable.add(entry);
+      }
+    }
+    claimable.sort(Comparator.comparing(e -> (Long) e.getValue()[0]));
+
+    List<JobInfo> ret = new LinkedList<>();
+    for (Map.Entry<String, Object[]> entry : claimable) {
+      if (ret.size() >= limit) {
+        break;
+      }
+      String[] parts = splitKey(entry.getKey());
+      JobInfo jobInfo = getJob(parts[0], parts[1]);
+      if (jobInfo == null) {
+        continue;
+      }
+      pendingQueueMap.put(entry.getKey(), new Object[] {entry.getValue()[0], now});
+      ret.add(jobInfo);
+    }
+    return ret;
+  }
+
+  // Restore tasks
+
+  public List<RestoreTaskInfo> listRestoreTasks() {
+    List<RestoreTaskInfo> ret = new LinkedList<>();
+    for (Map.Entry<String, Object[]> entry : restoreTaskMap.entrySet()) {
+      ret.add(toRestoreTaskInfo(splitKey(entry.getKey()), entry.getValue()));
+    }
+    return ret;
+  }
+
+  public RestoreTaskInfo getRestoreTask(String uniqueId, String type, String db, String object) {
+    Object[] value = restoreTaskMap.get(getKey(uniqueId, type, db, object));
+    if (value == null) {
+      return null;
+    }
+    return toRestoreTaskInfo(new String[] {uniqueId, type, db, object}, value);
+  }
+
+  public void putRestoreTask(RestoreTaskInfo taskInfo) {
+    restoreTaskMap.put(
+        getKey(taskInfo.getUniqueId(), taskInfo.getType(), taskInfo.getDb(), taskInfo.getObject()),
+        new Object[] {
+            JobConfigCodec.encode(taskInfo.getJobConfig()),
+            taskInfo.getStatus().toString(),
+            taskInfo.getAttemptTimes(),
+            taskInfo.getLastModifiedTime()});
+  }
+
+  public void removeRestoreTasks(String uniqueId) {
+    for (Map.Entry<String, Object[]> entry : scan(restoreTaskMap, uniqueId + SEP)) {
+      restoreTaskMap.remove(entry.getKey());
+    }
+  }
+
+  public void removeRestoreTask(RestoreTaskInfo taskInfo) {
+    restoreTaskMap.remove(
+        getKey(taskInfo.getUniqueId(), taskInfo.getType(), taskInfo.getDb(), taskInfo.getObject()));
+  }
+
+  private static RestoreTaskInfo toRestoreTaskInfo(String[] keyParts, Object[] value) {
+    return new RestoreTaskInfo(
+        keyParts[0],
+        keyParts[1],
+        keyParts[2],
+        keyParts[3],
+        JobConfigCodec.decode((byte[]) value[0]),
+        MigrationStatus.valueOf((String) value[1]),
+        (Integer) value[2],
+        (Long) value[3]);
+  }
+
+  // Temporary tables
+
+  /**
+   * Return temporary tables as [uniqueId, db, tbl]
+   */
+  public List<String[]> listTemporaryTables() {
+    List<String[]> ret = new LinkedList<>();
+    for (String key : temporaryTableMap.keySet()) {
+      ret.add(splitKey(key));
+    }
+    return ret;
+  }
+
+  public void putTemporaryTable(String uniqueId, String db, String tbl) {
+    temporaryTableMap.put(getKey(uniqueId, db, tbl), "");
+  }
+
+  public void removeTemporaryTable(String uniqueId, String db, String tbl) {
+    temporaryTableMap.remove(getKey(uniqueId, db, tbl));
+  }
+
+  public Long getCursor(String name) {
+    return cursorMap.get(name);
+  }
+
+  public void putCursor(String name, long position) {
+    cursorMap.put(name, position);
+  }
+}
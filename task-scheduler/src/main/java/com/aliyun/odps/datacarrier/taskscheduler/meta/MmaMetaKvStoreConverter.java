@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.aliyun.odps.datacarrier.taskscheduler.Constants;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.JobInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.MigrationJobPtInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.RestoreTaskInfo;
+
+/**
+ * Offline tool converting an H2 meta DB to a {@link MmaMetaKvStore}. MMA server and client must
+ * be stopped while converting.
+ */
+public class MmaMetaKvStoreConverter {
+
+  private static final Logger LOG = LogManager.getLogger(MmaMetaKvStoreConverter.class);
+
+  private static final String JDBC_URL_OPT = "jdbc-url";
+  private static final String USER_OPT = "user";
+  private static final String PASSWORD_OPT = "password";
+  private static final String STORE_PATH_OPT = "store-path";
+  private static final String HELP_OPT = "help";
+
+  public static void convert(Connection conn, MmaMetaKvStore store) throws Exception {
+    List<JobInfo> jobInfos = MmaMetaManagerDbImplUtils.selectFromMmaTableMeta(conn, null, -1);
+    List<RestoreTaskInfo> restoreTaskInfos =
+        MmaMetaManagerDbImplUtils.selectFromRestoreMeta(conn, null, -1);
+
+    store.update(() -> {
+      for (JobInfo jobInfo : jobInfos) {
+        if (jobInfo.isPartitioned()) {
+          List<MigrationJobPtInfo> jobPtInfos = MmaMetaManagerDbImplUtils
+              .selectFromMmaPartitionMeta(conn, jobInfo.getDb(), jobInfo.getTbl(), null, -1);
+          store.putPartitions(jobInfo.getDb(), jobInfo.getTbl(), jobPtInfos);
+        }
+        store.putJob(jobInfo);
+      }
+      LOG.info("Converted {} jobs", jobInfos.size());
+
+      for (RestoreTaskInfo taskInfo : restoreTaskInfos) {
+        store.putRestoreTask(taskInfo);
+      }
+      LOG.info("Converted {} restore tasks", restoreTaskInfos.size());
+
+      String sql = String.format("SELECT %s, %s, %s FROM %s",
+                                 Constants.MMA_OBJ_TEMPORARY_COL_UNIQUE_ID,
+                                 Constants.MMA_OBJ_TEMPORARY_COL_PROJECT,
+                                 Constants.MMA_OBJ_TEMPORARY_COL_TABLE,
+                                 Constants.MMA_OBJ_TEMPORARY_TBL_NAME);
+      try (Statement stmt = conn.createStatement()) {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+          while (rs.next()) {
+            store.putTemporaryTable(rs.getString(1), rs.getString(2), rs.getString(3));
+          }
+        }
+      }
+
+      store.rebuildPendingQueue();
+      return null;
+    });
+  }
+
+  public static void main(String[] args) throws Exception {
+    Option jdbcUrlOption = Option
+        .builder(JDBC_URL_OPT)
+        .longOpt(JDBC_URL_OPT)
+        .argName(JDBC_URL_OPT)
+        .hasArg()
+        .required()
+        .desc("JDBC url of the H2 meta DB")
+        .build();
+    Option userOption = Option
+        .builder(USER_OPT)
+        .longOpt(USER_OPT)
+        .argName(USER_OPT)
+        .hasArg()
+        .desc("User of the H2 meta DB, 'mma' by default")
+        .build();
+    Option passwordOption = Option
+        .builder(PASSWORD_OPT)
+        .longOpt(PASSWORD_OPT)
+        .argName(PASSWORD_OPT)
+        .hasArg()
+        .desc("Password of the H2 meta DB, 'mma' by default")
+        .build();
+    Option storePathOption = Option
+        .builder(STORE_PATH_OPT)
+        .longOpt(STORE_PATH_OPT)
+        .argName(STORE_PATH_OPT)
+        .hasArg()
+        .required()
+        .desc("Path of the key-value meta store to create")
+        .build();
+    Option helpOption = Option
+        .builder("h")
+        .longOpt(HELP_OPT)
+        .argName(HELP_OPT)
+        .hasArg(false)
+        .desc("Print usage")
+        .build();
+
+    Options options = new Options()
+        .addOption(jdbcUrlOption)
+        .addOption(userOption)
+        .addOption(passwordOption)
+        .addOption(storePathOption)
+        .addOption(helpOption);
+
+    for (String arg : args) {
+      if ("-h".equals(arg) || ("--" + HELP_OPT).equals(arg)) {
+        new HelpFormatter().printHelp("mma-meta-converter", options);
+        return;
+      }
+    }
+
+    CommandLineParser parser = new DefaultParser();
+    CommandLine cmd = parser.parse(options, args);
+
+    try (Connection conn = DriverManager.getConnection(
+        cmd.getOptionValue(JDBC_URL_OPT),
+        cmd.getOptionValue(USER_OPT, "mma"),
+        cmd.getOptionValue(PASSWORD_OPT, "mma"));
+        MmaMetaKvStore store = new MmaMetaKvStore(cmd.getOptionValue(STORE_PATH_OPT))) {
+      convert(conn, store);
+    }
+  }
+}
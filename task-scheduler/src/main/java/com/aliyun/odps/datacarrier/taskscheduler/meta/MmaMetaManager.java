@@ -87,6 +87,27 @@ public interface MmaMetaManager {
    */
   void addMigrationJob(TableMigrationConfig config) throws MmaException;
 
+  /**
+   * Reset given partitions of an existing migration job to PENDING, partitions that the job
+   * doesn't have yet are added. Unlike {@link #addMigrationJob(TableMigrationConfig)}, other
+   * partitions are not listed, and the config of the job is kept.
+   *
+   * @param db database name
+   * @param tbl table name
+   * @param partitionValuesList list of partition values
+   */
+  void resetMigrationJobPartitions(String db, String tbl, List<List<String>> partitionValuesList)
+      throws MmaException;
+
+  /**
+   * Drop cached metadata of given table, so that it is loaded from the meta source again. Unlike
+   * adding a job, recently loaded metadata is dropped too, since the table is known to be modified.
+   *
+   * @param db database name
+   * @param tbl table name
+   */
+  void invalidateTableMeta(String db, String tbl);
+
   /**
    * Add a backup job of give table.
    * @param config backup config
@@ -100,6 +121,11 @@ public interface MmaMetaManager {
 
   void mergeJobInfoIntoRestoreDB(RestoreTaskInfo taskInfo) throws MmaException;
 
+  /**
+   * Merge restore jobs in one batch
+   */
+  void mergeJobInfosIntoRestoreDB(List<RestoreTaskInfo> taskInfos) throws MmaException;
+
   void updateStatusInRestoreDB(RestoreTaskInfo taskInfo,
                                MigrationStatus newStatus) throws MmaException;
 
@@ -136,11 +162,23 @@ public interface MmaMetaManager {
       MigrationStatus status,
       int limit) throws MmaException;
 
-  List<RestoreTaskInfo> listRestoreJobs(String condition, int limit) throws MmaException;
+  /**
+   * List restore jobs satisfying given condition
+   * @param condition condition on columns of restore meta, null means no condition
+   * @param limit max number of jobs, non-positive means no limit
+   */
+  List<RestoreTaskInfo> listRestoreJobs(MetaCondition condition, int limit) throws MmaException;
 
   void removeRestoreJob(String uniqueId) throws MmaException;
 
-  Map<String, List<String>> listTemporaryTables(String condition, int limit) throws MmaException;
+  /**
+   * List temporary tables satisfying given condition
+   * @param condition condition on columns of temporary table meta, null means no condition
+   * @param limit max number of tables, non-positive means no limit
+   * @return odps project to temporary tables
+   */
+  Map<String, List<String>> listTemporaryTables(MetaCondition condition, int limit)
+      throws MmaException;
 
   void mergeTableInfoIntoTemporaryTableDB(String uniqueId, String db, String tbl);
 
@@ -202,6 +240,27 @@ public interface MmaMetaManager {
    */
   MigrationProgress getProgress(String db, String tbl) throws MmaException;
 
+  /**
+   * Get the number of migration jobs in each status. Counts are maintained along with status
+   * updates, so this is cheap enough to be polled.
+   * @return status to the number of jobs in it, statuses without any job may be absent
+   */
+  Map<MigrationStatus, Integer> getCounts() throws MmaException;
+
+  /**
+   * Get position of a cursor, which tracks how far MMA has consumed an external log.
+   * @param name cursor name
+   * @return position of the cursor, or null if it has never been set
+   */
+  Long getCursor(String name) throws MmaException;
+
+  /**
+   * Set position of a cursor.
+   * @param name cursor name
+   * @param position new position
+   */
+  void setCursor(String name, long position) throws MmaException;
+
   /**
    * Get config of a migration job.
    *
@@ -212,10 +271,22 @@ public interface MmaMetaManager {
   MmaConfig.JobConfig getConfig(String db, String tbl) throws MmaException;
 
   /**
-   * Get pending migration jobs.
+   * Claim a batch of pending migration jobs. A claimed job won't be returned again unless it is
+   * re-enqueued, e.g. retried after failure, or it is not started before its claim times out.
+   * @return
+   */
+  default List<MetaSource.TableMetaModel> getPendingTables() throws MmaException {
+    return getPendingTables(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Claim at most given number of pending migration jobs. The number of jobs claimed by one call
+   * is also bounded by the implementation.
+   *
+   * @param maxNumTables max number of jobs to claim
    * @return
    */
-  List<MetaSource.TableMetaModel> getPendingTables() throws MmaException;
+  List<MetaSource.TableMetaModel> getPendingTables(int maxNumTables) throws MmaException;
 
   /**
    * Get next pending migration job.
@@ -25,12 +25,18 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
@@ -54,21 +60,71 @@ import com.zaxxer.hikari.HikariDataSource;
 
 /**
  * This class implements {@link MmaMetaManager} using a H2 embedded database.
+ *
+ * Thread-safe. Modifications of a job are serialized by the job's lock, read-only operations
+ * are not serialized.
  */
 
 public class MmaMetaManagerDbImpl implements MmaMetaManager {
 
   private static final Logger LOG = LogManager.getLogger(MmaMetaManagerDbImpl.class);
 
+  /**
+   * Number of locks protecting jobs. Jobs are mapped to locks by the hash of their names, so
+   * status transitions of different jobs can usually proceed in parallel.
+   */
+  private static final int NUM_JOB_LOCKS = 64;
+
+  /**
+   * Max number of pending jobs claimed by one {@link #getPendingTables(int)} call
+   */
+  private static final int MAX_NUM_CLAIMED_JOBS = 100;
+
+  /**
+   * A claimed job that is still in PENDING status after this timeout can be claimed again, since
+   * the claimer must have failed to start it
+   */
+  private static final long CLAIM_TIMEOUT_MS = 10 * 60 * 1000;
+
+  /**
+   * Max number of partitions whose metadata is requested at once by
+   * {@link #getPartitionMetas(MetaSource, String, String, List)}, so that a failed request affects
+   * only a batch of partitions
+   */
+  private static final int MAX_PARTITIONS_PER_META_REQUEST = 1000;
+
+  /**
+   * Number of attempts to get the metadata of a batch of partitions, before falling back to
+   * requesting them one by one
+   */
+  private static final int MAX_PARTITION_META_ATTEMPTS = 2;
+
+  /**
+   * Number of attempts of a write transaction. At SERIALIZABLE isolation, a transaction could fail
+   * to serialize with concurrent ones or time out waiting for their locks. It is rolled back then,
+   * and could simply be executed again.
+   */
+  private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+  private static final long TRANSACTION_RETRY_INTERVAL_MS = 50;
+
+  @FunctionalInterface
+  private interface Transaction<T> {
+    T execute() throws MmaException;
+  }
+
   private HikariDataSource ds;
   private MetaSource metaSource;
   private MmaConfig.MetaDBConfig metaDbConfig;
+  private final ReentrantLock[] jobLocks = new ReentrantLock[NUM_JOB_LOCKS];
 
   public MmaMetaManagerDbImpl(MetaSource metaSource, boolean needRecover)
       throws MmaException {
     this.metaSource = metaSource;
 
     LOG.info("Initialize MmaMetaManagerDbImpl");
+    for (int i = 0; i < NUM_JOB_LOCKS; i++) {
+      jobLocks[i] = new ReentrantLock();
+    }
     metaDbConfig = MmaServerConfig.getInstance().getMetaDBConfig();
     try {
       Class.forName(metaDbConfig.getDriverClass());
@@ -85,10 +141,17 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
 
     LOG.info("Setup database");
     try (Connection conn = ds.getConnection()) {
+      createMmaJobConfig(conn);
       createMmaTableMeta(conn);
       createMmaRestoreTable(conn);
       removeActiveTasksFromRestoreTable(conn);
       createMmaTemporaryTable(conn);
+      createMmaPartitionMeta(conn);
+      migrateLegacyMmaPartitionMeta(conn);
+      createMmaPendingQueue(conn);
+      createMmaCursor(conn);
+      // Counters are recounted once on startup, and maintained by every write afterwards
+      rebuildMmaCounter(conn);
       conn.commit();
     } catch (Throwable e) {
       throw new MmaException("Setting up database failed", e);
@@ -114,9 +177,71 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     hikariConfig.setMaximumPoolSize(metaDbConfig.getMaxPoolSize());
     hikariConfig.setMinimumIdle(1);
     hikariConfig.setTransactionIsolation("TRANSACTION_SERIALIZABLE");
+    if ("mysql".equalsIgnoreCase(metaDbConfig.getDbType())) {
+      // Cache prepared statements per connection, and send a batch as a multi-row statement
+      hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+      hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+      hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+      hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+      hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+    }
     ds = new HikariDataSource(hikariConfig);
   }
 
+  /**
+   * Returns the lock of a job. Any read-modify-write of a job's metadata must hold its lock.
+   * Read-only operations don't need to, see {@link #getReadOnlyConnection()}.
+   */
+  private ReentrantLock getJobLock(String db, String object) {
+    return jobLocks[getJobLockIndex(db, object)];
+  }
+
+  private static int getJobLockIndex(String db, String object) {
+    int hash = (db + "." + object).hashCode();
+    return Math.floorMod(hash, NUM_JOB_LOCKS);
+  }
+
+  /**
+   * Executes a write transaction, and executes it again if it conflicts with concurrent ones, see
+   * {@link MmaMetaManagerDbImplUtils#isTransactionConflict(Throwable)}. The transaction must
+   * roll back on failure.
+   */
+  private static <T> T executeWithRetry(Transaction<T> transaction) throws MmaException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return transaction.execute();
+      } catch (MmaException e) {
+        if (attempt >= MAX_TRANSACTION_ATTEMPTS || !isTransactionConflict(e)) {
+          throw e;
+        }
+        LOG.warn("Transaction conflicted with concurrent ones, attempt: {}", attempt);
+        try {
+          // Random back off, so that conflicting transactions don't conflict again
+          Thread.sleep(
+              ThreadLocalRandom.current().nextLong(TRANSACTION_RETRY_INTERVAL_MS * attempt));
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a connection for read-only operations. Since these operations don't modify the meta
+   * DB, READ COMMITTED is enough and they won't block or be blocked by writers.
+   */
+  private Connection getReadOnlyConnection() throws SQLException {
+    Connection conn = ds.getConnection();
+    try {
+      conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    } catch (SQLException e) {
+      conn.close();
+      throw e;
+    }
+    return conn;
+  }
+
   @Override
   public void shutdown() {
     LOG.info("Enter shutdown");
@@ -152,13 +277,17 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
         }
       }
 
+      // Jobs created before the pending queue existed are enqueued here, and claims made before
+      // the restart are released
+      rebuildMmaPendingQueue(conn);
+
       conn.commit();
     }
     LOG.info("Leave recover");
   }
 
   @Override
-  public synchronized void addMigrationJob(TableMigrationConfig config)
+  public void addMigrationJob(TableMigrationConfig config)
       throws MmaException {
 
     LOG.info("Enter addMigrationJob");
@@ -183,6 +312,39 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
         config.getEndPartition());
   }
 
+  @Override
+  public void resetMigrationJobPartitions(String db,
+                                          String tbl,
+                                          List<List<String>> partitionValuesList)
+      throws MmaException {
+    if (db == null || tbl == null || partitionValuesList == null) {
+      throw new IllegalArgumentException(
+          "'db' or 'tbl' or 'partitionValuesList' cannot be null");
+    }
+
+    db = db.toLowerCase();
+    tbl = tbl.toLowerCase();
+    LOG.info("Reset migration job partitions, db: {}, tbl: {}, partitions: {}",
+             db, tbl, partitionValuesList.size());
+
+    MmaConfig.JobConfig jobConfig = getConfig(db, tbl);
+    mergeJobInfoIntoMetaDB(
+        db,
+        tbl,
+        true,
+        jobConfig.getJobType(),
+        jobConfig.getDescription(),
+        jobConfig.getAdditionalTableConfig(),
+        partitionValuesList,
+        null,
+        null);
+  }
+
+  @Override
+  public void invalidateTableMeta(String db, String tbl) {
+    metaSource.invalidate(db.toLowerCase(), tbl.toLowerCase());
+  }
+
   @Override
   public void addBackupJob(MmaConfig.ObjectExportConfig config) throws MmaException {
     String db = config.getDatabaseName().toLowerCase();
@@ -247,35 +409,55 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
 
   @Override
   public void mergeJobInfoIntoRestoreDB(RestoreTaskInfo taskInfo) throws MmaException {
-    try (Connection conn = ds.getConnection()) {
-      try {
-        mergeIntoRestoreTableMeta(conn, taskInfo);
-        conn.commit();
-      } catch (Throwable e) {
-        // Rollback
-        if (conn != null) {
-          try {
-            conn.rollback();
-          } catch (Throwable e2) {
-            LOG.error("Add restore job rollback failed, task info {}",GsonUtils.getFullConfigGson().toJson(taskInfo));
+    mergeJobInfosIntoRestoreDB(Collections.singletonList(taskInfo));
+  }
+
+  @Override
+  public void mergeJobInfosIntoRestoreDB(List<RestoreTaskInfo> taskInfos) throws MmaException {
+    executeWithRetry(() -> {
+      try (Connection conn = ds.getConnection()) {
+        try {
+          mergeIntoRestoreTableMeta(conn, taskInfos);
+          conn.commit();
+        } catch (Throwable e) {
+          // Rollback
+          if (conn != null) {
+            try {
+              conn.rollback();
+            } catch (Throwable e2) {
+              LOG.error("Add restore job rollback failed, task info {}",GsonUtils.getFullConfigGson().toJson(taskInfos));
+            }
           }
+          LOG.error(e);
+          throw new MmaException("Merge job info to restore db fail: " + GsonUtils.getFullConfigGson().toJson(taskInfos), e);
         }
-        LOG.error(e);
-        throw new MmaException("Merge job info to restore db fail: " + GsonUtils.getFullConfigGson().toJson(taskInfo), e);
+      } catch (SQLException e) {
+        throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
       }
-    } catch (SQLException e) {
-      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
-    }
+      return null;
+    });
   }
 
   @Override
   public void updateStatusInRestoreDB(RestoreTaskInfo taskInfo, MigrationStatus newStatus) throws MmaException {
-    StringBuilder builder = new StringBuilder("WHERE ");
-    builder.append(String.format("%s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, taskInfo.getUniqueId()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_TYPE, taskInfo.getType()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_DB_NAME, taskInfo.getDb()));
-    builder.append(String.format("AND %s='%s'\n", Constants.MMA_OBJ_RESTORE_COL_OBJECT_NAME, taskInfo.getObject()));
-    List<RestoreTaskInfo> currentInfos = listRestoreJobs(builder.toString(), -1);
+    ReentrantLock lock = getJobLock(taskInfo.getDb(), taskInfo.getObject());
+    lock.lock();
+    try {
+      updateStatusInRestoreDBInternal(taskInfo, newStatus);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void updateStatusInRestoreDBInternal(
+      RestoreTaskInfo taskInfo,
+      MigrationStatus newStatus) throws MmaException {
+    MetaCondition condition = new MetaCondition()
+        .eq(Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, taskInfo.getUniqueId())
+        .eq(Constants.MMA_OBJ_RESTORE_COL_TYPE, taskInfo.getType())
+        .eq(Constants.MMA_OBJ_RESTORE_COL_DB_NAME, taskInfo.getDb())
+        .eq(Constants.MMA_OBJ_RESTORE_COL_OBJECT_NAME, taskInfo.getObject());
+    List<RestoreTaskInfo> currentInfos = listRestoreJobs(condition, -1);
     if (currentInfos.isEmpty()) {
       throw new MmaException("Restore object task not found: " + GsonUtils.toJson(taskInfo));
     }
@@ -315,172 +497,216 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
       List<String> beginPartition,
       List<String> endPartition) throws MmaException {
 
-    try (Connection conn = ds.getConnection()) {
-      try {
-        JobInfo jobInfo = selectFromMmaTableMeta(conn, db, object);
-        if (jobInfo != null
-            && MigrationStatus.RUNNING.equals(jobInfo.getStatus())) {
-          throw MmaExceptionFactory.getRunningJobExistsException(db, object);
-        }
-
-        if (isTable) {
-          MetaSource.TableMetaModel tableMetaModel =
-              metaSource.getTableMetaWithoutPartitionMeta(db, object);
-          boolean isPartitioned = tableMetaModel.partitionColumns.size() > 0;
-
-          // Create or update mma partition meta
-          // If partitions are specified, MMA will only create or update these partition. Else, MMA
-          // will fetch all the partitions, then create meta for new partitions, reset meta for
-          // failed partitions and modified succeeded partitions.
-          // TODO: this behavior should be configurable
-          if (isPartitioned) {
-            createMmaPartitionMetaSchema(conn, db);
-            createMmaPartitionMeta(conn, db, object);
-
-            List<MigrationJobPtInfo> jobPtInfosToMerge = new LinkedList<>();
-
-            if (partitionValuesList != null) {
-              for (List<String> partitionValues : partitionValuesList) {
-                if (!metaSource.hasPartition(db, object, partitionValues)) {
-                  throw new MmaException("Partition not found: " + partitionValues);
-                } else {
-                  PartitionMetaModel partitionMetaModel =
-                      metaSource.getPartitionMeta(db, object, partitionValues);
-                  jobPtInfosToMerge.add(new MigrationJobPtInfo(
-                      partitionValues,
-                      MigrationStatus.PENDING,
-                      Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
-                      partitionMetaModel.lastModifiedTime));
-                }
-              }
-            } else {
-              List<MigrationJobPtInfo> jobPtInfos = MmaMetaManagerDbImplUtils
-                  .selectFromMmaPartitionMeta(conn, db, object, null, -1);
-
-              Comparator<List<String>> partitionComparator = (o1, o2) -> {
-                int ret = 0;
-                // o1.size() != o2.size() is allowed. Implicit partition range depends on this.
-                for (int i = 0; i < o1.size(); i++) {
-                  if (o1.get(i).length() < o2.get(i).length()) {
-                    ret = -1;
-                  } else if (o1.get(i).length() > o2.get(i).length()) {
-                    ret = 1;
-                  } else {
-                    ret = o1.get(i).compareTo(o2.get(i));
-                  }
-                  if (ret != 0 || i == o2.size() - 1) {
-                    break;
-                  }
-                }
-                return ret;
-              };
-
-              List<List<String>> totalPartitionValuesList = metaSource.listPartitions(db, object);
-
-              if (beginPartition != null && endPartition != null) {
-                if (partitionComparator.compare(beginPartition, endPartition) > 0) {
-                  throw new IllegalArgumentException(
-                      "Invalid begin and end partition, begin partition > end partition");
-                }
-              }
-
-              if (beginPartition != null) {
-                if (beginPartition.size() > tableMetaModel.partitionColumns.size()) {
-                  throw new IllegalArgumentException(
-                      "Invalid begin partition, number of elements > number of partition columns");
-                }
-                totalPartitionValuesList = totalPartitionValuesList
-                    .stream()
-                    .filter(list -> partitionComparator.compare(beginPartition, list) <= 0)
-                    .collect(Collectors.toList());
-              }
+    ReentrantLock lock = getJobLock(db, object);
+    lock.lock();
+    try {
+      executeWithRetry(() -> {
+        try (Connection conn = ds.getConnection()) {
+          try {
+            JobInfo jobInfo = selectFromMmaTableMeta(conn, db, object);
+            if (jobInfo != null
+                && MigrationStatus.RUNNING.equals(jobInfo.getStatus())) {
+              throw MmaExceptionFactory.getRunningJobExistsException(db, object);
+            }
 
-              if (endPartition != null) {
-                if (endPartition.size() > tableMetaModel.partitionColumns.size()) {
-                  throw new IllegalArgumentException(
-                      "Invalid end partition, number of elements > number of partition columns");
-                }
-                totalPartitionValuesList = totalPartitionValuesList
-                    .stream()
-                    .filter(list -> partitionComparator.compare(endPartition, list) >= 0)
-                    .collect(Collectors.toList());
+            if (isTable) {
+              // A new job always starts with the latest metadata, metadata loaded just now is
+              // reused
+              metaSource.invalidate(db, object, Constants.NEW_JOB_METADATA_MAX_AGE_SECONDS);
+              MetaSource.TableMetaModel tableMetaModel =
+                  metaSource.getTableMetaWithoutPartitionMeta(db, object);
+              boolean isPartitioned = tableMetaModel.partitionColumns.size() > 0;
+
+              if (isPartitioned) {
+                List<MigrationJobPtInfo> existingJobPtInfos = partitionValuesList == null
+                    ? selectFromMmaPartitionMeta(conn, db, object, null, -1)
+                    : Collections.emptyList();
+                List<MigrationJobPtInfo> jobPtInfosToMerge = getJobPtInfosToMerge(
+                    metaSource,
+                    db,
+                    object,
+                    tableMetaModel,
+                    partitionValuesList,
+                    beginPartition,
+                    endPartition,
+                    existingJobPtInfos);
+                mergeIntoMmaPartitionMeta(conn, db, object, jobPtInfosToMerge);
               }
 
-              // Iterate over latest partition list and try to find partitions that should be
-              // migrated
-              for (List<String> partitionValues : totalPartitionValuesList) {
-                MigrationJobPtInfo jobPtInfo = jobPtInfos
-                    .stream()
-                    .filter(info -> info.getPartitionValues().equals(partitionValues))
-                    .findAny()
-                    .orElse(null);
-
-                PartitionMetaModel partitionMetaModel =
-                    metaSource.getPartitionMeta(db, object, partitionValues);
-
-                if (jobPtInfo == null
-                    || MigrationStatus.FAILED.equals(jobPtInfo.getStatus())) {
-                  if (jobPtInfo == null) {
-                    LOG.info("Found new partition: {}", partitionValues);
-                  } else {
-                    LOG.info("Found failed partition: {}", partitionValues);
-                  }
-                  // New partition or failed partition
-                  jobPtInfosToMerge.add(new MigrationJobPtInfo(
-                      partitionValues,
-                      MigrationStatus.PENDING,
-                      Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
-                      partitionMetaModel.lastModifiedTime));
-                } else if (MigrationStatus.SUCCEEDED.equals(jobPtInfo.getStatus())){
-                  // Modified partitions
-                  if (partitionMetaModel.lastModifiedTime == null) {
-                    LOG.warn("Failed to get last modified time of partition {}",
-                             partitionValues);
-                  } else if (partitionMetaModel.lastModifiedTime > jobPtInfo.getLastModifiedTime()) {
-                    LOG.info("Found modified partition, {}, old mtime: {}, new mtime: {}",
-                             partitionValues,
-                             jobPtInfo.getLastModifiedTime(),
-                             partitionMetaModel.lastModifiedTime);
-
-                    jobPtInfosToMerge.add(new MigrationJobPtInfo(
-                        partitionValues,
-                        MigrationStatus.PENDING,
-                        Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
-                        partitionMetaModel.lastModifiedTime));
-                  }
-                }
+              mergeObjectInfoIntoMetaDB(
+                  db, object, type, config, additionalTableConfig, isPartitioned, conn);
+            } else {
+              mergeObjectInfoIntoMetaDB(
+                  db, object, type, config, additionalTableConfig, false, conn);
+            }
+            conn.commit();
+            LOG.info("Leave addMigrationJob");
+          } catch (Throwable e) {
+            // Rollback
+            if (conn != null) {
+              try {
+                conn.rollback();
+              } catch (Throwable e2) {
+                LOG.error("Add migration job rollback failed, db: {}, object: {}", db, object);
               }
             }
 
-            mergeIntoMmaPartitionMeta(conn, db, object, jobPtInfosToMerge);
+            MmaException mmaException =
+                MmaExceptionFactory.getFailedToAddMigrationJobException(db, object, e);
+            LOG.error(e);
+            throw mmaException;
           }
+        } catch (SQLException e) {
+          throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+        }
+        return null;
+      });
+    } finally {
+      lock.unlock();
+    }
+  }
 
-          mergeObjectInfoIntoMetaDB(
-              db, object, type, config, additionalTableConfig, isPartitioned, conn);
+  /**
+   * Returns partition meta to create or update when a job of a partitioned table is added.
+   *
+   * If partitions are specified, MMA will only create or update these partition. Else, MMA
+   * will fetch all the partitions, then create meta for new partitions, reset meta for failed
+   * partitions and modified succeeded partitions.
+   * TODO: this behavior should be configurable
+   *
+   * @param existingJobPtInfos existing partition meta of the job, only required when partitions
+   *                           are not specified
+   */
+  static List<MigrationJobPtInfo> getJobPtInfosToMerge(
+      MetaSource metaSource,
+      String db,
+      String object,
+      MetaSource.TableMetaModel tableMetaModel,
+      List<List<String>> partitionValuesList,
+      List<String> beginPartition,
+      List<String> endPartition,
+      List<MigrationJobPtInfo> existingJobPtInfos) throws Exception {
+    List<MigrationJobPtInfo> jobPtInfosToMerge = new LinkedList<>();
+
+    if (partitionValuesList != null) {
+      List<PartitionMetaModel> partitionMetaModels =
+          metaSource.getPartitionMetas(db, object, partitionValuesList);
+      Map<List<String>, PartitionMetaModel> partitionValuesToMeta = new HashMap<>();
+      for (PartitionMetaModel partitionMetaModel : partitionMetaModels) {
+        partitionValuesToMeta.put(partitionMetaModel.partitionValues, partitionMetaModel);
+      }
+      for (List<String> partitionValues : partitionValuesList) {
+        PartitionMetaModel partitionMetaModel = partitionValuesToMeta.get(partitionValues);
+        if (partitionMetaModel == null) {
+          throw new MmaException("Partition not found: " + partitionValues);
         } else {
-          mergeObjectInfoIntoMetaDB(
-              db, object, type, config, additionalTableConfig, false, conn);
+          jobPtInfosToMerge.add(new MigrationJobPtInfo(
+              partitionValues,
+              MigrationStatus.PENDING,
+              Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
+              partitionMetaModel.lastModifiedTime));
         }
-        conn.commit();
-        LOG.info("Leave addMigrationJob");
-      } catch (Throwable e) {
-        // Rollback
-        if (conn != null) {
-          try {
-            conn.rollback();
-          } catch (Throwable e2) {
-            LOG.error("Add migration job rollback failed, db: {}, object: {}", db, object);
+      }
+    } else {
+      Map<List<String>, MigrationJobPtInfo> partitionValuesToJobPtInfo = new HashMap<>();
+      for (MigrationJobPtInfo jobPtInfo : existingJobPtInfos) {
+        partitionValuesToJobPtInfo.put(jobPtInfo.getPartitionValues(), jobPtInfo);
+      }
+
+      Comparator<List<String>> partitionComparator = (o1, o2) -> {
+        int ret = 0;
+        // o1.size() != o2.size() is allowed. Implicit partition range depends on this.
+        for (int i = 0; i < o1.size(); i++) {
+          if (o1.get(i).length() < o2.get(i).length()) {
+            ret = -1;
+          } else if (o1.get(i).length() > o2.get(i).length()) {
+            ret = 1;
+          } else {
+            ret = o1.get(i).compareTo(o2.get(i));
+          }
+          if (ret != 0 || i == o2.size() - 1) {
+            break;
           }
         }
+        return ret;
+      };
 
-        MmaException mmaException =
-            MmaExceptionFactory.getFailedToAddMigrationJobException(db, object, e);
-        LOG.error(e);
-        throw mmaException;
+      // Only mtime is required here, so sizes, which are expensive, are not fetched
+      List<PartitionMetaModel> totalPartitionMetaModels =
+          metaSource.listPartitionMetasWithoutSize(db, object);
+
+      if (beginPartition != null && endPartition != null) {
+        if (partitionComparator.compare(beginPartition, endPartition) > 0) {
+          throw new IllegalArgumentException(
+              "Invalid begin and end partition, begin partition > end partition");
+        }
+      }
+
+      if (beginPartition != null) {
+        if (beginPartition.size() > tableMetaModel.partitionColumns.size()) {
+          throw new IllegalArgumentException(
+              "Invalid begin partition, number of elements > number of partition columns");
+        }
+        totalPartitionMetaModels = totalPartitionMetaModels
+            .stream()
+            .filter(p -> partitionComparator.compare(
+                beginPartition, p.partitionValues) <= 0)
+            .collect(Collectors.toList());
+      }
+
+      if (endPartition != null) {
+        if (endPartition.size() > tableMetaModel.partitionColumns.size()) {
+          throw new IllegalArgumentException(
+              "Invalid end partition, number of elements > number of partition columns");
+        }
+        totalPartitionMetaModels = totalPartitionMetaModels
+            .stream()
+            .filter(p -> partitionComparator.compare(
+                endPartition, p.partitionValues) >= 0)
+            .collect(Collectors.toList());
+      }
+
+      // Iterate over latest partition list and try to find partitions that should be
+      // migrated
+      for (PartitionMetaModel partitionMetaModel : totalPartitionMetaModels) {
+        List<String> partitionValues = partitionMetaModel.partitionValues;
+        MigrationJobPtInfo jobPtInfo = partitionValuesToJobPtInfo.get(partitionValues);
+
+        if (jobPtInfo == null
+            || MigrationStatus.FAILED.equals(jobPtInfo.getStatus())) {
+          if (jobPtInfo == null) {
+            LOG.info("Found new partition: {}", partitionValues);
+          } else {
+            LOG.info("Found failed partition: {}", partitionValues);
+          }
+          // New partition or failed partition
+          jobPtInfosToMerge.add(new MigrationJobPtInfo(
+              partitionValues,
+              MigrationStatus.PENDING,
+              Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
+              partitionMetaModel.lastModifiedTime));
+        } else if (MigrationStatus.SUCCEEDED.equals(jobPtInfo.getStatus())){
+          // Modified partitions
+          if (partitionMetaModel.lastModifiedTime == null) {
+            LOG.warn("Failed to get last modified time of partition {}",
+                     partitionValues);
+          } else if (partitionMetaModel.lastModifiedTime > jobPtInfo.getLastModifiedTime()) {
+            LOG.info("Found modified partition, {}, old mtime: {}, new mtime: {}",
+                     partitionValues,
+                     jobPtInfo.getLastModifiedTime(),
+                     partitionMetaModel.lastModifiedTime);
+
+            jobPtInfosToMerge.add(new MigrationJobPtInfo(
+                partitionValues,
+                MigrationStatus.PENDING,
+                Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
+                partitionMetaModel.lastModifiedTime));
+          }
+        }
       }
-    } catch (SQLException e) {
-      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
     }
+
+    return jobPtInfosToMerge;
   }
 
   private void mergeObjectInfoIntoMetaDB(String db,
@@ -506,10 +732,29 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
         Constants.MMA_TBL_META_NA_VALUE_LAST_MODIFIED_TIME);
 
     mergeIntoMmaTableMeta(conn, jobInfo);
+    enqueueIntoMmaPendingQueue(conn, db, object);
+  }
+
+  /**
+   * Keep MMA_PENDING_QUEUE consistent with the status of a job. Must be called in the transaction
+   * updating the status.
+   */
+  private static void updateMmaPendingQueue(Connection conn,
+                                            String db,
+                                            String tbl,
+                                            MigrationStatus oldStatus,
+                                            MigrationStatus newStatus) throws SQLException {
+    if (MigrationStatus.PENDING.equals(newStatus)) {
+      if (!MigrationStatus.PENDING.equals(oldStatus)) {
+        enqueueIntoMmaPendingQueue(conn, db, tbl);
+      }
+    } else if (MigrationStatus.PENDING.equals(oldStatus)) {
+      deleteFromMmaPendingQueue(conn, db, tbl);
+    }
   }
 
   @Override
-  public synchronized void removeMigrationJob(String db, String tbl) throws MmaException {
+  public void removeMigrationJob(String db, String tbl) throws MmaException {
 
     LOG.info("Enter removeMigrationJob");
 
@@ -517,57 +762,68 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
       throw new IllegalArgumentException("'db' or 'tbl' cannot be null");
     }
 
-    db = db.toLowerCase();
-    tbl = tbl.toLowerCase();
+    removeMigrationJobInternal(db.toLowerCase(), tbl.toLowerCase());
+  }
 
-    try (Connection conn = ds.getConnection()) {
-      try {
-        JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
-        if (jobInfo == null) {
-          return;
-        } else {
-          if (MigrationStatus.RUNNING.equals(getStatusInternal(db, tbl))) {
-            // Restart running job is not allowed
-            MmaException e = MmaExceptionFactory.getRunningJobExistsException(db, tbl);
-            LOG.error(e);
-            throw e;
-          }
-        }
+  private void removeMigrationJobInternal(String db, String tbl) throws MmaException {
+    ReentrantLock lock = getJobLock(db, tbl);
+    lock.lock();
+    try {
+      executeWithRetry(() -> {
+        try (Connection conn = ds.getConnection()) {
+          try {
+            JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
+            if (jobInfo == null) {
+              return null;
+            } else {
+              if (MigrationStatus.RUNNING.equals(getStatusInternal(db, tbl))) {
+                // Restart running job is not allowed
+                MmaException e = MmaExceptionFactory.getRunningJobExistsException(db, tbl);
+                LOG.error(e);
+                throw e;
+              }
+            }
 
-        if (jobInfo.isPartitioned()) {
-          dropMmaPartitionMeta(conn, db, tbl);
-        }
-        deleteFromMmaMeta(conn, db, tbl);
+            if (jobInfo.isPartitioned()) {
+              dropMmaPartitionMeta(conn, db, tbl);
+            }
+            deleteFromMmaMeta(conn, db, tbl);
+            deleteFromMmaPendingQueue(conn, db, tbl);
+
+            conn.commit();
+            LOG.info("Leave removeMigrationJob");
+          } catch (Throwable e) {
+            // Rollback
+            if (conn != null) {
+              try {
+                conn.rollback();
+              } catch (Throwable e2) {
+                LOG.error("Remove migration job rollback failed, db: {}, tbl: {}", db, tbl);
+              }
+            }
 
-        conn.commit();
-        LOG.info("Leave removeMigrationJob");
-      } catch (Throwable e) {
-        // Rollback
-        if (conn != null) {
-          try {
-            conn.rollback();
-          } catch (Throwable e2) {
-            LOG.error("Remove migration job rollback failed, db: {}, tbl: {}", db, tbl);
+            MmaException mmaException =
+                MmaExceptionFactory.getFailedToRemoveMigrationJobException(db, tbl, e);
+            LOG.error(e);
+            throw mmaException;
           }
+        } catch (SQLException e) {
+          throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
         }
-
-        MmaException mmaException =
-            MmaExceptionFactory.getFailedToRemoveMigrationJobException(db, tbl, e);
-        LOG.error(e);
-        throw mmaException;
-      }
-    } catch (SQLException e) {
-      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+        return null;
+      });
+    } finally {
+      lock.unlock();
     }
   }
 
   @Override
-  public synchronized boolean hasMigrationJob(String db, String tbl) throws MmaException {
+  public boolean hasMigrationJob(String db, String tbl) throws MmaException {
     return getMigrationJob(db, tbl) != null;
   }
 
   @Override
-  public synchronized JobInfo getMigrationJob(String db, String tbl) throws MmaException {
+  public JobInfo getMigrationJob(String db, String tbl) throws MmaException {
     if (db == null || tbl == null) {
       throw new IllegalArgumentException("'db' or 'tbl' cannot be null");
     }
@@ -575,7 +831,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     db = db.toLowerCase();
     tbl = tbl.toLowerCase();
 
-    try (Connection conn = ds.getConnection()) {
+    try (Connection conn = getReadOnlyConnection()) {
       try {
         return selectFromMmaTableMeta(conn, db, tbl);
       } catch (Throwable e) {
@@ -591,14 +847,14 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
 
 
   @Override
-  public synchronized List<MmaConfig.JobConfig> listMigrationJobs(int limit)
+  public List<MmaConfig.JobConfig> listMigrationJobs(int limit)
       throws MmaException {
 
     return listMigrationJobsInternal(null, limit);
   }
 
   @Override
-  public synchronized List<MmaConfig.JobConfig> listMigrationJobs(
+  public List<MmaConfig.JobConfig> listMigrationJobs(
       MigrationStatus status,
       int limit)
       throws MmaException {
@@ -607,9 +863,9 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   @Override
-  public synchronized List<RestoreTaskInfo> listRestoreJobs(String condition, int limit)
+  public List<RestoreTaskInfo> listRestoreJobs(MetaCondition condition, int limit)
       throws MmaException {
-    try (Connection conn = ds.getConnection()) {
+    try (Connection conn = getReadOnlyConnection()) {
       try {
         List<RestoreTaskInfo> taskInfos = selectFromRestoreMeta(conn, condition, limit);
         return taskInfos;
@@ -623,31 +879,50 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   @Override
-  public synchronized void removeRestoreJob(String uniqueId)
+  public void removeRestoreJob(String uniqueId)
       throws MmaException {
-    try (Connection conn = ds.getConnection()) {
-      String query = null;
-      try {
-        query = String.format("DELETE FROM %s WHERE %s='%s'",
-            Constants.MMA_OBJ_RESTORE_TBL_NAME,
-            Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID,
-            uniqueId);
-        try (Statement stmt = conn.createStatement()) {
-          stmt.execute(query);
-          conn.commit();
+    MetaCondition condition =
+        new MetaCondition().eq(Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, uniqueId);
+
+    // Hold the locks of all objects of the job, always in the same order to avoid deadlocks
+    List<ReentrantLock> locks = new TreeSet<>(
+        listRestoreJobs(condition, -1)
+            .stream()
+            .map(taskInfo -> getJobLockIndex(taskInfo.getDb(), taskInfo.getObject()))
+            .collect(Collectors.toList()))
+        .stream()
+        .map(i -> jobLocks[i])
+        .collect(Collectors.toList());
+    locks.forEach(ReentrantLock::lock);
+    try {
+      executeWithRetry(() -> {
+        try (Connection conn = ds.getConnection()) {
+          try {
+            deleteFromRestoreMeta(conn, condition);
+            conn.commit();
+          } catch (Throwable e) {
+            try {
+              conn.rollback();
+            } catch (Throwable e2) {
+              LOG.error("Remove restore job rollback failed, unique id: {}", uniqueId);
+            }
+            LOG.error(e);
+            throw new MmaException("Failed to remove restore job: " + uniqueId, e);
+          }
+        } catch (SQLException e) {
+          throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
         }
-      } catch (Throwable e) {
-        LOG.error(e);
-        throw new MmaException("Failed to remove restore job: " + query, e);
-      }
-    } catch (SQLException e) {
-      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+        return null;
+      });
+    } finally {
+      locks.forEach(ReentrantLock::unlock);
     }
   }
 
   @Override
-  public synchronized Map<String, List<String>> listTemporaryTables(String condition, int limit) throws MmaException {
-     try (Connection conn = ds.getConnection()) {
+  public Map<String, List<String>> listTemporaryTables(MetaCondition condition, int limit)
+      throws MmaException {
+     try (Connection conn = getReadOnlyConnection()) {
       try {
         Map<String, List<String>> result = selectFromTemporaryTableMeta(conn, condition, limit);
         LOG.info("Temporary tables to be dropped: {}", GsonUtils.toJson(result));
@@ -663,52 +938,66 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
 
   @Override
   public void mergeTableInfoIntoTemporaryTableDB(String uniqueId, String db, String tbl) {
-    try (Connection conn = ds.getConnection()) {
-      try {
-        mergeIntoTemporaryTableMeta(conn, uniqueId, db, tbl);
-        conn.commit();
-      } catch (Throwable e) {
-        // Rollback
-        if (conn != null) {
+    ReentrantLock lock = getJobLock(db, tbl);
+    lock.lock();
+    try {
+      executeWithRetry(() -> {
+        try (Connection conn = ds.getConnection()) {
           try {
-            conn.rollback();
-          } catch (Throwable e2) {
-            LOG.error("Add temporary table job rollback failed, db {}, tbl {}", db, tbl);
+            mergeIntoTemporaryTableMeta(conn, uniqueId, db, tbl);
+            conn.commit();
+          } catch (Throwable e) {
+            // Rollback
+            if (conn != null) {
+              try {
+                conn.rollback();
+              } catch (Throwable e2) {
+                LOG.error("Add temporary table job rollback failed, db {}, tbl {}", db, tbl);
+              }
+            }
+            throw new MmaException("Failed to merge into temporary table", e);
           }
+        } catch (SQLException e) {
+          throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
         }
-        LOG.error("Merge into temporary table failed, uniqueId: {}, db: {}, tbl: {}",
-            uniqueId, db, tbl, e);
-      }
-    } catch (SQLException e) {
+        return null;
+      });
+    } catch (MmaException e) {
       LOG.error("Merge into temporary table failed, uniqueId: {}, db: {}, tbl: {}",
             uniqueId, db, tbl, e);
+    } finally {
+      lock.unlock();
     }
   }
 
   @Override
-  public synchronized void removeTemporaryTableMeta(String uniqueId, String db, String tbl) throws MmaException {
-    try (Connection conn = ds.getConnection()) {
-      String query = null;
-      try {
-        query = String.format("DELETE FROM %s WHERE %s='%s' AND %s='%s' AND %s='%s';\n",
-            Constants.MMA_OBJ_TEMPORARY_TBL_NAME,
-            Constants.MMA_OBJ_TEMPORARY_COL_UNIQUE_ID,
-            uniqueId,
-            Constants.MMA_OBJ_TEMPORARY_COL_PROJECT,
-            db,
-            Constants.MMA_OBJ_TEMPORARY_COL_TABLE,
-            tbl);
-        LOG.info("Execute query: {}", query);
-        try (Statement stmt = conn.createStatement()) {
-          stmt.execute(query);
-          conn.commit();
+  public void removeTemporaryTableMeta(String uniqueId, String db, String tbl) throws MmaException {
+    ReentrantLock lock = getJobLock(db, tbl);
+    lock.lock();
+    try {
+      executeWithRetry(() -> {
+        try (Connection conn = ds.getConnection()) {
+          try {
+            deleteFromTemporaryTableMeta(conn, uniqueId, db, tbl);
+            conn.commit();
+          } catch (Throwable e) {
+            try {
+              conn.rollback();
+            } catch (Throwable e2) {
+              LOG.error("Remove temporary table rollback failed, db {}, tbl {}", db, tbl);
+            }
+            LOG.error(e);
+            throw new MmaException(
+                String.format("Failed to remove temporary table, uniqueId: %s, db: %s, tbl: %s",
+                              uniqueId, db, tbl), e);
+          }
+        } catch (SQLException e) {
+          throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
         }
-      } catch (Throwable e) {
-        LOG.error(e);
-        throw new MmaException("Failed to remove temporary table: " + query, e);
-      }
-    } catch (SQLException e) {
-      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+        return null;
+      });
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -717,7 +1006,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
       int limit)
       throws MmaException {
 
-    try (Connection conn = ds.getConnection()) {
+    try (Connection conn = getReadOnlyConnection()) {
       try {
         List<JobInfo> jobInfos = selectFromMmaTableMeta(conn, status, limit);
         List<MmaConfig.JobConfig> migrationConfigs = new LinkedList<>();
@@ -754,7 +1043,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   @Override
-  public synchronized void updateStatus(String db, String tbl, MigrationStatus status)
+  public void updateStatus(String db, String tbl, MigrationStatus status)
       throws MmaException {
     LOG.info("Enter updateStatus");
 
@@ -765,71 +1054,81 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     db = db.toLowerCase();
     tbl = tbl.toLowerCase();
 
-    updateStatusInternal(db, tbl, status);
+    ReentrantLock lock = getJobLock(db, tbl);
+    lock.lock();
+    try {
+      updateStatusInternal(db, tbl, status);
+    } finally {
+      lock.unlock();
+    }
     LOG.info("Leave updateStatus");
   }
 
   private void updateStatusInternal(String db, String tbl, MigrationStatus status)
       throws MmaException {
-    try (Connection conn = ds.getConnection()) {
-      try {
-        JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
-        if (jobInfo == null) {
-          throw MmaExceptionFactory.getMigrationJobNotExistedException(db, tbl);
-        }
+    executeWithRetry(() -> {
+      try (Connection conn = ds.getConnection()) {
+        try {
+          JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
+          if (jobInfo == null) {
+            throw MmaExceptionFactory.getMigrationJobNotExistedException(db, tbl);
+          }
 
-        jobInfo.setStatus(status);
-        // For a partitioned table, its migration status is inferred from its partitions' migration
-        // statuses. And it does not have table level attr 'attemptTimes'.
-        if (!jobInfo.isPartitioned()) {
-          switch (status) {
-            case SUCCEEDED: {
-              jobInfo.setAttemptTimes(jobInfo.getAttemptTimes() + 1);
-              break;
-            }
-            case FAILED: {
-              int attemptTimes = jobInfo.getAttemptTimes() + 1;
-              int retryTimesLimit = jobInfo
-                  .getJobConfig()
-                  .getAdditionalTableConfig()
-                  .getRetryTimesLimit();
-              if (attemptTimes <= retryTimesLimit) {
-                status = MigrationStatus.PENDING;
+          MigrationStatus oldStatus = jobInfo.getStatus();
+          jobInfo.setStatus(status);
+          // For a partitioned table, its migration status is inferred from its partitions'
+          // migration statuses. And it does not have table level attr 'attemptTimes'.
+          if (!jobInfo.isPartitioned()) {
+            switch (status) {
+              case SUCCEEDED: {
+                jobInfo.setAttemptTimes(jobInfo.getAttemptTimes() + 1);
+                break;
               }
-              jobInfo.setStatus(status);
-              jobInfo.setAttemptTimes(attemptTimes);
-              break;
+              case FAILED: {
+                int attemptTimes = jobInfo.getAttemptTimes() + 1;
+                int retryTimesLimit = jobInfo
+                    .getJobConfig()
+                    .getAdditionalTableConfig()
+                    .getRetryTimesLimit();
+                if (attemptTimes <= retryTimesLimit) {
+                  jobInfo.setStatus(MigrationStatus.PENDING);
+                }
+                jobInfo.setAttemptTimes(attemptTimes);
+                break;
+              }
+              case RUNNING:
+              case PENDING:
+              default:
             }
-            case RUNNING:
-            case PENDING:
-            default:
           }
-        }
-        mergeIntoMmaTableMeta(conn, jobInfo);
+          mergeIntoMmaTableMeta(conn, jobInfo);
+          updateMmaPendingQueue(conn, db, tbl, oldStatus, jobInfo.getStatus());
 
-        conn.commit();
-      } catch (Throwable e) {
-        // Rollback
-        if (conn != null) {
-          try {
-            conn.rollback();
-          } catch (Throwable e2) {
-            LOG.error("Update migration job rollback failed, db: {}, tbl: {}", db, tbl);
+          conn.commit();
+        } catch (Throwable e) {
+          // Rollback
+          if (conn != null) {
+            try {
+              conn.rollback();
+            } catch (Throwable e2) {
+              LOG.error("Update migration job rollback failed, db: {}, tbl: {}", db, tbl);
+            }
           }
-        }
 
-        MmaException mmaException =
-            MmaExceptionFactory.getFailedToUpdateMigrationJobException(db, tbl, e);
-        LOG.error(e);
-        throw mmaException;
+          MmaException mmaException =
+              MmaExceptionFactory.getFailedToUpdateMigrationJobException(db, tbl, e);
+          LOG.error(e);
+          throw mmaException;
+        }
+      } catch (SQLException e) {
+        throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
       }
-    } catch (SQLException e) {
-      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
-    }
+      return null;
+    });
   }
 
   @Override
-  public synchronized void updateStatus(
+  public void updateStatus(
       String db,
       String tbl,
       List<List<String>> partitionValuesList,
@@ -845,7 +1144,13 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     db = db.toLowerCase();
     tbl = tbl.toLowerCase();
 
-    updateStatusInternal(db, tbl, partitionValuesList, status);
+    ReentrantLock lock = getJobLock(db, tbl);
+    lock.lock();
+    try {
+      updateStatusInternal(db, tbl, partitionValuesList, status);
+    } finally {
+      lock.unlock();
+    }
     LOG.info("Leave updateStatus");
   }
 
@@ -855,79 +1160,94 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
       List<List<String>> partitionValuesList,
       MigrationStatus status)
       throws MmaException {
-    try (Connection conn = ds.getConnection()) {
-      try {
-        JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
-        if (jobInfo == null) {
-          throw MmaExceptionFactory.getMigrationJobNotExistedException(db, tbl);
-        }
-
-        List<MigrationJobPtInfo> newJobPtInfos = new LinkedList<>();
-        for (List<String> partitionValues : partitionValuesList) {
-          MigrationJobPtInfo jobPtInfo =
-              selectFromMmaPartitionMeta(conn, db, tbl, partitionValues);
-          if (jobPtInfo == null) {
-            throw MmaExceptionFactory
-                .getMigrationJobPtNotExistedException(db, tbl, partitionValues);
+    List<List<String>> distinctPartitionValuesList =
+        new ArrayList<>(new LinkedHashSet<>(partitionValuesList));
+    executeWithRetry(() -> {
+      try (Connection conn = ds.getConnection()) {
+        try {
+          JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
+          if (jobInfo == null) {
+            throw MmaExceptionFactory.getMigrationJobNotExistedException(db, tbl);
           }
 
-          jobPtInfo.setStatus(status);
-          switch (status) {
-            case SUCCEEDED: {
-              jobPtInfo.setAttemptTimes(jobPtInfo.getAttemptTimes() + 1);
-              break;
+          // Read all affected partitions at once
+          Map<List<String>, MigrationJobPtInfo> jobPtInfos =
+              batchSelectFromMmaPartitionMeta(conn, db, tbl, distinctPartitionValuesList);
+          int retryTimesLimit = jobInfo
+              .getJobConfig()
+              .getAdditionalTableConfig()
+              .getRetryTimesLimit();
+
+          boolean anyRunning = false;
+          List<MigrationJobPtInfo> newJobPtInfos = new ArrayList<>(jobPtInfos.size());
+          for (List<String> partitionValues : distinctPartitionValuesList) {
+            MigrationJobPtInfo jobPtInfo = jobPtInfos.get(partitionValues);
+            if (jobPtInfo == null) {
+              throw MmaExceptionFactory
+                  .getMigrationJobPtNotExistedException(db, tbl, partitionValues);
             }
-            case FAILED: {
-              int attemptTimes = jobPtInfo.getAttemptTimes() + 1;
-              int retryTimesLimit = jobInfo
-                  .getJobConfig()
-                  .getAdditionalTableConfig()
-                  .getRetryTimesLimit();
-              jobPtInfo.setStatus(status);
-              if (attemptTimes <= retryTimesLimit) {
-                jobPtInfo.setStatus(MigrationStatus.PENDING);
+
+            jobPtInfo.setStatus(status);
+            switch (status) {
+              case SUCCEEDED: {
+                jobPtInfo.setAttemptTimes(jobPtInfo.getAttemptTimes() + 1);
+                break;
+              }
+              case FAILED: {
+                int attemptTimes = jobPtInfo.getAttemptTimes() + 1;
+                if (attemptTimes <= retryTimesLimit) {
+                  jobPtInfo.setStatus(MigrationStatus.PENDING);
+                }
+                jobPtInfo.setAttemptTimes(attemptTimes);
+                break;
               }
-              jobPtInfo.setAttemptTimes(attemptTimes);
-              break;
+              case RUNNING:
+              case PENDING:
+              default:
             }
-            case RUNNING:
-            case PENDING:
-            default:
-          }
 
-          newJobPtInfos.add(jobPtInfo);
-        }
-        mergeIntoMmaPartitionMeta(conn, db, tbl, newJobPtInfos);
-
-        // Update the table level status
-        MigrationStatus newStatus = inferPartitionedTableStatus(conn, db, tbl);
-        if (!jobInfo.getStatus().equals(newStatus)) {
-          updateStatusInternal(db, tbl, newStatus);
-        }
+            anyRunning |= MigrationStatus.RUNNING.equals(jobPtInfo.getStatus());
+            newJobPtInfos.add(jobPtInfo);
+          }
+          mergeIntoMmaPartitionMeta(conn, db, tbl, newJobPtInfos);
+
+          // Update the table level status. A running partition means a running table, so the
+          // status distribution is only required when partitions are leaving the running state.
+          MigrationStatus newStatus = anyRunning
+              ? MigrationStatus.RUNNING
+              : inferPartitionedTableStatus(conn, db, tbl);
+          MigrationStatus oldStatus = jobInfo.getStatus();
+          if (!oldStatus.equals(newStatus)) {
+            jobInfo.setStatus(newStatus);
+            mergeIntoMmaTableMeta(conn, jobInfo);
+            updateMmaPendingQueue(conn, db, tbl, oldStatus, newStatus);
+          }
 
-        conn.commit();
-      } catch (Throwable e) {
-        // Rollback
-        if (conn != null) {
-          try {
-            conn.rollback();
-          } catch (Throwable e2) {
-            LOG.error("Update migration job pt rollback failed, db: {}, tbl: {}", db, tbl);
+          conn.commit();
+        } catch (Throwable e) {
+          // Rollback
+          if (conn != null) {
+            try {
+              conn.rollback();
+            } catch (Throwable e2) {
+              LOG.error("Update migration job pt rollback failed, db: {}, tbl: {}", db, tbl);
+            }
           }
-        }
 
-        MmaException mmaException =
-            MmaExceptionFactory.getFailedToUpdateMigrationJobException(db, tbl, e);
-        LOG.error(e);
-        throw mmaException;
+          MmaException mmaException =
+              MmaExceptionFactory.getFailedToUpdateMigrationJobException(db, tbl, e);
+          LOG.error(e);
+          throw mmaException;
+        }
+      } catch (SQLException e) {
+        throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
       }
-    } catch (SQLException e) {
-      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
-    }
+      return null;
+    });
   }
 
   @Override
-  public synchronized MigrationStatus getStatus(String db, String tbl) throws MmaException {
+  public MigrationStatus getStatus(String db, String tbl) throws MmaException {
     LOG.info("Enter getStatus");
 
     if (db == null || tbl == null) {
@@ -941,7 +1261,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   private MigrationStatus getStatusInternal(String db, String tbl) throws MmaException {
-    try (Connection conn = ds.getConnection()) {
+    try (Connection conn = getReadOnlyConnection()) {
       try {
         JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
         if (jobInfo == null) {
@@ -965,7 +1285,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   @Override
-  public synchronized MigrationStatus getStatus(String db, String tbl, List<String> partitionValues)
+  public MigrationStatus getStatus(String db, String tbl, List<String> partitionValues)
       throws MmaException {
     LOG.info("Enter getStatus");
 
@@ -976,7 +1296,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     db = db.toLowerCase();
     tbl = tbl.toLowerCase();
 
-    try (Connection conn = ds.getConnection()) {
+    try (Connection conn = getReadOnlyConnection()) {
       try {
         MigrationJobPtInfo jobPtInfo =
             selectFromMmaPartitionMeta(conn, db, tbl, partitionValues);
@@ -996,7 +1316,58 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   @Override
-  public synchronized MigrationProgress getProgress(String db, String tbl) throws MmaException {
+  public Map<MigrationStatus, Integer> getCounts() throws MmaException {
+    try (Connection conn = getReadOnlyConnection()) {
+      try {
+        return getJobStatusDistribution(conn);
+      } catch (Throwable e) {
+        LOG.error(e);
+        throw new MmaException("Failed to get counts of migration jobs", e);
+      }
+    } catch (SQLException e) {
+      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+    }
+  }
+
+  @Override
+  public Long getCursor(String name) throws MmaException {
+    try (Connection conn = getReadOnlyConnection()) {
+      try {
+        return selectFromMmaCursor(conn, name);
+      } catch (Throwable e) {
+        LOG.error(e);
+        throw new MmaException("Failed to get cursor: " + name, e);
+      }
+    } catch (SQLException e) {
+      throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+    }
+  }
+
+  @Override
+  public void setCursor(String name, long position) throws MmaException {
+    executeWithRetry(() -> {
+      try (Connection conn = ds.getConnection()) {
+        try {
+          mergeIntoMmaCursor(conn, name, position);
+          conn.commit();
+        } catch (Throwable e) {
+          try {
+            conn.rollback();
+          } catch (Throwable e2) {
+            LOG.error("Set cursor rollback failed, name: {}", name);
+          }
+          LOG.error(e);
+          throw new MmaException("Failed to set cursor: " + name, e);
+        }
+      } catch (SQLException e) {
+        throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+      }
+      return null;
+    });
+  }
+
+  @Override
+  public MigrationProgress getProgress(String db, String tbl) throws MmaException {
     LOG.info("Enter getProgress");
 
     if (db == null || tbl == null) {
@@ -1006,7 +1377,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     db = db.toLowerCase();
     tbl = tbl.toLowerCase();
 
-    try (Connection conn = ds.getConnection()) {
+    try (Connection conn = getReadOnlyConnection()) {
       try {
         JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
         if (jobInfo == null) {
@@ -1034,7 +1405,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   @Override
-  public synchronized MmaConfig.JobConfig getConfig(String db, String tbl)
+  public MmaConfig.JobConfig getConfig(String db, String tbl)
       throws MmaException {
     LOG.info("Enter getConfig");
 
@@ -1045,7 +1416,7 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     db = db.toLowerCase();
     tbl = tbl.toLowerCase();
 
-    try (Connection conn = ds.getConnection()) {
+    try (Connection conn = getReadOnlyConnection()) {
       try {
         JobInfo jobInfo = selectFromMmaTableMeta(conn, db, tbl);
         if (jobInfo == null) {
@@ -1064,102 +1435,44 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
   }
 
   @Override
-  public synchronized List<MetaSource.TableMetaModel> getPendingTables() throws MmaException {
-    LOG.info("Enter getPendingTables");
+  public List<MetaSource.TableMetaModel> getPendingTables(int maxNumTables) throws MmaException {
+    LOG.info("Enter getPendingTables, max num tables: {}", maxNumTables);
 
-    try (Connection conn = ds.getConnection()) {
-      List<JobInfo> jobInfos =
-          selectFromMmaTableMeta(conn, MigrationStatus.PENDING, -1);
-      List<MetaSource.TableMetaModel> ret = new LinkedList<>();
-      for (JobInfo jobInfo : jobInfos) {
-        String db = jobInfo.getDb();
-        String tbl = jobInfo.getTbl();
-
-        MetaSource.TableMetaModel tableMetaModel;
+    // Claim a bounded batch of jobs, metadata is only loaded for claimed jobs
+    List<JobInfo> jobInfos = executeWithRetry(() -> {
+      try (Connection conn = ds.getConnection()) {
         try {
-          MmaConfig.JobType jobType = jobInfo.getJobConfig().getJobType();
-          if (MmaConfig.JobType.BACKUP.equals(jobType)) {
-            MmaConfig.ObjectExportConfig config =
-                MmaConfig.ObjectExportConfig.fromJson(jobInfo.getJobConfig().getDescription());
-            if (!MmaConfig.ObjectType.TABLE.equals(config.getObjectType())) {
-              tableMetaModel = new MetaSource.TableMetaModel();
-              tableMetaModel.databaseName = config.getDatabaseName();
-              tableMetaModel.tableName = config.getObjectName();
-              ret.add(tableMetaModel);
-              continue;
-            }
-          } else if (MmaConfig.JobType.RESTORE.equals(jobType)) {
-            tableMetaModel = new MetaSource.TableMetaModel();
-            if (Strings.isNullOrEmpty(tbl)) {
-              MmaConfig.DatabaseRestoreConfig config =
-                  MmaConfig.DatabaseRestoreConfig.fromJson(jobInfo.getJobConfig().getDescription());
-              tableMetaModel.databaseName = config.getOriginDatabaseName();
-              tableMetaModel.odpsProjectName = config.getDestinationDatabaseName();
-              tableMetaModel.tableName = tbl;
-            } else {
-              MmaConfig.ObjectRestoreConfig config =
-                  MmaConfig.ObjectRestoreConfig.fromJson(jobInfo.getJobConfig().getDescription());
-              tableMetaModel.databaseName = config.getOriginDatabaseName();
-              tableMetaModel.odpsProjectName = config.getDestinationDatabaseName();
-              tableMetaModel.tableName = config.getObjectName();
-              tableMetaModel.odpsTableName = config.getObjectName();
-            }
-            ret.add(tableMetaModel);
-            continue;
-          }
-          tableMetaModel = metaSource.getTableMetaWithoutPartitionMeta(db, tbl);
-        } catch (Exception e) {
-          // Table could be deleted after the task is submitted. In this case,
-          // metaSource.getTableMetaWithoutPartitionMeta# will fail.
-          LOG.warn("Failed to get metadata, db: {}, tbl: {}", db, tbl, e);
-          updateStatusInternal(db, tbl, MigrationStatus.FAILED);
-          // TODO: Should throw MMA meta exception here and stop the task scheduler
-          continue;
-        }
-
-        if (jobInfo.isPartitioned()) {
-          List<MigrationJobPtInfo> jobPtInfos = selectFromMmaPartitionMeta(conn,
-                  db,
-                  tbl,
-                  MigrationStatus.PENDING,
-                  -1);
-
-          List<MetaSource.PartitionMetaModel> partitionMetaModels = new LinkedList<>();
-          for (MigrationJobPtInfo jobPtInfo : jobPtInfos) {
-            try {
-              partitionMetaModels.add(
-                  metaSource.getPartitionMeta(db, tbl, jobPtInfo.getPartitionValues()));
-            } catch (Exception e) {
-              // Partitions could be deleted after the task is submitted. In this case,
-              // metaSource.getPartitionMeta# will fail.
-              LOG.warn("Failed to get metadata, db: {}, tbl: {}, pt: {}",
-                       db, tbl, jobPtInfo.getPartitionValues());
-              updateStatusInternal(
-                  db,
-                  tbl,
-                  Collections.singletonList(jobPtInfo.getPartitionValues()),
-                  MigrationStatus.FAILED);
-              // TODO: Should throw MMA meta exception here and stop the task scheduler
-            }
+          List<JobInfo> claimed = claimFromMmaPendingQueue(
+              conn, Math.min(maxNumTables, MAX_NUM_CLAIMED_JOBS), CLAIM_TIMEOUT_MS);
+          conn.commit();
+          return claimed;
+        } catch (Throwable e) {
+          try {
+            conn.rollback();
+          } catch (Throwable e2) {
+            LOG.error("Claim pending jobs rollback failed");
           }
-          tableMetaModel.partitions = partitionMetaModels;
+          MmaException mmaException = MmaExceptionFactory.getFailedToGetPendingJobsException(e);
+          LOG.error(e);
+          throw mmaException;
         }
+      } catch (SQLException e) {
+        throw MmaExceptionFactory.getFailedToCreateConnectionException(e);
+      }
+    });
 
-        if (MmaConfig.JobType.MIGRATION.equals(jobInfo.getJobConfig().getJobType())) {
-          TableMigrationConfig tableMigrationConfig =
-              TableMigrationConfig.fromJson(jobInfo.getJobConfig().getDescription());
-          tableMigrationConfig.apply(tableMetaModel);
-        } else if (MmaConfig.JobType.BACKUP.equals(jobInfo.getJobConfig().getJobType())) {
-          MmaConfig.ObjectExportConfig objectExportConfig =
-              MmaConfig.ObjectExportConfig.fromJson(jobInfo.getJobConfig().getDescription());
-          objectExportConfig.setDestTableStorage(ExternalTableStorage.OSS.name());
-          objectExportConfig.apply(tableMetaModel);
-          tableMetaModel.odpsProjectName = objectExportConfig.getDatabaseName();
-          tableMetaModel.odpsTableName = Constants.MMA_TEMPORARY_TABLE_PREFIX
-              + objectExportConfig.getObjectName() + "_"
-              + objectExportConfig.getTaskName();
+    try (Connection conn = getReadOnlyConnection()) {
+      List<MetaSource.TableMetaModel> ret = new LinkedList<>();
+      for (JobInfo jobInfo : jobInfos) {
+        List<MigrationJobPtInfo> pendingJobPtInfos = jobInfo.isPartitioned()
+            ? selectFromMmaPartitionMeta(
+                conn, jobInfo.getDb(), jobInfo.getTbl(), MigrationStatus.PENDING, -1)
+            : Collections.emptyList();
+        MetaSource.TableMetaModel tableMetaModel =
+            getPendingTableMeta(this, metaSource, jobInfo, pendingJobPtInfos);
+        if (tableMetaModel != null) {
+          ret.add(tableMetaModel);
         }
-        ret.add(tableMetaModel);
       }
 
       // Sort by name, make it easy to test
@@ -1175,8 +1488,152 @@ public class MmaMetaManagerDbImpl implements MmaMetaManager {
     }
   }
 
+  /**
+   * Build the metadata of a pending job for task generation. Pending partitions of the job are
+   * included. If the metadata cannot be fetched from the meta source, the job or the partitions
+   * are marked as FAILED, and null is returned when the whole job failed.
+   */
+  static MetaSource.TableMetaModel getPendingTableMeta(
+      MmaMetaManager mmaMetaManager,
+      MetaSource metaSource,
+      JobInfo jobInfo,
+      List<MigrationJobPtInfo> pendingJobPtInfos) throws Exception {
+    String db = jobInfo.getDb();
+    String tbl = jobInfo.getTbl();
+
+    MetaSource.TableMetaModel tableMetaModel;
+    try {
+      MmaConfig.JobType jobType = jobInfo.getJobConfig().getJobType();
+      if (MmaConfig.JobType.BACKUP.equals(jobType)) {
+        MmaConfig.ObjectExportConfig config =
+            MmaConfig.ObjectExportConfig.fromJson(jobInfo.getJobConfig().getDescription());
+        if (!MmaConfig.ObjectType.TABLE.equals(config.getObjectType())) {
+          tableMetaModel = new MetaSource.TableMetaModel();
+          tableMetaModel.databaseName = config.getDatabaseName();
+          tableMetaModel.tableName = config.getObjectName();
+          return tableMetaModel;
+        }
+      } else if (MmaConfig.JobType.RESTORE.equals(jobType)) {
+        tableMetaModel = new MetaSource.TableMetaModel();
+        if (Strings.isNullOrEmpty(tbl)) {
+          MmaConfig.DatabaseRestoreConfig config =
+              MmaConfig.DatabaseRestoreConfig.fromJson(jobInfo.getJobConfig().getDescription());
+          tableMetaModel.databaseName = config.getOriginDatabaseName();
+          tableMetaModel.odpsProjectName = config.getDestinationDatabaseName();
+          tableMetaModel.tableName = tbl;
+        } else {
+          MmaConfig.ObjectRestoreConfig config =
+              MmaConfig.ObjectRestoreConfig.fromJson(jobInfo.getJobConfig().getDescription());
+          tableMetaModel.databaseName = config.getOriginDatabaseName();
+          tableMetaModel.odpsProjectName = config.getDestinationDatabaseName();
+          tableMetaModel.tableName = config.getObjectName();
+          tableMetaModel.odpsTableName = config.getObjectName();
+        }
+        return tableMetaModel;
+      }
+      tableMetaModel = metaSource.getTableMetaWithoutPartitionMeta(db, tbl);
+    } catch (Exception e) {
+      // Table could be deleted after the task is submitted. In this case,
+      // metaSource.getTableMetaWithoutPartitionMeta# will fail.
+      LOG.warn("Failed to get metadata, db: {}, tbl: {}", db, tbl, e);
+      mmaMetaManager.updateStatus(db, tbl, MigrationStatus.FAILED);
+      // TODO: Should throw MMA meta exception here and stop the task scheduler
+      return null;
+    }
+
+    if (jobInfo.isPartitioned()) {
+      List<List<String>> pendingPartitionValuesList = pendingJobPtInfos
+          .stream()
+          .map(MigrationJobPtInfo::getPartitionValues)
+          .collect(Collectors.toList());
+      List<MetaSource.PartitionMetaModel> partitionMetaModels =
+          getPartitionMetas(metaSource, db, tbl, pendingPartitionValuesList);
+
+      // Partitions could be deleted after the task is submitted, they are skipped by
+      // metaSource.getPartitionMetas#. Partitions whose metadata cannot be fetched are skipped by
+      // getPartitionMetas#
+      Set<List<String>> existingPartitionValuesSet = partitionMetaModels
+          .stream()
+          .map(p -> p.partitionValues)
+          .collect(Collectors.toSet());
+      List<List<String>> failedPartitionValuesList = pendingPartitionValuesList
+          .stream()
+          .filter(pv -> !existingPartitionValuesSet.contains(pv))
+          .collect(Collectors.toList());
+      if (!failedPartitionValuesList.isEmpty()) {
+        LOG.warn("Partitions not found or failed to get metadata, db: {}, tbl: {}, number: {}",
+                 db, tbl, failedPartitionValuesList.size());
+        mmaMetaManager.updateStatus(db, tbl, failedPartitionValuesList, MigrationStatus.FAILED);
+      }
+      tableMetaModel.partitions = partitionMetaModels;
+    }
+
+    if (MmaConfig.JobType.MIGRATION.equals(jobInfo.getJobConfig().getJobType())) {
+      TableMigrationConfig tableMigrationConfig =
+          getTableMigrationConfig(jobInfo.getJobConfig());
+      tableMigrationConfig.apply(tableMetaModel);
+    } else if (MmaConfig.JobType.BACKUP.equals(jobInfo.getJobConfig().getJobType())) {
+      MmaConfig.ObjectExportConfig objectExportConfig =
+          MmaConfig.ObjectExportConfig.fromJson(jobInfo.getJobConfig().getDescription());
+      objectExportConfig.setDestTableStorage(ExternalTableStorage.OSS.name());
+      objectExportConfig.apply(tableMetaModel);
+      tableMetaModel.odpsProjectName = objectExportConfig.getDatabaseName();
+      tableMetaModel.odpsTableName = Constants.MMA_TEMPORARY_TABLE_PREFIX
+          + objectExportConfig.getObjectName() + "_"
+          + objectExportConfig.getTaskName();
+    }
+    return tableMetaModel;
+  }
+
+  /**
+   * Get metadata of partitions in batches. A failed batch is retried, and then requested partition
+   * by partition, so that a transient failure doesn't fail the whole table. Partitions that don't
+   * exist or whose metadata cannot be fetched are skipped.
+   */
+  static List<MetaSource.PartitionMetaModel> getPartitionMetas(
+      MetaSource metaSource,
+      String db,
+      String tbl,
+      List<List<String>> partitionValuesList) {
+    List<MetaSource.PartitionMetaModel> partitionMetaModels =
+        new ArrayList<>(partitionValuesList.size());
+    for (int i = 0; i < partitionValuesList.size(); i += MAX_PARTITIONS_PER_META_REQUEST) {
+      List<List<String>> batch = partitionValuesList.subList(
+          i, Math.min(i + MAX_PARTITIONS_PER_META_REQUEST, partitionValuesList.size()));
+      List<MetaSource.PartitionMetaModel> batchPartitionMetaModels = null;
+      for (int attempt = 1; attempt <= MAX_PARTITION_META_ATTEMPTS; attempt++) {
+        try {
+          batchPartitionMetaModels = metaSource.getPartitionMetas(db, tbl, batch);
+          break;
+        } catch (Exception e) {
+          LOG.warn("Failed to get metadata of partitions, db: {}, tbl: {}, number: {}, "
+                   + "attempt: {}", db, tbl, batch.size(), attempt, e);
+        }
+      }
+
+      if (batchPartitionMetaModels == null) {
+        batchPartitionMetaModels = new ArrayList<>(batch.size());
+        for (List<String> partitionValues : batch) {
+          try {
+            MetaSource.PartitionMetaModel partitionMetaModel =
+                metaSource.getPartitionMeta(db, tbl, partitionValues);
+            if (partitionMetaModel != null) {
+              batchPartitionMetaModels.add(partitionMetaModel);
+            }
+          } catch (Exception e) {
+            LOG.warn("Failed to get metadata of partition, db: {}, tbl: {}, partition: {}",
+                     db, tbl, partitionValues, e);
+          }
+        }
+      }
+      partitionMetaModels.addAll(batchPartitionMetaModels);
+    }
+
+    return partitionMetaModels;
+  }
+
   @Override
-  public synchronized MetaSource.TableMetaModel getNextPendingTable() {
+  public MetaSource.TableMetaModel getNextPendingTable() {
     throw new UnsupportedOperationException();
   }
 }
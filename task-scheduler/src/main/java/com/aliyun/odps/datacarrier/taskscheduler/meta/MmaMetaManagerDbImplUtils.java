@@ -21,11 +21,14 @@ package com.aliyun.odps.datacarrier.taskscheduler.meta;
 
 import java.lang.reflect.Type;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -33,11 +36,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
-import com.google.common.base.Strings;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -52,6 +57,64 @@ public class MmaMetaManagerDbImplUtils {
 
   private static String UPSERT_KEYWORD = null;
 
+  /**
+   * Decoded job configs by id, and ids of job configs. JobConfig does not override equals, so the
+   * latter is an identity map, entries are removed once the config is no longer referenced.
+   */
+  private static final Map<String, MmaConfig.JobConfig> ID_TO_JOB_CONFIG =
+      new ConcurrentHashMap<>();
+  private static final Map<MmaConfig.JobConfig, String> JOB_CONFIG_TO_ID =
+      Collections.synchronizedMap(new WeakHashMap<>());
+  /**
+   * Parsed descriptions of table migration job configs by id, see
+   * {@link #getTableMigrationConfig(MmaConfig.JobConfig)}
+   */
+  private static final Map<String, MmaConfig.TableMigrationConfig> ID_TO_TABLE_MIGRATION_CONFIG =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Max length of partition values in MMA_PT_META, see {@link Constants#VARCHAR_766}
+   */
+  private static final int MAX_PT_VALS_LENGTH = 766;
+
+  /**
+   * Max number of values in an IN list
+   */
+  private static final int MAX_IN_LIST_SIZE = 1000;
+
+  /**
+   * Last enqueue time of MMA_PENDING_QUEUE, see {@link #getEnqueueTime()}
+   */
+  private static final AtomicLong LAST_ENQUEUE_TIME = new AtomicLong(0L);
+
+  /**
+   * SQL states and vendor error codes of transactions conflicting with concurrent ones, see
+   * {@link #isTransactionConflict(Throwable)}
+   */
+  private static final Set<String> TRANSACTION_CONFLICT_SQL_STATES =
+      new HashSet<>(Arrays.asList("40001", "HYT00", "90131"));
+  private static final Set<Integer> TRANSACTION_CONFLICT_ERROR_CODES =
+      new HashSet<>(Arrays.asList(90131, 40001, 50200, 1213, 1205));
+
+  private static final String SELECT_FROM_MMA_PT_META = String.format(
+      "SELECT %s, %s, %s, %s FROM %s",
+      Constants.MMA_PT_META_COL_PT_VALS,
+      Constants.MMA_PT_META_COL_STATUS,
+      Constants.MMA_PT_META_COL_ATTEMPT_TIMES,
+      Constants.MMA_PT_META_COL_LAST_MODIFIED_TIME,
+      Constants.MMA_PT_META_TBL_NAME);
+
+  /**
+   * Condition on the table id of records in MMA_PT_META. Takes two parameters, db and tbl.
+   */
+  private static final String TABLE_ID_CONDITION = String.format(
+      "%s=(SELECT %s FROM %s WHERE %s=? AND %s=?)",
+      Constants.MMA_PT_META_COL_TABLE_ID,
+      Constants.MMA_TBL_ID_COL_TABLE_ID,
+      Constants.MMA_TBL_ID_TBL_NAME,
+      Constants.MMA_TBL_ID_COL_DB_NAME,
+      Constants.MMA_TBL_ID_COL_TBL_NAME);
+
   /**
    * Represents a row in table meta
    */
@@ -242,11 +305,6 @@ public class MmaMetaManagerDbImplUtils {
     }
   }
 
-  public static String getCreateMmaPartitionMetaSchemaDdl(String db) {
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db);
-    return "CREATE SCHEMA IF NOT EXISTS " + schemaName;
-  }
-
   public static String getCreateMmaTableMetaDdl() {
     StringBuilder sb = new StringBuilder();
     sb.append("CREATE TABLE IF NOT EXISTS ").append(Constants.MMA_TBL_META_TBL_NAME).append(" (\n");
@@ -283,27 +341,103 @@ public class MmaMetaManagerDbImplUtils {
     return sb.toString();
   }
 
-  public static String getCreateMmaPartitionMetaDdl(String db, String tbl) {
+  public static String getCreateMmaPendingQueueDdl() {
     StringBuilder sb = new StringBuilder();
-    sb
-        .append("CREATE TABLE IF NOT EXISTS ")
-        .append(String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db))
-        .append(".")
-        .append(String.format(Constants.MMA_PT_META_TBL_NAME_FMT, tbl))
-        .append(" (\n");
+    sb.append("CREATE TABLE IF NOT EXISTS ").append(Constants.MMA_PENDING_QUEUE_TBL_NAME).append(" (\n");
+    for (Map.Entry<String, String> entry : Constants.MMA_PENDING_QUEUE_COL_TO_TYPE.entrySet()) {
+      sb.append("    ").append(entry.getKey()).append(" ").append(entry.getValue()).append(",\n");
+    }
+    sb.append("    PRIMARY KEY (").append(Constants.MMA_PENDING_QUEUE_COL_DB_NAME).append(", ");
+    sb.append(Constants.MMA_PENDING_QUEUE_COL_TBL_NAME).append("))\n");
+    return sb.toString();
+  }
+
+  public static String getCreateMmaJobConfigDdl() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("CREATE TABLE IF NOT EXISTS ").append(Constants.MMA_JOB_CONFIG_TBL_NAME).append(" (\n");
+    for (Map.Entry<String, String> entry : Constants.MMA_JOB_CONFIG_COL_TO_TYPE.entrySet()) {
+      sb.append("    ").append(entry.getKey()).append(" ").append(entry.getValue()).append(",\n");
+    }
+    sb.append("    PRIMARY KEY (").append(Constants.MMA_JOB_CONFIG_COL_CONFIG_ID).append("))\n");
+    return sb.toString();
+  }
+
+  public static String getCreateMmaCounterDdl() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("CREATE TABLE IF NOT EXISTS ").append(Constants.MMA_COUNTER_TBL_NAME).append(" (\n");
+    for (Map.Entry<String, String> entry : Constants.MMA_COUNTER_COL_TO_TYPE.entrySet()) {
+      sb.append("    ").append(entry.getKey()).append(" ").append(entry.getValue()).append(",\n");
+    }
+    sb.append("    PRIMARY KEY (").append(Constants.MMA_COUNTER_COL_TABLE_ID).append(", ");
+    sb.append(Constants.MMA_COUNTER_COL_STATUS).append("))\n");
+    return sb.toString();
+  }
+
+  public static String getCreateMmaCursorDdl() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("CREATE TABLE IF NOT EXISTS ").append(Constants.MMA_CURSOR_TBL_NAME).append(" (\n");
+    for (Map.Entry<String, String> entry : Constants.MMA_CURSOR_COL_TO_TYPE.entrySet()) {
+      sb.append("    ").append(entry.getKey()).append(" ").append(entry.getValue()).append(",\n");
+    }
+    sb.append("    PRIMARY KEY (").append(Constants.MMA_CURSOR_COL_NAME).append("))\n");
+    return sb.toString();
+  }
+
+  public static String getCreateMmaTableIdDdl() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("CREATE TABLE IF NOT EXISTS ").append(Constants.MMA_TBL_ID_TBL_NAME).append(" (\n");
+    sb.append("    ").append(Constants.MMA_TBL_ID_COL_TABLE_ID).append(" ")
+        .append(Constants.BIGINT).append(" AUTO_INCREMENT,\n");
+    sb.append("    ").append(Constants.MMA_TBL_ID_COL_DB_NAME).append(" ")
+        .append(Constants.VARCHAR_255).append(",\n");
+    sb.append("    ").append(Constants.MMA_TBL_ID_COL_TBL_NAME).append(" ")
+        .append(Constants.VARCHAR_255).append(",\n");
+    sb.append("    PRIMARY KEY (").append(Constants.MMA_TBL_ID_COL_TABLE_ID).append("),\n");
+    sb.append("    UNIQUE (").append(Constants.MMA_TBL_ID_COL_DB_NAME).append(", ");
+    sb.append(Constants.MMA_TBL_ID_COL_TBL_NAME).append("))\n");
+    return sb.toString();
+  }
 
+  public static String getCreateMmaPartitionMetaDdl() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("CREATE TABLE IF NOT EXISTS ").append(Constants.MMA_PT_META_TBL_NAME).append(" (\n");
     for (Map.Entry<String, String> entry : Constants.MMA_PT_META_COL_TO_TYPE.entrySet()) {
       sb.append("    ").append(entry.getKey()).append(" ").append(entry.getValue()).append(",\n");
     }
-    sb.append("    PRIMARY KEY (").append(Constants.MMA_PT_META_COL_PT_VALS).append("))\n");
+    sb.append("    PRIMARY KEY (").append(Constants.MMA_PT_META_COL_TABLE_ID).append(", ");
+    sb.append(Constants.MMA_PT_META_COL_PT_VALS).append("))\n");
     return sb.toString();
   }
 
+  public static String getCreateMmaPartitionMetaIndexDdl() {
+    return String.format("CREATE INDEX %s ON %s (%s, %s)",
+                         Constants.MMA_PT_META_IDX_TABLE_ID_STATUS,
+                         Constants.MMA_PT_META_TBL_NAME,
+                         Constants.MMA_PT_META_COL_TABLE_ID,
+                         Constants.MMA_PT_META_COL_STATUS);
+  }
+
+  public static String getCreateMmaTableMetaIndexDdl() {
+    return String.format("CREATE INDEX %s ON %s (%s)",
+                         Constants.MMA_TBL_META_IDX_STATUS,
+                         Constants.MMA_TBL_META_TBL_NAME,
+                         Constants.MMA_TBL_META_COL_STATUS);
+  }
+
+  /**
+   * Create MMA_TBL_META and the index of MMA_TBL_META on status
+   */
   public static void createMmaTableMeta(Connection conn) throws SQLException {
     try (Statement stmt = conn.createStatement()) {
       String ddl = getCreateMmaTableMetaDdl();
       LOG.debug("Executing create table ddl: {}", ddl);
       stmt.execute(ddl);
+
+      if (!indexExists(conn, Constants.MMA_TBL_META_TBL_NAME, Constants.MMA_TBL_META_IDX_STATUS)) {
+        ddl = getCreateMmaTableMetaIndexDdl();
+        LOG.debug("Executing create index ddl: {}", ddl);
+        stmt.execute(ddl);
+      }
     }
   }
 
@@ -323,37 +457,212 @@ public class MmaMetaManagerDbImplUtils {
     }
   }
 
-  public static void removeActiveTasksFromRestoreTable(Connection conn) throws SQLException {
+  public static void createMmaPendingQueue(Connection conn) throws SQLException {
     try (Statement stmt = conn.createStatement()) {
-      String dml = String.format("DELETE FROM %s WHERE %s='%s' or %s='%s'",
-          Constants.MMA_OBJ_RESTORE_TBL_NAME,
-          Constants.MMA_OBJ_RESTORE_COL_STATUS,
-          MigrationStatus.PENDING.name(),
-          Constants.MMA_OBJ_RESTORE_COL_STATUS,
-          MigrationStatus.RUNNING.name());
-      LOG.debug("Executing delete rows ddl: {}", dml);
-      stmt.execute(dml);
+      String ddl = getCreateMmaPendingQueueDdl();
+      LOG.debug("Executing create table ddl: {}", ddl);
+      stmt.execute(ddl);
     }
   }
 
-  public static void createMmaPartitionMetaSchema(Connection conn, String db) throws SQLException {
+  public static void createMmaJobConfig(Connection conn) throws SQLException {
     try (Statement stmt = conn.createStatement()) {
-      String ddl = getCreateMmaPartitionMetaSchemaDdl(db);
-      LOG.debug("Executing create schema ddl: {}", ddl);
+      String ddl = getCreateMmaJobConfigDdl();
+      LOG.debug("Executing create table ddl: {}", ddl);
       stmt.execute(ddl);
     }
   }
 
-  public static void createMmaPartitionMeta(Connection conn,
-                                            String db,
-                                            String tbl) throws SQLException {
+  public static void createMmaCursor(Connection conn) throws SQLException {
     try (Statement stmt = conn.createStatement()) {
-      String ddl = getCreateMmaPartitionMetaDdl(db, tbl);
-      LOG.debug("Executing create schema ddl: {}", ddl);
+      String ddl = getCreateMmaCursorDdl();
+      LOG.debug("Executing create table ddl: {}", ddl);
       stmt.execute(ddl);
     }
   }
 
+  public static void removeActiveTasksFromRestoreTable(Connection conn) throws SQLException {
+    deleteFromRestoreMeta(
+        conn,
+        new MetaCondition().in(
+            Constants.MMA_OBJ_RESTORE_COL_STATUS,
+            Arrays.asList(MigrationStatus.PENDING.name(), MigrationStatus.RUNNING.name())));
+  }
+
+  /**
+   * Create MMA_TBL_ID, MMA_PT_META, the index of MMA_PT_META on (table_id, status) and
+   * MMA_COUNTER
+   */
+  public static void createMmaPartitionMeta(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      String ddl = getCreateMmaTableIdDdl();
+      LOG.debug("Executing create table ddl: {}", ddl);
+      stmt.execute(ddl);
+
+      ddl = getCreateMmaPartitionMetaDdl();
+      LOG.debug("Executing create table ddl: {}", ddl);
+      stmt.execute(ddl);
+
+      // CREATE INDEX IF NOT EXISTS is not supported by MySQL
+      if (!indexExists(conn,
+                       Constants.MMA_PT_META_TBL_NAME,
+                       Constants.MMA_PT_META_IDX_TABLE_ID_STATUS)) {
+        ddl = getCreateMmaPartitionMetaIndexDdl();
+        LOG.debug("Executing create index ddl: {}", ddl);
+        stmt.execute(ddl);
+      }
+
+    }
+    createMmaCounter(conn);
+  }
+
+  public static void createMmaCounter(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      String ddl = getCreateMmaCounterDdl();
+      LOG.debug("Executing create table ddl: {}", ddl);
+      stmt.execute(ddl);
+    }
+  }
+
+  private static boolean indexExists(Connection conn, String tableName, String indexName)
+      throws SQLException {
+    try (ResultSet rs = conn.getMetaData().getIndexInfo(null, null, tableName, false, true)) {
+      while (rs.next()) {
+        if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Move partition meta in the legacy layout, which is one table per job, to MMA_PT_META. Legacy
+   * tables are dropped once their records are moved.
+   *
+   * Legacy tables allow 768 characters of partition values, but MMA_PT_META allows 766. Migration
+   * fails before moving anything if a job has longer partition values.
+   */
+  public static void migrateLegacyMmaPartitionMeta(Connection conn) throws SQLException {
+    for (JobInfo jobInfo : selectFromMmaTableMeta(conn, null, -1)) {
+      if (!jobInfo.isPartitioned()) {
+        continue;
+      }
+
+      String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, jobInfo.getDb());
+      String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT, jobInfo.getTbl());
+      if (!legacyTableExists(conn, schemaName, tableName)) {
+        continue;
+      }
+
+      LOG.info("Migrating partition meta, db: {}, tbl: {}", jobInfo.getDb(), jobInfo.getTbl());
+      checkLegacyPartitionValuesLength(conn, jobInfo, schemaName, tableName);
+      long tableId = getOrCreateTableId(conn, jobInfo.getDb(), jobInfo.getTbl());
+      try (Statement stmt = conn.createStatement()) {
+        String dml = String.format("INSERT INTO %s SELECT %d, %s, %s, %s, %s FROM %s.%s",
+                                   Constants.MMA_PT_META_TBL_NAME,
+                                   tableId,
+                                   Constants.MMA_PT_META_COL_PT_VALS,
+                                   Constants.MMA_PT_META_COL_STATUS,
+                                   Constants.MMA_PT_META_COL_ATTEMPT_TIMES,
+                                   Constants.MMA_PT_META_COL_LAST_MODIFIED_TIME,
+                                   schemaName,
+                                   tableName);
+        LOG.debug("Executing DML: {}", dml);
+        stmt.execute(dml);
+
+        String ddl = "DROP TABLE " + schemaName + "." + tableName;
+        LOG.debug("Executing DDL: {}", ddl);
+        stmt.execute(ddl);
+      }
+    }
+  }
+
+  private static void checkLegacyPartitionValuesLength(Connection conn,
+                                                       JobInfo jobInfo,
+                                                       String schemaName,
+                                                       String tableName) throws SQLException {
+    String sql = String.format("SELECT %s FROM %s.%s WHERE CHAR_LENGTH(%s) > %d",
+                               Constants.MMA_PT_META_COL_PT_VALS,
+                               schemaName,
+                               tableName,
+                               Constants.MMA_PT_META_COL_PT_VALS,
+                               MAX_PT_VALS_LENGTH);
+    try (Statement stmt = conn.createStatement()) {
+      LOG.debug("Executing SQL: {}", sql);
+      try (ResultSet rs = stmt.executeQuery(sql)) {
+        if (rs.next()) {
+          throw new SQLException(String.format(
+              "Failed to migrate partition meta, db: %s, tbl: %s, partition values longer than %d "
+              + "characters: %s. Remove the migration job, or shorten the partition values in "
+              + "%s.%s",
+              jobInfo.getDb(),
+              jobInfo.getTbl(),
+              MAX_PT_VALS_LENGTH,
+              rs.getString(1),
+              schemaName,
+              tableName));
+        }
+      }
+    }
+  }
+
+  private static boolean legacyTableExists(Connection conn, String schemaName, String tableName)
+      throws SQLException {
+    DatabaseMetaData metaData = conn.getMetaData();
+    // MySQL reports databases as catalogs
+    try (ResultSet rs = metaData.getTables(schemaName, null, tableName, null)) {
+      if (rs.next()) {
+        return true;
+      }
+    }
+    // H2 stores unquoted identifiers in upper case
+    try (ResultSet rs = metaData.getTables(
+        null, schemaName.toUpperCase(), tableName.toUpperCase(), null)) {
+      return rs.next();
+    }
+  }
+
+  /**
+   * Return the id of a table in MMA_TBL_ID, the id is created if it doesn't exist
+   */
+  public static long getOrCreateTableId(Connection conn, String db, String tbl)
+      throws SQLException {
+    Long tableId = selectFromMmaTableId(conn, db, tbl);
+    if (tableId != null) {
+      return tableId;
+    }
+
+    String dml = String.format("INSERT INTO %s (%s, %s) VALUES (?, ?)",
+                               Constants.MMA_TBL_ID_TBL_NAME,
+                               Constants.MMA_TBL_ID_COL_DB_NAME,
+                               Constants.MMA_TBL_ID_COL_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", dml, db, tbl);
+      preparedStatement.execute();
+    }
+
+    return Objects.requireNonNull(selectFromMmaTableId(conn, db, tbl));
+  }
+
+  private static Long selectFromMmaTableId(Connection conn, String db, String tbl)
+      throws SQLException {
+    String sql = String.format("SELECT %s FROM %s WHERE %s=? AND %s=?",
+                               Constants.MMA_TBL_ID_COL_TABLE_ID,
+                               Constants.MMA_TBL_ID_TBL_NAME,
+                               Constants.MMA_TBL_ID_COL_DB_NAME,
+                               Constants.MMA_TBL_ID_COL_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      try (ResultSet rs = preparedStatement.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : null;
+      }
+    }
+  }
+
   // return MERGE INTO or REPLACE INTO
   private synchronized static String getUpsertKeyword() {
     if (UPSERT_KEYWORD == null) {
@@ -363,19 +672,133 @@ public class MmaMetaManagerDbImplUtils {
     return UPSERT_KEYWORD;
   }
 
+  /**
+   * Returns true if the failure, or any of its causes, is a transaction that failed to serialize
+   * with concurrent ones or timed out waiting for their locks. Such a transaction is rolled back
+   * and could be retried.
+   *
+   * H2: 90131 (concurrent update), 40001 (deadlock), HYT00 (lock timeout).
+   * MySQL: 1213 (deadlock), 1205 (lock wait timeout).
+   */
+  public static boolean isTransactionConflict(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof SQLException) {
+        SQLException sqlException = (SQLException) t;
+        if (TRANSACTION_CONFLICT_SQL_STATES.contains(sqlException.getSQLState())
+            || TRANSACTION_CONFLICT_ERROR_CODES.contains(sqlException.getErrorCode())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Insert a job config into MMA_JOB_CONFIG if it does not exist
+   *
+   * @return id of the job config
+   */
+  public static String mergeIntoMmaJobConfig(Connection conn, MmaConfig.JobConfig jobConfig)
+      throws SQLException {
+    String configId = JOB_CONFIG_TO_ID.get(jobConfig);
+    byte[] bytes = null;
+    if (configId == null) {
+      bytes = JobConfigCodec.encode(jobConfig);
+      configId = JobConfigCodec.getId(bytes);
+      JOB_CONFIG_TO_ID.put(jobConfig, configId);
+    }
+
+    // Rows are never updated or deleted, so an existing row could be reused. Rows are content
+    // addressed, a concurrent writer could only insert the same row
+    String sql = String.format("SELECT 1 FROM %s WHERE %s=?",
+                               Constants.MMA_JOB_CONFIG_TBL_NAME,
+                               Constants.MMA_JOB_CONFIG_COL_CONFIG_ID);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, configId);
+      try (ResultSet rs = preparedStatement.executeQuery()) {
+        if (rs.next()) {
+          return configId;
+        }
+      }
+    }
+
+    if (bytes == null) {
+      bytes = JobConfigCodec.encode(jobConfig);
+    }
+    String dml = getUpsertKeyword() + Constants.MMA_JOB_CONFIG_TBL_NAME + " VALUES (?, ?)";
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, configId);
+      preparedStatement.setBytes(2, bytes);
+      LOG.debug("Executing DML: {}, arguments: {}", dml, configId);
+      preparedStatement.execute();
+    }
+    return configId;
+  }
+
+  /**
+   * Return the parsed description of a table migration job config. Job configs are immutable, so
+   * configs stored in MMA_JOB_CONFIG are parsed once.
+   */
+  public static MmaConfig.TableMigrationConfig getTableMigrationConfig(
+      MmaConfig.JobConfig jobConfig) {
+    String configId = JOB_CONFIG_TO_ID.get(jobConfig);
+    if (configId == null) {
+      // Written by older versions
+      return MmaConfig.TableMigrationConfig.fromJson(jobConfig.getDescription());
+    }
+    return ID_TO_TABLE_MIGRATION_CONFIG.computeIfAbsent(
+        configId, id -> MmaConfig.TableMigrationConfig.fromJson(jobConfig.getDescription()));
+  }
+
+  /**
+   * Return the job config referenced by a value of column 'migration_config' of MMA_TBL_META or
+   * column 'job_config' of MMA_DATABASE_RESTORE. Job configs are immutable, so they are cached.
+   */
+  public static MmaConfig.JobConfig selectFromMmaJobConfig(Connection conn, String configRef)
+      throws SQLException {
+    if (configRef.startsWith("{")) {
+      // Written by older versions
+      return GsonUtils.getFullConfigGson().fromJson(configRef, MmaConfig.JobConfig.class);
+    }
+
+    MmaConfig.JobConfig jobConfig = ID_TO_JOB_CONFIG.get(configRef);
+    if (jobConfig != null) {
+      return jobConfig;
+    }
+
+    String sql = String.format("SELECT %s FROM %s WHERE %s=?",
+                               Constants.MMA_JOB_CONFIG_COL_CONFIG,
+                               Constants.MMA_JOB_CONFIG_TBL_NAME,
+                               Constants.MMA_JOB_CONFIG_COL_CONFIG_ID);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, configRef);
+      LOG.debug("Executing SQL: {}, arguments: {}", sql, configRef);
+      try (ResultSet rs = preparedStatement.executeQuery()) {
+        if (!rs.next()) {
+          throw new SQLException("Job config not found: " + configRef);
+        }
+        jobConfig = JobConfigCodec.decode(rs.getBytes(1));
+      }
+    }
+    ID_TO_JOB_CONFIG.put(configRef, jobConfig);
+    JOB_CONFIG_TO_ID.put(jobConfig, configRef);
+    return jobConfig;
+  }
+
   /**
    * Insert into or update (A.K.A Upsert) MMA_TBL_META
    */
   public static void mergeIntoMmaTableMeta(Connection conn, JobInfo jobInfo)
       throws SQLException {
 
+    // The job config must be written first, it is written with another statement
+    String configId = mergeIntoMmaJobConfig(conn, jobInfo.getJobConfig());
     String dml = getUpsertKeyword() + Constants.MMA_TBL_META_TBL_NAME + " VALUES (?, ?, ?, ?, ?, ?, ?)";
     try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
       preparedStatement.setString(1, jobInfo.getDb());
       preparedStatement.setString(2, jobInfo.getTbl());
       preparedStatement.setBoolean(3, jobInfo.isPartitioned());
-      preparedStatement.setString(4,
-                                  GsonUtils.getFullConfigGson().toJson(jobInfo.getJobConfig()));
+      preparedStatement.setString(4, configId);
       preparedStatement.setString(5, jobInfo.getStatus().toString());
       preparedStatement.setInt(6, jobInfo.getAttemptTimes());
       preparedStatement.setLong(7, jobInfo.getLastModifiedTime());
@@ -390,23 +813,34 @@ public class MmaMetaManagerDbImplUtils {
 
   public static void mergeIntoRestoreTableMeta(Connection conn, RestoreTaskInfo taskInfo)
       throws SQLException {
+    mergeIntoRestoreTableMeta(conn, Collections.singletonList(taskInfo));
+  }
+
+  /**
+   * Insert into or update (A.K.A Upsert) MMA_OBJ_RESTORE, records are written in one batch
+   */
+  public static void mergeIntoRestoreTableMeta(Connection conn, List<RestoreTaskInfo> taskInfos)
+      throws SQLException {
     String dml = getUpsertKeyword() + Constants.MMA_OBJ_RESTORE_TBL_NAME + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
     try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
-      preparedStatement.setString(1, taskInfo.getUniqueId());
-      preparedStatement.setString(2, taskInfo.getType());
-      preparedStatement.setString(3, taskInfo.getDb());
-      preparedStatement.setString(4, taskInfo.getObject());
-      preparedStatement.setString(5,
-                                  GsonUtils.getFullConfigGson().toJson(taskInfo.getJobConfig()));
-      preparedStatement.setString(6, taskInfo.getStatus().toString());
-      preparedStatement.setInt(7, taskInfo.getAttemptTimes());
-      preparedStatement.setLong(8, taskInfo.getLastModifiedTime());
-
-      LOG.debug("Executing DML: {}, arguments: {}",
-               dml,
-               GsonUtils.getFullConfigGson().toJson(taskInfo));
-
-      preparedStatement.execute();
+      for (RestoreTaskInfo taskInfo : taskInfos) {
+        String configId = mergeIntoMmaJobConfig(conn, taskInfo.getJobConfig());
+        preparedStatement.setString(1, taskInfo.getUniqueId());
+        preparedStatement.setString(2, taskInfo.getType());
+        preparedStatement.setString(3, taskInfo.getDb());
+        preparedStatement.setString(4, taskInfo.getObject());
+        preparedStatement.setString(5, configId);
+        preparedStatement.setString(6, taskInfo.getStatus().toString());
+        preparedStatement.setInt(7, taskInfo.getAttemptTimes());
+        preparedStatement.setLong(8, taskInfo.getLastModifiedTime());
+        preparedStatement.addBatch();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Executing DML: {}, arguments: {}",
+                    dml,
+                    GsonUtils.getFullConfigGson().toJson(taskInfo));
+        }
+      }
+      preparedStatement.executeBatch();
     }
   }
 
@@ -426,16 +860,194 @@ public class MmaMetaManagerDbImplUtils {
    * Delete from MMA_META
    */
   public static void deleteFromMmaMeta(Connection conn, String db, String tbl) throws SQLException {
-    String dml = String.format("DELETE FROM %s WHERE %s='%s' and %s='%s'",
+    String dml = String.format("DELETE FROM %s WHERE %s=? AND %s=?",
                                Constants.MMA_TBL_META_TBL_NAME,
                                Constants.MMA_TBL_META_COL_DB_NAME,
-                               db,
-                               Constants.MMA_TBL_META_COL_TBL_NAME,
-                               tbl);
+                               Constants.MMA_TBL_META_COL_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", dml, db, tbl);
+      preparedStatement.execute();
+    }
+  }
+
+  /**
+   * Delete from MMA_OBJ_RESTORE
+   *
+   * @param condition null means deleting all records
+   */
+  public static void deleteFromRestoreMeta(Connection conn, MetaCondition condition)
+      throws SQLException {
+    String dml = "DELETE FROM " + Constants.MMA_OBJ_RESTORE_TBL_NAME
+        + (condition == null ? "" : condition.toSql());
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      if (condition != null) {
+        condition.setParameters(preparedStatement, 1);
+      }
+      LOG.debug("Executing DML: {}, condition: {}", dml, condition);
+      preparedStatement.execute();
+    }
+  }
+
+  /**
+   * Delete from MMA_OBJ_TEMPORARY
+   */
+  public static void deleteFromTemporaryTableMeta(Connection conn,
+                                                  String uniqueId,
+                                                  String db,
+                                                  String tbl) throws SQLException {
+    String dml = String.format("DELETE FROM %s WHERE %s=? AND %s=? AND %s=?",
+                               Constants.MMA_OBJ_TEMPORARY_TBL_NAME,
+                               Constants.MMA_OBJ_TEMPORARY_COL_UNIQUE_ID,
+                               Constants.MMA_OBJ_TEMPORARY_COL_PROJECT,
+                               Constants.MMA_OBJ_TEMPORARY_COL_TABLE);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, uniqueId);
+      preparedStatement.setString(2, db);
+      preparedStatement.setString(3, tbl);
+      LOG.info("Executing DML: {}, arguments: ({}, {}, {})", dml, uniqueId, db, tbl);
+      preparedStatement.execute();
+    }
+  }
+
+  /**
+   * Return the current time, or the last returned value plus one if the clock hasn't moved, so
+   * that jobs enqueued in a row are claimed in the same order.
+   */
+  public static long getEnqueueTime() {
+    long now = System.currentTimeMillis();
+    return LAST_ENQUEUE_TIME.updateAndGet(last -> Math.max(now, last + 1));
+  }
+
+  /**
+   * Add a job to MMA_PENDING_QUEUE. If the job is already in the queue, it is moved to the tail
+   * and its claim is released.
+   */
+  public static void enqueueIntoMmaPendingQueue(Connection conn, String db, String tbl)
+      throws SQLException {
+    deleteFromMmaPendingQueue(conn, db, tbl);
+
+    String dml = String.format("INSERT INTO %s VALUES (?, ?, ?, ?)",
+                               Constants.MMA_PENDING_QUEUE_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      long enqueueTime = getEnqueueTime();
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      preparedStatement.setLong(3, enqueueTime);
+      preparedStatement.setLong(4, Constants.MMA_PENDING_QUEUE_NA_VALUE_CLAIM_TIME);
+      LOG.debug("Executing DML: {}, arguments: ({}, {}, {})", dml, db, tbl, enqueueTime);
+      preparedStatement.execute();
+    }
+  }
+
+  /**
+   * Remove a job from MMA_PENDING_QUEUE
+   */
+  public static void deleteFromMmaPendingQueue(Connection conn, String db, String tbl)
+      throws SQLException {
+    String dml = String.format("DELETE FROM %s WHERE %s=? AND %s=?",
+                               Constants.MMA_PENDING_QUEUE_TBL_NAME,
+                               Constants.MMA_PENDING_QUEUE_COL_DB_NAME,
+                               Constants.MMA_PENDING_QUEUE_COL_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", dml, db, tbl);
+      preparedStatement.execute();
+    }
+  }
+
+  /**
+   * Rebuild MMA_PENDING_QUEUE from MMA_TBL_META, all the jobs in PENDING status are enqueued and
+   * none of them is claimed.
+   */
+  public static void rebuildMmaPendingQueue(Connection conn) throws SQLException {
+    String dml = "DELETE FROM " + Constants.MMA_PENDING_QUEUE_TBL_NAME;
     try (Statement stmt = conn.createStatement()) {
       LOG.debug("Executing DML: {}", dml);
       stmt.execute(dml);
     }
+
+    dml = String.format("INSERT INTO %s SELECT %s, %s, ?, ? FROM %s WHERE %s=?",
+                        Constants.MMA_PENDING_QUEUE_TBL_NAME,
+                        Constants.MMA_TBL_META_COL_DB_NAME,
+                        Constants.MMA_TBL_META_COL_TBL_NAME,
+                        Constants.MMA_TBL_META_TBL_NAME,
+                        Constants.MMA_TBL_META_COL_STATUS);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setLong(1, System.currentTimeMillis());
+      preparedStatement.setLong(2, Constants.MMA_PENDING_QUEUE_NA_VALUE_CLAIM_TIME);
+      preparedStatement.setString(3, MigrationStatus.PENDING.toString());
+      LOG.debug("Executing DML: {}", dml);
+      preparedStatement.execute();
+    }
+  }
+
+  /**
+   * Claim jobs from MMA_PENDING_QUEUE in the order they are enqueued. A job can be claimed if it
+   * is not claimed, or its claim is older than claimTimeoutMs, which means the claimer failed to
+   * start it.
+   *
+   * @param limit max number of jobs to claim
+   * @return records from MMA_TBL_META of claimed jobs
+   */
+  public static List<JobInfo> claimFromMmaPendingQueue(Connection conn,
+                                                       int limit,
+                                                       long claimTimeoutMs)
+      throws SQLException {
+    long now = System.currentTimeMillis();
+    String sql = String.format(
+        "SELECT m.* FROM %s q JOIN %s m ON q.%s=m.%s AND q.%s=m.%s "
+        + "WHERE q.%s<? ORDER BY q.%s, q.%s, q.%s LIMIT ?",
+        Constants.MMA_PENDING_QUEUE_TBL_NAME,
+        Constants.MMA_TBL_META_TBL_NAME,
+        Constants.MMA_PENDING_QUEUE_COL_DB_NAME,
+        Constants.MMA_TBL_META_COL_DB_NAME,
+        Constants.MMA_PENDING_QUEUE_COL_TBL_NAME,
+        Constants.MMA_TBL_META_COL_TBL_NAME,
+        Constants.MMA_PENDING_QUEUE_COL_CLAIM_TIME,
+        Constants.MMA_PENDING_QUEUE_COL_ENQUEUE_TIME,
+        Constants.MMA_PENDING_QUEUE_COL_DB_NAME,
+        Constants.MMA_PENDING_QUEUE_COL_TBL_NAME);
+
+    List<JobInfo> ret = new LinkedList<>();
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      // Unclaimed jobs have claim time -1, which always satisfies the condition
+      preparedStatement.setLong(1, now - claimTimeoutMs);
+      preparedStatement.setInt(2, limit);
+      LOG.debug("Executing SQL: {}", sql);
+      try (ResultSet rs = preparedStatement.executeQuery()) {
+        while (rs.next()) {
+          ret.add(new JobInfo(
+              rs.getString(1),
+              rs.getString(2),
+              rs.getBoolean(3),
+              selectFromMmaJobConfig(conn, rs.getString(4)),
+              MigrationStatus.valueOf(rs.getString(5)),
+              rs.getInt(6),
+              rs.getLong(7)));
+        }
+      }
+    }
+
+    String dml = String.format("UPDATE %s SET %s=? WHERE %s=? AND %s=?",
+                               Constants.MMA_PENDING_QUEUE_TBL_NAME,
+                               Constants.MMA_PENDING_QUEUE_COL_CLAIM_TIME,
+                               Constants.MMA_PENDING_QUEUE_COL_DB_NAME,
+                               Constants.MMA_PENDING_QUEUE_COL_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      for (JobInfo jobInfo : ret) {
+        preparedStatement.setLong(1, now);
+        preparedStatement.setString(2, jobInfo.getDb());
+        preparedStatement.setString(3, jobInfo.getTbl());
+        preparedStatement.addBatch();
+      }
+      LOG.debug("Executing DML: {}, number of jobs: {}", dml, ret.size());
+      preparedStatement.executeBatch();
+    }
+
+    return ret;
   }
 
   /**
@@ -444,24 +1056,24 @@ public class MmaMetaManagerDbImplUtils {
   public static JobInfo selectFromMmaTableMeta(Connection conn, String db, String tbl)
       throws SQLException {
 
-    String sql = String.format("SELECT * FROM %s WHERE %s='%s' and %s='%s'",
+    String sql = String.format("SELECT * FROM %s WHERE %s=? AND %s=?",
                                Constants.MMA_TBL_META_TBL_NAME,
                                Constants.MMA_TBL_META_COL_DB_NAME,
-                               db,
-                               Constants.MMA_TBL_META_COL_TBL_NAME,
-                               tbl);
+                               Constants.MMA_TBL_META_COL_TBL_NAME);
 
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing SQL: {}", sql);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing SQL: {}, arguments: ({}, {})", sql, db, tbl);
 
-      try (ResultSet rs = stmt.executeQuery(sql)) {
+      try (ResultSet rs = preparedStatement.executeQuery()) {
         if(!rs.next()) {
           return null;
         }
         return new JobInfo(db,
                                 tbl,
                                 rs.getBoolean(3),
-                                GsonUtils.getFullConfigGson().fromJson(rs.getString(4), MmaConfig.JobConfig.class),
+                                selectFromMmaJobConfig(conn, rs.getString(4)),
                                 MigrationStatus.valueOf(rs.getString(5)),
                                 rs.getInt(6),
                                 rs.getLong(7));
@@ -478,28 +1090,33 @@ public class MmaMetaManagerDbImplUtils {
     StringBuilder sb = new StringBuilder();
     sb.append(String.format("SELECT * FROM %s", Constants.MMA_TBL_META_TBL_NAME));
     if (status != null) {
-      sb.append(String.format(" WHERE %s='%s'",
-          Constants.MMA_PT_META_COL_STATUS,
-          status.toString()));
+      sb.append(String.format(" WHERE %s=?", Constants.MMA_TBL_META_COL_STATUS));
     }
     sb.append(String.format(" ORDER BY %s, %s DESC",
         Constants.MMA_TBL_META_COL_DB_NAME,
         Constants.MMA_TBL_META_COL_TBL_NAME));
     if (limit > 0) {
-      sb.append(" LIMIT ").append(limit);
+      sb.append(" LIMIT ?");
     }
 
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing SQL: {}", sb.toString());
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sb.toString())) {
+      int index = 1;
+      if (status != null) {
+        preparedStatement.setString(index++, status.toString());
+      }
+      if (limit > 0) {
+        preparedStatement.setInt(index, limit);
+      }
+      LOG.debug("Executing SQL: {}, status: {}, limit: {}", sb.toString(), status, limit);
 
-      try (ResultSet rs = stmt.executeQuery(sb.toString())) {
+      try (ResultSet rs = preparedStatement.executeQuery()) {
         List<JobInfo> ret = new LinkedList<>();
         while (rs.next()) {
           JobInfo jobInfo =
               new JobInfo(rs.getString(1),
                   rs.getString(2),
                   rs.getBoolean(3),
-                  GsonUtils.getFullConfigGson().fromJson(rs.getString(4), MmaConfig.JobConfig.class),
+                  selectFromMmaJobConfig(conn, rs.getString(4)),
                   MigrationStatus.valueOf(rs.getString(5)),
                   rs.getInt(6),
                   rs.getLong(7));
@@ -510,27 +1127,36 @@ public class MmaMetaManagerDbImplUtils {
     }
   }
 
+  /**
+   * Return records from MMA_OBJ_RESTORE
+   *
+   * @param condition null means no condition
+   * @param limit non-positive means no limit
+   */
   public static List<RestoreTaskInfo> selectFromRestoreMeta(Connection conn,
-                                                            String condition,
+                                                            MetaCondition condition,
                                                             int limit) throws SQLException {
     StringBuilder sb = new StringBuilder();
-    sb.append(String.format("SELECT * FROM %s\n", Constants.MMA_OBJ_RESTORE_TBL_NAME));
-    if (!Strings.isNullOrEmpty(condition)) {
-      sb.append(condition).append("\n");
+    sb.append(String.format("SELECT * FROM %s", Constants.MMA_OBJ_RESTORE_TBL_NAME));
+    if (condition != null) {
+      sb.append(condition.toSql());
     }
-    sb.append(String.format("ORDER BY %s, %s, %s, %s DESC\n",
+    sb.append(String.format(" ORDER BY %s, %s, %s, %s DESC",
                             Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID,
                             Constants.MMA_OBJ_RESTORE_COL_DB_NAME,
                             Constants.MMA_OBJ_RESTORE_COL_OBJECT_NAME,
                             Constants.MMA_OBJ_RESTORE_COL_TYPE));
     if (limit > 0) {
-      sb.append("LIMIT ").append(limit);
+      sb.append(" LIMIT ?");
     }
-    sb.append(";");
 
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing SQL: {}", sb.toString());
-      try (ResultSet rs = stmt.executeQuery(sb.toString())) {
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sb.toString())) {
+      int index = condition == null ? 1 : condition.setParameters(preparedStatement, 1);
+      if (limit > 0) {
+        preparedStatement.setInt(index, limit);
+      }
+      LOG.debug("Executing SQL: {}, condition: {}, limit: {}", sb.toString(), condition, limit);
+      try (ResultSet rs = preparedStatement.executeQuery()) {
         List<RestoreTaskInfo> ret = new LinkedList<>();
         while (rs.next()) {
           RestoreTaskInfo taskInfo = new RestoreTaskInfo(
@@ -538,7 +1164,7 @@ public class MmaMetaManagerDbImplUtils {
               rs.getString(2),
               rs.getString(3),
               rs.getString(4),
-              GsonUtils.getFullConfigGson().fromJson(rs.getString(5), MmaConfig.JobConfig.class),
+              selectFromMmaJobConfig(conn, rs.getString(5)),
               MigrationStatus.valueOf(rs.getString(6)),
               rs.getInt(7),
               rs.getLong(8));
@@ -549,22 +1175,31 @@ public class MmaMetaManagerDbImplUtils {
     }
   }
 
+  /**
+   * Return records from MMA_OBJ_TEMPORARY, grouped by project
+   *
+   * @param condition null means no condition
+   * @param limit non-positive means no limit
+   */
   public static Map<String, List<String>> selectFromTemporaryTableMeta(Connection conn,
-                                                                       String condition,
+                                                                       MetaCondition condition,
                                                                        int limit) throws SQLException {
     StringBuilder sb = new StringBuilder();
-    sb.append(String.format("SELECT * FROM %s\n", Constants.MMA_OBJ_TEMPORARY_TBL_NAME));
-    if (!Strings.isNullOrEmpty(condition)) {
-      sb.append(condition).append("\n");
+    sb.append(String.format("SELECT * FROM %s", Constants.MMA_OBJ_TEMPORARY_TBL_NAME));
+    if (condition != null) {
+      sb.append(condition.toSql());
     }
     if (limit > 0) {
-      sb.append("LIMIT ").append(limit);
+      sb.append(" LIMIT ?");
     }
-    sb.append(";");
 
-    try (Statement stmt = conn.createStatement()) {
-      LOG.info("Executing SQL: {}", sb.toString());
-      try (ResultSet rs = stmt.executeQuery(sb.toString())) {
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sb.toString())) {
+      int index = condition == null ? 1 : condition.setParameters(preparedStatement, 1);
+      if (limit > 0) {
+        preparedStatement.setInt(index, limit);
+      }
+      LOG.info("Executing SQL: {}, condition: {}, limit: {}", sb.toString(), condition, limit);
+      try (ResultSet rs = preparedStatement.executeQuery()) {
         Map<String, List<String>> ret = new HashMap<>();
         while (rs.next()) {
           String project = rs.getString(2);
@@ -578,25 +1213,49 @@ public class MmaMetaManagerDbImplUtils {
   }
 
   /**
-   * Insert into or update (A.K.A Upsert) MMA_PT_META_DB_[db].MMA_PT_META_TBL_[tbl]
+   * Insert into or update (A.K.A Upsert) MMA_PT_META
    */
   public static void mergeIntoMmaPartitionMeta(Connection conn,
                                                String db,
                                                String tbl,
                                                List<MigrationJobPtInfo> migrationJobPtInfos)
       throws SQLException {
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db);
-    String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT, tbl);
-    String dml = "MERGE INTO " + schemaName + "." + tableName + " VALUES(?, ?, ?, ?)";
+    long tableId = getOrCreateTableId(conn, db, tbl);
+
+    Map<List<String>, MigrationStatus> partitionValuesToStatus = new HashMap<>();
+    batchSelectFromMmaPartitionMeta(
+        conn,
+        db,
+        tbl,
+        migrationJobPtInfos
+            .stream()
+            .map(MigrationJobPtInfo::getPartitionValues)
+            .collect(Collectors.toList()))
+        .forEach((k, v) -> partitionValuesToStatus.put(k, v.getStatus()));
+    Map<MigrationStatus, Integer> deltas = new HashMap<>();
+    for (MigrationJobPtInfo jobPtInfo : migrationJobPtInfos) {
+      MigrationStatus oldStatus =
+          partitionValuesToStatus.put(jobPtInfo.getPartitionValues(), jobPtInfo.getStatus());
+      if (!jobPtInfo.getStatus().equals(oldStatus)) {
+        deltas.merge(jobPtInfo.getStatus(), 1, Integer::sum);
+        if (oldStatus != null) {
+          deltas.merge(oldStatus, -1, Integer::sum);
+        }
+      }
+    }
+    updateMmaCounter(conn, tableId, deltas);
+
+    String dml = getUpsertKeyword() + Constants.MMA_PT_META_TBL_NAME + " VALUES(?, ?, ?, ?, ?)";
 
     try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
       for (MigrationJobPtInfo jobPtInfo : migrationJobPtInfos) {
         String partitionValuesJson =
             GsonUtils.getFullConfigGson().toJson(jobPtInfo.getPartitionValues());
-        preparedStatement.setString(1, partitionValuesJson);
-        preparedStatement.setString(2, jobPtInfo.getStatus().toString());
-        preparedStatement.setInt(3, jobPtInfo.getAttemptTimes());
-        preparedStatement.setLong(4, jobPtInfo.getLastModifiedTime());
+        preparedStatement.setLong(1, tableId);
+        preparedStatement.setString(2, partitionValuesJson);
+        preparedStatement.setString(3, jobPtInfo.getStatus().toString());
+        preparedStatement.setInt(4, jobPtInfo.getAttemptTimes());
+        preparedStatement.setLong(5, jobPtInfo.getLastModifiedTime());
         preparedStatement.addBatch();
         LOG.debug("Executing DML: {}, arguments: {}",
                  dml,
@@ -608,22 +1267,39 @@ public class MmaMetaManagerDbImplUtils {
   }
 
   /**
-   * Drop table MMA_PT_META_DB_[db].MMA_PT_META_TBL_[tbl]
+   * Delete records of a table from MMA_PT_META and MMA_TBL_ID
    */
   public static void dropMmaPartitionMeta(Connection conn, String db, String tbl) throws SQLException {
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db);
-    String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT, tbl);
+    String dml = "DELETE FROM " + Constants.MMA_PT_META_TBL_NAME + " WHERE " + TABLE_ID_CONDITION;
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", dml, db, tbl);
+      preparedStatement.execute();
+    }
 
-    String ddl = "DROP TABLE " + schemaName + "." + tableName;
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing DDL: {}", ddl);
+    dml = "DELETE FROM " + Constants.MMA_COUNTER_TBL_NAME + " WHERE " + TABLE_ID_CONDITION;
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", dml, db, tbl);
+      preparedStatement.execute();
+    }
 
-      stmt.execute(ddl);
+    dml = String.format("DELETE FROM %s WHERE %s=? AND %s=?",
+                        Constants.MMA_TBL_ID_TBL_NAME,
+                        Constants.MMA_TBL_ID_COL_DB_NAME,
+                        Constants.MMA_TBL_ID_COL_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", dml, db, tbl);
+      preparedStatement.execute();
     }
   }
 
   /**
-   * Return a record from MMA_PT_META_DB_[db].MMA_PT_META_TBL_[tbl] if it exists, else null
+   * Return a record from MMA_PT_META if it exists, else null
    */
   public static MigrationJobPtInfo selectFromMmaPartitionMeta(Connection conn,
                                                               String db,
@@ -631,17 +1307,18 @@ public class MmaMetaManagerDbImplUtils {
                                                               List<String> partitionValues)
       throws SQLException {
 
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db);
-    String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT, tbl);
-    String sql = String.format("SELECT * FROM %s.%s WHERE %s='%s'",
-                               schemaName,
-                               tableName, Constants.MMA_PT_META_COL_PT_VALS,
-                               GsonUtils.getFullConfigGson().toJson(partitionValues));
+    String sql = String.format("%s WHERE %s AND %s=?",
+                               SELECT_FROM_MMA_PT_META,
+                               TABLE_ID_CONDITION,
+                               Constants.MMA_PT_META_COL_PT_VALS);
 
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing SQL: {}", sql);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      preparedStatement.setString(3, GsonUtils.getFullConfigGson().toJson(partitionValues));
+      LOG.debug("Executing SQL: {}, arguments: ({}, {}, {})", sql, db, tbl, partitionValues);
 
-      try (ResultSet rs = stmt.executeQuery(sql)) {
+      try (ResultSet rs = preparedStatement.executeQuery()) {
         if (!rs.next()) {
           return null;
         }
@@ -654,7 +1331,56 @@ public class MmaMetaManagerDbImplUtils {
   }
 
   /**
-   * Return records from MMA_PT_META_DB_[db].MMA_PT_META_TBL_[tbl]
+   * Return records of given partitions from MMA_PT_META, keyed by
+   * partition values. Partitions that don't exist are absent from the returned map.
+   */
+  public static Map<List<String>, MigrationJobPtInfo> batchSelectFromMmaPartitionMeta(
+      Connection conn,
+      String db,
+      String tbl,
+      List<List<String>> partitionValuesList)
+      throws SQLException {
+
+    Map<List<String>, MigrationJobPtInfo> ret = new HashMap<>();
+    // Bound the number of parameters of a single query
+    for (int i = 0; i < partitionValuesList.size(); i += MAX_IN_LIST_SIZE) {
+      List<List<String>> batch = partitionValuesList.subList(
+          i, Math.min(i + MAX_IN_LIST_SIZE, partitionValuesList.size()));
+      String sql = String.format(
+          "%s WHERE %s AND %s IN (%s)",
+          SELECT_FROM_MMA_PT_META,
+          TABLE_ID_CONDITION,
+          Constants.MMA_PT_META_COL_PT_VALS,
+          String.join(", ", Collections.nCopies(batch.size(), "?")));
+
+      try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+        preparedStatement.setString(1, db);
+        preparedStatement.setString(2, tbl);
+        for (int j = 0; j < batch.size(); j++) {
+          preparedStatement.setString(j + 3, GsonUtils.getFullConfigGson().toJson(batch.get(j)));
+        }
+        LOG.debug("Executing SQL: {}, number of arguments: {}", sql, batch.size());
+
+        Type type = new TypeToken<List<String>>() {}.getType();
+        try (ResultSet rs = preparedStatement.executeQuery()) {
+          while (rs.next()) {
+            List<String> partitionValues =
+                GsonUtils.getFullConfigGson().fromJson(rs.getString(1), type);
+            ret.put(partitionValues,
+                    new MigrationJobPtInfo(partitionValues,
+                                           MigrationStatus.valueOf(rs.getString(2)),
+                                           rs.getInt(3),
+                                           rs.getLong(4)));
+          }
+        }
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Return records from MMA_PT_META
    */
   public static List<MigrationJobPtInfo> selectFromMmaPartitionMeta(
       Connection conn,
@@ -664,26 +1390,30 @@ public class MmaMetaManagerDbImplUtils {
       int limit)
       throws SQLException {
 
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db);
-    String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT, tbl);
-
     StringBuilder sb = new StringBuilder();
-    sb.append("SELECT * FROM ").append(schemaName).append(".").append(tableName);
+    sb.append(SELECT_FROM_MMA_PT_META).append(" WHERE ").append(TABLE_ID_CONDITION);
     if (status != null) {
-      sb.append(String.format(" WHERE %s='%s'",
-                              Constants.MMA_PT_META_COL_STATUS,
-                              status.toString()));
+      sb.append(" AND ").append(Constants.MMA_PT_META_COL_STATUS).append("=?");
     }
     sb.append(" ORDER BY ").append(Constants.MMA_PT_META_COL_PT_VALS);
     if (limit > 0) {
-      sb.append(" LIMIT ").append(limit);
+      sb.append(" LIMIT ?");
     }
 
     Type type = new TypeToken<List<String>>() {}.getType();
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing SQL: {}", sb.toString());
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sb.toString())) {
+      int index = 1;
+      preparedStatement.setString(index++, db);
+      preparedStatement.setString(index++, tbl);
+      if (status != null) {
+        preparedStatement.setString(index++, status.toString());
+      }
+      if (limit > 0) {
+        preparedStatement.setInt(index, limit);
+      }
+      LOG.debug("Executing SQL: {}, arguments: ({}, {}, {})", sb.toString(), db, tbl, status);
 
-      try (ResultSet rs = stmt.executeQuery(sb.toString())) {
+      try (ResultSet rs = preparedStatement.executeQuery()) {
         List<MigrationJobPtInfo> ret = new LinkedList<>();
         while (rs.next()) {
           MigrationJobPtInfo jobPtInfo =
@@ -699,38 +1429,168 @@ public class MmaMetaManagerDbImplUtils {
     }
   }
 
+  /**
+   * Return the number of partitions of a table in each status, served by MMA_COUNTER
+   */
   public static Map<MigrationStatus, Integer> getPartitionStatusDistribution(
       Connection conn,
       String db,
       String tbl)
       throws SQLException {
 
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db);
-    String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT, tbl);
+    String sql = String.format("SELECT %s, %s FROM %s WHERE %s",
+                               Constants.MMA_COUNTER_COL_STATUS,
+                               Constants.MMA_COUNTER_COL_COUNT,
+                               Constants.MMA_COUNTER_TBL_NAME,
+                               TABLE_ID_CONDITION);
 
-    StringBuilder sb = new StringBuilder();
-    sb
-        .append("SELECT ")
-        .append(Constants.MMA_PT_META_COL_STATUS).append(", COUNT(1) as CNT FROM ")
-        .append(schemaName).append(".").append(tableName)
-        .append(" GROUP BY ").append(Constants.MMA_PT_META_COL_STATUS);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      LOG.debug("Executing SQL: {}, arguments: ({}, {})", sql, db, tbl);
+      return toStatusDistribution(preparedStatement);
+    }
+  }
 
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing SQL: {}", sb.toString());
-      Map<MigrationStatus, Integer> ret = new HashMap<>();
-      try (ResultSet rs = stmt.executeQuery(sb.toString())) {
-        while (rs.next()) {
-          MigrationStatus status =
-              MigrationStatus.valueOf(rs.getString(1));
-          Integer count = rs.getInt(2);
-          ret.put(status, count);
+  /**
+   * Return the number of jobs in each status. Jobs are not counted in MMA_COUNTER, since a single
+   * counter row updated by every job would serialize status updates. The query is served by the
+   * index of MMA_TBL_META on status.
+   */
+  public static Map<MigrationStatus, Integer> getJobStatusDistribution(Connection conn)
+      throws SQLException {
+    String sql = String.format("SELECT %s, COUNT(1) FROM %s GROUP BY %s",
+                               Constants.MMA_TBL_META_COL_STATUS,
+                               Constants.MMA_TBL_META_TBL_NAME,
+                               Constants.MMA_TBL_META_COL_STATUS);
+
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      LOG.debug("Executing SQL: {}", sql);
+      return toStatusDistribution(preparedStatement);
+    }
+  }
+
+  private static Map<MigrationStatus, Integer> toStatusDistribution(
+      PreparedStatement preparedStatement) throws SQLException {
+    Map<MigrationStatus, Integer> ret = new HashMap<>();
+    try (ResultSet rs = preparedStatement.executeQuery()) {
+      while (rs.next()) {
+        int count = rs.getInt(2);
+        // Counters are kept after they drop to 0
+        if (count > 0) {
+          ret.put(MigrationStatus.valueOf(rs.getString(1)), count);
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Add deltas to the counters of a table in MMA_COUNTER, see
+   * {@link Constants#MMA_COUNTER_TBL_NAME}
+   */
+  private static void updateMmaCounter(Connection conn,
+                                       long tableId,
+                                       Map<MigrationStatus, Integer> deltas)
+      throws SQLException {
+    String dml = String.format("UPDATE %s SET %s=%s+? WHERE %s=? AND %s=?",
+                               Constants.MMA_COUNTER_TBL_NAME,
+                               Constants.MMA_COUNTER_COL_COUNT,
+                               Constants.MMA_COUNTER_COL_COUNT,
+                               Constants.MMA_COUNTER_COL_TABLE_ID,
+                               Constants.MMA_COUNTER_COL_STATUS);
+    String insertDml = String.format("INSERT INTO %s VALUES (?, ?, ?)",
+                                     Constants.MMA_COUNTER_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      for (Map.Entry<MigrationStatus, Integer> entry : deltas.entrySet()) {
+        if (entry.getValue() == 0) {
+          continue;
+        }
+        preparedStatement.setLong(1, entry.getValue());
+        preparedStatement.setLong(2, tableId);
+        preparedStatement.setString(3, entry.getKey().toString());
+        LOG.debug("Executing DML: {}, arguments: ({}, {}, {})",
+                  dml, entry.getValue(), tableId, entry.getKey());
+        if (preparedStatement.executeUpdate() == 0) {
+          try (PreparedStatement insertStatement = conn.prepareStatement(insertDml)) {
+            insertStatement.setLong(1, tableId);
+            insertStatement.setString(2, entry.getKey().toString());
+            insertStatement.setLong(3, entry.getValue());
+            insertStatement.execute();
+          }
         }
+      }
+    }
+  }
 
-        return ret;
+  /**
+   * Return the position of a cursor in MMA_CURSOR, or null if it does not exist
+   */
+  public static Long selectFromMmaCursor(Connection conn, String name) throws SQLException {
+    String sql = String.format("SELECT %s FROM %s WHERE %s=?",
+                               Constants.MMA_CURSOR_COL_POSITION,
+                               Constants.MMA_CURSOR_TBL_NAME,
+                               Constants.MMA_CURSOR_COL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, name);
+      LOG.debug("Executing SQL: {}, arguments: {}", sql, name);
+      try (ResultSet rs = preparedStatement.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : null;
       }
     }
   }
 
+  /**
+   * Insert into or update (A.K.A Upsert) MMA_CURSOR
+   */
+  public static void mergeIntoMmaCursor(Connection conn, String name, long position)
+      throws SQLException {
+    String dml = String.format("UPDATE %s SET %s=? WHERE %s=?",
+                               Constants.MMA_CURSOR_TBL_NAME,
+                               Constants.MMA_CURSOR_COL_POSITION,
+                               Constants.MMA_CURSOR_COL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(dml)) {
+      preparedStatement.setLong(1, position);
+      preparedStatement.setString(2, name);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", dml, position, name);
+      if (preparedStatement.executeUpdate() != 0) {
+        return;
+      }
+    }
+
+    String insertDml = String.format("INSERT INTO %s VALUES (?, ?)", Constants.MMA_CURSOR_TBL_NAME);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(insertDml)) {
+      preparedStatement.setString(1, name);
+      preparedStatement.setLong(2, position);
+      LOG.debug("Executing DML: {}, arguments: ({}, {})", insertDml, name, position);
+      preparedStatement.execute();
+    }
+  }
+
+  /**
+   * Rebuild MMA_COUNTER from MMA_PT_META
+   */
+  public static void rebuildMmaCounter(Connection conn) throws SQLException {
+    String dml = "DELETE FROM " + Constants.MMA_COUNTER_TBL_NAME;
+    try (Statement stmt = conn.createStatement()) {
+      LOG.debug("Executing DML: {}", dml);
+      stmt.execute(dml);
+    }
+
+    // Served by the index on (table_id, status)
+    dml = String.format("INSERT INTO %s SELECT %s, %s, COUNT(1) FROM %s GROUP BY %s, %s",
+                        Constants.MMA_COUNTER_TBL_NAME,
+                        Constants.MMA_PT_META_COL_TABLE_ID,
+                        Constants.MMA_PT_META_COL_STATUS,
+                        Constants.MMA_PT_META_TBL_NAME,
+                        Constants.MMA_PT_META_COL_TABLE_ID,
+                        Constants.MMA_PT_META_COL_STATUS);
+    try (Statement stmt = conn.createStatement()) {
+      LOG.debug("Executing DML: {}", dml);
+      stmt.execute(dml);
+    }
+  }
+
   /**
    * Filter out existing partitions from candidates
    */
@@ -741,20 +1601,19 @@ public class MmaMetaManagerDbImplUtils {
       List<List<String>> candidates)
       throws SQLException {
 
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT, db);
-    String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT, tbl);
-
-    String sql = String.format("SELECT %s FROM %s.%s WHERE %s='%s'",
+    String sql = String.format("SELECT %s FROM %s WHERE %s AND %s=?",
         Constants.MMA_PT_META_COL_PT_VALS,
-        schemaName,
-        tableName,
-        Constants.MMA_PT_META_COL_STATUS,
-        MigrationStatus.SUCCEEDED.name());
+        Constants.MMA_PT_META_TBL_NAME,
+        TABLE_ID_CONDITION,
+        Constants.MMA_PT_META_COL_STATUS);
 
-    try (Statement stmt = conn.createStatement()) {
-      LOG.debug("Executing SQL: {}", sql);
+    try (PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+      preparedStatement.setString(1, db);
+      preparedStatement.setString(2, tbl);
+      preparedStatement.setString(3, MigrationStatus.SUCCEEDED.name());
+      LOG.debug("Executing SQL: {}, arguments: ({}, {})", sql, db, tbl);
 
-      try (ResultSet rs = stmt.executeQuery(sql)) {
+      try (ResultSet rs = preparedStatement.executeQuery()) {
         Set<String> managedPartitionValuesJsonSet = new HashSet<>();
         while (rs.next()) {
           managedPartitionValuesJsonSet.add(rs.getString(1));
@@ -783,6 +1642,14 @@ public class MmaMetaManagerDbImplUtils {
 
     Map<MigrationStatus, Integer> statusDistribution =
         MmaMetaManagerDbImplUtils.getPartitionStatusDistribution(conn, db, tbl);
+    return inferPartitionedTableStatus(statusDistribution);
+  }
+
+  /**
+   *  Infer a migration job's status from the distribution of its partitions' statuses
+   */
+  public static MigrationStatus inferPartitionedTableStatus(
+      Map<MigrationStatus, Integer> statusDistribution) {
     int total = statusDistribution.values().stream().reduce(0, Integer::sum);
     int pending =
         statusDistribution.getOrDefault(MigrationStatus.PENDING, 0);
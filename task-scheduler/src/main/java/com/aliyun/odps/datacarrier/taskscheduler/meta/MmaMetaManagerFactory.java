@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.MetaDBConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
+
+public class MmaMetaManagerFactory {
+
+  public static MmaMetaManager getMmaMetaManager(MetaSource metaSource, boolean needRecover)
+      throws MmaException {
+    MetaDBConfig metaDBConfig = MmaServerConfig.getInstance().getMetaDBConfig();
+    if (MetaDBConfig.DB_TYPE_KV.equals(metaDBConfig.getDbType())) {
+      return new MmaMetaManagerKvImpl(metaSource, metaDBConfig.getStorePath(), needRecover);
+    } else {
+      return new MmaMetaManagerDbImpl(metaSource, needRecover);
+    }
+  }
+}
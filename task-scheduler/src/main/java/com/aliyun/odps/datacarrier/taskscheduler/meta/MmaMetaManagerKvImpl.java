@@ -0,0 +1,940 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import static com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.inferPartitionedTableStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.aliyun.odps.datacarrier.taskscheduler.Constants;
+import com.aliyun.odps.datacarrier.taskscheduler.GsonUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.TableMigrationConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaExceptionFactory;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.JobInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.MigrationJobPtInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.RestoreTaskInfo;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * MmaMetaManager on the embedded key-value store {@link MmaMetaKvStore}. It has the same
+ * behavior as {@link MmaMetaManagerDbImpl}, but a status transition is a few map operations and
+ * an append to the store file, instead of SQL statements in a serializable transaction.
+ *
+ * The store file can only be opened by one process. So this implementation is for single-node
+ * deployments, where jobs are submitted while the server is not running.
+ *
+ * Thread-safe. Modifications are serialized by the store, read-only operations are not.
+ */
+public class MmaMetaManagerKvImpl implements MmaMetaManager {
+
+  private static final Logger LOG = LogManager.getLogger(MmaMetaManagerKvImpl.class);
+
+  /**
+   * See {@link MmaMetaManagerDbImpl}
+   */
+  private static final int MAX_NUM_CLAIMED_JOBS = 100;
+  private static final long CLAIM_TIMEOUT_MS = 10 * 60 * 1000;
+
+  private static final long COMPACTION_INTERVAL_MS = 10 * 60 * 1000;
+
+  private MetaSource metaSource;
+  private MmaMetaKvStore store;
+  private ScheduledExecutorService compactor;
+
+  public MmaMetaManagerKvImpl(MetaSource metaSource, String storePath, boolean needRecover)
+      throws MmaException {
+    this.metaSource = metaSource;
+
+    LOG.info("Initialize MmaMetaManagerKvImpl");
+    try {
+      store = new MmaMetaKvStore(storePath);
+      store.update(() -> {
+        // Same as MmaMetaManagerDbImplUtils#removeActiveTasksFromRestoreTable
+        for (RestoreTaskInfo taskInfo : store.listRestoreTasks()) {
+          if (MigrationStatus.PENDING.equals(taskInfo.getStatus())
+              || MigrationStatus.RUNNING.equals(taskInfo.getStatus())) {
+            store.removeRestoreTask(taskInfo);
+          }
+        }
+        return null;
+      });
+    } catch (Throwable e) {
+      throw new MmaException("Setting up meta store failed", e);
+    }
+
+    if (needRecover) {
+      try {
+        recover();
+      } catch (Throwable e) {
+        throw new IllegalStateException("Recover failed", e);
+      }
+    }
+
+    ThreadFactory factory = new ThreadFactoryBuilder()
+        .setNameFormat("MmaMetaKvStoreCompactor-" + " #%d")
+        .setDaemon(true)
+        .build();
+    compactor = Executors.newSingleThreadScheduledExecutor(factory);
+    compactor.scheduleWithFixedDelay(
+        this::compact, COMPACTION_INTERVAL_MS, COMPACTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    LOG.info("Initialize MmaMetaManagerKvImpl done");
+  }
+
+  private void compact() {
+    try {
+      store.compact();
+    } catch (Throwable e) {
+      LOG.warn("Compacting meta store failed", e);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    LOG.info("Enter shutdown");
+    compactor.shutdown();
+    metaSource.shutdown();
+    store.close();
+    LOG.info("Leave shutdown");
+  }
+
+  private void recover() throws Exception {
+    LOG.info("Enter recover");
+    // Change the statuses of running jobs to PENDING
+    store.update(() -> {
+      for (JobInfo jobInfo : store.listJobs(null)) {
+        if (jobInfo.isPartitioned()) {
+          List<MigrationJobPtInfo> jobPtInfos =
+              store.listPartitions(jobInfo.getDb(), jobInfo.getTbl(), MigrationStatus.RUNNING);
+          for (MigrationJobPtInfo jobPtInfo : jobPtInfos) {
+            jobPtInfo.setStatus(MigrationStatus.PENDING);
+          }
+          store.putPartitions(jobInfo.getDb(), jobInfo.getTbl(), jobPtInfos);
+          jobInfo.setStatus(inferPartitionedTableStatus(
+              store.getPartitionStatusDistribution(jobInfo.getDb(), jobInfo.getTbl())));
+          store.putJobStatus(jobInfo);
+        } else if (MigrationStatus.RUNNING.equals(jobInfo.getStatus())) {
+          jobInfo.setStatus(MigrationStatus.PENDING);
+          store.putJobStatus(jobInfo);
+        }
+      }
+      store.rebuildPendingQueue();
+      return null;
+    });
+    LOG.info("Leave recover");
+  }
+
+  @Override
+  public void addMigrationJob(TableMigrationConfig config) throws MmaException {
+    LOG.info("Enter addMigrationJob");
+
+    if (config == null) {
+      throw new IllegalArgumentException("'config' cannot be null");
+    }
+
+    String db = config.getSourceDataBaseName().toLowerCase();
+    String tbl = config.getSourceTableName().toLowerCase();
+    LOG.info("Add migration job, db: {}, tbl: {}", db, tbl);
+
+    mergeJobInfoIntoMetaDB(
+        db,
+        tbl,
+        true,
+        MmaConfig.JobType.MIGRATION,
+        TableMigrationConfig.toJson(config),
+        config.getAdditionalTableConfig(),
+        config.getPartitionValuesList(),
+        config.getBeginPartition(),
+        config.getEndPartition());
+  }
+
+  @Override
+  public void resetMigrationJobPartitions(String db,
+                                          String tbl,
+                                          List<List<String>> partitionValuesList)
+      throws MmaException {
+    if (db == null || tbl == null || partitionValuesList == null) {
+      throw new IllegalArgumentException(
+          "'db' or 'tbl' or 'partitionValuesList' cannot be null");
+    }
+
+    db = db.toLowerCase();
+    tbl = tbl.toLowerCase();
+    LOG.info("Reset migration job partitions, db: {}, tbl: {}, partitions: {}",
+             db, tbl, partitionValuesList.size());
+
+    MmaConfig.JobConfig jobConfig = getConfig(db, tbl);
+    mergeJobInfoIntoMetaDB(
+        db,
+        tbl,
+        true,
+        jobConfig.getJobType(),
+        jobConfig.getDescription(),
+        jobConfig.getAdditionalTableConfig(),
+        partitionValuesList,
+        null,
+        null);
+  }
+
+  @Override
+  public void invalidateTableMeta(String db, String tbl) {
+    metaSource.invalidate(db.toLowerCase(), tbl.toLowerCase());
+  }
+
+  @Override
+  public void addBackupJob(MmaConfig.ObjectExportConfig config) throws MmaException {
+    String db = config.getDatabaseName().toLowerCase();
+    String object = config.getObjectName().toLowerCase();
+
+    LOG.info("Add backup job, db: {}, object: {}, type: {}",
+             db, object, config.getObjectType().name());
+
+    mergeJobInfoIntoMetaDB(
+        db,
+        object,
+        MmaConfig.ObjectType.TABLE.equals(config.getObjectType()),
+        MmaConfig.JobType.BACKUP,
+        MmaConfig.ObjectExportConfig.toJson(config),
+        config.getAdditionalTableConfig(),
+        config.getPartitionValuesList(),
+        null,
+        null);
+  }
+
+  @Override
+  public void addObjectRestoreJob(MmaConfig.ObjectRestoreConfig config) throws MmaException {
+    String db = config.getOriginDatabaseName().toLowerCase();
+    String object = config.getObjectName().toLowerCase();
+    LOG.info("Add restore job, from {} to {}, object: {}, type: {}",
+             config.getOriginDatabaseName(),
+             config.getDestinationDatabaseName(),
+             object,
+             config.getObjectType().name());
+
+    mergeJobInfoIntoMetaDB(
+        db,
+        object,
+        false,
+        MmaConfig.JobType.RESTORE,
+        MmaConfig.ObjectRestoreConfig.toJson(config),
+        config.getAdditionalTableConfig(),
+        config.getPartitionValuesList(),
+        null,
+        null);
+  }
+
+  @Override
+  public void addDatabaseRestoreJob(MmaConfig.DatabaseRestoreConfig config) throws MmaException {
+    String db = config.getOriginDatabaseName().toLowerCase();
+    LOG.info("Add restore database job, from {} to {}, types: {}",
+             config.getOriginDatabaseName(),
+             config.getDestinationDatabaseName(),
+             config.getRestoreTypes());
+
+    mergeJobInfoIntoMetaDB(
+        db,
+        "",
+        false,
+        MmaConfig.JobType.RESTORE,
+        MmaConfig.DatabaseRestoreConfig.toJson(config),
+        config.getAdditionalTableConfig(),
+        null,
+        null,
+        null);
+  }
+
+  private void mergeJobInfoIntoMetaDB(
+      String db,
+      String object,
+      boolean isTable,
+      MmaConfig.JobType type,
+      String config,
+      MmaConfig.AdditionalTableConfig additionalTableConfig,
+      List<List<String>> partitionValuesList,
+      List<String> beginPartition,
+      List<String> endPartition) throws MmaException {
+
+    try {
+      checkNotRunning(db, object);
+
+      // Metadata is fetched before the update, since updates are serialized
+      boolean isPartitioned = false;
+      List<MigrationJobPtInfo> jobPtInfosToMerge = Collections.emptyList();
+      if (isTable) {
+        // A new job always starts with the latest metadata, metadata loaded just now is reused
+        metaSource.invalidate(db, object, Constants.NEW_JOB_METADATA_MAX_AGE_SECONDS);
+        MetaSource.TableMetaModel tableMetaModel =
+            metaSource.getTableMetaWithoutPartitionMeta(db, object);
+        isPartitioned = tableMetaModel.partitionColumns.size() > 0;
+        if (isPartitioned) {
+          List<MigrationJobPtInfo> existingJobPtInfos = partitionValuesList == null
+              ? store.listPartitions(db, object, null)
+              : Collections.emptyList();
+          jobPtInfosToMerge = MmaMetaManagerDbImpl.getJobPtInfosToMerge(
+              metaSource,
+              db,
+              object,
+              tableMetaModel,
+              partitionValuesList,
+              beginPartition,
+              endPartition,
+              existingJobPtInfos);
+        }
+      }
+
+      JobInfo jobInfo = new JobInfo(
+          db,
+          object,
+          isPartitioned,
+          new MmaConfig.JobConfig(db, object, type, config, additionalTableConfig),
+          MigrationStatus.PENDING,
+          Constants.MMA_TBL_META_INIT_VALUE_ATTEMPT_TIMES,
+          Constants.MMA_TBL_META_NA_VALUE_LAST_MODIFIED_TIME);
+      List<MigrationJobPtInfo> finalJobPtInfosToMerge = jobPtInfosToMerge;
+      store.update(() -> {
+        // The job could be started since the last check
+        checkNotRunning(db, object);
+        store.putPartitions(db, object, finalJobPtInfosToMerge);
+        store.putJob(jobInfo);
+        store.enqueue(db, object);
+        return null;
+      });
+      LOG.info("Leave addMigrationJob");
+    } catch (Throwable e) {
+      MmaException mmaException =
+          MmaExceptionFactory.getFailedToAddMigrationJobException(db, object, e);
+      LOG.error(e);
+      throw mmaException;
+    }
+  }
+
+  private void checkNotRunning(String db, String object) throws MmaException {
+    JobInfo jobInfo = store.getJob(db, object);
+    if (jobInfo != null && MigrationStatus.RUNNING.equals(getStatusInternal(jobInfo))) {
+      throw MmaExceptionFactory.getRunningJobExistsException(db, object);
+    }
+  }
+
+  @Override
+  public void mergeJobInfoIntoRestoreDB(RestoreTaskInfo taskInfo) throws MmaException {
+    mergeJobInfosIntoRestoreDB(Collections.singletonList(taskInfo));
+  }
+
+  @Override
+  public void mergeJobInfosIntoRestoreDB(List<RestoreTaskInfo> taskInfos) throws MmaException {
+    try {
+      store.update(() -> {
+        for (RestoreTaskInfo taskInfo : taskInfos) {
+          store.putRestoreTask(taskInfo);
+        }
+        return null;
+      });
+    } catch (Throwable e) {
+      LOG.error(e);
+      throw new MmaException(
+          "Merge job info to restore db fail: " + GsonUtils.getFullConfigGson().toJson(taskInfos),
+          e);
+    }
+  }
+
+  @Override
+  public void updateStatusInRestoreDB(RestoreTaskInfo taskInfo, MigrationStatus newStatus)
+      throws MmaException {
+    try {
+      store.update(() -> {
+        RestoreTaskInfo currentInfo = store.getRestoreTask(
+            taskInfo.getUniqueId(), taskInfo.getType(), taskInfo.getDb(), taskInfo.getObject());
+        if (currentInfo == null) {
+          throw new MmaException("Restore object task not found: " + GsonUtils.toJson(taskInfo));
+        }
+        switch (newStatus) {
+          case SUCCEEDED:
+            currentInfo.setStatus(newStatus);
+            currentInfo.setAttemptTimes(currentInfo.getAttemptTimes() + 1);
+            break;
+          case FAILED:
+            int attemptTimes = currentInfo.getAttemptTimes() + 1;
+            int retryTimesLimit = currentInfo
+                .getJobConfig()
+                .getAdditionalTableConfig()
+                .getRetryTimesLimit();
+            currentInfo.setStatus(
+                attemptTimes <= retryTimesLimit ? MigrationStatus.PENDING : newStatus);
+            currentInfo.setAttemptTimes(attemptTimes);
+            break;
+          case RUNNING:
+          case PENDING:
+          default:
+        }
+        store.putRestoreTask(currentInfo);
+        return null;
+      });
+    } catch (MmaException e) {
+      throw e;
+    } catch (Throwable e) {
+      LOG.error(e);
+      throw new MmaException(
+          "Merge job info to restore db fail: " + GsonUtils.getFullConfigGson().toJson(taskInfo),
+          e);
+    }
+  }
+
+  @Override
+  public void removeMigrationJob(String db, String tbl) throws MmaException {
+    LOG.info("Enter removeMigrationJob");
+
+    if (db == null || tbl == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' cannot be null");
+    }
+
+    String lowerCaseDb = db.toLowerCase();
+    String lowerCaseTbl = tbl.toLowerCase();
+
+    try {
+      store.update(() -> {
+        JobInfo jobInfo = store.getJob(lowerCaseDb, lowerCaseTbl);
+        if (jobInfo == null) {
+          return null;
+        }
+        if (MigrationStatus.RUNNING.equals(getStatusInternal(jobInfo))) {
+          // Restart running job is not allowed
+          MmaException e =
+              MmaExceptionFactory.getRunningJobExistsException(lowerCaseDb, lowerCaseTbl);
+          LOG.error(e);
+          throw e;
+        }
+
+        if (jobInfo.isPartitioned()) {
+          store.removePartitions(lowerCaseDb, lowerCaseTbl);
+        }
+        store.removeJob(lowerCaseDb, lowerCaseTbl);
+        store.dequeue(lowerCaseDb, lowerCaseTbl);
+        return null;
+      });
+      LOG.info("Leave removeMigrationJob");
+    } catch (Throwable e) {
+      MmaException mmaException =
+          MmaExceptionFactory.getFailedToRemoveMigrationJobException(lowerCaseDb, lowerCaseTbl, e);
+      LOG.error(e);
+      throw mmaException;
+    }
+  }
+
+  @Override
+  public boolean hasMigrationJob(String db, String tbl) throws MmaException {
+    return getMigrationJob(db, tbl) != null;
+  }
+
+  @Override
+  public JobInfo getMigrationJob(String db, String tbl) throws MmaException {
+    if (db == null || tbl == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' cannot be null");
+    }
+
+    db = db.toLowerCase();
+    tbl = tbl.toLowerCase();
+
+    try {
+      return store.getJob(db, tbl);
+    } catch (Throwable e) {
+      MmaException mmaException =
+          MmaExceptionFactory.getFailedToGetMigrationJobException(db, tbl, e);
+      LOG.error(e);
+      throw mmaException;
+    }
+  }
+
+  @Override
+  public List<MmaConfig.JobConfig> listMigrationJobs(int limit) throws MmaException {
+    return listMigrationJobsInternal(null, limit);
+  }
+
+  @Override
+  public List<MmaConfig.JobConfig> listMigrationJobs(MigrationStatus status, int limit)
+      throws MmaException {
+    return listMigrationJobsInternal(status, limit);
+  }
+
+  private List<MmaConfig.JobConfig> listMigrationJobsInternal(MigrationStatus status, int limit)
+      throws MmaException {
+    try {
+      List<JobInfo> jobInfos = store.listJobs(status);
+      if (limit > 0 && jobInfos.size() > limit) {
+        jobInfos = jobInfos.subList(0, limit);
+      }
+
+      List<MmaConfig.JobConfig> migrationConfigs = new LinkedList<>();
+      for (JobInfo jobInfo : jobInfos) {
+        if (status == null || status.equals(getStatusInternal(jobInfo))) {
+          migrationConfigs.add(jobInfo.getJobConfig());
+        }
+      }
+      return migrationConfigs;
+    } catch (Throwable e) {
+      MmaException mmaException = MmaExceptionFactory.getFailedToListMigrationJobsException(e);
+      LOG.error(e);
+      throw mmaException;
+    }
+  }
+
+  @Override
+  public List<RestoreTaskInfo> listRestoreJobs(MetaCondition condition, int limit)
+      throws MmaException {
+    try {
+      List<RestoreTaskInfo> ret = new ArrayList<>();
+      for (RestoreTaskInfo taskInfo : store.listRestoreTasks()) {
+        Map<String, String> row = new HashMap<>();
+        row.put(Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, taskInfo.getUniqueId());
+        row.put(Constants.MMA_OBJ_RESTORE_COL_TYPE, taskInfo.getType());
+        row.put(Constants.MMA_OBJ_RESTORE_COL_DB_NAME, taskInfo.getDb());
+        row.put(Constants.MMA_OBJ_RESTORE_COL_OBJECT_NAME, taskInfo.getObject());
+        row.put(Constants.MMA_OBJ_RESTORE_COL_STATUS, taskInfo.getStatus().toString());
+        if (condition == null || condition.matches(row)) {
+          ret.add(taskInfo);
+        }
+      }
+
+      // Same order as MmaMetaManagerDbImplUtils#selectFromRestoreMeta
+      ret.sort(Comparator
+                   .comparing(RestoreTaskInfo::getUniqueId)
+                   .thenComparing(RestoreTaskInfo::getDb)
+                   .thenComparing(RestoreTaskInfo::getObject)
+                   .thenComparing(RestoreTaskInfo::getType, Comparator.reverseOrder()));
+      if (limit > 0 && ret.size() > limit) {
+        ret = new ArrayList<>(ret.subList(0, limit));
+      }
+      return ret;
+    } catch (Throwable e) {
+      LOG.error(e);
+      throw new MmaException("Failed to list restore jobs", e);
+    }
+  }
+
+  @Override
+  public void removeRestoreJob(String uniqueId) throws MmaException {
+    try {
+      store.update(() -> {
+        store.removeRestoreTasks(uniqueId);
+        return null;
+      });
+    } catch (Throwable e) {
+      LOG.error(e);
+      throw new MmaException("Failed to remove restore job: " + uniqueId, e);
+    }
+  }
+
+  @Override
+  public Map<String, List<String>> listTemporaryTables(MetaCondition condition, int limit)
+      throws MmaException {
+    try {
+      Map<String, List<String>> result = new HashMap<>();
+      int numTables = 0;
+      for (String[] temporaryTable : store.listTemporaryTables()) {
+        if (limit > 0 && numTables >= limit) {
+          break;
+        }
+        Map<String, String> row = new HashMap<>();
+        row.put(Constants.MMA_OBJ_TEMPORARY_COL_UNIQUE_ID, temporaryTable[0]);
+        row.put(Constants.MMA_OBJ_TEMPORARY_COL_PROJECT, temporaryTable[1]);
+        row.put(Constants.MMA_OBJ_TEMPORARY_COL_TABLE, temporaryTable[2]);
+        if (condition == null || condition.matches(row)) {
+          result.computeIfAbsent(temporaryTable[1], k -> new ArrayList<>()).add(temporaryTable[2]);
+          numTables++;
+        }
+      }
+      LOG.info("Temporary tables to be dropped: {}", GsonUtils.toJson(result));
+      return result;
+    } catch (Throwable e) {
+      LOG.error(e);
+      throw new MmaException("Failed to list restore jobs", e);
+    }
+  }
+
+  @Override
+  public void mergeTableInfoIntoTemporaryTableDB(String uniqueId, String db, String tbl) {
+    try {
+      store.update(() -> {
+        store.putTemporaryTable(uniqueId, db, tbl);
+        return null;
+      });
+    } catch (Throwable e) {
+      LOG.error("Merge into temporary table failed, uniqueId: {}, db: {}, tbl: {}",
+                uniqueId, db, tbl, e);
+    }
+  }
+
+  @Override
+  public void removeTemporaryTableMeta(String uniqueId, String db, String tbl)
+      throws MmaException {
+    try {
+      store.update(() -> {
+        store.removeTemporaryTable(uniqueId, db, tbl);
+        return null;
+      });
+    } catch (Throwable e) {
+      LOG.error(e);
+      throw new MmaException(
+          String.format("Failed to remove temporary table: %s, %s.%s", uniqueId, db, tbl), e);
+    }
+  }
+
+  @Override
+  public void updateStatus(String db, String tbl, MigrationStatus status) throws MmaException {
+    LOG.info("Enter updateStatus");
+
+    if (db == null || tbl == null || status == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' or 'status' cannot be null");
+    }
+
+    String lowerCaseDb = db.toLowerCase();
+    String lowerCaseTbl = tbl.toLowerCase();
+
+    try {
+      store.update(() -> {
+        JobInfo jobInfo = store.getJob(lowerCaseDb, lowerCaseTbl);
+        if (jobInfo == null) {
+          throw MmaExceptionFactory.getMigrationJobNotExistedException(lowerCaseDb, lowerCaseTbl);
+        }
+
+        MigrationStatus oldStatus = jobInfo.getStatus();
+        MigrationStatus newStatus = status;
+        // For a partitioned table, its migration status is inferred from its partitions'
+        // migration statuses. And it does not have table level attr 'attemptTimes'.
+        if (!jobInfo.isPartitioned()) {
+          switch (status) {
+            case SUCCEEDED: {
+              jobInfo.setAttemptTimes(jobInfo.getAttemptTimes() + 1);
+              break;
+            }
+            case FAILED: {
+              int attemptTimes = jobInfo.getAttemptTimes() + 1;
+              int retryTimesLimit = jobInfo
+                  .getJobConfig()
+                  .getAdditionalTableConfig()
+                  .getRetryTimesLimit();
+              if (attemptTimes <= retryTimesLimit) {
+                newStatus = MigrationStatus.PENDING;
+              }
+              jobInfo.setAttemptTimes(attemptTimes);
+              break;
+            }
+            case RUNNING:
+            case PENDING:
+            default:
+          }
+        }
+        jobInfo.setStatus(newStatus);
+        store.putJobStatus(jobInfo);
+        updatePendingQueue(lowerCaseDb, lowerCaseTbl, oldStatus, newStatus);
+        return null;
+      });
+    } catch (Throwable e) {
+      MmaException mmaException =
+          MmaExceptionFactory.getFailedToUpdateMigrationJobException(lowerCaseDb, lowerCaseTbl, e);
+      LOG.error(e);
+      throw mmaException;
+    }
+    LOG.info("Leave updateStatus");
+  }
+
+  @Override
+  public void updateStatus(
+      String db,
+      String tbl,
+      List<List<String>> partitionValuesList,
+      MigrationStatus status)
+      throws MmaException {
+    LOG.info("Enter updateStatus");
+
+    if (db == null || tbl == null || partitionValuesList == null || status == null) {
+      throw new IllegalArgumentException(
+          "'db' or 'tbl' or 'partitionValuesList' or 'status' cannot be null");
+    }
+
+    String lowerCaseDb = db.toLowerCase();
+    String lowerCaseTbl = tbl.toLowerCase();
+
+    try {
+      store.update(() -> {
+        JobInfo jobInfo = store.getJob(lowerCaseDb, lowerCaseTbl);
+        if (jobInfo == null) {
+          throw MmaExceptionFactory.getMigrationJobNotExistedException(lowerCaseDb, lowerCaseTbl);
+        }
+
+        int retryTimesLimit = jobInfo
+            .getJobConfig()
+            .getAdditionalTableConfig()
+            .getRetryTimesLimit();
+
+        boolean anyRunning = false;
+        List<MigrationJobPtInfo> newJobPtInfos = new ArrayList<>(partitionValuesList.size());
+        for (List<String> partitionValues : new LinkedHashSet<>(partitionValuesList)) {
+          MigrationJobPtInfo jobPtInfo =
+              store.getPartition(lowerCaseDb, lowerCaseTbl, partitionValues);
+          if (jobPtInfo == null) {
+            throw MmaExceptionFactory
+                .getMigrationJobPtNotExistedException(lowerCaseDb, lowerCaseTbl, partitionValues);
+          }
+
+          jobPtInfo.setStatus(status);
+          switch (status) {
+            case SUCCEEDED: {
+              jobPtInfo.setAttemptTimes(jobPtInfo.getAttemptTimes() + 1);
+              break;
+            }
+            case FAILED: {
+              int attemptTimes = jobPtInfo.getAttemptTimes() + 1;
+              if (attemptTimes <= retryTimesLimit) {
+                jobPtInfo.setStatus(MigrationStatus.PENDING);
+              }
+              jobPtInfo.setAttemptTimes(attemptTimes);
+              break;
+            }
+            case RUNNING:
+            case PENDING:
+            default:
+          }
+
+          anyRunning |= MigrationStatus.RUNNING.equals(jobPtInfo.getStatus());
+          newJobPtInfos.add(jobPtInfo);
+        }
+        store.putPartitions(lowerCaseDb, lowerCaseTbl, newJobPtInfos);
+
+        MigrationStatus newStatus = anyRunning
+            ? MigrationStatus.RUNNING
+            : inferPartitionedTableStatus(
+                store.getPartitionStatusDistribution(lowerCaseDb, lowerCaseTbl));
+        MigrationStatus oldStatus = jobInfo.getStatus();
+        if (!oldStatus.equals(newStatus)) {
+          jobInfo.setStatus(newStatus);
+          store.putJobStatus(jobInfo);
+          updatePendingQueue(lowerCaseDb, lowerCaseTbl, oldStatus, newStatus);
+        }
+        return null;
+      });
+    } catch (Throwable e) {
+      MmaException mmaException =
+          MmaExceptionFactory.getFailedToUpdateMigrationJobException(lowerCaseDb, lowerCaseTbl, e);
+      LOG.error(e);
+      throw mmaException;
+    }
+    LOG.info("Leave updateStatus");
+  }
+
+  /**
+   * Keep the pending queue consistent with the status of a job. Must be called in the update
+   * changing the status.
+   */
+  private void updatePendingQueue(
+      String db,
+      String tbl,
+      MigrationStatus oldStatus,
+      MigrationStatus newStatus) {
+    if (MigrationStatus.PENDING.equals(newStatus)) {
+      if (!MigrationStatus.PENDING.equals(oldStatus)) {
+        store.enqueue(db, tbl);
+      }
+    } else if (MigrationStatus.PENDING.equals(oldStatus)) {
+      store.dequeue(db, tbl);
+    }
+  }
+
+  @Override
+  public MigrationStatus getStatus(String db, String tbl) throws MmaException {
+    LOG.info("Enter getStatus");
+
+    if (db == null || tbl == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' cannot be null");
+    }
+
+    db = db.toLowerCase();
+    tbl = tbl.toLowerCase();
+
+    try {
+      JobInfo jobInfo = store.getJob(db, tbl);
+      if (jobInfo == null) {
+        throw MmaExceptionFactory.getMigrationJobNotExistedException(db, tbl);
+      }
+      return getStatusInternal(jobInfo);
+    } catch (Throwable e) {
+      MmaException mmaException =
+          MmaExceptionFactory.getFailedToGetMigrationJobException(db, tbl, e);
+      LOG.error(e);
+      throw mmaException;
+    }
+  }
+
+  private MigrationStatus getStatusInternal(JobInfo jobInfo) {
+    if (jobInfo.isPartitioned()) {
+      return inferPartitionedTableStatus(
+          store.getPartitionStatusDistribution(jobInfo.getDb(), jobInfo.getTbl()));
+    } else {
+      return jobInfo.getStatus();
+    }
+  }
+
+  @Override
+  public MigrationStatus getStatus(String db, String tbl, List<String> partitionValues)
+      throws MmaException {
+    LOG.info("Enter getStatus");
+
+    if (db == null || tbl == null || partitionValues == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' or 'partitionValues' cannot be null");
+    }
+
+    db = db.toLowerCase();
+    tbl = tbl.toLowerCase();
+
+    try {
+      MigrationJobPtInfo jobPtInfo = store.getPartition(db, tbl, partitionValues);
+      if (jobPtInfo == null) {
+        throw MmaExceptionFactory.getMigrationJobPtNotExistedException(db, tbl, partitionValues);
+      }
+      return jobPtInfo.getStatus();
+    } catch (Throwable e) {
+      MmaException mmaException =
+          MmaExceptionFactory.getFailedToGetMigrationJobPtException(db, tbl, partitionValues);
+      LOG.error(e);
+      throw mmaException;
+    }
+  }
+
+  @Override
+  public Map<MigrationStatus, Integer> getCounts() {
+    return store.getJobStatusDistribution();
+  }
+
+  @Override
+  public Long getCursor(String name) {
+    return store.getCursor(name);
+  }
+
+  @Override
+  public void setCursor(String name, long position) throws MmaException {
+    try {
+      store.update(() -> {
+        store.putCursor(name, position);
+        return null;
+      });
+    } catch (Throwable e) {
+      LOG.error(e);
+      throw new MmaException("Failed to set cursor: " + name, e);
+    }
+  }
+
+  @Override
+  public MigrationProgress getProgress(String db, String tbl) throws MmaException {
+    LOG.info("Enter getProgress");
+
+    if (db == null || tbl == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' cannot be null");
+    }
+
+    db = db.toLowerCase();
+    tbl = tbl.toLowerCase();
+
+    JobInfo jobInfo = store.getJob(db, tbl);
+    if (jobInfo == null || !jobInfo.isPartitioned()) {
+      return null;
+    }
+
+    Map<MigrationStatus, Integer> statusDistribution =
+        store.getPartitionStatusDistribution(db, tbl);
+    return new MigrationProgress(
+        statusDistribution.getOrDefault(MigrationStatus.PENDING, 0),
+        statusDistribution.getOrDefault(MigrationStatus.RUNNING, 0),
+        statusDistribution.getOrDefault(MigrationStatus.SUCCEEDED, 0),
+        statusDistribution.getOrDefault(MigrationStatus.FAILED, 0));
+  }
+
+  @Override
+  public MmaConfig.JobConfig getConfig(String db, String tbl) throws MmaException {
+    LOG.info("Enter getConfig");
+
+    if (db == null || tbl == null) {
+      throw new IllegalArgumentException("'db' or 'tbl' cannot be null");
+    }
+
+    db = db.toLowerCase();
+    tbl = tbl.toLowerCase();
+
+    JobInfo jobInfo = store.getJob(db, tbl);
+    if (jobInfo == null) {
+      MmaException mmaException = MmaExceptionFactory.getFailedToGetMigrationJobException(
+          db, tbl, MmaExceptionFactory.getMigrationJobNotExistedException(db, tbl));
+      LOG.error(mmaException);
+      throw mmaException;
+    }
+    return jobInfo.getJobConfig();
+  }
+
+  @Override
+  public List<MetaSource.TableMetaModel> getPendingTables(int maxNumTables) throws MmaException {
+    LOG.info("Enter getPendingTables, max num tables: {}", maxNumTables);
+
+    try {
+      // Claim a bounded batch of jobs, metadata is only loaded for claimed jobs
+      List<JobInfo> jobInfos =
+          store.update(() -> store.claim(
+              Math.min(maxNumTables, MAX_NUM_CLAIMED_JOBS), CLAIM_TIMEOUT_MS));
+
+      List<MetaSource.TableMetaModel> ret = new LinkedList<>();
+      for (JobInfo jobInfo : jobInfos) {
+        List<MigrationJobPtInfo> pendingJobPtInfos = jobInfo.isPartitioned()
+            ? store.listPartitions(jobInfo.getDb(), jobInfo.getTbl(), MigrationStatus.PENDING)
+            : Collections.emptyList();
+        MetaSource.TableMetaModel tableMetaModel = MmaMetaManagerDbImpl.getPendingTableMeta(
+            this, metaSource, jobInfo, pendingJobPtInfos);
+        if (tableMetaModel != null) {
+          ret.add(tableMetaModel);
+        }
+      }
+
+      // Sort by name, make it easy to test
+      ret.sort(Comparator.comparing(a -> (a.databaseName + a.tableName)));
+      return ret;
+    } catch (Throwable e) {
+      MmaException mmaException = MmaExceptionFactory.getFailedToGetPendingJobsException(e);
+      LOG.error(e);
+      throw mmaException;
+    }
+  }
+
+  @Override
+  public MetaSource.TableMetaModel getNextPendingTable() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -31,19 +31,61 @@ import com.aliyun.odps.Table;
 import com.aliyun.odps.TableSchema;
 import com.aliyun.odps.account.Account;
 import com.aliyun.odps.account.AliyunAccount;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.ObjectType;
 import com.aliyun.odps.type.TypeInfo;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class OdpsMetaSource implements MetaSource {
 
   private static final Logger LOG = LogManager.getLogger(OdpsMetaSource.class);
 
+  /**
+   * Max number of tables loaded by one batch request
+   */
+  private static final int MAX_TABLES_PER_REQUEST = 100;
+  private static final int NUM_SCANNING_THREADS = 8;
+  /**
+   * Max number of tables prefetched together, loaded by one batch request per scanning thread
+   */
+  private static final int MAX_TABLES_PER_PREFETCH_WINDOW =
+      MAX_TABLES_PER_REQUEST * NUM_SCANNING_THREADS;
+  private static final long MAX_NUM_TABLES_TO_PREFETCH = 100000;
+  private static final long PREFETCH_TTL_SECONDS = 600;
+
+  /**
+   * A table, view, function or resource in a project
+   */
+  public static class ObjectDescriptor {
+    public final String name;
+    public final ObjectType type;
+    public final boolean isExternal;
+
+    ObjectDescriptor(String name, ObjectType type, boolean isExternal) {
+      this.name = name;
+      this.type = type;
+      this.isExternal = isExternal;
+    }
+  }
+
   private Odps odps;
+  private ThreadPoolExecutor pool;
+  private TablePrefetcher<Table> tablePrefetcher;
 
   public OdpsMetaSource(String accessId,
                         String accessKey,
@@ -54,8 +96,25 @@ public class OdpsMetaSource implements MetaSource {
     odps.setUserAgent("MMA");
     odps.setEndpoint(endpoint);
     odps.setDefaultProject(defaultProject);
-  }
 
+    pool = new ThreadPoolExecutor(
+        NUM_SCANNING_THREADS,
+        NUM_SCANNING_THREADS,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("OdpsMetaScanner-%d").setDaemon(true).build());
+    pool.allowCoreThreadTimeOut(true);
+
+    tablePrefetcher = new TablePrefetcher<>(
+        (database, tables) -> odps.tables().loadTables(database, tables),
+        Table::getName,
+        pool,
+        MAX_TABLES_PER_REQUEST,
+        MAX_TABLES_PER_PREFETCH_WINDOW,
+        MAX_NUM_TABLES_TO_PREFETCH,
+        PREFETCH_TTL_SECONDS);
+  }
 
   @Override
   public boolean hasDatabase(String databaseName) throws Exception {
@@ -79,63 +138,130 @@ public class OdpsMetaSource implements MetaSource {
   }
 
   @Override
-  public List<String> listTables(String databaseName) {
-    List<String> tables = new ArrayList<>();
-    Iterator<Table> iterator = odps.tables().iterator(databaseName);
-    while (iterator.hasNext()) {
-      Table table = iterator.next();
-      if (table.isVirtualView()) {
-        continue;
+  public List<String> listTables(String databaseName) throws Exception {
+    return scanProject(databaseName, EnumSet.of(ObjectType.TABLE))
+        .stream()
+        .map(d -> d.name)
+        .collect(Collectors.toList());
+  }
+
+  public List<String> listViews(String databaseName) throws Exception {
+    return scanProject(databaseName, EnumSet.of(ObjectType.VIEW))
+        .stream()
+        .map(d -> d.name)
+        .collect(Collectors.toList());
+  }
+
+  public List<String> listFunctions(String databaseName) throws Exception {
+    return scanProject(databaseName, EnumSet.of(ObjectType.FUNCTION))
+        .stream()
+        .map(d -> d.name)
+        .collect(Collectors.toList());
+  }
+
+  public List<String> listResources(String databaseName) throws Exception {
+    return scanProject(databaseName, EnumSet.of(ObjectType.RESOURCE))
+        .stream()
+        .map(d -> d.name)
+        .collect(Collectors.toList());
+  }
+
+  public List<String> listManagedTables(String databaseName) throws Exception {
+    return scanProject(databaseName, EnumSet.of(ObjectType.TABLE))
+        .stream()
+        .filter(d -> !d.isExternal)
+        .map(d -> d.name)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Enumerate objects of given types in a project. Tables and views are enumerated in a single
+   * pass, and types are carried by the listing, so tables are not loaded one by one. Functions
+   * and resources are enumerated concurrently with tables.
+   *
+   * @param databaseName Project name
+   * @param types        Types of objects to enumerate
+   * @return Descriptors of objects, tables and views first
+   * @throws Exception
+   */
+  public List<ObjectDescriptor> scanProject(String databaseName, Set<ObjectType> types)
+      throws Exception {
+    List<Future<List<ObjectDescriptor>>> futures = new LinkedList<>();
+    if (types.contains(ObjectType.TABLE) || types.contains(ObjectType.VIEW)) {
+      futures.add(pool.submit(() -> scanTables(databaseName)));
+    }
+    if (types.contains(ObjectType.FUNCTION)) {
+      futures.add(pool.submit(() -> scanFunctions(databaseName)));
+    }
+    if (types.contains(ObjectType.RESOURCE)) {
+      futures.add(pool.submit(() -> scanResources(databaseName)));
+    }
+
+    List<ObjectDescriptor> descriptors = new ArrayList<>();
+    for (Future<List<ObjectDescriptor>> future : futures) {
+      for (ObjectDescriptor descriptor : getResult(future)) {
+        if (types.contains(descriptor.type)) {
+          descriptors.add(descriptor);
+        }
       }
-      tables.add(table.getName());
     }
-    return tables;
+    LOG.info("Project: {}, types: {}, number of objects: {}",
+             databaseName, types, descriptors.size());
+    return descriptors;
   }
 
-  public List<String> listViews(String databaseName) {
-    List<String> views = new ArrayList<>();
-    Iterator<Table> iterator = odps.tables().iterator(databaseName);
+  List<ObjectDescriptor> scanTables(String databaseName) {
+    List<ObjectDescriptor> descriptors = new LinkedList<>();
+    // Extended listing carries table types
+    Iterator<Table> iterator = odps.tables().iterator(databaseName, null, true);
     while (iterator.hasNext()) {
       Table table = iterator.next();
-      if (table.isVirtualView()) {
-        views.add(table.getName());
-      }
+      descriptors.add(new ObjectDescriptor(
+          table.getName(),
+          table.isVirtualView() ? ObjectType.VIEW : ObjectType.TABLE,
+          table.isExternalTable()));
     }
-    return views;
+    return descriptors;
   }
 
-
-  public List<String> listFunctions(String databaseName) {
-    List<String> functions = new ArrayList<>();
-    Iterator<Function> iterator = odps.functions().iterator(databaseName);
-    while (iterator.hasNext()) {
-      Function func = iterator.next();
-      functions.add(func.getName());
+  List<ObjectDescriptor> scanFunctions(String databaseName) {
+    List<ObjectDescriptor> descriptors = new LinkedList<>();
+    for (Function function : odps.functions().iterable(databaseName)) {
+      descriptors.add(new ObjectDescriptor(function.getName(), ObjectType.FUNCTION, false));
     }
-    return functions;
+    return descriptors;
   }
 
-  public List<String> listResources(String databaseName) {
-    List<String> resources = new ArrayList<>();
-    Iterator<Resource> iterator = odps.resources().iterator(databaseName);
-    while (iterator.hasNext()) {
-      Resource resource = iterator.next();
-      resources.add(resource.getName());
+  List<ObjectDescriptor> scanResources(String databaseName) {
+    List<ObjectDescriptor> descriptors = new LinkedList<>();
+    for (Resource resource : odps.resources().iterable(databaseName)) {
+      descriptors.add(new ObjectDescriptor(resource.getName(), ObjectType.RESOURCE, false));
     }
-    return resources;
+    return descriptors;
   }
 
-  public List<String> listManagedTables(String databaseName) {
-    List<String> tables = new ArrayList<>();
-    Iterator<Table> iterator = odps.tables().iterator(databaseName);
-    while (iterator.hasNext()) {
-      Table table = iterator.next();
-      if (table.isExternalTable() || table.isVirtualView()) {
-        continue;
+  /**
+   * Prefetch given tables lazily, so that following requests for their metadata don't have to
+   * load them one by one. Nothing is loaded until one of the tables is requested, then the tables
+   * around it are loaded with batch requests in parallel. A prefetched table is used once, and
+   * then dropped. Tables never requested expire.
+   *
+   * @param databaseName Project name
+   * @param tableNames   Table names, in the order they are going to be requested
+   */
+  public void prefetchTables(String databaseName, List<String> tableNames) {
+    tablePrefetcher.register(databaseName, tableNames);
+  }
+
+  private static <T> T getResult(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
       }
-      tables.add(table.getName());
+      throw e;
     }
-    return tables;
   }
 
   @Override
@@ -200,15 +326,42 @@ public class OdpsMetaSource implements MetaSource {
     return getPartitionMetaModelInternal(partition);
   }
 
+  @Override
+  public List<PartitionMetaModel> getPartitionMetas(String databaseName,
+                                                    String tableName,
+                                                    List<List<String>> partitionValuesList) {
+    Set<List<String>> partitionValuesSet = new HashSet<>(partitionValuesList);
+    return listPartitionMetasWithoutSize(databaseName, tableName)
+        .stream()
+        .filter(p -> partitionValuesSet.contains(p.partitionValues))
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public List<PartitionMetaModel> listPartitionMetasWithoutSize(String databaseName,
+                                                                String tableName) {
+    List<PartitionMetaModel> partitionMetaModels = new ArrayList<>();
+    Table table = odps.tables().get(databaseName, tableName);
+    for (Partition partition : table.getPartitions()) {
+      partitionMetaModels.add(getPartitionMetaModelInternal(partition));
+    }
+    return partitionMetaModels;
+  }
+
   @Override
   public void shutdown() {
+    pool.shutdownNow();
+    tablePrefetcher.clear();
     odps = null;
   }
 
   private TableMetaModel getTableMetaInternal(String databaseName,
                                               String tableName,
                                               boolean withPartition) {
-    Table table = odps.tables().get(databaseName, tableName);
+    Table table = tablePrefetcher.take(databaseName, tableName);
+    if (table == null) {
+      table = odps.tables().get(databaseName, tableName);
+    }
     return getTableMetaInternal(table, withPartition);
   }
 
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Prefetches tables lazily. Tables are registered by name, and nothing is loaded until one of
+ * them is requested. The first request of a registered table loads the window of tables
+ * registered along with it, with batch requests in parallel.
+ *
+ * Registered names and loaded tables are kept in caches bounded by size and time, and a loaded
+ * table is dropped once it is taken, so tables that are never requested don't stay in memory.
+ *
+ * @param <T> Type of loaded tables
+ */
+class TablePrefetcher<T> {
+
+  private static final Logger LOG = LogManager.getLogger(TablePrefetcher.class);
+
+  interface BatchLoader<T> {
+    List<T> load(String databaseName, List<String> tableNames) throws Exception;
+  }
+
+  /**
+   * Tables registered together, loaded on the first request of any of them
+   */
+  private static class Window {
+    private final String databaseName;
+    private final List<String> tableNames;
+
+    Window(String databaseName, List<String> tableNames) {
+      this.databaseName = databaseName;
+      this.tableNames = tableNames;
+    }
+  }
+
+  private final BatchLoader<T> loader;
+  private final Function<T, String> nameGetter;
+  private final ExecutorService pool;
+  private final int batchSize;
+  private final int windowSize;
+
+  // Registered table to its window, removed once the window is loaded
+  private final Cache<String, Window> windows;
+  private final Cache<String, T> loadedTables;
+
+  TablePrefetcher(BatchLoader<T> loader,
+                  Function<T, String> nameGetter,
+                  ExecutorService pool,
+                  int batchSize,
+                  int windowSize,
+                  long maxNumRegisteredTables,
+                  long ttlSeconds) {
+    this.loader = loader;
+    this.nameGetter = nameGetter;
+    this.pool = pool;
+    this.batchSize = batchSize;
+    this.windowSize = windowSize;
+    this.windows = CacheBuilder.newBuilder()
+        .maximumSize(maxNumRegisteredTables)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .build();
+    // Tables of the window being consumed, and of a window loaded by a concurrent request
+    this.loadedTables = CacheBuilder.newBuilder()
+        .maximumSize(2L * windowSize)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Register tables to prefetch, windows are formed in the given order.
+   *
+   * @param databaseName Database name
+   * @param tableNames   Table names
+   */
+  void register(String databaseName, List<String> tableNames) {
+    for (int i = 0; i < tableNames.size(); i += windowSize) {
+      Window window = new Window(
+          databaseName,
+          new ArrayList<>(tableNames.subList(i, Math.min(i + windowSize, tableNames.size()))));
+      for (String tableName : window.tableNames) {
+        windows.put(getKey(databaseName, tableName), window);
+      }
+    }
+    LOG.info("Database: {}, tables to prefetch: {}", databaseName, tableNames.size());
+  }
+
+  /**
+   * Take a prefetched table, loading its window if it is not loaded yet.
+   *
+   * @param databaseName Database name
+   * @param tableName    Table name
+   * @return The table, or null if it is not registered, has expired or failed to load
+   */
+  T take(String databaseName, String tableName) {
+    String key = getKey(databaseName, tableName);
+    T table = takeLoaded(key);
+    if (table != null) {
+      return table;
+    }
+
+    Window window = windows.getIfPresent(key);
+    if (window == null) {
+      return null;
+    }
+    synchronized (window) {
+      // The window could have been loaded by a concurrent request
+      if (windows.getIfPresent(key) != null) {
+        load(window);
+      }
+    }
+    return takeLoaded(key);
+  }
+
+  void clear() {
+    windows.invalidateAll();
+    loadedTables.invalidateAll();
+  }
+
+  private T takeLoaded(String key) {
+    T table = loadedTables.getIfPresent(key);
+    if (table != null) {
+      loadedTables.invalidate(key);
+    }
+    return table;
+  }
+
+  private void load(Window window) {
+    for (String tableName : window.tableNames) {
+      windows.invalidate(getKey(window.databaseName, tableName));
+    }
+
+    List<Future<List<T>>> futures = new LinkedList<>();
+    for (int i = 0; i < window.tableNames.size(); i += batchSize) {
+      List<String> batch = window.tableNames.subList(
+          i, Math.min(i + batchSize, window.tableNames.size()));
+      futures.add(pool.submit(() -> loader.load(window.databaseName, batch)));
+    }
+
+    int numLoaded = 0;
+    for (Future<List<T>> future : futures) {
+      try {
+        for (T table : future.get()) {
+          loadedTables.put(getKey(window.databaseName, nameGetter.apply(table)), table);
+          numLoaded += 1;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        // Tables of the failed batch are loaded one by one by the caller
+        LOG.warn("Failed to prefetch tables of database: {}", window.databaseName, e.getCause());
+      }
+    }
+    LOG.info("Database: {}, prefetched tables: {}", window.databaseName, numLoaded);
+  }
+
+  private static String getKey(String databaseName, String tableName) {
+    return (databaseName + "." + tableName).toLowerCase();
+  }
+}
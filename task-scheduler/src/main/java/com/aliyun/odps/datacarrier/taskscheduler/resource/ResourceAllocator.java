@@ -29,7 +29,7 @@ public class ResourceAllocator {
 
   private static ResourceAllocator instance;
 
-  private static final long DEFAULT_NUM_HIVE_DATA_TRANSFER_JOB_RESOURCE = 5;
+  public static final long DEFAULT_NUM_HIVE_DATA_TRANSFER_JOB_RESOURCE = 5;
   private static final long DEFAULT_NUM_HIVE_DATA_TRANSFER_WORKER_RESOURCE = 25;
   private static final long DEFAULT_NUM_MC_METADATA_OPERATION_RESOURCE = 10;
 
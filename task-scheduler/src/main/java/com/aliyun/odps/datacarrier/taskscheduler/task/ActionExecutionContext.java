@@ -20,6 +20,7 @@
 package com.aliyun.odps.datacarrier.taskscheduler.task;
 
 import java.util.List;
+import java.util.Map;
 
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
 import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.TableMigrationConfig;
@@ -30,8 +31,24 @@ import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.TableMigrationConfig;
 public class ActionExecutionContext {
 
   private TableMetaModel tableMetaModel = null;
-  private List<List<String>> sourceVerificationResult = null;
-  private List<List<String>> destVerificationResult = null;
+  /**
+   * Tables migrated together by a batch task, keyed by their labels, null for other tasks.
+   * Verification results of a batch are keyed by the label of each table instead of partition
+   * values.
+   */
+  private Map<String, TableMetaModel> batchTableMetaModels = null;
+  /**
+   * Record count of each partition, keyed by partition values. For non-partitioned tables, the
+   * key is an empty list.
+   */
+  private Map<List<String>, Long> sourceVerificationResult = null;
+  private Map<List<String>, Long> destVerificationResult = null;
+  /**
+   * Content fingerprint of each partition, keyed by partition values. Only available when
+   * fingerprint verification is enabled.
+   */
+  private Map<List<String>, List<String>> sourceFingerprints = null;
+  private Map<List<String>, List<String>> destFingerprints = null;
 
   public TableMetaModel getTableMetaModel() {
     return tableMetaModel;
@@ -41,19 +58,47 @@ public class ActionExecutionContext {
     this.tableMetaModel = tableMetaModel;
   }
 
-  public List<List<String>> getSourceVerificationResult() {
+  public Map<String, TableMetaModel> getBatchTableMetaModels() {
+    return batchTableMetaModels;
+  }
+
+  public void setBatchTableMetaModels(Map<String, TableMetaModel> batchTableMetaModels) {
+    this.batchTableMetaModels = batchTableMetaModels;
+  }
+
+  public boolean isBatch() {
+    return batchTableMetaModels != null;
+  }
+
+  public Map<List<String>, Long> getSourceVerificationResult() {
     return sourceVerificationResult;
   }
 
-  public void setSourceVerificationResult(List<List<String>> rows) {
-    sourceVerificationResult = rows;
+  public void setSourceVerificationResult(Map<List<String>, Long> result) {
+    sourceVerificationResult = result;
   }
 
-  public List<List<String>> getDestVerificationResult() {
+  public Map<List<String>, Long> getDestVerificationResult() {
     return destVerificationResult;
   }
 
-  public void setDestVerificationResult(List<List<String>> rows) {
-    destVerificationResult = rows;
+  public void setDestVerificationResult(Map<List<String>, Long> result) {
+    destVerificationResult = result;
+  }
+
+  public Map<List<String>, List<String>> getSourceFingerprints() {
+    return sourceFingerprints;
+  }
+
+  public void setSourceFingerprints(Map<List<String>, List<String>> fingerprints) {
+    sourceFingerprints = fingerprints;
+  }
+
+  public Map<List<String>, List<String>> getDestFingerprints() {
+    return destFingerprints;
+  }
+
+  public void setDestFingerprints(Map<List<String>, List<String>> fingerprints) {
+    destFingerprints = fingerprints;
   }
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler.task;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedAcyclicGraph;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.action.Action;
+import com.aliyun.odps.datacarrier.taskscheduler.action.ActionProgress;
+import com.aliyun.odps.datacarrier.taskscheduler.action.VerificationAction;
+import com.aliyun.odps.datacarrier.taskscheduler.action.info.VerificationActionInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.event.MmaEventManager;
+import com.aliyun.odps.datacarrier.taskscheduler.event.MmaTaskFailedEvent;
+import com.aliyun.odps.datacarrier.taskscheduler.event.MmaTaskSucceedEvent;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+
+/**
+ * Migrates a batch of small non-partitioned tables, data of all the tables is transferred by one
+ * Hive job and verified by one query on each side. The status of each table is tracked
+ * separately.
+ */
+public class BatchMigrationTask extends AbstractTask {
+
+  private Map<String, TableMetaModel> tableMetaModels;
+
+  /**
+   * @param tableMetaModels Tables to migrate, keyed by their labels
+   */
+  public BatchMigrationTask(
+      String id,
+      Map<String, TableMetaModel> tableMetaModels,
+      DirectedAcyclicGraph<Action, DefaultEdge> dag,
+      MmaMetaManager mmaMetaManager) {
+    super(id, dag, mmaMetaManager);
+    this.tableMetaModels = Objects.requireNonNull(tableMetaModels);
+    actionExecutionContext.setBatchTableMetaModels(tableMetaModels);
+  }
+
+  @Override
+  void updateMetadata() throws MmaException {
+    if (TaskProgress.SUCCEEDED.equals(progress)) {
+      MmaTaskSucceedEvent e = new MmaTaskSucceedEvent(id);
+      MmaEventManager.getInstance().send(e);
+
+      updateStatus(tableMetaModels.keySet(), MigrationStatus.SUCCEEDED);
+    } else if (TaskProgress.FAILED.equals(progress)) {
+      MmaTaskFailedEvent e = new MmaTaskFailedEvent(
+          id,
+          dag.vertexSet()
+             .stream()
+             .filter(a -> ActionProgress.FAILED.equals(a.getProgress()))
+             .map(Action::getName).collect(Collectors.toList()));
+      MmaEventManager.getInstance().send(e);
+
+      // Tables who have passed the verification succeeded even when the task failed
+      Action verificationAction = null;
+      for (Action action : dag.vertexSet()) {
+        if (action instanceof VerificationAction) {
+          verificationAction = action;
+        }
+      }
+
+      if (verificationAction != null
+          && ActionProgress.FAILED.equals(verificationAction.getProgress())) {
+        VerificationActionInfo verificationActionInfo =
+            (VerificationActionInfo) verificationAction.getActionInfo();
+        updateStatus(getLabels(verificationActionInfo.getSucceededPartitions()),
+                     MigrationStatus.SUCCEEDED);
+        updateStatus(getLabels(verificationActionInfo.getFailedPartitions()),
+                     MigrationStatus.FAILED);
+      } else {
+        updateStatus(tableMetaModels.keySet(), MigrationStatus.FAILED);
+      }
+    }
+  }
+
+  private static List<String> getLabels(List<List<String>> keys) {
+    if (keys == null) {
+      return Collections.emptyList();
+    }
+    return keys.stream().map(k -> k.get(0)).collect(Collectors.toList());
+  }
+
+  private void updateStatus(Iterable<String> labels, MigrationStatus status)
+      throws MmaException {
+    for (String label : labels) {
+      TableMetaModel tableMetaModel = tableMetaModels.get(label);
+      mmaMetaManager.updateStatus(tableMetaModel.databaseName, tableMetaModel.tableName, status);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.aliyun.odps.datacarrier.taskscheduler.action.HiveUdtfDataTransferAction.FileRange;
+
+/**
+ * Splits the files of a non-partitioned table or a partition into contiguous ranges of similar
+ * weight, in the order of their names. The first range has no lower bound and the last range has
+ * no upper bound, so the ranges cover every file exactly once, even if files are added after
+ * listing or Hive orders the file names differently. Only the balance would suffer in that case.
+ */
+public class FileRangeSplitter {
+
+  /**
+   * Split files into given number of ranges. Fewer ranges are returned if there are not enough
+   * files.
+   *
+   * @param fileSizes Sizes of files, sorted by their names
+   * @param numRanges Max number of ranges
+   * @return File ranges in the order of their bounds
+   */
+  public static List<FileRange> split(SortedMap<String, Long> fileSizes, int numRanges) {
+    numRanges = Math.min(numRanges, fileSizes.size());
+    long totalSize = fileSizes.values().stream().mapToLong(Long::longValue).sum();
+    if (numRanges <= 1) {
+      return Collections.singletonList(new FileRange(null, null, totalSize));
+    }
+
+    long totalWeight = totalSize + fileSizes.size() * PartitionGroupSplitter.FILE_OVERHEAD_BYTES;
+    List<FileRange> ret = new ArrayList<>(numRanges);
+    String lowerBound = null;
+    long rangeSize = 0;
+    long accumulatedWeight = 0;
+    for (Map.Entry<String, Long> entry : fileSizes.entrySet()) {
+      // Start a new range once the files before reach the next fraction of the total weight
+      if (accumulatedWeight > 0
+          && ret.size() < numRanges - 1
+          && accumulatedWeight * numRanges >= totalWeight * (ret.size() + 1)) {
+        ret.add(new FileRange(lowerBound, entry.getKey(), rangeSize));
+        lowerBound = entry.getKey();
+        rangeSize = 0;
+      }
+      rangeSize += entry.getValue();
+      accumulatedWeight += entry.getValue() + PartitionGroupSplitter.FILE_OVERHEAD_BYTES;
+    }
+    ret.add(new FileRange(lowerBound, null, rangeSize));
+
+    return ret;
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.TableMigrationConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.resource.Resource;
+import com.aliyun.odps.datacarrier.taskscheduler.resource.ResourceAllocator;
+
+/**
+ * Plans the execution order of table migration jobs. The cost of each table is estimated from its
+ * size, number of partitions and storage format, and the most expensive tables are started first
+ * (longest processing time first), which keeps the makespan close to the optimum when the number
+ * of concurrent data transfer jobs is limited.
+ */
+public class MigrationPlanner {
+
+  private static final Logger LOG = LogManager.getLogger(MigrationPlanner.class);
+
+  /**
+   * Estimated data transfer throughput of one job
+   */
+  private static final long THROUGHPUT_BYTES_PER_SECOND = 32L * 1024 * 1024;
+
+  /**
+   * Estimated overhead of a task, like creating the table, starting the job and verification
+   */
+  private static final long TASK_OVERHEAD_SECONDS = 60;
+
+  /**
+   * Estimated overhead of a partition, like adding the partition and verification
+   */
+  private static final long PARTITION_OVERHEAD_SECONDS = 1;
+
+  public static class PlannedJob {
+    private final TableMigrationConfig config;
+    private final long costSeconds;
+    private long startSeconds;
+    private long finishSeconds;
+
+    PlannedJob(TableMigrationConfig config, long costSeconds) {
+      this.config = config;
+      this.costSeconds = costSeconds;
+    }
+
+    public TableMigrationConfig getConfig() {
+      return config;
+    }
+
+    public long getCostSeconds() {
+      return costSeconds;
+    }
+
+    public long getStartSeconds() {
+      return startSeconds;
+    }
+
+    public long getFinishSeconds() {
+      return finishSeconds;
+    }
+  }
+
+  public static class Plan {
+    private final List<PlannedJob> jobs;
+    private final long makespanSeconds;
+
+    Plan(List<PlannedJob> jobs, long makespanSeconds) {
+      this.jobs = jobs;
+      this.makespanSeconds = makespanSeconds;
+    }
+
+    /**
+     * Jobs in the order they should be started
+     */
+    public List<PlannedJob> getJobs() {
+      return jobs;
+    }
+
+    /**
+     * Estimated time to finish all the jobs
+     */
+    public long getMakespanSeconds() {
+      return makespanSeconds;
+    }
+  }
+
+  private MetaSource metaSource;
+  private int parallelism;
+
+  public MigrationPlanner(MetaSource metaSource) {
+    this(metaSource, getDefaultParallelism());
+  }
+
+  public MigrationPlanner(MetaSource metaSource, int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("'parallelism' must be positive");
+    }
+    this.metaSource = metaSource;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Estimate the cost of given jobs with metadata from the meta source, and plan their execution
+   * order. If the metadata of a table cannot be fetched, only the task overhead is counted.
+   *
+   * @param configs Table migration configs
+   * @return Execution plan
+   */
+  public Plan plan(List<TableMigrationConfig> configs) {
+    List<PlannedJob> jobs = new ArrayList<>(configs.size());
+    for (TableMigrationConfig config : configs) {
+      String db = config.getSourceDataBaseName();
+      String tbl = config.getSourceTableName();
+      long costSeconds;
+      try {
+        TableMetaModel tableMetaModel = metaSource.getTableMetaWithoutPartitionMeta(db, tbl);
+        int numPartitions = tableMetaModel.partitionColumns.isEmpty()
+            ? 0 : metaSource.listPartitions(db, tbl).size();
+        costSeconds = estimateCostSeconds(
+            tableMetaModel.size, numPartitions, tableMetaModel.inputFormat);
+      } catch (Exception e) {
+        LOG.warn("Failed to estimate cost, db: {}, tbl: {}", db, tbl, e);
+        costSeconds = TASK_OVERHEAD_SECONDS;
+      }
+      jobs.add(new PlannedJob(config, costSeconds));
+    }
+
+    return plan(jobs, parallelism);
+  }
+
+  /**
+   * Order jobs by cost descending, and simulate running them with given parallelism to get the
+   * start time and finish time of each job.
+   */
+  static Plan plan(List<PlannedJob> jobs, int parallelism) {
+    List<PlannedJob> ordered = new ArrayList<>(jobs);
+    // Stable, jobs with the same cost keep their order
+    ordered.sort(Comparator.comparingLong(PlannedJob::getCostSeconds).reversed());
+    return simulate(ordered, parallelism);
+  }
+
+  private static Plan simulate(List<PlannedJob> ordered, int parallelism) {
+    // Time when each slot becomes idle
+    PriorityQueue<Long> slots = new PriorityQueue<>();
+    for (int i = 0; i < parallelism; i++) {
+      slots.add(0L);
+    }
+    long makespanSeconds = 0;
+    for (PlannedJob job : ordered) {
+      job.startSeconds = slots.poll();
+      job.finishSeconds = job.startSeconds + job.costSeconds;
+      slots.add(job.finishSeconds);
+      makespanSeconds = Math.max(makespanSeconds, job.finishSeconds);
+    }
+
+    LOG.info("Number of jobs: {}, parallelism: {}, estimated makespan: {}s",
+             ordered.size(), parallelism, makespanSeconds);
+    return new Plan(Collections.unmodifiableList(ordered), makespanSeconds);
+  }
+
+  /**
+   * Estimate the cost of migrating a table or a part of it, partitions in the model are counted.
+   */
+  public static long estimateCostSeconds(TableMetaModel tableMetaModel) {
+    Long size = tableMetaModel.size;
+    if (!tableMetaModel.partitions.isEmpty()) {
+      long totalSize = 0;
+      for (PartitionMetaModel partitionMetaModel : tableMetaModel.partitions) {
+        if (partitionMetaModel.size != null) {
+          totalSize += partitionMetaModel.size;
+        }
+      }
+      size = totalSize;
+    }
+    return estimateCostSeconds(size, tableMetaModel.partitions.size(), tableMetaModel.inputFormat);
+  }
+
+  /**
+   * Estimate the cost of migrating a table.
+   *
+   * @param size          Size in bytes, null if unknown
+   * @param numPartitions Number of partitions
+   * @param inputFormat   Input format, null if unknown
+   * @return Estimated cost in seconds
+   */
+  public static long estimateCostSeconds(Long size, int numPartitions, String inputFormat) {
+    long costSeconds = TASK_OVERHEAD_SECONDS + numPartitions * PARTITION_OVERHEAD_SECONDS;
+    if (size != null && size > 0) {
+      costSeconds +=
+          (long) (size * getFormatFactor(inputFormat) / THROUGHPUT_BYTES_PER_SECOND);
+    }
+    return costSeconds;
+  }
+
+  /**
+   * Compressed columnar files are much smaller than the rows they hold, reading and converting
+   * them costs more per byte.
+   */
+  private static double getFormatFactor(String inputFormat) {
+    if (inputFormat == null) {
+      return 1.0;
+    }
+    String lowerCaseInputFormat = inputFormat.toLowerCase();
+    if (lowerCaseInputFormat.contains("orc") || lowerCaseInputFormat.contains("parquet")) {
+      return 3.0;
+    } else if (lowerCaseInputFormat.contains("rcfile")) {
+      return 2.0;
+    }
+    return 1.0;
+  }
+
+  /**
+   * Number of concurrent data transfer jobs allowed by the resource config
+   */
+  public static int getDefaultParallelism() {
+    Map<String, String> resourceConfig = MmaServerConfig.getInstance().getResourceConfig();
+    if (resourceConfig != null) {
+      String key = Resource.HIVE_DATA_TRANSFER_JOB_RESOURCE.name();
+      for (Map.Entry<String, String> entry : resourceConfig.entrySet()) {
+        if (key.equalsIgnoreCase(entry.getKey().trim())) {
+          try {
+            int parallelism = Integer.parseInt(entry.getValue().trim());
+            if (parallelism > 0) {
+              return parallelism;
+            }
+          } catch (NumberFormatException | NullPointerException e) {
+            // Fall through
+          }
+          LOG.warn("Invalid value of {}: {}, use the default value instead",
+                   entry.getKey(), entry.getValue());
+          break;
+        }
+      }
+    }
+    return (int) ResourceAllocator.DEFAULT_NUM_HIVE_DATA_TRANSFER_JOB_RESOURCE;
+  }
+}
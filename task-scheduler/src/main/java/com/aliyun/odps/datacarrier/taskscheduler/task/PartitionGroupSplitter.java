@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler.task;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.aliyun.odps.datacarrier.taskscheduler.Constants;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+
+/**
+ * Splits the partitions of a table into groups of similar weight, each of them is migrated by one
+ * task. The weight of a partition is its size plus an estimated overhead of each file. Partitions
+ * are assigned to the lightest group in descending order of weight (longest processing time
+ * first), so the slowest group, which decides when the table finishes, is as light as possible.
+ */
+public class PartitionGroupSplitter {
+
+  private static final Logger LOG = LogManager.getLogger(PartitionGroupSplitter.class);
+
+  /**
+   * Estimated overhead of opening and reading a file, in equivalent bytes
+   */
+  static final long FILE_OVERHEAD_BYTES = 4L * 1024 * 1024;
+
+  private static class PartitionGroup {
+    private final List<PartitionMetaModel> partitions = new ArrayList<>();
+    private long weight = 0;
+
+    private void add(PartitionMetaModel partitionMetaModel) {
+      partitions.add(partitionMetaModel);
+      weight += getPartitionWeight(partitionMetaModel);
+    }
+  }
+
+  /**
+   * Split partitions of given table into balanced partition groups.
+   *
+   * @param tableMetaModel Table metadata with partitions
+   * @param config         Additional table config, could be null
+   * @return Table splits in descending order of weight, or null if the size of any partition is
+   * not available
+   */
+  public static List<TableMetaModel> split(
+      TableMetaModel tableMetaModel,
+      MmaConfig.AdditionalTableConfig config) {
+
+    if (tableMetaModel.partitions.stream().anyMatch(p -> p.size == null)) {
+      LOG.info("Database: {}, table: {}, partition sizes not available",
+               tableMetaModel.databaseName,
+               tableMetaModel.tableName);
+      return null;
+    }
+
+    int maxGroupSize = Constants.MAX_PARTITION_GROUP_SIZE;
+    if (config != null && config.getPartitionGroupSize() > 0) {
+      maxGroupSize = Math.min(maxGroupSize, config.getPartitionGroupSize());
+    }
+    long splitSizeInBytes = getSplitSizeInBytes(config);
+
+    List<PartitionMetaModel> partitions = new ArrayList<>(tableMetaModel.partitions);
+    partitions.sort(
+        Comparator.comparingLong(PartitionGroupSplitter::getPartitionWeight).reversed());
+
+    long totalWeight =
+        partitions.stream().mapToLong(PartitionGroupSplitter::getPartitionWeight).sum();
+    int numGroups = (int) Math.max(
+        ceilDiv(totalWeight, splitSizeInBytes),
+        ceilDiv(partitions.size(), maxGroupSize));
+    numGroups = Math.max(1, Math.min(numGroups, partitions.size()));
+
+    // Groups that reach the max group size are removed from the queue, since numGroups *
+    // maxGroupSize >= number of partitions, there is always a group available
+    PriorityQueue<PartitionGroup> queue =
+        new PriorityQueue<>(numGroups, Comparator.comparingLong(g -> g.weight));
+    List<PartitionGroup> groups = new ArrayList<>(numGroups);
+    for (int i = 0; i < numGroups; i++) {
+      PartitionGroup group = new PartitionGroup();
+      groups.add(group);
+      queue.add(group);
+    }
+
+    for (PartitionMetaModel partitionMetaModel : partitions) {
+      if (getPartitionWeight(partitionMetaModel) > splitSizeInBytes) {
+        LOG.info("Database: {}, table: {}, partition: {}, size exceeds split size: {}",
+                 tableMetaModel.databaseName,
+                 tableMetaModel.tableName,
+                 partitionMetaModel.partitionValues,
+                 partitionMetaModel.size);
+      }
+      PartitionGroup group = queue.poll();
+      group.add(partitionMetaModel);
+      if (group.partitions.size() < maxGroupSize) {
+        queue.add(group);
+      }
+    }
+
+    List<TableMetaModel> ret = groups
+        .stream()
+        .filter(g -> !g.partitions.isEmpty())
+        .sorted(Comparator.comparingLong((PartitionGroup g) -> g.weight).reversed())
+        .map(g -> {
+          TableMetaModel clone = tableMetaModel.clone();
+          clone.partitions = g.partitions;
+          return clone;
+        })
+        .collect(Collectors.toList());
+
+    LOG.info("Database: {}, table: {}, num partitions: {}, num partition groups: {}, "
+                 + "max group weight: {}, min group weight: {}",
+             tableMetaModel.databaseName,
+             tableMetaModel.tableName,
+             partitions.size(),
+             ret.size(),
+             ret.isEmpty() ? 0 : getWeight(ret.get(0)),
+             ret.isEmpty() ? 0 : getWeight(ret.get(ret.size() - 1)));
+
+    return ret;
+  }
+
+  public static long getSplitSizeInBytes(MmaConfig.AdditionalTableConfig config) {
+    int splitSizeInGb = config != null
+        ? config.getPartitionGroupSplitSizeInGb()
+        : Constants.DEFAULT_PARTITION_GROUP_SPLIT_SIZE_IN_GB;
+    return Math.max(1, splitSizeInGb) * 1024L * 1024 * 1024;
+  }
+
+  static long getPartitionWeight(PartitionMetaModel partitionMetaModel) {
+    long weight = partitionMetaModel.size == null ? 0 : partitionMetaModel.size;
+    if (partitionMetaModel.numFiles != null) {
+      weight += partitionMetaModel.numFiles * FILE_OVERHEAD_BYTES;
+    }
+    return weight;
+  }
+
+  public static long getWeight(TableMetaModel tableMetaModel) {
+    return tableMetaModel.partitions
+        .stream()
+        .mapToLong(PartitionGroupSplitter::getPartitionWeight)
+        .sum();
+  }
+
+  private static long ceilDiv(long x, long y) {
+    return (x + y - 1) / y;
+  }
+}
@@ -25,11 +25,21 @@ import static com.aliyun.odps.datacarrier.taskscheduler.Constants.EXPORT_TABLE_F
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -37,7 +47,6 @@ import org.apache.logging.log4j.Logger;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DirectedAcyclicGraph;
 
-import com.aliyun.odps.Function;
 import com.aliyun.odps.Resource;
 import com.aliyun.odps.Table;
 import com.aliyun.odps.datacarrier.taskscheduler.BackgroundLoopManager;
@@ -59,6 +68,7 @@ import com.aliyun.odps.datacarrier.taskscheduler.action.AddBackgroundWorkItemAct
 import com.aliyun.odps.datacarrier.taskscheduler.action.AddMigrationJobAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.HiveSourceVerificationAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.HiveUdtfDataTransferAction;
+import com.aliyun.odps.datacarrier.taskscheduler.action.HiveUdtfDataTransferAction.FileRange;
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsAddPartitionAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsCreateOssExternalTableAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsCreateTableAction;
@@ -79,7 +89,10 @@ import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsRestoreResourceActio
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsRestoreTableAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsSourceVerificationAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.VerificationAction;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.HiveMetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaCondition;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSourceFactory;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
@@ -87,24 +100,102 @@ import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.
 import com.aliyun.odps.utils.StringUtils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class TaskProvider {
   private static final Logger LOG = LogManager.getLogger(TaskProvider.class);
 
+  private static final int NUM_FILE_LISTING_THREADS = 4;
+
   private MmaMetaManager mmaMetaManager;
   private BackgroundLoopManager backgroundLoopManager;
 
+  /**
+   * Lists files of large tables and partitions, which are split into file ranges. Created and
+   * used by threads of fileListingPool only
+   */
+  private HiveMetaSource hiveMetaSource;
+  private final ExecutorService fileListingPool;
+
+  /**
+   * A task waiting for files of a large table or partition to be listed
+   */
+  private static class TaskAwaitingFileRanges {
+    private final Future<List<FileRange>> fileRanges;
+    private final Function<List<FileRange>, Task> taskFactory;
+
+    TaskAwaitingFileRanges(
+        Future<List<FileRange>> fileRanges,
+        Function<List<FileRange>, Task> taskFactory) {
+      this.fileRanges = fileRanges;
+      this.taskFactory = taskFactory;
+    }
+  }
+
+  /**
+   * Listing files could take long, so it is done in the background, and the tasks are returned by
+   * a later call of {@link #get()}
+   */
+  private final List<TaskAwaitingFileRanges> tasksAwaitingFileRanges = new LinkedList<>();
+
   private List<Task> pendingTasks = new ArrayList<>();
 
+  /**
+   * Generators of tasks of partitioned tables, and the tasks of claimed tables that have not
+   * terminated. At most taskWindowSize of these tasks are materialized at the same time, taken
+   * from the generators in turn. New tables are claimed only when the generators are drained,
+   * and no more than the free slots of the window, so the metadata of claimed tables held in
+   * memory stays bounded.
+   */
+  private final Deque<Iterator<Task>> taskGenerators = new LinkedList<>();
+  private final List<Task> materializedTasks = new LinkedList<>();
+  private final int taskWindowSize;
+
   public TaskProvider(MmaMetaManager mmaMetaManager) {
     this.mmaMetaManager = Objects.requireNonNull(mmaMetaManager);
+    this.taskWindowSize = getTaskWindowSize();
+    ThreadPoolExecutor fileListingPool = new ThreadPoolExecutor(
+        NUM_FILE_LISTING_THREADS,
+        NUM_FILE_LISTING_THREADS,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("FileLister-%d").setDaemon(true).build());
+    fileListingPool.allowCoreThreadTimeOut(true);
+    this.fileListingPool = fileListingPool;
     backgroundLoopManager = new BackgroundLoopManager();
     backgroundLoopManager.start();
   }
 
+  private static int getTaskWindowSize() {
+    String value = MmaServerConfig
+        .getInstance()
+        .getSchedulerConfig()
+        .get(MmaServerConfig.MMA_TASK_WINDOW_SIZE);
+    try {
+      int taskWindowSize = Integer.parseInt(value.trim());
+      if (taskWindowSize > 0) {
+        return taskWindowSize;
+      }
+    } catch (NumberFormatException | NullPointerException e) {
+      // Fall through
+    }
+    LOG.warn("Invalid value of {}: {}, use the default value instead",
+             MmaServerConfig.MMA_TASK_WINDOW_SIZE, value);
+    return Constants.DEFAULT_TASK_WINDOW_SIZE;
+  }
+
   public synchronized List<Task> get() throws MmaException {
     List<Task> ret = new LinkedList<>();
-    ret.addAll(getTasksFromMetaDB());
+    ret.addAll(getTasksWithFileRanges());
+    ret.addAll(getGeneratedTasks());
+    int numFreeSlots = taskWindowSize - getNumMaterializedTasks();
+    if (taskGenerators.isEmpty() && numFreeSlots > 0) {
+      List<Task> tasks = getTasksFromMetaDB(numFreeSlots);
+      materializedTasks.addAll(tasks);
+      ret.addAll(tasks);
+      ret.addAll(getGeneratedTasks());
+    }
     ret.addAll(getTasksFromRestoreDB());
     synchronized (pendingTasks) {
       ret.addAll(pendingTasks);
@@ -113,8 +204,81 @@ public class TaskProvider {
     return ret;
   }
 
-  public synchronized List<Task> getTasksFromMetaDB() throws MmaException {
-    List<TableMetaModel> pendingTables = mmaMetaManager.getPendingTables();
+  /**
+   * Take tasks from the generators in turn until the window is full, so that every table being
+   * migrated makes progress
+   */
+  private List<Task> getGeneratedTasks() {
+    materializedTasks.removeIf(t -> TaskProgress.SUCCEEDED.equals(t.getProgress())
+        || TaskProgress.FAILED.equals(t.getProgress())
+        || TaskProgress.CANCELED.equals(t.getProgress()));
+
+    List<Task> ret = new LinkedList<>();
+    while (getNumMaterializedTasks() < taskWindowSize && !taskGenerators.isEmpty()) {
+      Iterator<Task> taskGenerator = taskGenerators.pollFirst();
+      if (taskGenerator.hasNext()) {
+        // Null if the task is waiting for files to be listed
+        Task task = taskGenerator.next();
+        if (task != null) {
+          materializedTasks.add(task);
+          ret.add(task);
+        }
+      }
+      if (taskGenerator.hasNext()) {
+        taskGenerators.addLast(taskGenerator);
+      }
+    }
+
+    if (!ret.isEmpty()) {
+      LOG.info("Generated tasks: {}, materialized: {}, pending generators: {}",
+               ret.size(),
+               materializedTasks.size(),
+               taskGenerators.size());
+    }
+    return ret;
+  }
+
+  /**
+   * Number of tasks of claimed tables that have not terminated, including the ones waiting for
+   * files to be listed
+   */
+  private int getNumMaterializedTasks() {
+    return materializedTasks.size() + tasksAwaitingFileRanges.size();
+  }
+
+  /**
+   * Create tasks whose files are listed
+   */
+  private List<Task> getTasksWithFileRanges() {
+    List<Task> ret = new LinkedList<>();
+    Iterator<TaskAwaitingFileRanges> iter = tasksAwaitingFileRanges.iterator();
+    while (iter.hasNext()) {
+      TaskAwaitingFileRanges taskAwaitingFileRanges = iter.next();
+      if (!taskAwaitingFileRanges.fileRanges.isDone()) {
+        continue;
+      }
+      iter.remove();
+
+      List<FileRange> fileRanges;
+      try {
+        fileRanges = taskAwaitingFileRanges.fileRanges.get();
+      } catch (InterruptedException | ExecutionException e) {
+        fileRanges = null;
+      }
+      Task task = taskAwaitingFileRanges.taskFactory.apply(fileRanges);
+      materializedTasks.add(task);
+      ret.add(task);
+    }
+    return ret;
+  }
+
+  /**
+   * Claim pending tables and create their tasks
+   *
+   * @param maxNumTables Max number of tables to claim
+   */
+  public synchronized List<Task> getTasksFromMetaDB(int maxNumTables) throws MmaException {
+    List<TableMetaModel> pendingTables = mmaMetaManager.getPendingTables(maxNumTables);
     if (!pendingTables.isEmpty()) {
       LOG.info("Tables to migrate");
       for (TableMetaModel tableMetaModel : pendingTables) {
@@ -128,8 +292,15 @@ public class TaskProvider {
 
     setRunning(pendingTables);
 
+    // Start the most expensive tables first, tasks are scheduled in the order they are added
+    pendingTables.sort(
+        Comparator.comparingLong((TableMetaModel t) -> MigrationPlanner.estimateCostSeconds(t))
+            .reversed());
+
     List<Task> ret = new LinkedList<>();
     DataSource datasource = MmaServerConfig.getInstance().getDataSource();
+    // Small non-partitioned tables are migrated in batches after the others
+    Map<TableMetaModel, TableMigrationConfig> smallTables = new LinkedHashMap<>();
     for (TableMetaModel tableMetaModel : pendingTables) {
       MmaConfig.JobConfig config =
           mmaMetaManager.getConfig(tableMetaModel.databaseName, tableMetaModel.tableName);
@@ -137,10 +308,17 @@ public class TaskProvider {
       MmaConfig.JobType jobType = config.getJobType();
       if (MmaConfig.JobType.MIGRATION.equals(jobType)) {
         TableMigrationConfig tableMigrationConfig = TableMigrationConfig.fromJson(config.getDescription());
-        if (tableMetaModel.partitionColumns.isEmpty()) {
-          ret.add(generateNonPartitionedTableMigrationTask(datasource, tableMetaModel, tableMigrationConfig));
+        if (isSmallTable(datasource, tableMetaModel, tableMigrationConfig)) {
+          smallTables.put(tableMetaModel, tableMigrationConfig);
+        } else if (tableMetaModel.partitionColumns.isEmpty()) {
+          Task task = generateNonPartitionedTableMigrationTask(
+              datasource, tableMetaModel, tableMigrationConfig);
+          if (task != null) {
+            ret.add(task);
+          }
         } else {
-          ret.addAll(generatePartitionedTableMigrationTask(datasource, tableMetaModel, tableMigrationConfig));
+          taskGenerators.add(
+              generatePartitionedTableMigrationTask(datasource, tableMetaModel, tableMigrationConfig));
         }
       } else if (MmaConfig.JobType.BACKUP.equals(jobType)) {
         MmaConfig.ObjectExportConfig exportConfig = MmaConfig.ObjectExportConfig.fromJson(config.getDescription());
@@ -189,12 +367,14 @@ public class TaskProvider {
         // TODO: should mark corresponding job as failed
       }
     }
+    ret.addAll(generateBatchMigrationTasks(datasource, smallTables));
     return ret;
   }
 
   public synchronized List<Task> getTasksFromRestoreDB() throws MmaException {
     List<Task> ret = new LinkedList<>();
-    String condition = "WHERE status='PENDING'\n";
+    MetaCondition condition = new MetaCondition().eq(
+        Constants.MMA_OBJ_RESTORE_COL_STATUS, MmaMetaManager.MigrationStatus.PENDING.name());
     List<RestoreTaskInfo> pendingTasks = mmaMetaManager.listRestoreJobs(condition, 100);
     if (pendingTasks.isEmpty()) {
       LOG.info("No pending restore tasks found.");
@@ -222,8 +402,8 @@ public class TaskProvider {
 
   public synchronized List<Task> getTasksFromTemporaryTableDB(String uniqueId) {
     List<Task> ret = new LinkedList<>();
-    String condition = uniqueId == null ? null :
-        " WHERE " + Constants.MMA_OBJ_TEMPORARY_COL_UNIQUE_ID + "='" + uniqueId + "'";
+    MetaCondition condition = uniqueId == null ? null :
+        new MetaCondition().eq(Constants.MMA_OBJ_TEMPORARY_COL_UNIQUE_ID, uniqueId);
     try {
       Map<String, List<String>> temporaryTables = mmaMetaManager.listTemporaryTables(condition, 100);
       if (temporaryTables.isEmpty()) {
@@ -265,6 +445,9 @@ public class TaskProvider {
     }
   }
 
+  /**
+   * @return The task, or null if it is waiting for files to be listed
+   */
   private Task generateNonPartitionedTableMigrationTask(
       DataSource datasource,
       TableMetaModel tableMetaModel,
@@ -276,9 +459,17 @@ public class TaskProvider {
 
     DirectedAcyclicGraph<Action, DefaultEdge> dag;
     switch (datasource) {
-      case Hive:
-        dag = getHiveNonPartitionedTableMigrationActionDag(taskId);
-        break;
+      case Hive: {
+        return getTaskWithFileRanges(
+            tableMetaModel.location,
+            tableMetaModel.size,
+            config.getAdditionalTableConfig(),
+            fileRanges -> new MigrationTask(
+                taskId,
+                tableMetaModel,
+                getHiveNonPartitionedTableMigrationActionDag(taskId, fileRanges),
+                mmaMetaManager));
+      }
       case ODPS: {
         String destTableStorage = config.getDestTableStorage();
         if (!StringUtils.isNullOrEmpty(destTableStorage)) {
@@ -304,12 +495,67 @@ public class TaskProvider {
     return new MigrationTask(taskId, tableMetaModel, dag, mmaMetaManager);
   }
 
-  private List<Task> generatePartitionedTableMigrationTask(
+  private static boolean isSmallTable(
       DataSource datasource,
       TableMetaModel tableMetaModel,
       TableMigrationConfig config) {
+    if (!DataSource.Hive.equals(datasource)) {
+      return false;
+    }
+    MmaConfig.HiveConfig hiveConfig = MmaServerConfig.getInstance().getHiveConfig();
+    return hiveConfig.isSmallTableBatchingEnabled()
+        && tableMetaModel.partitionColumns.isEmpty()
+        && StringUtils.isNullOrEmpty(config.getDestTableStorage())
+        && tableMetaModel.size != null
+        && tableMetaModel.size <= hiveConfig.getSmallTableSizeInBytes();
+  }
 
+  private List<Task> generateBatchMigrationTasks(
+      DataSource datasource,
+      Map<TableMetaModel, TableMigrationConfig> smallTables) {
     List<Task> ret = new LinkedList<>();
+    int batchSize = MmaServerConfig.getInstance().getHiveConfig().getSmallTableBatchSize();
+    List<TableMetaModel> tableMetaModels = new ArrayList<>(smallTables.keySet());
+    for (int i = 0; i < tableMetaModels.size(); i += batchSize) {
+      List<TableMetaModel> batch =
+          tableMetaModels.subList(i, Math.min(i + batchSize, tableMetaModels.size()));
+      if (batch.size() == 1) {
+        TableMetaModel tableMetaModel = batch.get(0);
+        Task task = generateNonPartitionedTableMigrationTask(
+            datasource, tableMetaModel, smallTables.get(tableMetaModel));
+        if (task != null) {
+          ret.add(task);
+        }
+        continue;
+      }
+
+      Map<String, TableMetaModel> labelToTableMetaModel = new LinkedHashMap<>();
+      for (TableMetaModel tableMetaModel : batch) {
+        labelToTableMetaModel.put(
+            tableMetaModel.databaseName + "." + tableMetaModel.tableName, tableMetaModel);
+      }
+      String taskId = getUniqueMigrationTaskName(
+          batch.get(0).databaseName, batch.get(0).tableName) + ".batch";
+      LOG.info("Batch task: {}, tables: {}", taskId, labelToTableMetaModel.keySet());
+      ret.add(new BatchMigrationTask(
+          taskId,
+          labelToTableMetaModel,
+          getHiveBatchMigrationActionDag(taskId, labelToTableMetaModel),
+          mmaMetaManager));
+    }
+    return ret;
+  }
+
+  /**
+   * Tasks of a partitioned table are generated on demand, since a table with a huge number of
+   * partitions could have thousands of them. Splits are computed up front, which only reference
+   * the partitions of the table, while the action DAGs are built when tasks are taken. A task
+   * waiting for files to be listed is taken as null.
+   */
+  private Iterator<Task> generatePartitionedTableMigrationTask(
+      DataSource datasource,
+      TableMetaModel tableMetaModel,
+      TableMigrationConfig config) {
 
     if (tableMetaModel.partitions.isEmpty()) {
       String taskId = getUniqueMigrationTaskName(tableMetaModel.databaseName,
@@ -319,50 +565,80 @@ public class TaskProvider {
       DirectedAcyclicGraph<Action, DefaultEdge> dag = new DirectedAcyclicGraph<>(DefaultEdge.class);
       dag.addVertex(createTableAction);
       Task task = new MigrationTask(taskId, tableMetaModel, dag, mmaMetaManager);
-      ret.add(task);
-      return ret;
+      return Collections.singletonList(task).iterator();
     }
 
     String taskNamePrefix = getUniqueMigrationTaskName(
         tableMetaModel.databaseName,
         tableMetaModel.tableName);
     List<TableMetaModel> tableSplits = getTableSplits(tableMetaModel, config.getAdditionalTableConfig());
+    LOG.info("Database: {}, table: {}, num tasks: {}",
+             tableMetaModel.databaseName,
+             tableMetaModel.tableName,
+             tableSplits.size());
 
-    for (int i = 0; i < tableSplits.size(); i++) {
-      TableMetaModel split = tableSplits.get(i);
-      String taskId = taskNamePrefix + "." + i;
+    Iterator<TableMetaModel> iterator = tableSplits.iterator();
+    return new Iterator<Task>() {
+      private int i = 0;
 
-      DirectedAcyclicGraph<Action, DefaultEdge> dag;
-      switch (datasource) {
-        case Hive:
-          dag = getHivePartitionedTableMigrationActionDag(taskId);
-          break;
-        case ODPS: {
-          String destTableStorage = config.getDestTableStorage();
-          if (!StringUtils.isNullOrEmpty(destTableStorage)) {
-            ExternalTableStorage storage = ExternalTableStorage.valueOf(destTableStorage);
-            String location = null;
-            if (ExternalTableStorage.OSS.equals(storage)) {
-              MmaConfig.OssConfig ossConfig = MmaServerConfig.getInstance().getOssConfig();
-              String ossFolder = tableMetaModel.odpsProjectName + ".db/" + tableMetaModel.odpsTableName + "/";
-              location = OdpsSqlUtils.getOssTablePath(ossConfig, ossFolder);
-            }
-            ExternalTableConfig externalTableConfig = new ExternalTableConfig(storage, location);
-            dag = getOdpsPartitionedTableMigrationActionDag(taskId, true, externalTableConfig);
-          } else {
-            dag = getOdpsPartitionedTableMigrationActionDag(taskId);
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public Task next() {
+        String taskId = taskNamePrefix + "." + i++;
+        return generatePartitionedTableMigrationTask(
+            datasource, tableMetaModel, iterator.next(), config, taskId);
+      }
+    };
+  }
+
+  private Task generatePartitionedTableMigrationTask(
+      DataSource datasource,
+      TableMetaModel tableMetaModel,
+      TableMetaModel split,
+      TableMigrationConfig config,
+      String taskId) {
+    DirectedAcyclicGraph<Action, DefaultEdge> dag;
+    switch (datasource) {
+      case Hive: {
+        // A partition group of one partition could be too large to be migrated by one job
+        PartitionMetaModel partition = split.partitions.size() == 1 ? split.partitions.get(0) : null;
+        return getTaskWithFileRanges(
+            partition == null ? null : partition.location,
+            partition == null ? null : partition.size,
+            config.getAdditionalTableConfig(),
+            fileRanges -> new MigrationTask(
+                taskId,
+                split,
+                getHivePartitionedTableMigrationActionDag(taskId, fileRanges),
+                mmaMetaManager));
+      }
+      case ODPS: {
+        String destTableStorage = config.getDestTableStorage();
+        if (!StringUtils.isNullOrEmpty(destTableStorage)) {
+          ExternalTableStorage storage = ExternalTableStorage.valueOf(destTableStorage);
+          String location = null;
+          if (ExternalTableStorage.OSS.equals(storage)) {
+            MmaConfig.OssConfig ossConfig = MmaServerConfig.getInstance().getOssConfig();
+            String ossFolder = tableMetaModel.odpsProjectName + ".db/" + tableMetaModel.odpsTableName + "/";
+            location = OdpsSqlUtils.getOssTablePath(ossConfig, ossFolder);
           }
-          break;
+          ExternalTableConfig externalTableConfig = new ExternalTableConfig(storage, location);
+          dag = getOdpsPartitionedTableMigrationActionDag(taskId, true, externalTableConfig);
+        } else {
+          dag = getOdpsPartitionedTableMigrationActionDag(taskId);
         }
-        case OSS:
-        default:
-          throw new UnsupportedOperationException();
+        break;
       }
-
-      ret.add(new MigrationTask(taskId, split, dag, mmaMetaManager));
+      case OSS:
+      default:
+        throw new UnsupportedOperationException();
     }
 
-    return ret;
+    return new MigrationTask(taskId, split, dag, mmaMetaManager);
   }
 
   private List<Task> generateTableExportTasks(String taskName,
@@ -425,7 +701,8 @@ public class TaskProvider {
   private Task generateFunctionExportTask(String taskName, TableMetaModel tableMetaModel) {
     String taskId = getUniqueMigrationTaskName(tableMetaModel.databaseName, tableMetaModel.tableName);
     DirectedAcyclicGraph<Action, DefaultEdge> dag = new DirectedAcyclicGraph<>(DefaultEdge.class);
-    Function function = OdpsUtils.getFunction(tableMetaModel.databaseName, tableMetaModel.tableName);
+    com.aliyun.odps.Function function =
+        OdpsUtils.getFunction(tableMetaModel.databaseName, tableMetaModel.tableName);
     if (function == null) {
       return null;
     }
@@ -729,11 +1006,90 @@ public class TaskProvider {
     return new DropTemporaryTableTask(taskId, dag, mmaMetaManager, db, tbl);
   }
 
-  private DirectedAcyclicGraph<Action, DefaultEdge> getHiveNonPartitionedTableMigrationActionDag(String taskId) {
+  /**
+   * Create a task with file ranges of given location. If the data is large enough to be split,
+   * files are listed in the background and the task is created once they are listed.
+   *
+   * @param taskFactory Creates the task with file ranges, or null if the data is not split
+   * @return The task, or null if it is waiting for files to be listed
+   */
+  private Task getTaskWithFileRanges(
+      String location,
+      Long size,
+      MmaConfig.AdditionalTableConfig config,
+      Function<List<FileRange>, Task> taskFactory) {
+    if (!DataSource.Hive.equals(MmaServerConfig.getInstance().getDataSource())) {
+      return taskFactory.apply(null);
+    }
+    MmaConfig.HiveConfig hiveConfig = MmaServerConfig.getInstance().getHiveConfig();
+    long splitSizeInBytes = PartitionGroupSplitter.getSplitSizeInBytes(config);
+    if (!hiveConfig.isFileRangeSplittingEnabled()
+        || location == null
+        || size == null
+        || size <= splitSizeInBytes) {
+      return taskFactory.apply(null);
+    }
+
+    int numRanges = (int) Math.min(
+        hiveConfig.getMaxFileRangeSplits(),
+        (size + splitSizeInBytes - 1) / splitSizeInBytes);
+    Future<List<FileRange>> fileRanges =
+        fileListingPool.submit(() -> getFileRanges(location, size, numRanges));
+    tasksAwaitingFileRanges.add(new TaskAwaitingFileRanges(fileRanges, taskFactory));
+    return null;
+  }
+
+  /**
+   * Get sizes of files under given location and split them into ranges, each of them is
+   * migrated by its own job. Called by threads of fileListingPool.
+   *
+   * @return File ranges, or null if the data cannot be split
+   */
+  private List<FileRange> getFileRanges(String location, Long size, int numRanges) {
+    try {
+      HiveMetaSource hiveMetaSource;
+      synchronized (fileListingPool) {
+        if (this.hiveMetaSource == null) {
+          this.hiveMetaSource = MetaSourceFactory.getHiveMetaSource();
+        }
+        hiveMetaSource = this.hiveMetaSource;
+      }
+      List<FileRange> fileRanges =
+          FileRangeSplitter.split(hiveMetaSource.listFiles(location), numRanges);
+      LOG.info("Location: {}, size: {}, file ranges: {}", location, size, fileRanges);
+      return fileRanges.size() > 1 ? fileRanges : null;
+    } catch (Exception e) {
+      LOG.warn("Location: {}, failed to split files, migrate by one job", location, e);
+      return null;
+    }
+  }
+
+  /**
+   * Data is transferred by one action for each file range, or one action for all if fileRanges
+   * is null. All of them write to the same table and are verified together.
+   */
+  private static List<HiveUdtfDataTransferAction> getHiveDataTransferActions(
+      String taskId,
+      List<FileRange> fileRanges) {
+    if (fileRanges == null) {
+      return Collections.singletonList(new HiveUdtfDataTransferAction(taskId + ".DataTransfer"));
+    }
+
+    List<HiveUdtfDataTransferAction> dataTransferActions = new ArrayList<>(fileRanges.size());
+    for (int i = 0; i < fileRanges.size(); i++) {
+      dataTransferActions.add(
+          new HiveUdtfDataTransferAction(taskId + ".DataTransfer." + i, fileRanges.get(i)));
+    }
+    return dataTransferActions;
+  }
+
+  private DirectedAcyclicGraph<Action, DefaultEdge> getHiveNonPartitionedTableMigrationActionDag(
+      String taskId,
+      List<FileRange> fileRanges) {
     OdpsDropTableAction dropTableAction = new OdpsDropTableAction(taskId + ".DropTable");
     OdpsCreateTableAction createTableAction = new OdpsCreateTableAction(taskId + ".CreateTable");
-    HiveUdtfDataTransferAction dataTransferAction =
-        new HiveUdtfDataTransferAction(taskId + ".DataTransfer");
+    List<HiveUdtfDataTransferAction> dataTransferActions =
+        getHiveDataTransferActions(taskId, fileRanges);
     OdpsDestVerificationAction destVerificationAction =
         new OdpsDestVerificationAction(taskId + ".DestVerification");
     HiveSourceVerificationAction sourceVerificationAction =
@@ -743,13 +1099,60 @@ public class TaskProvider {
     DirectedAcyclicGraph<Action, DefaultEdge> dag = new DirectedAcyclicGraph<>(DefaultEdge.class);
     dag.addVertex(dropTableAction);
     dag.addVertex(createTableAction);
-    dag.addVertex(dataTransferAction);
+    dataTransferActions.forEach(dag::addVertex);
     dag.addVertex(destVerificationAction);
     dag.addVertex(sourceVerificationAction);
     dag.addVertex(verificationAction);
 
     dag.addEdge(dropTableAction, createTableAction);
-    dag.addEdge(createTableAction, dataTransferAction);
+    for (HiveUdtfDataTransferAction dataTransferAction : dataTransferActions) {
+      dag.addEdge(createTableAction, dataTransferAction);
+      dag.addEdge(dataTransferAction, destVerificationAction);
+      dag.addEdge(dataTransferAction, sourceVerificationAction);
+    }
+    dag.addEdge(destVerificationAction, verificationAction);
+    dag.addEdge(sourceVerificationAction, verificationAction);
+
+    return dag;
+  }
+
+  /**
+   * Each table is dropped and created by its own actions, data of all the tables is transferred
+   * and verified together.
+   */
+  private DirectedAcyclicGraph<Action, DefaultEdge> getHiveBatchMigrationActionDag(
+      String taskId,
+      Map<String, TableMetaModel> tableMetaModels) {
+    HiveUdtfDataTransferAction dataTransferAction =
+        new HiveUdtfDataTransferAction(taskId + ".DataTransfer");
+    OdpsDestVerificationAction destVerificationAction =
+        new OdpsDestVerificationAction(taskId + ".DestVerification");
+    HiveSourceVerificationAction sourceVerificationAction =
+        new HiveSourceVerificationAction(taskId + ".SourceVerification");
+    VerificationAction verificationAction = new VerificationAction(taskId + ".Compare");
+
+    DirectedAcyclicGraph<Action, DefaultEdge> dag = new DirectedAcyclicGraph<>(DefaultEdge.class);
+    dag.addVertex(dataTransferAction);
+    dag.addVertex(destVerificationAction);
+    dag.addVertex(sourceVerificationAction);
+    dag.addVertex(verificationAction);
+
+    for (Map.Entry<String, TableMetaModel> entry : tableMetaModels.entrySet()) {
+      TableMetaModel tableMetaModel = entry.getValue();
+      String actionIdPrefix = taskId + "." + entry.getKey();
+      OdpsDropTableAction dropTableAction = new OdpsDropTableAction(
+          actionIdPrefix + ".DropTable",
+          tableMetaModel.odpsProjectName,
+          tableMetaModel.odpsTableName,
+          false);
+      OdpsCreateTableAction createTableAction =
+          new OdpsCreateTableAction(actionIdPrefix + ".CreateTable", tableMetaModel);
+      dag.addVertex(dropTableAction);
+      dag.addVertex(createTableAction);
+      dag.addEdge(dropTableAction, createTableAction);
+      dag.addEdge(createTableAction, dataTransferAction);
+    }
+
     dag.addEdge(dataTransferAction, destVerificationAction);
     dag.addEdge(dataTransferAction, sourceVerificationAction);
     dag.addEdge(destVerificationAction, verificationAction);
@@ -759,7 +1162,8 @@ public class TaskProvider {
   }
 
   private DirectedAcyclicGraph<Action, DefaultEdge> getHivePartitionedTableMigrationActionDag(
-      String taskId) {
+      String taskId,
+      List<FileRange> fileRanges) {
 
     OdpsCreateTableAction createTableAction =
         new OdpsCreateTableAction(taskId + ".CreateTable");
@@ -767,8 +1171,8 @@ public class TaskProvider {
         new OdpsDropPartitionAction(taskId + ".DropPartition");
     OdpsAddPartitionAction addPartitionAction =
         new OdpsAddPartitionAction(taskId + ".AddPartition");
-    HiveUdtfDataTransferAction dataTransferAction =
-        new HiveUdtfDataTransferAction(taskId + ".DataTransfer");
+    List<HiveUdtfDataTransferAction> dataTransferActions =
+        getHiveDataTransferActions(taskId, fileRanges);
     OdpsDestVerificationAction destVerificationAction =
         new OdpsDestVerificationAction(taskId + ".DestVerification");
     HiveSourceVerificationAction sourceVerificationAction =
@@ -779,16 +1183,18 @@ public class TaskProvider {
     dag.addVertex(createTableAction);
     dag.addVertex(dropPartitionAction);
     dag.addVertex(addPartitionAction);
-    dag.addVertex(dataTransferAction);
+    dataTransferActions.forEach(dag::addVertex);
     dag.addVertex(destVerificationAction);
     dag.addVertex(sourceVerificationAction);
     dag.addVertex(verificationAction);
 
     dag.addEdge(createTableAction, dropPartitionAction);
     dag.addEdge(dropPartitionAction, addPartitionAction);
-    dag.addEdge(addPartitionAction, dataTransferAction);
-    dag.addEdge(dataTransferAction, destVerificationAction);
-    dag.addEdge(dataTransferAction, sourceVerificationAction);
+    for (HiveUdtfDataTransferAction dataTransferAction : dataTransferActions) {
+      dag.addEdge(addPartitionAction, dataTransferAction);
+      dag.addEdge(dataTransferAction, destVerificationAction);
+      dag.addEdge(dataTransferAction, sourceVerificationAction);
+    }
     dag.addEdge(destVerificationAction, verificationAction);
     dag.addEdge(sourceVerificationAction, verificationAction);
 
@@ -916,8 +1322,8 @@ public class TaskProvider {
       return Collections.singletonList(tableMetaModel);
     }
 
-    // Adaptive table split
-    List<TableMetaModel> splits = getAdaptiveTableSplits(tableMetaModel, config);
+    // Size-balanced table split
+    List<TableMetaModel> splits = PartitionGroupSplitter.split(tableMetaModel, config);
     if (splits != null) {
       return splits;
     }
@@ -956,105 +1362,6 @@ public class TaskProvider {
     return ret;
   }
 
-  @VisibleForTesting
-  static List<TableMetaModel> getAdaptiveTableSplits(
-      TableMetaModel tableMetaModel,
-      MmaConfig.AdditionalTableConfig config) {
-    LOG.info("Database: {}, table: {}, enter getAdaptiveTableSplits",
-             tableMetaModel.databaseName,
-             tableMetaModel.tableName);
-
-
-    if (tableMetaModel.partitionColumns.isEmpty()) {
-      LOG.info("Database: {}, table: {}, adaptive table splitting not working with non-partitioned table",
-               tableMetaModel.databaseName,
-               tableMetaModel.tableName);
-      return null;
-    }
-
-    List<PartitionMetaModel> partitionsWithoutSize = tableMetaModel.partitions
-        .stream()
-        .filter(p -> p.size == null).collect(Collectors.toList());
-    if (!partitionsWithoutSize.isEmpty()) {
-      partitionsWithoutSize.forEach(p -> {
-        LOG.info("Database: {}, table: {}, partition: {}, size not available",
-                 tableMetaModel.databaseName,
-                 tableMetaModel.tableName,
-                 p.partitionValues);
-      });
-      return null;
-    }
-
-    List<TableMetaModel> ret = new LinkedList<>();
-    final long splitSizeInByte = config.getPartitionGroupSplitSizeInGb() * 1024 * 1024 * 1024L;
-
-    // Sort in descending order
-    tableMetaModel.partitions.sort((o1, o2) -> {
-      if (o1.size > o2.size) {
-        return -1;
-      } else if (o1.size.equals(o2.size)) {
-        return 0;
-      } else {
-        return 1;
-      }
-    });
-
-    int i = 0;
-    while (i < tableMetaModel.partitions.size()) {
-      TableMetaModel clone = tableMetaModel.clone();
-
-      // Handle extremely large partitions. Generate a task for each of them.
-      if (tableMetaModel.partitions.get(i).size > splitSizeInByte) {
-        LOG.info("Database: {}, table: {}, partition: {}, size exceeds split size: {}",
-                 tableMetaModel.databaseName,
-                 tableMetaModel.tableName,
-                 tableMetaModel.partitions.get(i).partitionValues,
-                 tableMetaModel.partitions.get(i).size);
-        clone.partitions = Collections.singletonList(tableMetaModel.partitions.get(i));
-        i++;
-        ret.add(clone);
-        continue;
-      }
-
-      clone.partitions = new LinkedList<>();
-      LOG.debug("Database: {}, table: {}, assemble {} th partition group",
-                tableMetaModel.databaseName,
-                tableMetaModel.tableName,
-                ret.size());
-      long sum = 0;
-
-      // Keep adding partitions as long as the total size is less than splitSizeInByte and the
-      // number of partitions is less than Constants.MAX_PARTITION_GROUP_SIZE
-      while (i < tableMetaModel.partitions.size()
-          && clone.partitions.size() < Constants.MAX_PARTITION_GROUP_SIZE) {
-        if (sum + tableMetaModel.partitions.get(i).size <= splitSizeInByte) {
-          clone.partitions.add(tableMetaModel.partitions.get(i));
-          LOG.debug(
-              "Database: {}, table: {}, add partition: {}, size: {} to partition group",
-              tableMetaModel.databaseName,
-              tableMetaModel.tableName,
-              tableMetaModel.partitions.get(i).partitionValues,
-              tableMetaModel.partitions.get(i).size);
-          sum += tableMetaModel.partitions.get(i).size;
-        } else {
-          break;
-        }
-        i++;
-      }
-
-      ret.add(clone);
-      LOG.debug(
-          "Database: {}, table: {}, {} th partition group, num partitions: {}, size: {}",
-          tableMetaModel.databaseName,
-          tableMetaModel.tableName,
-          ret.size(),
-          ((LinkedList<TableMetaModel>) ret).getLast().partitions.size(),
-          ((LinkedList<TableMetaModel>) ret).getLast().partitions.stream().map(p -> p.size).reduce((s1, s2) -> s1 + s2));
-    }
-
-    return ret;
-  }
-
   private String getUniqueMigrationTaskName(String db, String tbl) {
     // TODO: better task id generator
     StringBuilder sb = new StringBuilder("Migration.");
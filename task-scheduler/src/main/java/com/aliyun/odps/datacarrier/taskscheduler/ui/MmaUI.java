@@ -23,6 +23,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.aliyun.odps.datacarrier.taskscheduler.TaskScheduler;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
 import com.aliyun.odps.datacarrier.taskscheduler.ui.tasks.TasksTab;
 import com.aliyun.odps.datacarrier.taskscheduler.ui.utils.JettyUtils;
 
@@ -32,9 +33,9 @@ public class MmaUI extends WebUI {
   private static final String STATIC_RESOURCE_DIR =
       "com/aliyun/odps/datacarrier/taskscheduler/ui/static";
 
-  public MmaUI(String basePath, TaskScheduler taskScheduler) {
+  public MmaUI(String basePath, TaskScheduler taskScheduler, MmaMetaManager mmaMetaManager) {
     super(basePath);
-    TasksTab tasksTab = new TasksTab(this, "tasks", taskScheduler);
+    TasksTab tasksTab = new TasksTab(this, "tasks", taskScheduler, mmaMetaManager);
     attachTab(tasksTab);
     addStaticHandler(STATIC_RESOURCE_DIR, "/static");
     attachHandler(JettyUtils.createRedirectHandler("/", "/tasks/", basePath));
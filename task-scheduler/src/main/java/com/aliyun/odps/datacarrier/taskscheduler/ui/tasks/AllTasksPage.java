@@ -40,6 +40,7 @@ import org.apache.logging.log4j.Logger;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DirectedAcyclicGraph;
 
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
 import com.aliyun.odps.datacarrier.taskscheduler.TaskScheduler;
 import com.aliyun.odps.datacarrier.taskscheduler.action.Action;
 import com.aliyun.odps.datacarrier.taskscheduler.action.HiveSourceVerificationAction;
@@ -48,6 +49,8 @@ import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsCreateTableAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsDestVerificationAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.OdpsDropTableAction;
 import com.aliyun.odps.datacarrier.taskscheduler.action.VerificationAction;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
 import com.aliyun.odps.datacarrier.taskscheduler.task.Task;
 import com.aliyun.odps.datacarrier.taskscheduler.task.TaskProgress;
 import com.aliyun.odps.datacarrier.taskscheduler.ui.PagedDataSource;
@@ -173,11 +176,31 @@ public class AllTasksPage extends WebUIPage {
 
   private WebUITab parent;
   private TaskScheduler taskScheduler;
+  private MmaMetaManager mmaMetaManager;
 
-  public AllTasksPage(String prefix, WebUITab parent, TaskScheduler taskScheduler) {
+  public AllTasksPage(String prefix,
+                      WebUITab parent,
+                      TaskScheduler taskScheduler,
+                      MmaMetaManager mmaMetaManager) {
     super(prefix);
     this.parent = Objects.requireNonNull(parent);
     this.taskScheduler = Objects.requireNonNull(taskScheduler);
+    this.mmaMetaManager = Objects.requireNonNull(mmaMetaManager);
+  }
+
+  private DomContent jobCounts() {
+    try {
+      Map<MigrationStatus, Integer> counts = mmaMetaManager.getCounts();
+      return h4(String.format(
+          "Migration Jobs: %d pending, %d running, %d succeeded, %d failed",
+          counts.getOrDefault(MigrationStatus.PENDING, 0),
+          counts.getOrDefault(MigrationStatus.RUNNING, 0),
+          counts.getOrDefault(MigrationStatus.SUCCEEDED, 0),
+          counts.getOrDefault(MigrationStatus.FAILED, 0))).withId("jobs");
+    } catch (MmaException e) {
+      LOG.warn("Get counts of migration jobs failed", e);
+      return h4("Migration Jobs: N/A").withId("jobs");
+    }
   }
 
   public DomContent tasksTable(
@@ -215,6 +238,7 @@ public class AllTasksPage extends WebUIPage {
   public String render(HttpServletRequest request) {
 
     List<DomContent> content = new LinkedList<>();
+    content.add(jobCounts());
 
     List<Task> runningTasks = taskScheduler.getRunningTasks();
     content.add(
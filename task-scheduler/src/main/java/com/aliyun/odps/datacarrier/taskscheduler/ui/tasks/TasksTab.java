@@ -20,14 +20,18 @@
 package com.aliyun.odps.datacarrier.taskscheduler.ui.tasks;
 
 import com.aliyun.odps.datacarrier.taskscheduler.TaskScheduler;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
 import com.aliyun.odps.datacarrier.taskscheduler.ui.WebUI;
 import com.aliyun.odps.datacarrier.taskscheduler.ui.WebUITab;
 
 public class TasksTab extends WebUITab {
 
-  public TasksTab(WebUI parent, String prefix, TaskScheduler taskScheduler) {
+  public TasksTab(WebUI parent,
+                  String prefix,
+                  TaskScheduler taskScheduler,
+                  MmaMetaManager mmaMetaManager) {
     super(parent, prefix);
-    attachPage(new AllTasksPage("", this, taskScheduler));
+    attachPage(new AllTasksPage("", this, taskScheduler, mmaMetaManager));
     attachPage(new TaskPage("task", this, taskScheduler));
     attachPage(new ActionPage("task/action", this, taskScheduler));
   }
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedAcyclicGraph;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.action.Action;
+import com.aliyun.odps.datacarrier.taskscheduler.action.VerificationAction;
+import com.aliyun.odps.datacarrier.taskscheduler.action.info.VerificationActionInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.ColumnMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerKvImpl;
+import com.aliyun.odps.datacarrier.taskscheduler.task.ActionExecutionContext;
+import com.aliyun.odps.datacarrier.taskscheduler.task.BatchMigrationTask;
+import com.aliyun.odps.datacarrier.taskscheduler.task.TaskProgress;
+
+public class BatchMigrationTaskTest {
+  private static final Path STORE_PATH = Paths.get(
+      System.getProperty("user.dir"), "BatchMigrationTaskTest.mv.db").toAbsolutePath();
+
+  private static final String PASSED = "t_passed";
+  private static final String COUNT_MISMATCH = "t_count_mismatch";
+  private static final String MISSING = "t_missing";
+  private static final String FINGERPRINT_MISMATCH = "t_fingerprint_mismatch";
+
+  private StatusRecordingMetaManager mmaMetaManager;
+  private Map<String, TableMetaModel> tableMetaModels;
+  private Map<List<String>, Long> sourceResult;
+  private Map<List<String>, Long> destResult;
+  private Map<List<String>, List<String>> sourceFingerprints;
+  private Map<List<String>, List<String>> destFingerprints;
+
+  @BeforeClass
+  public static void beforeClass() {
+    // Fields of the verification config are only set by the config file
+    MmaServerConfig mmaServerConfig = GsonUtils.getFullConfigGson().fromJson(
+        "{\"dataSource\": \"Hive\", "
+            + "\"verificationConfig\": {\"MMA_VERIFICATION_MODE\": \"FINGERPRINT\"}}",
+        MmaServerConfig.class);
+    MmaServerConfig.setInstance(mmaServerConfig);
+  }
+
+  @Before
+  public void setup() throws MmaException {
+    delete();
+    mmaMetaManager = new StatusRecordingMetaManager(STORE_PATH.toString());
+
+    tableMetaModels = new LinkedHashMap<>();
+    sourceResult = new HashMap<>();
+    destResult = new HashMap<>();
+    sourceFingerprints = new HashMap<>();
+    destFingerprints = new HashMap<>();
+    for (String tbl : Arrays.asList(PASSED, COUNT_MISMATCH, MISSING, FINGERPRINT_MISMATCH)) {
+      tableMetaModels.put(tbl, getTableMetaModel(tbl));
+      List<String> key = Collections.singletonList(tbl);
+      sourceResult.put(key, 10L);
+      destResult.put(key, 10L);
+      // Padded with nulls like the rows of a batch
+      sourceFingerprints.put(key, Arrays.asList("10", "100", "1", "19", null, null));
+      destFingerprints.put(key, Arrays.asList("10", "1.0E2", "1", "19", null, null));
+    }
+  }
+
+  @After
+  public void tearDown() throws MmaException {
+    mmaMetaManager.shutdown();
+    delete();
+  }
+
+  private static void delete() {
+    File file = STORE_PATH.toFile();
+    if (file.exists() && !file.delete()) {
+      throw new IllegalStateException("Failed to delete " + file);
+    }
+  }
+
+  @Test
+  public void testAllPassed() throws Exception {
+    BatchMigrationTask task = verify();
+
+    Assert.assertEquals(TaskProgress.SUCCEEDED, task.getProgress());
+    for (String tbl : tableMetaModels.keySet()) {
+      Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.statuses.get(tbl));
+    }
+  }
+
+  @Test
+  public void testPartiallyPassed() throws Exception {
+    destResult.put(Collections.singletonList(COUNT_MISMATCH), 9L);
+    destResult.remove(Collections.singletonList(MISSING));
+    destFingerprints.remove(Collections.singletonList(MISSING));
+    destFingerprints.put(Collections.singletonList(FINGERPRINT_MISMATCH),
+                         Arrays.asList("10", "99", "1", "19", null, null));
+    BatchMigrationTask task = verify();
+
+    Assert.assertEquals(TaskProgress.FAILED, task.getProgress());
+    VerificationActionInfo actionInfo = getActionInfo(task);
+    Assert.assertFalse(actionInfo.passed());
+    Assert.assertEquals(Collections.singletonList(Collections.singletonList(PASSED)),
+                        actionInfo.getSucceededPartitions());
+    Assert.assertEquals(3, actionInfo.getFailedPartitions().size());
+
+    // Tables that passed the verification succeed although the task failed
+    Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.statuses.get(PASSED));
+    Assert.assertEquals(MigrationStatus.FAILED, mmaMetaManager.statuses.get(COUNT_MISMATCH));
+    Assert.assertEquals(MigrationStatus.FAILED, mmaMetaManager.statuses.get(MISSING));
+    Assert.assertEquals(
+        MigrationStatus.FAILED, mmaMetaManager.statuses.get(FINGERPRINT_MISMATCH));
+  }
+
+  @Test
+  public void testResultsNotFound() throws Exception {
+    destResult = null;
+    BatchMigrationTask task = verify();
+
+    Assert.assertEquals(TaskProgress.FAILED, task.getProgress());
+    Assert.assertEquals(4, getActionInfo(task).getFailedPartitions().size());
+    for (String tbl : tableMetaModels.keySet()) {
+      Assert.assertEquals(MigrationStatus.FAILED, mmaMetaManager.statuses.get(tbl));
+    }
+  }
+
+  /**
+   * Run a batch task which has only the verification action, with the results set up by tests
+   */
+  private BatchMigrationTask verify() throws MmaException {
+    VerificationAction verificationAction = new VerificationAction("batch.verification");
+    DirectedAcyclicGraph<Action, DefaultEdge> dag = new DirectedAcyclicGraph<>(DefaultEdge.class);
+    dag.addVertex(verificationAction);
+    BatchMigrationTask task = new BatchMigrationTask("batch", tableMetaModels, dag, mmaMetaManager);
+
+    ActionExecutionContext context = new ActionExecutionContext();
+    context.setBatchTableMetaModels(tableMetaModels);
+    context.setSourceVerificationResult(sourceResult);
+    context.setDestVerificationResult(destResult);
+    context.setSourceFingerprints(sourceFingerprints);
+    context.setDestFingerprints(destFingerprints);
+    verificationAction.setActionExecutionContext(context);
+
+    verificationAction.execute();
+    verificationAction.afterExecution();
+    return task;
+  }
+
+  private static VerificationActionInfo getActionInfo(BatchMigrationTask task) {
+    Action action = task.getDag().vertexSet().iterator().next();
+    return (VerificationActionInfo) action.getActionInfo();
+  }
+
+  private static TableMetaModel getTableMetaModel(String tbl) {
+    TableMetaModel tableMetaModel = new TableMetaModel();
+    tableMetaModel.databaseName = MockHiveMetaSource.DB_NAME;
+    tableMetaModel.odpsProjectName = MockHiveMetaSource.DB_NAME;
+    tableMetaModel.tableName = tbl;
+    tableMetaModel.odpsTableName = tbl;
+
+    ColumnMetaModel c = new ColumnMetaModel();
+    c.columnName = "foo";
+    c.odpsColumnName = "foo";
+    c.type = "bigint";
+    c.odpsType = "bigint";
+    tableMetaModel.columns.add(c);
+    return tableMetaModel;
+  }
+
+  /**
+   * Records the last status of each table
+   */
+  private static class StatusRecordingMetaManager extends MmaMetaManagerKvImpl {
+    private final Map<String, MigrationStatus> statuses = new HashMap<>();
+
+    StatusRecordingMetaManager(String storePath) throws MmaException {
+      super(new MockHiveMetaSource(), storePath, false);
+    }
+
+    @Override
+    public void updateStatus(String db, String tbl, MigrationStatus status) {
+      statuses.put(tbl, status);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.meta.CachingMetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.task.PartitionGroupSplitter;
+
+public class CachingMetaSourceTest {
+
+  private static class CountingMetaSource extends MockHiveMetaSource {
+    private int numTableMetaRequests = 0;
+    private int numPartitionMetaRequests = 0;
+
+    @Override
+    public TableMetaModel getTableMetaWithoutPartitionMeta(String databaseName, String tableName)
+        throws Exception {
+      numTableMetaRequests += 1;
+      return super.getTableMetaWithoutPartitionMeta(databaseName, tableName);
+    }
+
+    @Override
+    public List<PartitionMetaModel> getPartitionMetas(String databaseName,
+                                                      String tableName,
+                                                      List<List<String>> partitionValuesList)
+        throws Exception {
+      numPartitionMetaRequests += 1;
+      List<PartitionMetaModel> partitionMetaModels =
+          super.getPartitionMetas(databaseName, tableName, partitionValuesList);
+      for (PartitionMetaModel partitionMetaModel : partitionMetaModels) {
+        partitionMetaModel.size = 1024L;
+        partitionMetaModel.numFiles = 16L;
+      }
+      return partitionMetaModels;
+    }
+  }
+
+  @Test
+  public void testTableMetaCached() throws Exception {
+    CountingMetaSource countingMetaSource = new CountingMetaSource();
+    CachingMetaSource metaSource = new CachingMetaSource(countingMetaSource);
+
+    MetaSource.TableMetaModel tableMetaModel = metaSource.getTableMetaWithoutPartitionMeta(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    // Modifications made by callers are invisible to others
+    tableMetaModel.columns.get(0).odpsColumnName = "modified";
+    tableMetaModel = metaSource.getTableMetaWithoutPartitionMeta(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    Assert.assertNotEquals("modified", tableMetaModel.columns.get(0).odpsColumnName);
+    Assert.assertEquals(1, countingMetaSource.numTableMetaRequests);
+    Assert.assertEquals(1, metaSource.getCacheStats().get("table").hitCount());
+
+    // Metadata loaded just now is kept
+    metaSource.invalidate(MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, 60);
+    metaSource.getTableMetaWithoutPartitionMeta(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    Assert.assertEquals(1, countingMetaSource.numTableMetaRequests);
+
+    metaSource.invalidate(MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    metaSource.getTableMetaWithoutPartitionMeta(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    Assert.assertEquals(2, countingMetaSource.numTableMetaRequests);
+  }
+
+  @Test
+  public void testPartitionMetaCached() throws Exception {
+    CountingMetaSource countingMetaSource = new CountingMetaSource();
+    CachingMetaSource metaSource = new CachingMetaSource(countingMetaSource);
+    List<List<String>> partitionValuesList =
+        Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
+
+    for (int i = 0; i < 2; i++) {
+      List<MetaSource.PartitionMetaModel> partitionMetaModels = metaSource.getPartitionMetas(
+          MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, partitionValuesList);
+      Assert.assertEquals(1, partitionMetaModels.size());
+    }
+    Assert.assertEquals(1, countingMetaSource.numPartitionMetaRequests);
+    Assert.assertTrue(metaSource.hasPartition(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES));
+
+    // Partitions that don't exist are skipped and requested again next time
+    List<List<String>> nonExistent = Collections.singletonList(Collections.singletonList("foo"));
+    for (int i = 0; i < 2; i++) {
+      Assert.assertTrue(metaSource.getPartitionMetas(
+          MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, nonExistent).isEmpty());
+    }
+    Assert.assertEquals(3, countingMetaSource.numPartitionMetaRequests);
+  }
+
+  @Test
+  public void testInvalidateTable() throws Exception {
+    CountingMetaSource countingMetaSource = new CountingMetaSource();
+    CachingMetaSource metaSource = new CachingMetaSource(countingMetaSource);
+    List<List<String>> partitionValuesList =
+        Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
+
+    metaSource.getPartitionMetas(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, partitionValuesList);
+    metaSource.getTableMetaWithoutPartitionMeta(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_NON_PARTITIONED);
+
+    // Only metadata of the invalidated table is dropped, names are case-insensitive
+    metaSource.invalidate(
+        MockHiveMetaSource.DB_NAME.toUpperCase(), MockHiveMetaSource.TBL_PARTITIONED.toUpperCase());
+    metaSource.getPartitionMetas(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, partitionValuesList);
+    metaSource.getTableMetaWithoutPartitionMeta(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_NON_PARTITIONED);
+    Assert.assertEquals(2, countingMetaSource.numPartitionMetaRequests);
+    Assert.assertEquals(1, countingMetaSource.numTableMetaRequests);
+
+    // Reloaded partitions are indexed again
+    metaSource.invalidate(MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    metaSource.getPartitionMetas(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, partitionValuesList);
+    Assert.assertEquals(3, countingMetaSource.numPartitionMetaRequests);
+  }
+
+  @Test
+  public void testCachedPartitionWeight() throws Exception {
+    CountingMetaSource countingMetaSource = new CountingMetaSource();
+    CachingMetaSource metaSource = new CachingMetaSource(countingMetaSource);
+    List<List<String>> partitionValuesList =
+        Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
+
+    MetaSource.TableMetaModel uncached = new MetaSource.TableMetaModel();
+    uncached.partitions = metaSource.getPartitionMetas(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, partitionValuesList);
+    MetaSource.TableMetaModel cached = new MetaSource.TableMetaModel();
+    cached.partitions = metaSource.getPartitionMetas(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, partitionValuesList);
+    Assert.assertEquals(1, countingMetaSource.numPartitionMetaRequests);
+
+    // Number of files is part of the weight, and must survive caching
+    Assert.assertEquals(uncached.partitions.get(0).numFiles, cached.partitions.get(0).numFiles);
+    Assert.assertEquals(
+        PartitionGroupSplitter.getWeight(uncached), PartitionGroupSplitter.getWeight(cached));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.action.HiveUdtfDataTransferAction.FileRange;
+import com.aliyun.odps.datacarrier.taskscheduler.task.FileRangeSplitter;
+
+public class FileRangeSplitterTest {
+
+  private static final long GB = 1024L * 1024 * 1024;
+
+  @Test
+  public void testSplit() {
+    SortedMap<String, Long> fileSizes = new TreeMap<>();
+    for (int i = 0; i < 8; i++) {
+      fileSizes.put("hdfs://nn/tbl/00000" + i + "_0", GB);
+    }
+
+    List<FileRange> fileRanges = FileRangeSplitter.split(fileSizes, 4);
+
+    Assert.assertEquals(4, fileRanges.size());
+    // Ranges are contiguous, and unbounded at both ends
+    Assert.assertNull(fileRanges.get(0).getLowerBound());
+    Assert.assertNull(fileRanges.get(3).getUpperBound());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(fileRanges.get(i).getUpperBound(),
+                          fileRanges.get(i + 1).getLowerBound());
+    }
+    for (FileRange fileRange : fileRanges) {
+      Assert.assertEquals(2 * GB, fileRange.getSize().longValue());
+    }
+  }
+
+  @Test
+  public void testSplitFewFiles() {
+    SortedMap<String, Long> fileSizes = new TreeMap<>();
+    fileSizes.put("hdfs://nn/tbl/000000_0", 100 * GB);
+    fileSizes.put("hdfs://nn/tbl/000001_0", GB);
+
+    List<FileRange> fileRanges = FileRangeSplitter.split(fileSizes, 4);
+
+    Assert.assertEquals(2, fileRanges.size());
+    Assert.assertEquals("hdfs://nn/tbl/000001_0", fileRanges.get(0).getUpperBound());
+    Assert.assertEquals(100 * GB, fileRanges.get(0).getSize().longValue());
+
+    fileSizes.remove("hdfs://nn/tbl/000001_0");
+    fileRanges = FileRangeSplitter.split(fileSizes, 4);
+    Assert.assertEquals(1, fileRanges.size());
+    Assert.assertNull(fileRanges.get(0).getLowerBound());
+    Assert.assertNull(fileRanges.get(0).getUpperBound());
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
+
+public class FingerprintUtilsTest {
+
+  private static MetaSource.TableMetaModel getTableMetaModel() {
+    MetaSource.TableMetaModel tableMetaModel = new MetaSource.TableMetaModel();
+    tableMetaModel.databaseName = "test";
+    tableMetaModel.tableName = "test_fingerprint";
+    tableMetaModel.odpsProjectName = "test";
+    tableMetaModel.odpsTableName = "test_fingerprint";
+    tableMetaModel.columns.add(getColumn("a", "bigint"));
+    tableMetaModel.columns.add(getColumn("b", "decimal(10,2)"));
+    tableMetaModel.columns.add(getColumn("c", "double"));
+    tableMetaModel.columns.add(getColumn("d", "varchar(20)"));
+    tableMetaModel.columns.add(getColumn("e", "timestamp"));
+    return tableMetaModel;
+  }
+
+  private static MetaSource.ColumnMetaModel getColumn(String name, String type) {
+    MetaSource.ColumnMetaModel c = new MetaSource.ColumnMetaModel();
+    c.columnName = name;
+    c.odpsColumnName = "odps_" + name;
+    c.type = type;
+    c.odpsType = type;
+    return c;
+  }
+
+  @Test
+  public void testGetFingerprint() {
+    FingerprintUtils.Fingerprint fingerprint =
+        FingerprintUtils.getFingerprint(getTableMetaModel(), 0, false);
+    List<String> expected = Arrays.asList(
+        "COUNT(`a`)", "SUM(`a`)", "MIN(`a`)", "MAX(`a`)",
+        "COUNT(`b`)", "SUM(`b`)", "MIN(`b`)", "MAX(`b`)",
+        "COUNT(`c`)", "SUM(`c`)",
+        "COUNT(`d`)", "SUM(LENGTH(`d`))",
+        "COUNT(`e`)");
+    Assert.assertEquals(expected, fingerprint.getAggregations());
+
+    fingerprint = FingerprintUtils.getFingerprint(getTableMetaModel(), 0, true);
+    Assert.assertEquals("COUNT(`odps_a`)", fingerprint.getAggregations().get(0));
+  }
+
+  @Test
+  public void testGetFingerprintSampled() {
+    FingerprintUtils.Fingerprint fingerprint =
+        FingerprintUtils.getFingerprint(getTableMetaModel(), 2, false);
+    List<String> expected = Arrays.asList(
+        "COUNT(`a`)", "SUM(`a`)", "MIN(`a`)", "MAX(`a`)",
+        "COUNT(`c`)", "SUM(`c`)");
+    Assert.assertEquals(expected, fingerprint.getAggregations());
+  }
+
+  @Test
+  public void testMatches() {
+    MetaSource.TableMetaModel tableMetaModel = getTableMetaModel();
+    tableMetaModel.columns = tableMetaModel.columns.subList(1, 3);
+    FingerprintUtils.Fingerprint fingerprint =
+        FingerprintUtils.getFingerprint(tableMetaModel, 0, false);
+
+    List<String> source = Arrays.asList("3", "10.50", "1.00", "5.25", "3", "0.30000000000000004");
+    Assert.assertTrue(fingerprint.matches(
+        source, Arrays.asList("3", "10.5", "1", "5.25", "3", "0.3")));
+    // Truncated decimals
+    Assert.assertFalse(fingerprint.matches(
+        source, Arrays.asList("3", "10", "1", "5", "3", "0.3")));
+    // Nulls
+    Assert.assertFalse(fingerprint.matches(
+        source, Arrays.asList("2", "10.5", "1", "5.25", "3", "0.3")));
+    Assert.assertTrue(fingerprint.matches(
+        Arrays.asList("0", null, null, null, "0", null),
+        Arrays.asList("0", null, null, null, "0", null)));
+    Assert.assertFalse(fingerprint.matches(source, null));
+  }
+
+  @Test
+  public void testMatchesFormats() {
+    MetaSource.TableMetaModel tableMetaModel = getTableMetaModel();
+    tableMetaModel.columns = tableMetaModel.columns.subList(1, 3);
+    FingerprintUtils.Fingerprint fingerprint =
+        FingerprintUtils.getFingerprint(tableMetaModel, 0, false);
+
+    // Values cast to strings by Hive and MaxCompute
+    Assert.assertTrue(fingerprint.matches(
+        Arrays.asList("3", "1.0E10", "1E+2", "5.25", "3", "1.0E10"),
+        Arrays.asList("3", "10000000000", "100.00", "5.25", "3", "10000000000")));
+    Assert.assertTrue(fingerprint.matches(
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "NaN"),
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "nan")));
+    Assert.assertTrue(fingerprint.matches(
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "-Infinity"),
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "-inf")));
+    Assert.assertFalse(fingerprint.matches(
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "Infinity"),
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "1.0E308")));
+    Assert.assertFalse(fingerprint.matches(
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "NaN"),
+        Arrays.asList("3", "10.5", "1", "5.25", "3", "0")));
+  }
+}
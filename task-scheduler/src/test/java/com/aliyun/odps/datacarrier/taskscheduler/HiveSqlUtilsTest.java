@@ -19,7 +19,10 @@
 
 package com.aliyun.odps.datacarrier.taskscheduler;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -64,6 +67,28 @@ public class HiveSqlUtilsTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testGetUdtfSqlWithFileRange() throws Exception {
+    MetaSource.TableMetaModel partitioned =
+        metaSource.getTableMeta(DEFAULT_DB, "test_partitioned");
+    String expected = "SELECT odps_data_dump_multi(\n"
+                      + "'test',\n"
+                      + "'test_partitioned',\n"
+                      + "'foo',\n"
+                      + "'bar',\n"
+                      + "`foo`,\n"
+                      + "`bar`)\n"
+                      + "FROM test.`test_partitioned`\n"
+                      + "WHERE\n"
+                      + "(bar=cast('hello_world' AS string)) AND\n"
+                      + "INPUT__FILE__NAME >= 'hdfs://nn/bar=hello_world/000001_0' AND\n"
+                      + "INPUT__FILE__NAME < 'hdfs://nn/bar=hello_world/000002_0'\n";
+    String actual = HiveSqlUtils.getUdtfSql(partitioned,
+                                            "hdfs://nn/bar=hello_world/000001_0",
+                                            "hdfs://nn/bar=hello_world/000002_0");
+    Assert.assertEquals(expected, actual);
+  }
+
   @Test
   public void testGetUdtfSqlNoPartition() throws Exception {
     MetaSource.TableMetaModel partitioned =
@@ -105,4 +130,79 @@ public class HiveSqlUtilsTest {
     actual = OdpsSqlUtils.getVerifySql(partitioned);
     Assert.assertEquals(expected, actual);
   }
+
+  @Test
+  public void testGetVerifySqlWithFingerprint() throws Exception {
+    MetaSource.TableMetaModel partitioned =
+        metaSource.getTableMeta(DEFAULT_DB, "test_partitioned");
+    FingerprintUtils.Fingerprint fingerprint =
+        FingerprintUtils.getFingerprint(partitioned, 0, false);
+    String expected = "SELECT `bar`, COUNT(1), COUNT(`foo`), SUM(LENGTH(`foo`)) FROM\n"
+                      + "test.`test_partitioned`\n"
+                      + "WHERE\n"
+                      + "bar=cast('hello_world' AS string)\n\n"
+                      + "GROUP BY `bar`\n"
+                      + "ORDER BY `bar`\n";
+    String actual = HiveSqlUtils.getVerifySql(partitioned, fingerprint);
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testGetBatchUdtfSql() throws Exception {
+    MetaSource.TableMetaModel t1 = metaSource.getTableMeta(DEFAULT_DB, "test_non_partitioned");
+    MetaSource.TableMetaModel t2 = t1.clone();
+    t2.tableName = "t2";
+    t2.odpsTableName = "t2";
+
+    String expected = "SELECT * FROM (\n"
+                      + "SELECT odps_data_dump_multi(\n"
+                      + "'test',\n"
+                      + "'test_non_partitioned',\n"
+                      + "'foo',\n"
+                      + "'',\n"
+                      + "`foo`)\n"
+                      + "FROM test.`test_non_partitioned`\n"
+                      + "UNION ALL\n"
+                      + "SELECT odps_data_dump_multi(\n"
+                      + "'test',\n"
+                      + "'t2',\n"
+                      + "'foo',\n"
+                      + "'',\n"
+                      + "`foo`)\n"
+                      + "FROM test.`t2`\n"
+                      + ") t\n";
+    String actual = HiveSqlUtils.getBatchUdtfSql(Arrays.asList(t1, t2));
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testGetBatchVerifySqlWithFingerprint() throws Exception {
+    MetaSource.TableMetaModel t1 = metaSource.getTableMeta(DEFAULT_DB, "test_non_partitioned");
+    // A table without columns to fingerprint, whose row is padded with null
+    MetaSource.TableMetaModel t2 = t1.clone();
+    t2.tableName = "t2";
+    t2.columns = new LinkedList<>();
+    Map<String, MetaSource.TableMetaModel> tableMetaModels = new LinkedHashMap<>();
+    tableMetaModels.put("test.test_non_partitioned", t1);
+    tableMetaModels.put("test.t2", t2);
+    Map<String, FingerprintUtils.Fingerprint> fingerprints = new LinkedHashMap<>();
+    fingerprints.put("test.test_non_partitioned", FingerprintUtils.getFingerprint(t1, 0, false));
+    fingerprints.put("test.t2", FingerprintUtils.getFingerprint(t2, 0, false));
+
+    String expected = "SELECT * FROM (\n"
+                      + "SELECT 'test.test_non_partitioned' AS mma_label, "
+                      + "COUNT(1) AS mma_record_count, "
+                      + "CAST(COUNT(`foo`) AS STRING) AS mma_fingerprint_0, "
+                      + "CAST(SUM(LENGTH(`foo`)) AS STRING) AS mma_fingerprint_1 "
+                      + "FROM test.`test_non_partitioned`\n"
+                      + "UNION ALL\n"
+                      + "SELECT 'test.t2' AS mma_label, "
+                      + "COUNT(1) AS mma_record_count, "
+                      + "CAST(NULL AS STRING) AS mma_fingerprint_0, "
+                      + "CAST(NULL AS STRING) AS mma_fingerprint_1 "
+                      + "FROM test.`t2`\n"
+                      + ") t\n";
+    String actual = HiveSqlUtils.getBatchVerifySql(tableMetaModels, fingerprints);
+    Assert.assertEquals(expected, actual);
+  }
 }
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.MetaDBConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.JournaledMmaMetaManager;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerKvImpl;
+
+public class JournaledMmaMetaManagerTest {
+  private static final Path PARENT_DIR = Paths.get(System.getProperty("user.dir"));
+  private static final Path STORE_PATH =
+      Paths.get(PARENT_DIR.toString(), "JournaledMmaMetaManagerTest.mv.db").toAbsolutePath();
+  private static final Path JOURNAL_PATH =
+      Paths.get(PARENT_DIR.toString(), "JournaledMmaMetaManagerTest.journal").toAbsolutePath();
+
+  private MmaMetaManager mmaMetaManager;
+
+  @BeforeClass
+  public static void beforeClass() {
+    MetaDBConfig metaDBConfig =
+        new MetaDBConfig(MetaDBConfig.DB_TYPE_KV, STORE_PATH.toString());
+    MmaServerConfig mmaServerConfig = new MmaServerConfig(
+        DataSource.Hive, null, null, null, metaDBConfig, null, null, null);
+    MmaServerConfig.setInstance(mmaServerConfig);
+  }
+
+  @Before
+  public void setup() throws MmaException {
+    delete(STORE_PATH);
+    delete(JOURNAL_PATH);
+    mmaMetaManager = new MmaMetaManagerKvImpl(
+        new MockHiveMetaSource(), STORE_PATH.toString(), false);
+    mmaMetaManager.addMigrationJob(MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_PARTITIONED);
+    mmaMetaManager.addMigrationJob(
+        MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
+  }
+
+  @After
+  public void tearDown() throws MmaException {
+    mmaMetaManager.shutdown();
+    delete(STORE_PATH);
+    delete(JOURNAL_PATH);
+  }
+
+  private static void delete(Path path) {
+    File file = path.toFile();
+    if (file.exists() && !file.delete()) {
+      throw new IllegalStateException("Failed to delete " + file);
+    }
+  }
+
+  @Test
+  public void testUpdateStatus() throws Exception {
+    mmaMetaManager = new JournaledMmaMetaManager(mmaMetaManager, JOURNAL_PATH);
+
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_NON_PARTITIONED,
+        MigrationStatus.RUNNING);
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_NON_PARTITIONED,
+        MigrationStatus.SUCCEEDED);
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES),
+        MigrationStatus.SUCCEEDED);
+
+    // Reads see journaled updates immediately
+    Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_NON_PARTITIONED));
+    Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES));
+    Assert.assertTrue(mmaMetaManager.getPendingTables().isEmpty());
+
+    // Status of a partitioned table is updated once its partitions are applied
+    awaitStatus(mmaMetaManager, MockHiveMetaSource.TBL_PARTITIONED, MigrationStatus.SUCCEEDED);
+  }
+
+  @Test
+  public void testRetry() throws Exception {
+    mmaMetaManager.shutdown();
+    mmaMetaManager = new FlakyMmaMetaManager(STORE_PATH.toString(), 2);
+    MmaMetaManager underlying = mmaMetaManager;
+    mmaMetaManager = new JournaledMmaMetaManager(mmaMetaManager, JOURNAL_PATH);
+
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_NON_PARTITIONED,
+        MigrationStatus.SUCCEEDED);
+    Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_NON_PARTITIONED));
+
+    // Failed updates are kept in the journal and retried until applied
+    awaitStatus(underlying, MockHiveMetaSource.TBL_NON_PARTITIONED, MigrationStatus.SUCCEEDED);
+    long deadline = System.currentTimeMillis() + 30000;
+    while (Files.size(JOURNAL_PATH) != 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(0, Files.size(JOURNAL_PATH));
+  }
+
+  @Test
+  public void testReadsBeforeApplied() throws Exception {
+    mmaMetaManager.shutdown();
+    // The writer keeps failing, so transitions stay in the journal
+    mmaMetaManager = new FlakyMmaMetaManager(STORE_PATH.toString(), Integer.MAX_VALUE);
+    mmaMetaManager = new JournaledMmaMetaManager(mmaMetaManager, JOURNAL_PATH);
+    int numPending = mmaMetaManager.getCounts().get(MigrationStatus.PENDING);
+
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_NON_PARTITIONED,
+        MigrationStatus.RUNNING);
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES),
+        MigrationStatus.FAILED);
+
+    // Tables and partitions that are no longer pending are not claimed again
+    Assert.assertTrue(mmaMetaManager.getPendingTables().isEmpty());
+
+    Map<MigrationStatus, Integer> counts = mmaMetaManager.getCounts();
+    Assert.assertEquals(numPending - 1, (int) counts.get(MigrationStatus.PENDING));
+    Assert.assertEquals(1, (int) counts.get(MigrationStatus.RUNNING));
+    MmaMetaManager.MigrationProgress progress = mmaMetaManager.getProgress(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    Assert.assertEquals(0, progress.getNumPendingPartitions());
+    Assert.assertEquals(1, progress.getNumFailedPartitions());
+  }
+
+  private static void awaitStatus(MmaMetaManager mmaMetaManager, String tbl, MigrationStatus status)
+      throws Exception {
+    long deadline = System.currentTimeMillis() + 30000;
+    while (!status.equals(mmaMetaManager.getStatus(MockHiveMetaSource.DB_NAME, tbl))
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(status, mmaMetaManager.getStatus(MockHiveMetaSource.DB_NAME, tbl));
+  }
+
+  /**
+   * Fails the first few table status updates
+   */
+  private static class FlakyMmaMetaManager extends MmaMetaManagerKvImpl {
+    private final AtomicInteger numFailures;
+
+    FlakyMmaMetaManager(String storePath, int numFailures) throws MmaException {
+      super(new MockHiveMetaSource(), storePath, false);
+      this.numFailures = new AtomicInteger(numFailures);
+    }
+
+    @Override
+    public void updateStatus(String db, String tbl, MigrationStatus status)
+        throws MmaException {
+      if (numFailures.getAndDecrement() > 0) {
+        throw new MmaException("Meta DB not available");
+      }
+      super.updateStatus(db, tbl, status);
+    }
+  }
+
+  @Test
+  public void testRecover() throws Exception {
+    // Journal left by a crash, the last line is partially written
+    String journal =
+        "{\"db\":\"test\",\"tbl\":\"test_non_partitioned\",\"status\":\"RUNNING\"}\n"
+        + "{\"db\":\"test\",\"tbl\":\"test_non_partitioned\",\"status\":\"SUCCEEDED\"}\n"
+        + "{\"db\":\"test\",\"tbl\":\"test_partitioned\",\"status\":\"FAIL";
+    Files.write(JOURNAL_PATH, journal.getBytes(StandardCharsets.UTF_8));
+
+    mmaMetaManager = new JournaledMmaMetaManager(mmaMetaManager, JOURNAL_PATH);
+
+    Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_NON_PARTITIONED));
+    Assert.assertEquals(MigrationStatus.PENDING, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED));
+    Assert.assertEquals(0, Files.size(JOURNAL_PATH));
+  }
+
+  @Test
+  public void testRecoverFromCheckpoint() throws Exception {
+    // Transitions before the last checkpoint are applied already
+    String journal =
+        "{\"db\":\"test\",\"tbl\":\"test_non_partitioned\",\"status\":\"SUCCEEDED\"}\n"
+        + "{\"numApplied\":1}\n"
+        + "{\"db\":\"test\",\"tbl\":\"test_partitioned\","
+        + "\"partitionValuesList\":[[\"hello_world\"]],\"status\":\"SUCCEEDED\"}\n";
+    Files.write(JOURNAL_PATH, journal.getBytes(StandardCharsets.UTF_8));
+
+    mmaMetaManager = new JournaledMmaMetaManager(mmaMetaManager, JOURNAL_PATH);
+
+    Assert.assertEquals(MigrationStatus.PENDING, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_NON_PARTITIONED));
+    Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES));
+    Assert.assertEquals(0, Files.size(JOURNAL_PATH));
+  }
+}
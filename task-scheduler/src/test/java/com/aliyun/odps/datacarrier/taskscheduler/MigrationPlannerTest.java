@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.resource.Resource;
+import com.aliyun.odps.datacarrier.taskscheduler.resource.ResourceAllocator;
+import com.aliyun.odps.datacarrier.taskscheduler.task.MigrationPlanner;
+
+public class MigrationPlannerTest {
+
+  private static final long LARGE_TABLE_SIZE = 100L * 1024 * 1024 * 1024;
+
+  private static class SizedMetaSource extends MockHiveMetaSource {
+    @Override
+    public TableMetaModel getTableMetaWithoutPartitionMeta(String databaseName, String tableName)
+        throws Exception {
+      TableMetaModel tableMetaModel =
+          super.getTableMetaWithoutPartitionMeta(databaseName, tableName);
+      tableMetaModel.size = TBL_PARTITIONED.equals(tableName) ? LARGE_TABLE_SIZE : 1024L;
+      return tableMetaModel;
+    }
+  }
+
+  private static final List<MmaConfig.TableMigrationConfig> CONFIGS = Arrays.asList(
+      MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_NON_PARTITIONED,
+      MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_PARTITIONED);
+
+  @Test
+  public void testLargestTableFirst() {
+    MigrationPlanner.Plan plan = new MigrationPlanner(new SizedMetaSource(), 1).plan(CONFIGS);
+
+    List<MigrationPlanner.PlannedJob> jobs = plan.getJobs();
+    Assert.assertEquals(2, jobs.size());
+    Assert.assertEquals(
+        MockHiveMetaSource.TBL_PARTITIONED, jobs.get(0).getConfig().getSourceTableName());
+    Assert.assertTrue(jobs.get(0).getCostSeconds() > jobs.get(1).getCostSeconds());
+    // One job at a time
+    Assert.assertEquals(jobs.get(0).getCostSeconds(), jobs.get(1).getStartSeconds());
+    Assert.assertEquals(
+        jobs.get(0).getCostSeconds() + jobs.get(1).getCostSeconds(), plan.getMakespanSeconds());
+  }
+
+  @Test
+  public void testParallelism() {
+    MigrationPlanner.Plan plan = new MigrationPlanner(new SizedMetaSource(), 2).plan(CONFIGS);
+
+    List<MigrationPlanner.PlannedJob> jobs = plan.getJobs();
+    Assert.assertEquals(0, jobs.get(1).getStartSeconds());
+    Assert.assertEquals(jobs.get(0).getCostSeconds(), plan.getMakespanSeconds());
+  }
+
+  @Test
+  public void testDefaultParallelism() {
+    Map<String, String> resourceConfig = new HashMap<>();
+    resourceConfig.put(Resource.HIVE_DATA_TRANSFER_JOB_RESOURCE.name(), "3");
+    MmaServerConfig.setInstance(new MmaServerConfig(
+        DataSource.Hive, null, null, null, null, null, resourceConfig, null));
+    Assert.assertEquals(3, MigrationPlanner.getDefaultParallelism());
+
+    // Invalid values fall back to the default value
+    for (String value : Arrays.asList("foo", "0", "-1")) {
+      resourceConfig.put(Resource.HIVE_DATA_TRANSFER_JOB_RESOURCE.name(), value);
+      Assert.assertEquals(ResourceAllocator.DEFAULT_NUM_HIVE_DATA_TRANSFER_JOB_RESOURCE,
+                          MigrationPlanner.getDefaultParallelism());
+    }
+  }}
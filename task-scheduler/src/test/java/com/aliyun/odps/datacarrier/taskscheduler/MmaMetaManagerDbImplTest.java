@@ -27,8 +27,14 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.junit.AfterClass;
@@ -40,9 +46,13 @@ import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
 import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.MetaDBConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaCondition;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImpl;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.RestoreTaskInfo;
 
 
 @FixMethodOrder (MethodSorters.NAME_ASCENDING)
@@ -112,6 +122,13 @@ public class MmaMetaManagerDbImplTest {
   public void setup() throws SQLException {
     try (Statement stmt = conn.createStatement()) {
       stmt.execute("TRUNCATE TABLE " + Constants.MMA_TBL_META_TBL_NAME);
+      stmt.execute("TRUNCATE TABLE " + Constants.MMA_PT_META_TBL_NAME);
+      stmt.execute("TRUNCATE TABLE " + Constants.MMA_TBL_ID_TBL_NAME);
+      stmt.execute("TRUNCATE TABLE " + Constants.MMA_PENDING_QUEUE_TBL_NAME);
+      stmt.execute("TRUNCATE TABLE " + Constants.MMA_JOB_CONFIG_TBL_NAME);
+      stmt.execute("TRUNCATE TABLE " + Constants.MMA_OBJ_RESTORE_TBL_NAME);
+      stmt.execute("TRUNCATE TABLE " + Constants.MMA_COUNTER_TBL_NAME);
+      stmt.execute("TRUNCATE TABLE " + Constants.MMA_CURSOR_TBL_NAME);
     }
 
     try (Statement stmt = conn.createStatement()) {
@@ -148,7 +165,9 @@ public class MmaMetaManagerDbImplTest {
         Assert.assertEquals(MockHiveMetaSource.TBL_PARTITIONED, rs.getString(2));
         Assert.assertTrue(rs.getBoolean(3));
         Assert.assertEquals(GsonUtils.getFullConfigGson().toJson(PARTITIONED_TABLE_MIGRATION_JOB_CONFIG),
-                            rs.getString(4));
+                            GsonUtils.getFullConfigGson().toJson(
+                                MmaMetaManagerDbImplUtils.selectFromMmaJobConfig(
+                                    conn, rs.getString(4))));
         Assert.assertEquals(MmaMetaManager.MigrationStatus.PENDING.toString(),
                             rs.getString(5));
         Assert.assertEquals(0, rs.getInt(6));
@@ -160,19 +179,22 @@ public class MmaMetaManagerDbImplTest {
         Assert.assertEquals(MockHiveMetaSource.TBL_NON_PARTITIONED, rs.getString(2));
         Assert.assertFalse(rs.getBoolean(3));
         Assert.assertEquals(GsonUtils.getFullConfigGson().toJson(NON_PARTITIONED_TABLE_MIGRATION_JOB_CONFIG),
-                            rs.getString(4));
+                            GsonUtils.getFullConfigGson().toJson(
+                                MmaMetaManagerDbImplUtils.selectFromMmaJobConfig(
+                                    conn, rs.getString(4))));
         Assert.assertEquals(MmaMetaManager.MigrationStatus.PENDING.toString(),
                             rs.getString(5));
         Assert.assertEquals(0, rs.getInt(6));
         Assert.assertEquals(-1L, rs.getLong(7));
       }
 
-      // check mma_meta_pt_test_test_partitioned
-      String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                        MockHiveMetaSource.DB_NAME);
-      String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                       MockHiveMetaSource.TBL_PARTITIONED);
-      sql = "SELECT  * FROM " + schemaName + "." + tableName;
+      // check partition meta of test.test_partitioned
+      sql = String.format("SELECT %s, %s, %s, %s FROM %s",
+                          Constants.MMA_PT_META_COL_PT_VALS,
+                          Constants.MMA_PT_META_COL_STATUS,
+                          Constants.MMA_PT_META_COL_ATTEMPT_TIMES,
+                          Constants.MMA_PT_META_COL_LAST_MODIFIED_TIME,
+                          Constants.MMA_PT_META_TBL_NAME);
       try (ResultSet rs = stmt.executeQuery(sql)) {
         Assert.assertTrue(rs.next());
         Assert.assertEquals(GsonUtils.getFullConfigGson().toJson(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES),
@@ -413,14 +435,9 @@ public class MmaMetaManagerDbImplTest {
                                 Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES),
                                 MmaMetaManager.MigrationStatus.SUCCEEDED);
 
-    String schemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                      MockHiveMetaSource.DB_NAME);
-    String tableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                     MockHiveMetaSource.TBL_PARTITIONED);
-    String sql = String.format("SELECT %s FROM %s.%s",
+    String sql = String.format("SELECT %s FROM %s",
                                Constants.MMA_PT_META_COL_STATUS,
-                               schemaName,
-                               tableName);
+                               Constants.MMA_PT_META_TBL_NAME);
     try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
       Assert.assertTrue(rs.next());
       Assert.assertEquals(MmaMetaManager.MigrationStatus.SUCCEEDED.toString(),
@@ -498,6 +515,24 @@ public class MmaMetaManagerDbImplTest {
                         partitioned.partitions.get(0).partitionValues);
   }
 
+  @Test
+  public void testGetPendingTablesClaimsJobs() throws MmaException {
+    mmaMetaManager.addMigrationJob(TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
+
+    Assert.assertEquals(1, mmaMetaManager.getPendingTables().size());
+    // Claimed jobs are not returned again until the claim times out
+    Assert.assertTrue(mmaMetaManager.getPendingTables().isEmpty());
+
+    // Retried jobs are enqueued again
+    mmaMetaManager.updateStatus(MockHiveMetaSource.DB_NAME,
+                                MockHiveMetaSource.TBL_NON_PARTITIONED,
+                                MmaMetaManager.MigrationStatus.RUNNING);
+    mmaMetaManager.updateStatus(MockHiveMetaSource.DB_NAME,
+                                MockHiveMetaSource.TBL_NON_PARTITIONED,
+                                MmaMetaManager.MigrationStatus.FAILED);
+    Assert.assertEquals(1, mmaMetaManager.getPendingTables().size());
+  }
+
   @Test
   public void testGetPendingTablesAfterMigrationJobSucceeded() throws MmaException {
     mmaMetaManager.addMigrationJob(TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
@@ -522,4 +557,202 @@ public class MmaMetaManagerDbImplTest {
 
     Assert.assertEquals(0, tableMetaModels.size());
   }
+
+  @Test
+  public void testListRestoreJobsWithCondition() throws MmaException {
+    // Values are bound as parameters, quotes don't need to be escaped
+    String uniqueId = "task'1";
+    List<RestoreTaskInfo> taskInfos = new ArrayList<>();
+    for (String object : new String[] {"tbl'1", "tbl2", "tbl3"}) {
+      taskInfos.add(new RestoreTaskInfo(uniqueId,
+                                        MmaConfig.ObjectType.TABLE.name(),
+                                        MockHiveMetaSource.DB_NAME,
+                                        object,
+                                        PARTITIONED_TABLE_MIGRATION_JOB_CONFIG,
+                                        MmaMetaManager.MigrationStatus.PENDING,
+                                        0,
+                                        System.currentTimeMillis()));
+    }
+    taskInfos.get(2).setStatus(MmaMetaManager.MigrationStatus.SUCCEEDED);
+    mmaMetaManager.mergeJobInfosIntoRestoreDB(taskInfos);
+
+    MetaCondition condition = new MetaCondition()
+        .eq(Constants.MMA_OBJ_RESTORE_COL_UNIQUE_ID, uniqueId)
+        .in(Constants.MMA_OBJ_RESTORE_COL_STATUS,
+            Arrays.asList(MmaMetaManager.MigrationStatus.PENDING.name(),
+                          MmaMetaManager.MigrationStatus.RUNNING.name()));
+    List<RestoreTaskInfo> activeTaskInfos = mmaMetaManager.listRestoreJobs(condition, -1);
+    Assert.assertEquals(2, activeTaskInfos.size());
+    Assert.assertEquals("tbl'1", activeTaskInfos.get(0).getObject());
+    Assert.assertEquals(1, mmaMetaManager.listRestoreJobs(condition, 1).size());
+
+    mmaMetaManager.removeRestoreJob(uniqueId);
+    Assert.assertTrue(mmaMetaManager.listRestoreJobs(null, -1).isEmpty());
+  }
+
+  @Test
+  public void testGetCounts() throws MmaException {
+    mmaMetaManager.addMigrationJob(TABLE_MIGRATION_CONFIG_PARTITIONED);
+    mmaMetaManager.addMigrationJob(TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
+    Assert.assertEquals(2, (int) mmaMetaManager.getCounts().get(MigrationStatus.PENDING));
+    Assert.assertEquals(
+        1,
+        mmaMetaManager.getProgress(MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED)
+            .getNumPendingPartitions());
+
+    mmaMetaManager.updateStatus(MockHiveMetaSource.DB_NAME,
+                                MockHiveMetaSource.TBL_PARTITIONED,
+                                Collections.singletonList(
+                                    MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES),
+                                MigrationStatus.SUCCEEDED);
+    Map<MigrationStatus, Integer> counts = mmaMetaManager.getCounts();
+    Assert.assertEquals(1, (int) counts.get(MigrationStatus.PENDING));
+    Assert.assertEquals(1, (int) counts.get(MigrationStatus.SUCCEEDED));
+    MmaMetaManager.MigrationProgress progress =
+        mmaMetaManager.getProgress(MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    Assert.assertEquals(0, progress.getNumPendingPartitions());
+    Assert.assertEquals(1, progress.getNumSucceededPartitions());
+
+    mmaMetaManager.removeMigrationJob(MockHiveMetaSource.DB_NAME,
+                                      MockHiveMetaSource.TBL_NON_PARTITIONED);
+    counts = mmaMetaManager.getCounts();
+    Assert.assertNull(counts.get(MigrationStatus.PENDING));
+    Assert.assertEquals(1, (int) counts.get(MigrationStatus.SUCCEEDED));
+  }
+
+  @Test
+  public void testResetMigrationJobPartitions() throws MmaException {
+    mmaMetaManager.addMigrationJob(TABLE_MIGRATION_CONFIG_PARTITIONED);
+    mmaMetaManager.updateStatus(MockHiveMetaSource.DB_NAME,
+                                MockHiveMetaSource.TBL_PARTITIONED,
+                                Collections.singletonList(
+                                    MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES),
+                                MigrationStatus.SUCCEEDED);
+    Assert.assertEquals(
+        MigrationStatus.SUCCEEDED,
+        mmaMetaManager.getStatus(MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED));
+
+    mmaMetaManager.resetMigrationJobPartitions(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES));
+    Assert.assertEquals(
+        MigrationStatus.PENDING,
+        mmaMetaManager.getStatus(MockHiveMetaSource.DB_NAME,
+                                 MockHiveMetaSource.TBL_PARTITIONED,
+                                 MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES));
+    Assert.assertEquals(
+        MigrationStatus.PENDING,
+        mmaMetaManager.getStatus(MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED));
+    // The job config is kept
+    Assert.assertEquals(
+        GsonUtils.getFullConfigGson().toJson(PARTITIONED_TABLE_MIGRATION_JOB_CONFIG),
+        GsonUtils.getFullConfigGson().toJson(mmaMetaManager.getConfig(
+            MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED)));
+  }
+
+  @Test
+  public void testConcurrentUpdateStatus() throws Exception {
+    int numThreads = 8;
+    int numJobsPerThread = 25;
+    for (int i = 0; i < numThreads * numJobsPerThread; i++) {
+      mmaMetaManager.addBackupJob(new MmaConfig.ObjectExportConfig(
+          MockHiveMetaSource.DB_NAME,
+          "view_" + i,
+          MmaConfig.ObjectType.VIEW,
+          "task",
+          MmaConfigUtils.DEFAULT_ADDITIONAL_TABLE_CONFIG));
+    }
+
+    // Every status update modifies the shared counters, conflicting updates are retried
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      int threadIdx = i;
+      futures.add(pool.submit(() -> {
+        for (int j = threadIdx; j < numThreads * numJobsPerThread; j += numThreads) {
+          mmaMetaManager.updateStatus(
+              MockHiveMetaSource.DB_NAME, "view_" + j, MigrationStatus.RUNNING);
+          mmaMetaManager.updateStatus(
+              MockHiveMetaSource.DB_NAME, "view_" + j, MigrationStatus.SUCCEEDED);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    pool.shutdown();
+
+    Map<MigrationStatus, Integer> counts = mmaMetaManager.getCounts();
+    Assert.assertEquals(
+        numThreads * numJobsPerThread, (int) counts.get(MigrationStatus.SUCCEEDED));
+    Assert.assertNull(counts.get(MigrationStatus.RUNNING));
+    Assert.assertNull(counts.get(MigrationStatus.PENDING));
+  }
+
+  @Test
+  public void testRetryConflictingTransaction() throws Exception {
+    // The first attempt fails to serialize with a concurrent transaction
+    ConflictingMetaSource conflictingMetaSource = new ConflictingMetaSource(1);
+    MmaMetaManager conflictingMetaManager = new MmaMetaManagerDbImpl(conflictingMetaSource, false);
+    try {
+      conflictingMetaManager.addMigrationJob(TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
+      Assert.assertEquals(2, conflictingMetaSource.numAttempts);
+      Assert.assertEquals(
+          MigrationStatus.PENDING,
+          conflictingMetaManager.getStatus(MockHiveMetaSource.DB_NAME,
+                                           MockHiveMetaSource.TBL_NON_PARTITIONED));
+    } finally {
+      conflictingMetaManager.shutdown();
+    }
+  }
+
+  @Test
+  public void testRetryConflictingTransactionLimit() throws Exception {
+    ConflictingMetaSource conflictingMetaSource = new ConflictingMetaSource(Integer.MAX_VALUE);
+    MmaMetaManager conflictingMetaManager = new MmaMetaManagerDbImpl(conflictingMetaSource, false);
+    try {
+      conflictingMetaManager.addMigrationJob(TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
+      Assert.fail();
+    } catch (MmaException e) {
+      Assert.assertEquals(5, conflictingMetaSource.numAttempts);
+      Assert.assertFalse(conflictingMetaManager.hasMigrationJob(
+          MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_NON_PARTITIONED));
+    } finally {
+      conflictingMetaManager.shutdown();
+    }
+  }
+
+  @Test
+  public void testCursor() throws MmaException {
+    Assert.assertNull(mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION));
+    mmaMetaManager.setCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION, 1L);
+    mmaMetaManager.setCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION, 100L);
+    Assert.assertEquals(100L,
+                        (long) mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION));
+  }
+
+  /**
+   * Fails the first given number of requests for table metadata, which are made in the
+   * transaction adding a job, like the transaction fails to serialize with concurrent ones
+   */
+  private static class ConflictingMetaSource extends MockHiveMetaSource {
+    private final int numConflicts;
+    private int numAttempts = 0;
+
+    ConflictingMetaSource(int numConflicts) {
+      this.numConflicts = numConflicts;
+    }
+
+    @Override
+    public MetaSource.TableMetaModel getTableMetaWithoutPartitionMeta(String databaseName, String tableName)
+        throws Exception {
+      numAttempts += 1;
+      if (numAttempts <= numConflicts) {
+        throw new SQLException("Deadlock found when trying to get lock", "40001", 1213);
+      }
+      return super.getTableMetaWithoutPartitionMeta(databaseName, tableName);
+    }
+  }
 }
@@ -27,8 +27,12 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -36,6 +40,8 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.MetaDBConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.JobConfigCodec;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
 import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils;
 
@@ -50,6 +56,11 @@ public class MmaMetaManagerDbImplUtilsTest {
   @BeforeClass
   public static void beforeClass() throws SQLException {
     conn = DriverManager.getConnection(CONN_URL, "mma", "");
+    // The upsert keyword depends on the type of the meta DB
+    MetaDBConfig metaDBConfig = new MetaDBConfig("h2", CONN_URL, "mma", "", 1);
+    MmaServerConfig mmaServerConfig =
+        new MmaServerConfig(DataSource.Hive, null, null, null, metaDBConfig, null, null, null);
+    MmaServerConfig.setInstance(mmaServerConfig);
   }
 
   @AfterClass
@@ -69,6 +80,10 @@ public class MmaMetaManagerDbImplUtilsTest {
   public void setUp() throws SQLException {
     try (Statement stmt = conn.createStatement()) {
       stmt.execute("DROP TABLE IF EXISTS " + Constants.MMA_TBL_META_TBL_NAME);
+      stmt.execute("DROP TABLE IF EXISTS " + Constants.MMA_PT_META_TBL_NAME);
+      stmt.execute("DROP TABLE IF EXISTS " + Constants.MMA_TBL_ID_TBL_NAME);
+      stmt.execute("DROP TABLE IF EXISTS " + Constants.MMA_JOB_CONFIG_TBL_NAME);
+      stmt.execute("DROP TABLE IF EXISTS " + Constants.MMA_COUNTER_TBL_NAME);
     }
 
     try (Statement stmt = conn.createStatement()) {
@@ -102,58 +117,48 @@ public class MmaMetaManagerDbImplUtilsTest {
   }
 
   @Test
-  public void testCreateMmaPartitionMetaSchema() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    String expectedSchemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                              MockHiveMetaSource.DB_NAME);
+  public void testCreateMmaPartitionMeta() throws SQLException {
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+    // Should be idempotent
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+
     try (Statement stmt = conn.createStatement()) {
-      try (ResultSet rs = stmt.executeQuery("SHOW SCHEMAS")) {
-        boolean created = false;
+      try (ResultSet rs = stmt.executeQuery("SHOW TABLES")) {
+        Set<String> tables = new HashSet<>();
         while (rs.next()) {
-          if (expectedSchemaName.equalsIgnoreCase(rs.getString(1))) {
-            created = true;
-          } else if (!"PUBLIC".equalsIgnoreCase(rs.getString(1)) &&
-                     !"INFORMATION_SCHEMA".equalsIgnoreCase(rs.getString(1))) {
-            Assert.fail("Unexpected schema: " + rs.getString(1));
-          }
+          tables.add(rs.getString(1).toUpperCase());
         }
 
-        Assert.assertTrue(created);
+        Assert.assertTrue(tables.contains(Constants.MMA_PT_META_TBL_NAME));
+        Assert.assertTrue(tables.contains(Constants.MMA_TBL_ID_TBL_NAME));
       }
     }
-  }
 
-  @Test
-  public void testCreateMmaPartitionMeta() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
-    String expectedSchemaName = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                              MockHiveMetaSource.DB_NAME);
-    String expectedTableName = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                             MockHiveMetaSource.TBL_PARTITIONED);
-
-    try (Statement stmt = conn.createStatement()) {
-      String sql = "SHOW TABLES FROM " + expectedSchemaName;
-      try (ResultSet rs = stmt.executeQuery(sql)) {
-        boolean created = false;
-        while (rs.next()) {
-          if (expectedTableName.equalsIgnoreCase(rs.getString(1))) {
-            created = true;
-          } else {
-            Assert.fail("Unexpected table: " + rs.getString(1));
-          }
+    try (ResultSet rs = conn.getMetaData().getIndexInfo(
+        null, null, Constants.MMA_PT_META_TBL_NAME, false, true)) {
+      boolean created = false;
+      while (rs.next()) {
+        if (Constants.MMA_PT_META_IDX_TABLE_ID_STATUS.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+          created = true;
         }
-
-        Assert.assertTrue(created);
       }
+
+      Assert.assertTrue(created);
     }
   }
 
+  /**
+   * Create MMA_TBL_META and the tables written along with it
+   */
+  private static void createMmaTableMetaWithDependencies() throws SQLException {
+    MmaMetaManagerDbImplUtils.createMmaJobConfig(conn);
+    MmaMetaManagerDbImplUtils.createMmaCounter(conn);
+    MmaMetaManagerDbImplUtils.createMmaTableMeta(conn);
+  }
+
   @Test
   public void testMergeIntoMmaTableMeta() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaTableMeta(conn);
+    createMmaTableMetaWithDependencies();
     MmaMetaManagerDbImplUtils.JobInfo jobInfo =
         new MmaMetaManagerDbImplUtils.JobInfo(
             MockHiveMetaSource.DB_NAME,
@@ -174,8 +179,11 @@ public class MmaMetaManagerDbImplUtilsTest {
           Assert.assertEquals(MockHiveMetaSource.DB_NAME, rs.getString(1));
           Assert.assertEquals(MockHiveMetaSource.TBL_PARTITIONED, rs.getString(2));
           Assert.assertTrue(rs.getBoolean(3));
-          Assert.assertEquals(GsonUtils.getFullConfigGson().toJson(MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_PARTITIONED),
-                              rs.getString(4));
+          // Job configs are stored in MMA_JOB_CONFIG and referenced by id
+          Assert.assertEquals(
+              MmaMetaManagerDbImplTest.PARTITIONED_TABLE_MIGRATION_JOB_CONFIG.getDescription(),
+              MmaMetaManagerDbImplUtils.selectFromMmaJobConfig(conn, rs.getString(4))
+                                       .getDescription());
           Assert.assertEquals(MmaMetaManager.MigrationStatus.PENDING.toString(),
                               rs.getString(5));
           Assert.assertEquals(Constants.MMA_TBL_META_INIT_VALUE_ATTEMPT_TIMES,
@@ -192,7 +200,7 @@ public class MmaMetaManagerDbImplUtilsTest {
 
   @Test
   public void testDeleteFromMmaMeta() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaTableMeta(conn);
+    createMmaTableMetaWithDependencies();
     MmaMetaManagerDbImplUtils.JobInfo jobInfo =
         new MmaMetaManagerDbImplUtils.JobInfo(
             MockHiveMetaSource.DB_NAME,
@@ -253,6 +261,40 @@ public class MmaMetaManagerDbImplUtilsTest {
                         migrationJobInfo.getLastModifiedTime());
   }
 
+  @Test
+  public void testMergeIntoAndSelectFromMmaJobConfig() throws SQLException {
+    MmaMetaManagerDbImplUtils.createMmaJobConfig(conn);
+
+    MmaConfig.JobConfig jobConfig =
+        MmaMetaManagerDbImplTest.PARTITIONED_TABLE_MIGRATION_JOB_CONFIG;
+    String configId = MmaMetaManagerDbImplUtils.mergeIntoMmaJobConfig(conn, jobConfig);
+    // Same content, same id
+    Assert.assertEquals(configId, MmaMetaManagerDbImplUtils.mergeIntoMmaJobConfig(
+        conn, JobConfigCodec.decode(JobConfigCodec.encode(jobConfig))));
+
+    try (Statement stmt = conn.createStatement()) {
+      String sql = "SELECT COUNT(1) FROM " + Constants.MMA_JOB_CONFIG_TBL_NAME;
+      try (ResultSet rs = stmt.executeQuery(sql)) {
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(1, rs.getInt(1));
+      }
+    }
+
+    Assert.assertEquals(
+        GsonUtils.getFullConfigGson().toJson(jobConfig),
+        GsonUtils.getFullConfigGson().toJson(
+            MmaMetaManagerDbImplUtils.selectFromMmaJobConfig(conn, configId)));
+
+    // Descriptions of stored configs are parsed once
+    MmaConfig.JobConfig selected = MmaMetaManagerDbImplUtils.selectFromMmaJobConfig(conn, configId);
+    MmaConfig.TableMigrationConfig tableMigrationConfig =
+        MmaMetaManagerDbImplUtils.getTableMigrationConfig(selected);
+    Assert.assertEquals(selected.getDescription(),
+                        MmaConfig.TableMigrationConfig.toJson(tableMigrationConfig));
+    Assert.assertSame(tableMigrationConfig,
+                      MmaMetaManagerDbImplUtils.getTableMigrationConfig(selected));
+  }
+
   @Test
   public void testSelectSingleRecordFromMmaTableMetaNonExisted() throws SQLException {
     MmaMetaManagerDbImplUtils.createMmaTableMeta(conn);
@@ -372,11 +414,7 @@ public class MmaMetaManagerDbImplUtilsTest {
 
   @Test
   public void testMergeIntoMmaPartitionMeta() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn,
-                                                           MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
 
     MmaMetaManagerDbImplUtils.MigrationJobPtInfo jobPtInfo =
         new MmaMetaManagerDbImplUtils.MigrationJobPtInfo(
@@ -389,24 +427,23 @@ public class MmaMetaManagerDbImplUtilsTest {
                                                         MockHiveMetaSource.TBL_PARTITIONED,
                                                         Collections.singletonList(jobPtInfo));
 
-    String mmaPartitionMetaSchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                                  MockHiveMetaSource.DB_NAME);
-    String mmaPartitionMetaTable = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                                 MockHiveMetaSource.TBL_PARTITIONED);
+    long tableId = MmaMetaManagerDbImplUtils.getOrCreateTableId(conn,
+                                                                MockHiveMetaSource.DB_NAME,
+                                                                MockHiveMetaSource.TBL_PARTITIONED);
     String partitionValuesJson =
         GsonUtils.getFullConfigGson().toJson(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
     try (Statement stmt = conn.createStatement()) {
-      String sql =
-          String.format("SELECT * FROM %s.%s", mmaPartitionMetaSchema, mmaPartitionMetaTable);
+      String sql = String.format("SELECT * FROM %s", Constants.MMA_PT_META_TBL_NAME);
       try (ResultSet rs = stmt.executeQuery(sql)) {
         int rowCount = 0;
         while (rs.next()) {
-          Assert.assertEquals(partitionValuesJson, rs.getString(1));
+          Assert.assertEquals(tableId, rs.getLong(1));
+          Assert.assertEquals(partitionValuesJson, rs.getString(2));
           Assert.assertEquals(MmaMetaManager.MigrationStatus.PENDING.toString(),
-                              rs.getString(2));
-          Assert.assertEquals(Constants.MMA_PT_META_INIT_ATTEMPT_TIMES, rs.getInt(3));
+                              rs.getString(3));
+          Assert.assertEquals(Constants.MMA_PT_META_INIT_ATTEMPT_TIMES, rs.getInt(4));
           Assert.assertEquals(Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME,
-                              rs.getLong(4));
+                              rs.getLong(5));
           rowCount += 1;
         }
 
@@ -417,52 +454,117 @@ public class MmaMetaManagerDbImplUtilsTest {
 
   @Test
   public void testDropMmaPartitionMeta() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+    insertIntoMmaPartitionMeta(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
 
     MmaMetaManagerDbImplUtils.dropMmaPartitionMeta(conn,
                                                    MockHiveMetaSource.DB_NAME,
                                                    MockHiveMetaSource.TBL_PARTITIONED);
 
-    String mmaPartitionMetaSchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                                  MockHiveMetaSource.DB_NAME);
-    String mmaPartitionMetaTable = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                                 MockHiveMetaSource.TBL_PARTITIONED);
     try (Statement stmt = conn.createStatement()) {
-      String sql = String.format("SHOW TABLES FROM %s", mmaPartitionMetaSchema);
-      try (ResultSet rs = stmt.executeQuery(sql)) {
-        while (rs.next()) {
-          Assert.assertNotEquals(mmaPartitionMetaTable, rs.getString(1));
+      for (String tableName : Arrays.asList(Constants.MMA_PT_META_TBL_NAME,
+                                            Constants.MMA_TBL_ID_TBL_NAME)) {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(1) FROM " + tableName)) {
+          Assert.assertTrue(rs.next());
+          Assert.assertEquals(0, rs.getInt(1));
         }
       }
     }
   }
 
   @Test
-  public void testSelectSingleRecordFromMmaPartitionMeta() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
-
-    String mmaPartitionMetaSchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                                  MockHiveMetaSource.DB_NAME);
-    String mmaPartitionMetaTable = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                     MockHiveMetaSource.TBL_PARTITIONED);
-    String partitionValuesJson = GsonUtils.getFullConfigGson()
-        .toJson(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
+  public void testMigrateLegacyMmaPartitionMeta() throws SQLException {
+    createLegacyMmaPartitionMeta(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
+
+    MmaMetaManagerDbImplUtils.migrateLegacyMmaPartitionMeta(conn);
+
+    MmaMetaManagerDbImplUtils.MigrationJobPtInfo jobPtInfo =
+        MmaMetaManagerDbImplUtils.selectFromMmaPartitionMeta(
+            conn,
+            MockHiveMetaSource.DB_NAME,
+            MockHiveMetaSource.TBL_PARTITIONED,
+            MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
+    Assert.assertNotNull(jobPtInfo);
+    Assert.assertEquals(MmaMetaManager.MigrationStatus.SUCCEEDED, jobPtInfo.getStatus());
+    Assert.assertEquals(1, jobPtInfo.getAttemptTimes());
+
+    String legacySchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
+                                        MockHiveMetaSource.DB_NAME);
     try (Statement stmt = conn.createStatement()) {
-      String dml = String.format("INSERT INTO %s.%s VALUES('%s', '%s', %d, %d)",
-                                 mmaPartitionMetaSchema,
-                                 mmaPartitionMetaTable,
-                                 partitionValuesJson,
-                                 MmaMetaManager.MigrationStatus.PENDING.toString(),
-                                 Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
-                                 Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME);
+      try (ResultSet rs = stmt.executeQuery("SHOW TABLES FROM " + legacySchema)) {
+        Assert.assertFalse(rs.next());
+      }
+    }
+  }
+
+  @Test
+  public void testMigrateLegacyMmaPartitionMetaTooLong() throws SQLException {
+    // Serialized as 768 characters, which fits the legacy table only
+    char[] chars = new char[760];
+    Arrays.fill(chars, 'a');
+    createLegacyMmaPartitionMeta(Collections.singletonList(new String(chars)));
+
+    try {
+      MmaMetaManagerDbImplUtils.migrateLegacyMmaPartitionMeta(conn);
+      Assert.fail();
+    } catch (SQLException e) {
+      Assert.assertTrue(e.getMessage().contains("longer than 766 characters"));
+    }
+
+    // Nothing is moved, and the legacy table is kept
+    Assert.assertTrue(MmaMetaManagerDbImplUtils.selectFromMmaPartitionMeta(
+        conn, MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED, null, -1).isEmpty());
+    String legacySchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
+                                        MockHiveMetaSource.DB_NAME);
+    try (Statement stmt = conn.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SHOW TABLES FROM " + legacySchema)) {
+        Assert.assertTrue(rs.next());
+      }
+    }
+  }
+
+  private void createLegacyMmaPartitionMeta(List<String> partitionValues) throws SQLException {
+    MmaMetaManagerDbImplUtils.createMmaTableMeta(conn);
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+
+    String migrationConfigJson = GsonUtils.getFullConfigGson().toJson(
+        MmaMetaManagerDbImplTest.PARTITIONED_TABLE_MIGRATION_JOB_CONFIG);
+    String legacySchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
+                                        MockHiveMetaSource.DB_NAME);
+    String legacyTable = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
+                                       MockHiveMetaSource.TBL_PARTITIONED);
+    try (Statement stmt = conn.createStatement()) {
+      String dml = String.format("INSERT INTO %s VALUES('%s', '%s', %b, '%s', '%s', %d, %d)",
+                                 Constants.MMA_TBL_META_TBL_NAME,
+                                 MockHiveMetaSource.DB_NAME,
+                                 MockHiveMetaSource.TBL_PARTITIONED,
+                                 true,
+                                 migrationConfigJson,
+                                 MmaMetaManager.MigrationStatus.RUNNING.toString(),
+                                 Constants.MMA_TBL_META_INIT_VALUE_ATTEMPT_TIMES,
+                                 Constants.MMA_TBL_META_NA_VALUE_LAST_MODIFIED_TIME);
+      stmt.execute(dml);
+
+      stmt.execute("CREATE SCHEMA " + legacySchema);
+      stmt.execute(String.format(
+          "CREATE TABLE %s.%s (pt_vals VARCHAR(768), status VARCHAR(255), attempt_times INT, "
+          + "last_modified_time BIGINT, PRIMARY KEY (pt_vals))", legacySchema, legacyTable));
+      dml = String.format("INSERT INTO %s.%s VALUES('%s', '%s', %d, %d)",
+                          legacySchema,
+                          legacyTable,
+                          GsonUtils.getFullConfigGson().toJson(partitionValues),
+                          MmaMetaManager.MigrationStatus.SUCCEEDED.toString(),
+                          1,
+                          Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME);
       stmt.execute(dml);
     }
+  }
+
+  @Test
+  public void testSelectSingleRecordFromMmaPartitionMeta() throws SQLException {
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+
+    insertIntoMmaPartitionMeta(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
 
     MmaMetaManagerDbImplUtils.MigrationJobPtInfo jobPtInfo =
         MmaMetaManagerDbImplUtils.selectFromMmaPartitionMeta(
@@ -484,10 +586,7 @@ public class MmaMetaManagerDbImplUtilsTest {
 
   @Test
   public void testSelectSingleRecordFromMmaPartitionMetaNonExisted() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
 
     MmaMetaManagerDbImplUtils.MigrationJobPtInfo jobPtInfo =
         MmaMetaManagerDbImplUtils.selectFromMmaPartitionMeta(
@@ -499,29 +598,42 @@ public class MmaMetaManagerDbImplUtilsTest {
     Assert.assertNull(jobPtInfo);
   }
 
+  @Test
+  public void testBatchSelectFromMmaPartitionMeta() throws SQLException {
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+
+    MmaMetaManagerDbImplUtils.MigrationJobPtInfo existing =
+        new MmaMetaManagerDbImplUtils.MigrationJobPtInfo(
+            MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES,
+            MmaMetaManager.MigrationStatus.RUNNING,
+            Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
+            Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME);
+    MmaMetaManagerDbImplUtils.mergeIntoMmaPartitionMeta(conn,
+                                                        MockHiveMetaSource.DB_NAME,
+                                                        MockHiveMetaSource.TBL_PARTITIONED,
+                                                        Collections.singletonList(existing));
+
+    List<String> nonExisted = Collections.singletonList("non_existed");
+    Map<List<String>, MmaMetaManagerDbImplUtils.MigrationJobPtInfo> jobPtInfos =
+        MmaMetaManagerDbImplUtils.batchSelectFromMmaPartitionMeta(
+            conn,
+            MockHiveMetaSource.DB_NAME,
+            MockHiveMetaSource.TBL_PARTITIONED,
+            Arrays.asList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES, nonExisted));
+
+    Assert.assertEquals(1, jobPtInfos.size());
+    Assert.assertFalse(jobPtInfos.containsKey(nonExisted));
+    MmaMetaManagerDbImplUtils.MigrationJobPtInfo jobPtInfo =
+        jobPtInfos.get(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
+    Assert.assertNotNull(jobPtInfo);
+    Assert.assertEquals(MmaMetaManager.MigrationStatus.RUNNING, jobPtInfo.getStatus());
+  }
+
   @Test
   public void testRecordsSelectFromMmaPartitionMeta() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
-
-    String mmaPartitionMetaSchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                                  MockHiveMetaSource.DB_NAME);
-    String mmaPartitionMetaTable = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                                 MockHiveMetaSource.TBL_PARTITIONED);
-    String partitionValuesJson = GsonUtils.getFullConfigGson()
-        .toJson(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
-    try (Statement stmt = conn.createStatement()) {
-      String dml = String.format("INSERT INTO %s.%s VALUES('%s', '%s', %d, %d)",
-                                 mmaPartitionMetaSchema,
-                                 mmaPartitionMetaTable,
-                                 partitionValuesJson,
-                                 MmaMetaManager.MigrationStatus.PENDING.toString(),
-                                 Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
-                                 Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME);
-      stmt.execute(dml);
-    }
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+
+    insertIntoMmaPartitionMeta(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
 
     List<MmaMetaManagerDbImplUtils.MigrationJobPtInfo> migrationJobPtInfos =
         MmaMetaManagerDbImplUtils.selectFromMmaPartitionMeta(conn,
@@ -545,10 +657,7 @@ public class MmaMetaManagerDbImplUtilsTest {
 
   @Test
   public void testRecordsSelectFromMmaPartitionMetaEmpty() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
 
     List<MmaMetaManagerDbImplUtils.MigrationJobPtInfo> migrationJobPtInfos =
         MmaMetaManagerDbImplUtils.selectFromMmaPartitionMeta(conn,
@@ -562,27 +671,9 @@ public class MmaMetaManagerDbImplUtilsTest {
 
   @Test
   public void testRecordsSelectFromMmaPartitionMetaWithStatus() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
-
-    String mmaPartitionMetaSchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                                  MockHiveMetaSource.DB_NAME);
-    String mmaPartitionMetaTable = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                                 MockHiveMetaSource.TBL_PARTITIONED);
-    String partitionValuesJson = GsonUtils.getFullConfigGson()
-        .toJson(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
-    try (Statement stmt = conn.createStatement()) {
-      String dml = String.format("INSERT INTO %s.%s VALUES('%s', '%s', %d, %d)",
-                                 mmaPartitionMetaSchema,
-                                 mmaPartitionMetaTable,
-                                 partitionValuesJson,
-                                 MmaMetaManager.MigrationStatus.PENDING.toString(),
-                                 Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
-                                 Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME);
-      stmt.execute(dml);
-    }
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+
+    insertIntoMmaPartitionMeta(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES);
 
     List<MmaMetaManagerDbImplUtils.MigrationJobPtInfo> migrationJobPtInfos =
         MmaMetaManagerDbImplUtils.selectFromMmaPartitionMeta(conn,
@@ -596,26 +687,10 @@ public class MmaMetaManagerDbImplUtilsTest {
 
   @Test
   public void testRecordsSelectFromMmaPartitionMetaWithLimit() throws SQLException {
-    MmaMetaManagerDbImplUtils.createMmaPartitionMetaSchema(conn, MockHiveMetaSource.DB_NAME);
-    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn,
-                                                     MockHiveMetaSource.DB_NAME,
-                                                     MockHiveMetaSource.TBL_PARTITIONED);
-
-    String mmaPartitionMetaSchema = String.format(Constants.MMA_PT_META_SCHEMA_NAME_FMT,
-                                                  MockHiveMetaSource.DB_NAME);
-    String mmaPartitionMetaTable = String.format(Constants.MMA_PT_META_TBL_NAME_FMT,
-                                                 MockHiveMetaSource.TBL_PARTITIONED);
-    try (Statement stmt = conn.createStatement()) {
-      for (int i = 0; i < 10; i++) {
-        String dml = String.format("INSERT INTO %s.%s VALUES('%s', '%s', %d, %d)",
-                                   mmaPartitionMetaSchema,
-                                   mmaPartitionMetaTable,
-                                   GsonUtils.getFullConfigGson().toJson(Collections.singletonList(Integer.toString(i))),
-                                   MmaMetaManager.MigrationStatus.PENDING.toString(),
-                                   Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
-                                   Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME);
-        stmt.execute(dml);
-      }
+    MmaMetaManagerDbImplUtils.createMmaPartitionMeta(conn);
+
+    for (int i = 0; i < 10; i++) {
+      insertIntoMmaPartitionMeta(Collections.singletonList(Integer.toString(i)));
     }
 
     List<MmaMetaManagerDbImplUtils.MigrationJobPtInfo> migrationJobPtInfos =
@@ -627,4 +702,36 @@ public class MmaMetaManagerDbImplUtilsTest {
 
     Assert.assertEquals(1, migrationJobPtInfos.size());
   }
+
+  private static void insertIntoMmaPartitionMeta(List<String> partitionValues)
+      throws SQLException {
+    MmaMetaManagerDbImplUtils.MigrationJobPtInfo jobPtInfo =
+        new MmaMetaManagerDbImplUtils.MigrationJobPtInfo(
+            partitionValues,
+            MmaMetaManager.MigrationStatus.PENDING,
+            Constants.MMA_PT_META_INIT_ATTEMPT_TIMES,
+            Constants.MMA_PT_MEAT_NA_LAST_MODIFIED_TIME);
+    MmaMetaManagerDbImplUtils.mergeIntoMmaPartitionMeta(conn,
+                                                        MockHiveMetaSource.DB_NAME,
+                                                        MockHiveMetaSource.TBL_PARTITIONED,
+                                                        Collections.singletonList(jobPtInfo));
+  }
+
+  @Test
+  public void testIsTransactionConflict() {
+    // H2 lock timeout and concurrent update, MySQL deadlock and lock wait timeout
+    Assert.assertTrue(MmaMetaManagerDbImplUtils.isTransactionConflict(
+        new MmaException("Failed", new SQLException("Timeout", "HYT00", 50200))));
+    Assert.assertTrue(MmaMetaManagerDbImplUtils.isTransactionConflict(
+        new SQLException("Concurrent update", "90131", 90131)));
+    Assert.assertTrue(MmaMetaManagerDbImplUtils.isTransactionConflict(
+        new MmaException("Failed", new SQLException("Deadlock", "40001", 1213))));
+    Assert.assertTrue(MmaMetaManagerDbImplUtils.isTransactionConflict(
+        new SQLException("Lock wait timeout", "HY000", 1205)));
+
+    Assert.assertFalse(MmaMetaManagerDbImplUtils.isTransactionConflict(
+        new MmaException("Failed", new SQLException("Duplicate key", "23505", 23505))));
+    Assert.assertFalse(MmaMetaManagerDbImplUtils.isTransactionConflict(
+        new MmaException("Running job exists")));
+  }
 }
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.MetaDBConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerKvImpl;
+
+public class MmaMetaManagerKvImplTest {
+  private static final Path STORE_PATH = Paths.get(
+      System.getProperty("user.dir"), "MmaMetaManagerKvImplTest.mv.db").toAbsolutePath();
+
+  private MetaSource metaSource = new MockHiveMetaSource();
+  private MmaMetaManager mmaMetaManager;
+
+  @BeforeClass
+  public static void beforeClass() {
+    MetaDBConfig metaDBConfig =
+        new MetaDBConfig(MetaDBConfig.DB_TYPE_KV, STORE_PATH.toString());
+    MmaServerConfig mmaServerConfig = new MmaServerConfig(
+        DataSource.Hive, null, null, null, metaDBConfig, null, null, null);
+    MmaServerConfig.setInstance(mmaServerConfig);
+  }
+
+  @Before
+  public void setup() throws MmaException {
+    deleteStore();
+    mmaMetaManager = new MmaMetaManagerKvImpl(metaSource, STORE_PATH.toString(), false);
+  }
+
+  @After
+  public void tearDown() throws MmaException {
+    mmaMetaManager.shutdown();
+    deleteStore();
+  }
+
+  private static void deleteStore() {
+    File storeFile = STORE_PATH.toFile();
+    if (storeFile.exists() && !storeFile.delete()) {
+      throw new IllegalStateException("Failed to delete " + storeFile);
+    }
+  }
+
+  @Test
+  public void testAddAndRemoveMigrationJob() throws Exception {
+    mmaMetaManager.addMigrationJob(MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_PARTITIONED);
+
+    Assert.assertTrue(mmaMetaManager.hasMigrationJob(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED));
+    Assert.assertEquals(MigrationStatus.PENDING, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED));
+    Assert.assertEquals(MigrationStatus.PENDING, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES));
+    Assert.assertEquals(
+        GsonUtils.getFullConfigGson().toJson(
+            MmaMetaManagerDbImplTest.PARTITIONED_TABLE_MIGRATION_JOB_CONFIG),
+        GsonUtils.getFullConfigGson().toJson(mmaMetaManager.getConfig(
+            MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED)));
+
+    mmaMetaManager.removeMigrationJob(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    Assert.assertFalse(mmaMetaManager.hasMigrationJob(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED));
+    Assert.assertTrue(mmaMetaManager.getPendingTables().isEmpty());
+  }
+
+  @Test
+  public void testUpdatePartitionStatus() throws Exception {
+    mmaMetaManager.addMigrationJob(MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_PARTITIONED);
+
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_PARTITIONED,
+        Collections.singletonList(MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES),
+        MigrationStatus.SUCCEEDED);
+
+    Assert.assertEquals(MigrationStatus.SUCCEEDED, mmaMetaManager.getStatus(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED));
+    MmaMetaManager.MigrationProgress progress = mmaMetaManager.getProgress(
+        MockHiveMetaSource.DB_NAME, MockHiveMetaSource.TBL_PARTITIONED);
+    Assert.assertEquals(1, progress.getNumSucceededPartitions());
+    Assert.assertTrue(mmaMetaManager.getPendingTables().isEmpty());
+  }
+
+  @Test
+  public void testGetPendingTablesAfterReopen() throws Exception {
+    mmaMetaManager.addMigrationJob(MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_PARTITIONED);
+    mmaMetaManager.addMigrationJob(
+        MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
+    mmaMetaManager.updateStatus(
+        MockHiveMetaSource.DB_NAME,
+        MockHiveMetaSource.TBL_NON_PARTITIONED,
+        MigrationStatus.RUNNING);
+
+    // Running jobs become pending again after recovery
+    mmaMetaManager.shutdown();
+    mmaMetaManager = new MmaMetaManagerKvImpl(metaSource, STORE_PATH.toString(), true);
+
+    List<MetaSource.TableMetaModel> pendingTables = mmaMetaManager.getPendingTables();
+    Assert.assertEquals(2, pendingTables.size());
+    Assert.assertEquals(MockHiveMetaSource.TBL_NON_PARTITIONED, pendingTables.get(0).tableName);
+    Assert.assertEquals(MockHiveMetaSource.TBL_PARTITIONED, pendingTables.get(1).tableName);
+    Assert.assertEquals(1, pendingTables.get(1).partitions.size());
+
+    // Claimed jobs are not returned again
+    Assert.assertTrue(mmaMetaManager.getPendingTables().isEmpty());
+  }
+}
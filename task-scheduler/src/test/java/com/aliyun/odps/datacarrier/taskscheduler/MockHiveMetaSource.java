@@ -145,6 +145,27 @@ public class MockHiveMetaSource implements MetaSource {
     throw new IllegalArgumentException("partition doesn't exist");
   }
 
+  @Override
+  public List<PartitionMetaModel> getPartitionMetas(String databaseName,
+                                                    String tableName,
+                                                    List<List<String>> partitionValuesList)
+      throws Exception {
+    List<PartitionMetaModel> ret = new LinkedList<>();
+    for (PartitionMetaModel pt : getTableMeta(databaseName, tableName).partitions) {
+      if (partitionValuesList.contains(pt.partitionValues)) {
+        ret.add(pt);
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public List<PartitionMetaModel> listPartitionMetasWithoutSize(String databaseName,
+                                                                String tableName)
+      throws Exception {
+    return new LinkedList<>(getTableMeta(databaseName, tableName).partitions);
+  }
+
   @Override
   public List<List<String>> listPartitions(String databaseName, String tableName) throws Exception {
     List<List<String>> ret = new LinkedList<>();
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.aliyun.odps.Column;
+import com.aliyun.odps.OdpsType;
+import com.aliyun.odps.data.ArrayRecord;
+import com.aliyun.odps.datacarrier.taskscheduler.action.executor.OdpsExecutor;
+
+public class OdpsExecutorTest {
+
+  @Test
+  public void testGetRowWithStringColumn() {
+    Column[] columns = new Column[] {
+        new Column("mma_label", OdpsType.STRING),
+        new Column("mma_record_count", OdpsType.BIGINT),
+        new Column("mma_fingerprint_0", OdpsType.STRING)
+    };
+    ArrayRecord record = new ArrayRecord(columns);
+    // Tunnel record readers return STRING columns as byte arrays
+    record.set(0, "db.tbl".getBytes(StandardCharsets.UTF_8));
+    record.set(1, 100L);
+    record.set(2, null);
+    Assert.assertTrue(record.get(0) instanceof byte[]);
+
+    Assert.assertEquals(
+        Arrays.asList("db.tbl", "100", null), OdpsExecutor.getRow(record, columns.length));
+  }
+}
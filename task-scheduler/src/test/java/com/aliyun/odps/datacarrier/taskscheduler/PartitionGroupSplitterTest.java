@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.ColumnMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.task.PartitionGroupSplitter;
+
+public class PartitionGroupSplitterTest {
+
+  private static final long GB = 1024L * 1024 * 1024;
+
+  private static TableMetaModel getTableMetaModel(List<Long> partitionSizes) {
+    TableMetaModel tableMetaModel = new TableMetaModel();
+    tableMetaModel.databaseName = "db";
+    tableMetaModel.tableName = "tbl";
+    ColumnMetaModel partitionColumn = new ColumnMetaModel();
+    partitionColumn.columnName = "pt";
+    tableMetaModel.partitionColumns.add(partitionColumn);
+    for (int i = 0; i < partitionSizes.size(); i++) {
+      PartitionMetaModel partitionMetaModel = new PartitionMetaModel();
+      partitionMetaModel.partitionValues.add(Integer.toString(i));
+      partitionMetaModel.size = partitionSizes.get(i);
+      tableMetaModel.partitions.add(partitionMetaModel);
+    }
+    return tableMetaModel;
+  }
+
+  @Test
+  public void testSkewedPartitions() {
+    // One 20 GB partition followed by forty 1 GB partitions
+    List<Long> sizes = new ArrayList<>();
+    sizes.add(20 * GB);
+    sizes.addAll(Collections.nCopies(40, GB));
+    TableMetaModel tableMetaModel = getTableMetaModel(sizes);
+    MmaConfig.AdditionalTableConfig config = new MmaConfig.AdditionalTableConfig(-1, 1, 10);
+
+    List<TableMetaModel> splits = PartitionGroupSplitter.split(tableMetaModel, config);
+
+    Assert.assertEquals(6, splits.size());
+    Assert.assertEquals(41, splits.stream().mapToInt(s -> s.partitions.size()).sum());
+    // The large partition is alone, the rest are balanced
+    Assert.assertEquals(1, splits.get(0).partitions.size());
+    Assert.assertEquals(20 * GB, PartitionGroupSplitter.getWeight(splits.get(0)));
+    for (TableMetaModel split : splits.subList(1, splits.size())) {
+      Assert.assertEquals(8, split.partitions.size());
+    }
+    // The original partition list is untouched
+    Assert.assertEquals("0", tableMetaModel.partitions.get(0).partitionValues.get(0));
+  }
+
+  @Test
+  public void testMaxPartitionGroupSize() {
+    TableMetaModel tableMetaModel =
+        getTableMetaModel(Collections.nCopies(2 * Constants.MAX_PARTITION_GROUP_SIZE + 1, 1L));
+
+    List<TableMetaModel> splits = PartitionGroupSplitter.split(tableMetaModel, null);
+
+    Assert.assertEquals(3, splits.size());
+    for (TableMetaModel split : splits) {
+      Assert.assertTrue(split.partitions.size() <= Constants.MAX_PARTITION_GROUP_SIZE);
+    }
+
+    tableMetaModel.partitions.get(0).size = null;
+    Assert.assertNull(PartitionGroupSplitter.split(tableMetaModel, null));
+  }
+}
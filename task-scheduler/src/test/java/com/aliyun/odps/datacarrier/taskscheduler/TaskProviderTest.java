@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.MetaDBConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.action.ActionProgress;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.ColumnMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerKvImpl;
+import com.aliyun.odps.datacarrier.taskscheduler.task.AbstractTask;
+import com.aliyun.odps.datacarrier.taskscheduler.task.Task;
+import com.aliyun.odps.datacarrier.taskscheduler.task.TaskProgress;
+import com.aliyun.odps.datacarrier.taskscheduler.task.TaskProvider;
+
+public class TaskProviderTest {
+  private static final Path STORE_PATH = Paths.get(
+      System.getProperty("user.dir"), "TaskProviderTest.mv.db").toAbsolutePath();
+
+  private static final int NUM_TABLES = 100;
+  private static final int NUM_PARTITIONS = 3;
+  // Larger than the default split size, each partition is migrated by its own task
+  private static final long PARTITION_SIZE = 20L * 1024 * 1024 * 1024;
+
+  private PendingTablesMetaManager mmaMetaManager;
+
+  @BeforeClass
+  public static void beforeClass() {
+    MetaDBConfig metaDBConfig = new MetaDBConfig(MetaDBConfig.DB_TYPE_KV, STORE_PATH.toString());
+    MmaConfig.HiveConfig hiveConfig = new MmaConfig.HiveConfig(
+        null, null, null, null, null, null, null, null, null);
+    MmaServerConfig mmaServerConfig = new MmaServerConfig(
+        DataSource.Hive, null, hiveConfig, null, metaDBConfig, null, null, null);
+    MmaServerConfig.setInstance(mmaServerConfig);
+  }
+
+  @Before
+  public void setup() throws MmaException {
+    delete();
+    mmaMetaManager = new PendingTablesMetaManager(STORE_PATH.toString(), NUM_TABLES);
+  }
+
+  @After
+  public void tearDown() throws MmaException {
+    mmaMetaManager.shutdown();
+    delete();
+  }
+
+  private static void delete() {
+    File file = STORE_PATH.toFile();
+    if (file.exists() && !file.delete()) {
+      throw new IllegalStateException("Failed to delete " + file);
+    }
+  }
+
+  @Test
+  public void testTaskWindow() throws Exception {
+    TaskProvider taskProvider = new TaskProvider(mmaMetaManager);
+    int windowSize = Constants.DEFAULT_TASK_WINDOW_SIZE;
+
+    // Claim no more tables than the window could take
+    List<Task> running = new LinkedList<>(taskProvider.get());
+    Assert.assertEquals(windowSize, running.size());
+    Assert.assertEquals(Collections.singletonList(windowSize), mmaMetaManager.claims);
+
+    // The window is full, and the claimed tables have more tasks to generate
+    Assert.assertTrue(taskProvider.get().isEmpty());
+    Assert.assertEquals(1, mmaMetaManager.claims.size());
+
+    // Free slots are taken by the claimed tables first
+    for (int i = 0; i < 10; i++) {
+      fail(running.remove(0));
+    }
+    List<Task> tasks = taskProvider.get();
+    Assert.assertEquals(10, tasks.size());
+    Assert.assertEquals(1, mmaMetaManager.claims.size());
+    running.addAll(tasks);
+
+    // Drain all tables, the window is never exceeded
+    int numTasks = windowSize + tasks.size();
+    while (!mmaMetaManager.pendingTables.isEmpty() || !running.isEmpty()) {
+      fail(running.remove(0));
+      tasks = taskProvider.get();
+      running.addAll(tasks);
+      numTasks += tasks.size();
+      Assert.assertTrue(running.size() <= windowSize);
+    }
+    Assert.assertEquals(NUM_TABLES * NUM_PARTITIONS, numTasks);
+    for (int claim : mmaMetaManager.claims) {
+      Assert.assertTrue(claim > 0 && claim <= windowSize);
+    }
+  }
+
+  private static void fail(Task task) throws MmaException {
+    AbstractTask abstractTask = (AbstractTask) task;
+    AbstractTask.ActionProgressListener listener =
+        abstractTask.new ActionProgressListener(abstractTask);
+    listener.onActionProgressChanged(ActionProgress.RUNNING);
+    listener.onActionProgressChanged(ActionProgress.FAILED);
+    Assert.assertEquals(TaskProgress.FAILED, task.getProgress());
+  }
+
+  private static TableMetaModel getPartitionedTableMetaModel(String tbl) {
+    TableMetaModel tableMetaModel = new TableMetaModel();
+    tableMetaModel.databaseName = MockHiveMetaSource.DB_NAME;
+    tableMetaModel.odpsProjectName = MockHiveMetaSource.DB_NAME;
+    tableMetaModel.tableName = tbl;
+    tableMetaModel.odpsTableName = tbl;
+
+    ColumnMetaModel c = new ColumnMetaModel();
+    c.columnName = "foo";
+    c.odpsColumnName = "foo";
+    c.type = "string";
+    c.odpsType = "string";
+    tableMetaModel.columns.add(c);
+
+    ColumnMetaModel pc = new ColumnMetaModel();
+    pc.columnName = "bar";
+    pc.odpsColumnName = "bar";
+    pc.type = "string";
+    pc.odpsType = "string";
+    tableMetaModel.partitionColumns.add(pc);
+
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      PartitionMetaModel partitionMetaModel = new PartitionMetaModel();
+      partitionMetaModel.partitionValues.add(String.valueOf(i));
+      partitionMetaModel.size = PARTITION_SIZE;
+      partitionMetaModel.lastModifiedTime = -1L;
+      tableMetaModel.partitions.add(partitionMetaModel);
+    }
+    tableMetaModel.size = PARTITION_SIZE * NUM_PARTITIONS;
+
+    return tableMetaModel;
+  }
+
+  /**
+   * Serves pending partitioned tables and records the number of tables requested by each claim
+   */
+  private static class PendingTablesMetaManager extends MmaMetaManagerKvImpl {
+    private final List<TableMetaModel> pendingTables = new LinkedList<>();
+    private final List<Integer> claims = new ArrayList<>();
+
+    PendingTablesMetaManager(String storePath, int numTables) throws MmaException {
+      super(new MockHiveMetaSource(), storePath, false);
+      for (int i = 0; i < numTables; i++) {
+        pendingTables.add(getPartitionedTableMetaModel("tbl_" + i));
+      }
+    }
+
+    @Override
+    public List<TableMetaModel> getPendingTables(int maxNumTables) {
+      claims.add(maxNumTables);
+      List<TableMetaModel> ret = new LinkedList<>();
+      while (ret.size() < maxNumTables && !pendingTables.isEmpty()) {
+        ret.add(pendingTables.remove(0));
+      }
+      return ret;
+    }
+
+    @Override
+    public MmaConfig.JobConfig getConfig(String db, String tbl) {
+      return MmaMetaManagerDbImplTest.PARTITIONED_TABLE_MIGRATION_JOB_CONFIG;
+    }
+
+    @Override
+    public void updateStatus(String db, String tbl, MigrationStatus status) {
+    }
+
+    @Override
+    public void updateStatus(
+        String db,
+        String tbl,
+        List<List<String>> partitionValuesList,
+        MigrationStatus status) {
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.hive.common.StatsSetupConst;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
+
+public class HiveMetaSourceTest {
+  private static final String DB = "test";
+  private static final String TBL = "test_partitioned";
+  private static final long PARTITION_SIZE = 1024L;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private List<Integer> requestSizes;
+  private SummaryFileSystem fs;
+  private HiveMetaSource hiveMetaSource;
+
+  @Before
+  public void setup() {
+    requestSizes = Collections.synchronizedList(new ArrayList<>());
+    fs = new SummaryFileSystem();
+    hiveMetaSource = new HiveMetaSource(getHmsClient(), fs);
+  }
+
+  @After
+  public void tearDown() {
+    hiveMetaSource.shutdown();
+  }
+
+  @Test
+  public void testGetPartitionMetasPaged() throws Exception {
+    List<List<String>> partitionValuesList = getPartitionValuesList(2500);
+    // Partitions with wrong number of values are skipped
+    partitionValuesList.add(new ArrayList<>());
+
+    List<PartitionMetaModel> partitionMetaModels =
+        hiveMetaSource.getPartitionMetas(DB, TBL, partitionValuesList);
+
+    Assert.assertEquals(2500, partitionMetaModels.size());
+    Assert.assertEquals(partitionValuesList.subList(0, 2500).get(2499),
+                        partitionMetaModels.get(2499).partitionValues);
+    List<Integer> expected = new ArrayList<>();
+    expected.add(1000);
+    expected.add(1000);
+    expected.add(500);
+    Assert.assertEquals(expected, requestSizes);
+  }
+
+  @Test
+  public void testListPartitionMetasWithoutSizePaged() throws Exception {
+    List<PartitionMetaModel> partitionMetaModels =
+        hiveMetaSource.listPartitionMetasWithoutSize(DB, TBL);
+
+    Assert.assertEquals(1001, partitionMetaModels.size());
+    Assert.assertNull(partitionMetaModels.get(0).size);
+    List<Integer> expected = new ArrayList<>();
+    expected.add(1000);
+    expected.add(1);
+    Assert.assertEquals(expected, requestSizes);
+    Assert.assertEquals(0, fs.numRequests.get());
+  }
+
+  @Test
+  public void testPartitionSizesLoadedConcurrently() throws Exception {
+    List<PartitionMetaModel> partitionMetaModels =
+        hiveMetaSource.getPartitionMetas(DB, TBL, getPartitionValuesList(64));
+
+    Assert.assertEquals(64, fs.numRequests.get());
+    for (PartitionMetaModel partitionMetaModel : partitionMetaModels) {
+      Assert.assertEquals(PARTITION_SIZE, (long) partitionMetaModel.size);
+      Assert.assertEquals(1L, (long) partitionMetaModel.numFiles);
+    }
+    // Requests to the NameNode are concurrent, but bounded by the size of the pool
+    Assert.assertTrue(fs.maxConcurrency.get() > 1);
+    Assert.assertTrue(fs.maxConcurrency.get() <= 16);
+  }
+
+  @Test
+  public void testListFilesSkipsHiddenPaths() throws Exception {
+    // The table location itself could be under a hidden directory
+    File location = temporaryFolder.newFolder("_warehouse", TBL);
+    createFile(location, "000000_0", 10);
+    createFile(location, "pt=0/000000_0", 20);
+    createFile(location, "pt=0/_SUCCESS", 0);
+    createFile(location, "pt=0/.000000_0.crc", 1);
+    createFile(location, "pt=0/.hive-staging_hive_1/-ext-10000/000000_0", 30);
+    createFile(location, "pt=0/_tmp.000001_0/000001_0", 40);
+    fs.initialize(URI.create("file:///"), new Configuration());
+
+    SortedMap<String, Long> fileSizes = hiveMetaSource.listFiles(location.getAbsolutePath());
+
+    Assert.assertEquals(2, fileSizes.size());
+    Assert.assertEquals(Arrays.asList(10L, 20L), new ArrayList<>(fileSizes.values()));
+    Assert.assertTrue(fileSizes.firstKey().endsWith(TBL + "/000000_0"));
+    Assert.assertTrue(fileSizes.lastKey().endsWith(TBL + "/pt=0/000000_0"));
+  }
+
+  @Test
+  public void testGetSizeFromStatistics() {
+    // Missing
+    Assert.assertNull(HiveMetaSource.getSizeFromStatistics(null));
+    Assert.assertNull(HiveMetaSource.getSizeFromStatistics(getStatistics(null, null)));
+    // Not a number
+    Assert.assertNull(HiveMetaSource.getSizeFromStatistics(getStatistics("1KB", "true")));
+    // Zero is only trusted when statistics are accurate, in either format of Hive
+    Assert.assertEquals(
+        0L, (long) HiveMetaSource.getSizeFromStatistics(getStatistics("0", "true")));
+    Assert.assertEquals(
+        0L,
+        (long) HiveMetaSource.getSizeFromStatistics(
+            getStatistics("0", "{\"BASIC_STATS\":\"true\"}")));
+    Assert.assertNull(HiveMetaSource.getSizeFromStatistics(getStatistics("0", null)));
+    Assert.assertNull(HiveMetaSource.getSizeFromStatistics(getStatistics("0", "false")));
+    // Positive sizes are always trusted, negative sizes never
+    Assert.assertEquals(
+        1024L, (long) HiveMetaSource.getSizeFromStatistics(getStatistics("1024", null)));
+    Assert.assertEquals(
+        1024L, (long) HiveMetaSource.getSizeFromStatistics(getStatistics("1024", "false")));
+    Assert.assertNull(HiveMetaSource.getSizeFromStatistics(getStatistics("-1", "true")));
+  }
+
+  private static Map<String, String> getStatistics(String totalSize, String accurate) {
+    Map<String, String> parameters = new HashMap<>();
+    if (totalSize != null) {
+      parameters.put(StatsSetupConst.TOTAL_SIZE, totalSize);
+    }
+    if (accurate != null) {
+      parameters.put(StatsSetupConst.COLUMN_STATS_ACCURATE, accurate);
+    }
+    return parameters;
+  }
+
+  private static void createFile(File parent, String path, int size) throws IOException {
+    File file = new File(parent, path);
+    Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+    Files.write(file.toPath(), new byte[size]);
+  }
+
+  private static List<List<String>> getPartitionValuesList(int numPartitions) {
+    List<List<String>> partitionValuesList = new ArrayList<>(numPartitions);
+    for (int i = 0; i < numPartitions; i++) {
+      partitionValuesList.add(Collections.singletonList(String.valueOf(i)));
+    }
+    return partitionValuesList;
+  }
+
+  /**
+   * Serves a table partitioned by column 'pt', which has 1001 partitions, and records the number
+   * of partitions requested by each getPartitionsByNames call
+   */
+  private IMetaStoreClient getHmsClient() {
+    return (IMetaStoreClient) Proxy.newProxyInstance(
+        IMetaStoreClient.class.getClassLoader(),
+        new Class[] {IMetaStoreClient.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getTable": {
+              Table table = new Table();
+              table.setDbName(DB);
+              table.setTableName(TBL);
+              table.setPartitionKeys(
+                  Collections.singletonList(new FieldSchema("pt", "string", null)));
+              return table;
+            }
+            case "listPartitionNames": {
+              List<String> partitionNames = new ArrayList<>();
+              for (int i = 0; i < 1001; i++) {
+                partitionNames.add("pt=" + i);
+              }
+              return partitionNames;
+            }
+            case "getPartitionsByNames": {
+              @SuppressWarnings("unchecked")
+              List<String> partitionNames = (List<String>) args[2];
+              requestSizes.add(partitionNames.size());
+              List<Partition> partitions = new ArrayList<>(partitionNames.size());
+              for (String partitionName : partitionNames) {
+                String value = partitionName.substring("pt=".length());
+                StorageDescriptor sd = new StorageDescriptor();
+                sd.setLocation("/warehouse/" + TBL + "/" + partitionName);
+                Partition partition = new Partition();
+                partition.setValues(Collections.singletonList(value));
+                partition.setSd(sd);
+                partitions.add(partition);
+              }
+              return partitions;
+            }
+            case "close":
+              return null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  /**
+   * Returns content summaries slowly, and records the max number of concurrent requests
+   */
+  private static class SummaryFileSystem extends RawLocalFileSystem {
+    private final AtomicInteger numRequests = new AtomicInteger(0);
+    private final AtomicInteger concurrency = new AtomicInteger(0);
+    private final AtomicInteger maxConcurrency = new AtomicInteger(0);
+
+    @Override
+    public ContentSummary getContentSummary(Path f) {
+      numRequests.incrementAndGet();
+      int current = concurrency.incrementAndGet();
+      maxConcurrency.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        concurrency.decrementAndGet();
+      }
+      return new ContentSummary(PARTITION_SIZE, 1, 0);
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.Constants;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaMetaManagerDbImplTest;
+import com.aliyun.odps.datacarrier.taskscheduler.MockHiveMetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.HmsNotificationConsumer.TableChange;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+
+public class HmsNotificationConsumerTest {
+  private static final Path STORE_PATH = Paths.get(
+      System.getProperty("user.dir"), "HmsNotificationConsumerTest.mv.db").toAbsolutePath();
+
+  private static final String DB = MockHiveMetaSource.DB_NAME;
+  private static final String TBL = MockHiveMetaSource.TBL_PARTITIONED;
+  private static final List<String> PARTITION_VALUES =
+      MockHiveMetaSource.TBL_PARTITIONED_PARTITION_VALUES;
+  private static final long INITIAL_CURSOR = 10L;
+
+  private EventSource eventSource;
+  private ResettingMetaManager mmaMetaManager;
+  private HmsNotificationConsumer consumer;
+
+  @Before
+  public void setup() throws MmaException {
+    deleteStore();
+    eventSource = new EventSource();
+    mmaMetaManager = new ResettingMetaManager(STORE_PATH.toString());
+    mmaMetaManager.addMigrationJob(MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_PARTITIONED);
+    mmaMetaManager.updateStatus(
+        DB, TBL, Collections.singletonList(PARTITION_VALUES), MigrationStatus.SUCCEEDED);
+    mmaMetaManager.setCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION, INITIAL_CURSOR);
+    mmaMetaManager.resets.clear();
+    consumer = new HmsNotificationConsumer(eventSource, mmaMetaManager);
+  }
+
+  @After
+  public void tearDown() throws MmaException {
+    mmaMetaManager.shutdown();
+    deleteStore();
+  }
+
+  private static void deleteStore() {
+    File storeFile = STORE_PATH.toFile();
+    if (storeFile.exists() && !storeFile.delete()) {
+      throw new IllegalStateException("Failed to delete " + storeFile);
+    }
+  }
+
+  @Test
+  public void testParseAddPartitionEvent() {
+    TableChange change = HmsNotificationConsumer.parseEvent(
+        HmsNotificationConsumer.EVENT_TYPE_ADD_PARTITION,
+        "{\"partitions\":[{\"pt\":\"1\",\"hour\":\"00\"},{\"pt\":\"2\",\"hour\":\"01\"}]}");
+    Assert.assertFalse(change.isTableChanged());
+    Assert.assertEquals(
+        Arrays.asList(Arrays.asList("1", "00"), Arrays.asList("2", "01")),
+        new ArrayList<>(change.getPartitions()));
+  }
+
+  @Test
+  public void testParseAlterPartitionEvent() {
+    TableChange change = HmsNotificationConsumer.parseEvent(
+        HmsNotificationConsumer.EVENT_TYPE_ALTER_PARTITION,
+        "{\"keyValues\":{\"pt\":\"1\"},\"tableObjJson\":\"{}\"}");
+    Assert.assertFalse(change.isTableChanged());
+    Assert.assertEquals(
+        Collections.singletonList(Collections.singletonList("1")),
+        new ArrayList<>(change.getPartitions()));
+  }
+
+  @Test
+  public void testParseInsertEvent() {
+    TableChange change = HmsNotificationConsumer.parseEvent(
+        HmsNotificationConsumer.EVENT_TYPE_INSERT, "{\"partKeyVals\":{\"pt\":\"1\"}}");
+    Assert.assertFalse(change.isTableChanged());
+    Assert.assertEquals(
+        Collections.singletonList(Collections.singletonList("1")),
+        new ArrayList<>(change.getPartitions()));
+
+    // Insert into a non-partitioned table
+    change = HmsNotificationConsumer.parseEvent(
+        HmsNotificationConsumer.EVENT_TYPE_INSERT, "{\"partKeyVals\":{}}");
+    Assert.assertTrue(change.isTableChanged());
+    Assert.assertTrue(change.getPartitions().isEmpty());
+  }
+
+  @Test
+  public void testParseOtherEvents() {
+    // Messages that can't be parsed change the whole table
+    TableChange change = HmsNotificationConsumer.parseEvent(
+        HmsNotificationConsumer.EVENT_TYPE_ADD_PARTITION, "{\"partitions\":[{\"pt\":");
+    Assert.assertTrue(change.isTableChanged());
+    Assert.assertTrue(change.getPartitions().isEmpty());
+
+    change = HmsNotificationConsumer.parseEvent(
+        HmsNotificationConsumer.EVENT_TYPE_ALTER_TABLE, null);
+    Assert.assertTrue(change.isTableChanged());
+
+    Assert.assertNull(HmsNotificationConsumer.parseEvent("DROP_PARTITION", "{}"));
+  }
+
+  @Test
+  public void testResetPartitions() throws Exception {
+    eventSource.add(TBL, HmsNotificationConsumer.EVENT_TYPE_INSERT,
+                    "{\"partKeyVals\":{\"pt\":\"" + PARTITION_VALUES.get(0) + "\"}}");
+    eventSource.add("unknown", HmsNotificationConsumer.EVENT_TYPE_ALTER_TABLE, "{}");
+    consumer.poll();
+
+    Assert.assertEquals(
+        MigrationStatus.PENDING, mmaMetaManager.getStatus(DB, TBL, PARTITION_VALUES));
+    // Cached metadata is dropped regardless of its age
+    Assert.assertEquals(Collections.singletonList(TBL), mmaMetaManager.invalidatedTables);
+    Assert.assertEquals(INITIAL_CURSOR + 2,
+                        (long) mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION));
+  }
+
+  @Test
+  public void testDeferChangesOfRunningJob() throws Exception {
+    String tbl = MockHiveMetaSource.TBL_NON_PARTITIONED;
+    mmaMetaManager.addMigrationJob(
+        MmaMetaManagerDbImplTest.TABLE_MIGRATION_CONFIG_NON_PARTITIONED);
+    mmaMetaManager.updateStatus(DB, tbl, MigrationStatus.RUNNING);
+    mmaMetaManager.resets.clear();
+    eventSource.add(tbl, HmsNotificationConsumer.EVENT_TYPE_INSERT, "{\"partKeyVals\":{}}");
+    eventSource.add("unknown", HmsNotificationConsumer.EVENT_TYPE_ALTER_TABLE, "{}");
+    consumer.poll();
+
+    // The cursor stops before the deferred event
+    Assert.assertTrue(mmaMetaManager.resets.isEmpty());
+    Assert.assertEquals(INITIAL_CURSOR,
+                        (long) mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION));
+    consumer.poll();
+    Assert.assertTrue(mmaMetaManager.resets.isEmpty());
+
+    // Applied once the job stops, events are not read again
+    mmaMetaManager.updateStatus(DB, tbl, MigrationStatus.SUCCEEDED);
+    eventSource.add("unknown", HmsNotificationConsumer.EVENT_TYPE_ALTER_TABLE, "{}");
+    consumer.poll();
+    Assert.assertEquals(Collections.singletonList(tbl), mmaMetaManager.resets);
+    Assert.assertEquals(MigrationStatus.PENDING, mmaMetaManager.getStatus(DB, tbl));
+    Assert.assertEquals(INITIAL_CURSOR + 3,
+                        (long) mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION));
+    consumer.poll();
+    Assert.assertEquals(1, mmaMetaManager.resets.size());
+  }
+
+  @Test
+  public void testRetryLimit() throws Exception {
+    mmaMetaManager.numFailures = Integer.MAX_VALUE;
+    eventSource.add(TBL, HmsNotificationConsumer.EVENT_TYPE_ALTER_TABLE, "{}");
+
+    for (int i = 1; i < HmsNotificationConsumer.MAX_APPLY_ATTEMPTS; i++) {
+      consumer.poll();
+      Assert.assertEquals(i, mmaMetaManager.resets.size());
+      Assert.assertEquals(INITIAL_CURSOR,
+                          (long) mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION));
+    }
+
+    // Give up after the last attempt
+    consumer.poll();
+    Assert.assertEquals(HmsNotificationConsumer.MAX_APPLY_ATTEMPTS, mmaMetaManager.resets.size());
+    Assert.assertEquals(INITIAL_CURSOR + 1,
+                        (long) mmaMetaManager.getCursor(Constants.MMA_CURSOR_HMS_NOTIFICATION));
+    consumer.poll();
+    Assert.assertEquals(HmsNotificationConsumer.MAX_APPLY_ATTEMPTS, mmaMetaManager.resets.size());
+  }
+
+  /**
+   * Serves events added by tests instead of the notification log of a HMS
+   */
+  private static class EventSource extends HiveMetaSource {
+    private final List<NotificationEvent> events = new ArrayList<>();
+
+    EventSource() {
+      super(null, null);
+    }
+
+    void add(String tbl, String eventType, String message) {
+      NotificationEvent event = new NotificationEvent(
+          INITIAL_CURSOR + events.size() + 1, 0, eventType, message);
+      event.setDbName(DB);
+      event.setTableName(tbl);
+      events.add(event);
+    }
+
+    @Override
+    public long getCurrentNotificationEventId() {
+      return INITIAL_CURSOR;
+    }
+
+    @Override
+    public List<NotificationEvent> getNextNotifications(long lastEventId, int maxEvents) {
+      return events
+          .stream()
+          .filter(e -> e.getEventId() > lastEventId)
+          .limit(maxEvents)
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Records resets and invalidations, and fails resets as many times as required
+   */
+  private static class ResettingMetaManager extends MmaMetaManagerKvImpl {
+    private final List<String> resets = new ArrayList<>();
+    private final List<String> invalidatedTables = new ArrayList<>();
+    private int numFailures = 0;
+
+    ResettingMetaManager(String storePath) throws MmaException {
+      super(new MockHiveMetaSource(), storePath, false);
+    }
+
+    @Override
+    public void addMigrationJob(MmaConfig.TableMigrationConfig config) throws MmaException {
+      resets.add(config.getSourceTableName());
+      if (numFailures > 0) {
+        numFailures -= 1;
+        throw new MmaException("Injected failure");
+      }
+      super.addMigrationJob(config);
+    }
+
+    @Override
+    public void invalidateTableMeta(String db, String tbl) {
+      invalidatedTables.add(tbl);
+      super.invalidateTableMeta(db, tbl);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.MmaConfig.ObjectType;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.OdpsMetaSource.ObjectDescriptor;
+
+public class OdpsMetaSourceTest {
+  private static final String PROJECT = "test_project";
+
+  private ScanningMetaSource metaSource;
+
+  @Before
+  public void setup() {
+    metaSource = new ScanningMetaSource();
+  }
+
+  @After
+  public void tearDown() {
+    metaSource.shutdown();
+  }
+
+  @Test
+  public void testScanTables() throws Exception {
+    List<ObjectDescriptor> descriptors =
+        metaSource.scanProject(PROJECT, EnumSet.of(ObjectType.TABLE));
+
+    Assert.assertEquals(Arrays.asList("managed", "external"), getNames(descriptors));
+    Assert.assertFalse(descriptors.get(0).isExternal);
+    Assert.assertTrue(descriptors.get(1).isExternal);
+    Assert.assertEquals(EnumSet.of(ObjectType.TABLE), metaSource.scanned);
+  }
+
+  @Test
+  public void testScanViewsAndFunctions() throws Exception {
+    List<ObjectDescriptor> descriptors =
+        metaSource.scanProject(PROJECT, EnumSet.of(ObjectType.VIEW, ObjectType.FUNCTION));
+
+    Assert.assertEquals(Arrays.asList("view", "function"), getNames(descriptors));
+    Assert.assertEquals(ObjectType.VIEW, descriptors.get(0).type);
+    Assert.assertEquals(ObjectType.FUNCTION, descriptors.get(1).type);
+    // Views are listed along with tables
+    Assert.assertEquals(EnumSet.of(ObjectType.TABLE, ObjectType.FUNCTION), metaSource.scanned);
+  }
+
+  @Test(timeout = 10000)
+  public void testScanConcurrently() throws Exception {
+    // Each scan waits for the others, so the scan never ends if they are not concurrent
+    metaSource.latch = new CountDownLatch(3);
+    List<ObjectDescriptor> descriptors =
+        metaSource.scanProject(PROJECT, EnumSet.allOf(ObjectType.class));
+
+    Assert.assertEquals(
+        Arrays.asList("managed", "view", "external", "function", "resource"),
+        getNames(descriptors));
+  }
+
+  @Test
+  public void testScanFailed() {
+    metaSource.failResources = true;
+    try {
+      metaSource.scanProject(PROJECT, EnumSet.of(ObjectType.TABLE, ObjectType.RESOURCE));
+      Assert.fail();
+    } catch (Exception e) {
+      // The failure of the listing is thrown as is
+      Assert.assertTrue(e instanceof IllegalStateException);
+    }
+  }
+
+  private static List<String> getNames(List<ObjectDescriptor> descriptors) {
+    return descriptors.stream().map(d -> d.name).collect(Collectors.toList());
+  }
+
+  /**
+   * Serves objects of each type without ODPS, and records which listings are scanned
+   */
+  private static class ScanningMetaSource extends OdpsMetaSource {
+    private final Set<ObjectType> scanned = ConcurrentHashMap.newKeySet();
+    private CountDownLatch latch = new CountDownLatch(0);
+    private boolean failResources = false;
+
+    ScanningMetaSource() {
+      super("access_id", "access_key", "http://localhost", PROJECT);
+    }
+
+    @Override
+    List<ObjectDescriptor> scanTables(String databaseName) {
+      await(ObjectType.TABLE);
+      return Arrays.asList(
+          new ObjectDescriptor("managed", ObjectType.TABLE, false),
+          new ObjectDescriptor("view", ObjectType.VIEW, false),
+          new ObjectDescriptor("external", ObjectType.TABLE, true));
+    }
+
+    @Override
+    List<ObjectDescriptor> scanFunctions(String databaseName) {
+      await(ObjectType.FUNCTION);
+      return Arrays.asList(new ObjectDescriptor("function", ObjectType.FUNCTION, false));
+    }
+
+    @Override
+    List<ObjectDescriptor> scanResources(String databaseName) {
+      await(ObjectType.RESOURCE);
+      if (failResources) {
+        throw new IllegalStateException("Injected failure");
+      }
+      return Arrays.asList(new ObjectDescriptor("resource", ObjectType.RESOURCE, false));
+    }
+
+    private void await(ObjectType type) {
+      scanned.add(type);
+      latch.countDown();
+      try {
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.aliyun.odps.datacarrier.taskscheduler.GsonUtils;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaException;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaMetaManagerDbImplTest;
+import com.aliyun.odps.datacarrier.taskscheduler.MmaServerConfig;
+import com.aliyun.odps.datacarrier.taskscheduler.MockHiveMetaSource;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.PartitionMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MetaSource.TableMetaModel;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManager.MigrationStatus;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.JobInfo;
+import com.aliyun.odps.datacarrier.taskscheduler.meta.MmaMetaManagerDbImplUtils.MigrationJobPtInfo;
+
+/**
+ * Tests of {@link MmaMetaManagerDbImpl#getPendingTableMeta}, which builds the metadata of claimed
+ * jobs
+ */
+public class PendingTableMetaTest {
+  private static final Path STORE_PATH = Paths.get(
+      System.getProperty("user.dir"), "PendingTableMetaTest.mv.db").toAbsolutePath();
+
+  private static final String DB = MockHiveMetaSource.DB_NAME;
+  private static final String TBL = MockHiveMetaSource.TBL_PARTITIONED;
+  private static final int NUM_PARTITIONS = 2500;
+  private static final List<String> BAD_PARTITION = Collections.singletonList("1500");
+
+  private FlakyMetaSource metaSource;
+  private StatusRecordingMetaManager mmaMetaManager;
+
+  @BeforeClass
+  public static void beforeClass() {
+    MmaServerConfig.setInstance(GsonUtils.getFullConfigGson().fromJson(
+        "{\"dataSource\": \"Hive\"}", MmaServerConfig.class));
+  }
+
+  @Before
+  public void setup() throws MmaException {
+    delete();
+    metaSource = new FlakyMetaSource();
+    mmaMetaManager = new StatusRecordingMetaManager(STORE_PATH.toString());
+  }
+
+  @After
+  public void tearDown() throws MmaException {
+    mmaMetaManager.shutdown();
+    delete();
+  }
+
+  private static void delete() {
+    File file = STORE_PATH.toFile();
+    if (file.exists() && !file.delete()) {
+      throw new IllegalStateException("Failed to delete " + file);
+    }
+  }
+
+  @Test
+  public void testPartitionMetasInBatches() throws Exception {
+    TableMetaModel tableMetaModel = getPendingTableMeta();
+
+    Assert.assertEquals(NUM_PARTITIONS, tableMetaModel.partitions.size());
+    Assert.assertEquals(3, metaSource.batchRequests.size());
+    Assert.assertEquals(1000, (int) metaSource.batchRequests.get(0));
+    Assert.assertEquals(500, (int) metaSource.batchRequests.get(2));
+    Assert.assertEquals(0, metaSource.numPartitionRequests);
+    Assert.assertTrue(mmaMetaManager.failedPartitions.isEmpty());
+  }
+
+  @Test
+  public void testRetryBatch() throws Exception {
+    metaSource.numTransientFailures = 1;
+    TableMetaModel tableMetaModel = getPendingTableMeta();
+
+    Assert.assertEquals(NUM_PARTITIONS, tableMetaModel.partitions.size());
+    Assert.assertEquals(4, metaSource.batchRequests.size());
+    Assert.assertEquals(0, metaSource.numPartitionRequests);
+    Assert.assertTrue(mmaMetaManager.failedPartitions.isEmpty());
+  }
+
+  @Test
+  public void testFallbackToSinglePartitions() throws Exception {
+    metaSource.failBadPartition = true;
+    TableMetaModel tableMetaModel = getPendingTableMeta();
+
+    // Only the bad partition fails, other partitions of its batch are requested one by one
+    Assert.assertNotNull(tableMetaModel);
+    Assert.assertEquals(NUM_PARTITIONS - 1, tableMetaModel.partitions.size());
+    Assert.assertEquals(4, metaSource.batchRequests.size());
+    Assert.assertEquals(1000, metaSource.numPartitionRequests);
+    Assert.assertEquals(Collections.singletonList(BAD_PARTITION),
+                        mmaMetaManager.failedPartitions);
+    Assert.assertNull(mmaMetaManager.tableStatus);
+  }
+
+  private TableMetaModel getPendingTableMeta() throws Exception {
+    JobInfo jobInfo = new JobInfo(
+        DB,
+        TBL,
+        true,
+        MmaMetaManagerDbImplTest.PARTITIONED_TABLE_MIGRATION_JOB_CONFIG,
+        MigrationStatus.PENDING,
+        0,
+        -1L);
+    List<MigrationJobPtInfo> pendingJobPtInfos = new ArrayList<>(NUM_PARTITIONS);
+    for (int i = 0; i < NUM_PARTITIONS; i++) {
+      pendingJobPtInfos.add(new MigrationJobPtInfo(
+          Collections.singletonList(String.valueOf(i)), MigrationStatus.PENDING, 0, -1L));
+    }
+    return MmaMetaManagerDbImpl.getPendingTableMeta(
+        mmaMetaManager, metaSource, jobInfo, pendingJobPtInfos);
+  }
+
+  /**
+   * Serves partitions of any values, batches could fail transiently, or always when the bad
+   * partition is requested
+   */
+  private static class FlakyMetaSource extends MockHiveMetaSource {
+    private final List<Integer> batchRequests = new ArrayList<>();
+    private int numPartitionRequests = 0;
+    private int numTransientFailures = 0;
+    private boolean failBadPartition = false;
+
+    @Override
+    public List<PartitionMetaModel> getPartitionMetas(String databaseName,
+                                                      String tableName,
+                                                      List<List<String>> partitionValuesList)
+        throws Exception {
+      batchRequests.add(partitionValuesList.size());
+      if (numTransientFailures > 0) {
+        numTransientFailures -= 1;
+        throw new Exception("Injected transient failure");
+      }
+      if (failBadPartition && partitionValuesList.contains(BAD_PARTITION)) {
+        throw new Exception("Injected failure");
+      }
+      return partitionValuesList
+          .stream()
+          .map(FlakyMetaSource::getPartitionMetaModel)
+          .collect(Collectors.toList());
+    }
+
+    @Override
+    public PartitionMetaModel getPartitionMeta(String databaseName,
+                                               String tableName,
+                                               List<String> partitionValues) throws Exception {
+      numPartitionRequests += 1;
+      if (failBadPartition && BAD_PARTITION.equals(partitionValues)) {
+        throw new Exception("Injected failure");
+      }
+      return getPartitionMetaModel(partitionValues);
+    }
+
+    private static PartitionMetaModel getPartitionMetaModel(List<String> partitionValues) {
+      PartitionMetaModel partitionMetaModel = new PartitionMetaModel();
+      partitionMetaModel.partitionValues = new ArrayList<>(partitionValues);
+      partitionMetaModel.size = 1024L;
+      return partitionMetaModel;
+    }
+  }
+
+  /**
+   * Records statuses set by {@link MmaMetaManagerDbImpl#getPendingTableMeta}
+   */
+  private static class StatusRecordingMetaManager extends MmaMetaManagerKvImpl {
+    private MigrationStatus tableStatus = null;
+    private final List<List<String>> failedPartitions = new ArrayList<>();
+
+    StatusRecordingMetaManager(String storePath) throws MmaException {
+      super(new MockHiveMetaSource(), storePath, false);
+    }
+
+    @Override
+    public void updateStatus(String db, String tbl, MigrationStatus status) {
+      tableStatus = status;
+    }
+
+    @Override
+    public void updateStatus(String db,
+                             String tbl,
+                             List<List<String>> partitionValuesList,
+                             MigrationStatus status) {
+      if (MigrationStatus.FAILED.equals(status)) {
+        failedPartitions.addAll(partitionValuesList);
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.aliyun.odps.datacarrier.taskscheduler.meta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TablePrefetcherTest {
+  private static final String DB = "test_db";
+  private static final int BATCH_SIZE = 10;
+  private static final int WINDOW_SIZE = 30;
+
+  private ExecutorService pool;
+  private RecordingLoader loader;
+  private TablePrefetcher<String> prefetcher;
+
+  @Before
+  public void setup() {
+    pool = Executors.newFixedThreadPool(4);
+    loader = new RecordingLoader();
+    prefetcher = new TablePrefetcher<>(
+        loader, String::valueOf, pool, BATCH_SIZE, WINDOW_SIZE, 1000, 600);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testLoadLazily() {
+    List<String> tables = getTableNames(100);
+    prefetcher.register(DB, tables);
+    Assert.assertTrue(loader.batches.isEmpty());
+
+    // The first request loads the window of the table, in batches
+    Assert.assertEquals("tbl_35", prefetcher.take(DB, "TBL_35"));
+    Assert.assertEquals(3, loader.batches.size());
+    for (List<String> batch : loader.batches) {
+      Assert.assertEquals(BATCH_SIZE, batch.size());
+      Assert.assertTrue(tables.subList(30, 60).containsAll(batch));
+    }
+
+    // Other tables of the window are served without requests
+    for (int i = 30; i < 60; i++) {
+      if (i != 35) {
+        Assert.assertEquals("tbl_" + i, prefetcher.take(DB, "tbl_" + i));
+      }
+    }
+    Assert.assertEquals(3, loader.batches.size());
+
+    // A table is taken only once
+    Assert.assertNull(prefetcher.take(DB, "tbl_35"));
+    Assert.assertEquals(3, loader.batches.size());
+  }
+
+  @Test
+  public void testNotRegistered() {
+    prefetcher.register(DB, getTableNames(10));
+
+    Assert.assertNull(prefetcher.take(DB, "other"));
+    Assert.assertNull(prefetcher.take("other_db", "tbl_0"));
+    Assert.assertTrue(loader.batches.isEmpty());
+  }
+
+  @Test
+  public void testLoadFailed() {
+    prefetcher.register(DB, getTableNames(WINDOW_SIZE));
+    loader.failedTable = "tbl_15";
+
+    // Tables of the failed batch are left to the caller, the window is not loaded again
+    Assert.assertNull(prefetcher.take(DB, "tbl_15"));
+    Assert.assertNull(prefetcher.take(DB, "tbl_19"));
+    Assert.assertEquals("tbl_0", prefetcher.take(DB, "tbl_0"));
+    Assert.assertEquals("tbl_29", prefetcher.take(DB, "tbl_29"));
+    Assert.assertEquals(3, loader.batches.size());
+  }
+
+  @Test
+  public void testClear() {
+    prefetcher.register(DB, getTableNames(WINDOW_SIZE));
+    Assert.assertEquals("tbl_0", prefetcher.take(DB, "tbl_0"));
+    prefetcher.clear();
+
+    Assert.assertNull(prefetcher.take(DB, "tbl_1"));
+  }
+
+  private static List<String> getTableNames(int numTables) {
+    List<String> tableNames = new ArrayList<>(numTables);
+    for (int i = 0; i < numTables; i++) {
+      tableNames.add("tbl_" + i);
+    }
+    return tableNames;
+  }
+
+  /**
+   * Loads table names as tables, and records the requested batches
+   */
+  private static class RecordingLoader implements TablePrefetcher.BatchLoader<String> {
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+    private String failedTable = null;
+
+    @Override
+    public List<String> load(String databaseName, List<String> tableNames) throws Exception {
+      batches.add(new ArrayList<>(tableNames));
+      if (tableNames.contains(failedTable)) {
+        throw new Exception("Injected failure");
+      }
+      return new ArrayList<>(tableNames);
+    }
+  }
+}